@@ -11,6 +11,7 @@ import java.io.InputStream;
 import java.net.URL;
 import java.util.Date;
 import java.util.List;
+import java.util.SortedMap;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
@@ -98,6 +99,64 @@ public class AliyunOssUtil {
         return ossObject.getObjectContent();
     }
 
+    /**
+     * 创建分片上传任务
+     *
+     * @param fileName 文件的全路径（path/to/example.txt）
+     * @return 分片上传ID
+     */
+    public String initiateMultipartUpload(String fileName) {
+        InitiateMultipartUploadRequest request =
+                new InitiateMultipartUploadRequest(properties.getBucketName(), fileName);
+        return ossClient.initiateMultipartUpload(request).getUploadId();
+    }
+
+    /**
+     * 上传一个分片（流式上传，不会把分片读入内存）
+     *
+     * @param fileName   文件的全路径（path/to/example.txt）
+     * @param uploadId   分片上传ID
+     * @param partNumber 分片序号（从1开始）
+     * @param is         分片内容
+     * @param length     分片大小
+     * @return 分片的ETag
+     */
+    public String uploadPart(String fileName, String uploadId, int partNumber, InputStream is, long length) {
+        UploadPartRequest request = new UploadPartRequest();
+        request.setBucketName(properties.getBucketName());
+        request.setKey(fileName);
+        request.setUploadId(uploadId);
+        request.setPartNumber(partNumber);
+        request.setInputStream(is);
+        request.setPartSize(length);
+        return ossClient.uploadPart(request).getETag();
+    }
+
+    /**
+     * 合并分片
+     *
+     * @param fileName 文件的全路径（path/to/example.txt）
+     * @param uploadId 分片上传ID
+     * @param etags    分片序号 -> ETag（按序号排列）
+     */
+    public void completeMultipartUpload(String fileName, String uploadId, SortedMap<Integer, String> etags) {
+        List<PartETag> partETags = etags.entrySet().stream()
+                .map(e -> new PartETag(e.getKey(), e.getValue()))
+                .collect(Collectors.toList());
+        ossClient.completeMultipartUpload(
+                new CompleteMultipartUploadRequest(properties.getBucketName(), fileName, uploadId, partETags));
+    }
+
+    /**
+     * 取消分片上传，已上传的分片会被删除
+     *
+     * @param fileName 文件的全路径（path/to/example.txt）
+     * @param uploadId 分片上传ID
+     */
+    public void abortMultipartUpload(String fileName, String uploadId) {
+        ossClient.abortMultipartUpload(new AbortMultipartUploadRequest(properties.getBucketName(), fileName, uploadId));
+    }
+
     /**
      * 生成文件的访问链接
      * <p>默认过期时间单位 秒</p>
@@ -190,6 +249,41 @@ public class AliyunOssUtil {
         return ossClient.listObjects(bucketName);
     }
 
+    /**
+     * 判断文件是否存在
+     * <p>默认存储桶为配置文件中指定的</p>
+     *
+     * @param fileName 文件的全路径名（path/to/example.txt）
+     * @return 是否存在
+     */
+    public boolean exists(String fileName) {
+        return ossClient.doesObjectExist(properties.getBucketName(), fileName);
+    }
+
+    /**
+     * 删除一个目录（前缀）下的所有文件
+     * <p>默认存储桶为配置文件中指定的</p>
+     *
+     * @param prefix 目录前缀（path/to/）
+     */
+    public void removeByPrefix(String prefix) {
+        String bucketName = properties.getBucketName();
+        String marker = null;
+        ObjectListing listing;
+        do {
+            listing = ossClient.listObjects(new ListObjectsRequest(bucketName)
+                    .withPrefix(prefix)
+                    .withMarker(marker));
+            List<String> keys = listing.getObjectSummaries().stream()
+                    .map(OSSObjectSummary::getKey)
+                    .collect(Collectors.toList());
+            if (!keys.isEmpty()) {
+                ossClient.deleteObjects(new DeleteObjectsRequest(bucketName).withKeys(keys));
+            }
+            marker = listing.getNextMarker();
+        } while (listing.isTruncated());
+    }
+
     /**
      * 根据文件路径，删除存储桶中的一个文件
      * <p>默认存储桶为配置文件中指定的</p>
@@ -10,6 +10,16 @@ import lombok.Data;
 @Data
 public class ImageSearchResult {
 
+    /**
+     * 图片ID
+     */
+    private Long pictureId;
+
+    /**
+     * 图片名称
+     */
+    private String name;
+
     /**
      * 缩略图地址
      */
@@ -19,5 +29,15 @@ public class ImageSearchResult {
      * 来源地址
      */
     private String fromUrl;
+
+    /**
+     * 和目标图片感知哈希的汉明距离（0~64，越小越相似）
+     */
+    private Integer distance;
+
+    /**
+     * 相似度（0~1）
+     */
+    private Double similarity;
 }
 
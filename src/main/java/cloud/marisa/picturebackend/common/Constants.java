@@ -25,11 +25,36 @@ public class Constants {
      */
     public static final int THUMB_MAX_SIZE = 1000;
 
+    /**
+     * 调色板最多保存几种颜色
+     */
+    public static final int PALETTE_SIZE = 5;
+
+    /**
+     * 单独计算感知哈希时的解码尺寸（最长边），哈希只用到9x8的缩略信息，不需要完整解码
+     */
+    public static final int PIC_HASH_DECODE_SIZE = 256;
+
+    /**
+     * 允许处理的最大像素数（2亿像素），超过的视为解压炸弹，只读文件头就拒绝
+     */
+    public static final long IMAGE_MAX_PIXELS = 200_000_000L;
+
+    /**
+     * 完整解码时的像素预算（4000万像素，约160MB），超过时按比例降采样解码
+     */
+    public static final long DECODE_MAX_PIXELS = 40_000_000L;
+
     /**
      * 图片缓存前缀
      */
     public static final String PICTURE_CACHE_PREFIX = "mrs_picture:picture_vo_page_cache";
 
+    /**
+     * 图片分页缓存的版本号前缀（后接空间ID，公共空间为0）
+     */
+    public static final String PICTURE_PAGE_GENERATION_PREFIX = "mrs_picture:page_generation:";
+
     /**
      * 用户服务的缓存前缀
      */
@@ -45,6 +70,26 @@ public class Constants {
      */
     public static final String SPACE_CACHE_NAME = "space:";
 
+    /**
+     * 团队空间成员的缓存前缀
+     */
+    public static final String SPACE_USER_CACHE_NAME = "space_user:";
+
+    /**
+     * 本地缓存失效通知的Redis频道
+     */
+    public static final String CACHE_INVALIDATION_CHANNEL = "mrs_cache:invalidation";
+
+    /**
+     * 秒传凭证的前缀
+     */
+    public static final String INSTANT_UPLOAD_TOKEN_PREFIX = "mrs_picture:instant_upload:";
+
+    /**
+     * 分片上传会话的前缀
+     */
+    public static final String CHUNK_UPLOAD_PREFIX = "mrs_picture:chunk_upload:";
+
     public static final Map<String, String> MIME_TYPE_MAP = Map.of(
             "jpg", "image/jpeg",
             "jpeg", "image/jpeg",
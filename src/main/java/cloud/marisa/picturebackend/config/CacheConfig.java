@@ -0,0 +1,202 @@
+package cloud.marisa.picturebackend.config;
+
+import cloud.marisa.picturebackend.entity.dao.Picture;
+import cloud.marisa.picturebackend.entity.dao.Space;
+import cloud.marisa.picturebackend.entity.dao.SpaceUser;
+import cloud.marisa.picturebackend.entity.dao.User;
+import cloud.marisa.picturebackend.manager.cache.CacheInvalidationBus;
+import cloud.marisa.picturebackend.manager.cache.entity.PicturePageIds;
+import cloud.marisa.picturebackend.util.cache.MrsCacheCodec;
+import cloud.marisa.picturebackend.util.cache.MrsTwoLevelCache;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * @author MarisaDAZE
+ * @description 多级缓存配置
+ * @date 2025/4/28
+ */
+@Configuration
+public class CacheConfig {
+
+    /**
+     * 成为热点key的访问频率阈值（0~15）
+     */
+    private static final int HOT_THRESHOLD = 8;
+
+    /**
+     * 每个缓存最多的热点key数量
+     */
+    private static final int MAX_HOT_KEYS = 200;
+
+    /**
+     * 热点key写入4分钟后提前刷新（本地缓存5分钟过期）
+     */
+    private static final int REFRESH_AFTER_SECONDS = 240;
+
+    /**
+     * 图片信息的二级缓存
+     * <p>本地缓存5分钟，Redis缓存5~10分钟，不存在的图片缓存30秒，热点图片常驻本地并提前刷新</p>
+     *
+     * @param cacheProperties   缓存配置（本地缓存的内存预算）
+     * @param byteRedisTemplate 值为字节的RedisTemplate
+     * @param refreshExecutor   热点key后台刷新的线程池
+     * @param invalidationBus   本地缓存失效总线
+     * @return 图片的二级缓存
+     */
+    @Bean
+    public MrsTwoLevelCache<Picture> pictureCache(CacheProperties cacheProperties,
+                                                  RedisTemplate<String, byte[]> byteRedisTemplate,
+                                                  @Qualifier("cacheRefreshPoolExecutor") ThreadPoolExecutor refreshExecutor,
+                                                  CacheInvalidationBus invalidationBus) {
+        MrsTwoLevelCache<Picture> cache = new MrsTwoLevelCache<>(
+                "picture",
+                cacheProperties.getPicture().toBytes(),
+                300,
+                byteRedisTemplate,
+                MrsCacheCodec.jsonb(Picture.class),
+                300,
+                300,
+                30
+        );
+        cache.enableRefreshAhead(refreshExecutor, HOT_THRESHOLD, MAX_HOT_KEYS, REFRESH_AFTER_SECONDS);
+        invalidationBus.register(cache.getName(), cache.getLocalCache());
+        return cache;
+    }
+
+    /**
+     * 用户信息的二级缓存
+     * <p>本地缓存5分钟，Redis缓存5~10分钟，热点用户常驻本地并提前刷新</p>
+     *
+     * @param cacheProperties   缓存配置（本地缓存的内存预算）
+     * @param byteRedisTemplate 值为字节的RedisTemplate
+     * @param refreshExecutor   热点key后台刷新的线程池
+     * @param invalidationBus   本地缓存失效总线
+     * @return 用户的二级缓存
+     */
+    @Bean
+    public MrsTwoLevelCache<User> userCache(CacheProperties cacheProperties,
+                                            RedisTemplate<String, byte[]> byteRedisTemplate,
+                                            @Qualifier("cacheRefreshPoolExecutor") ThreadPoolExecutor refreshExecutor,
+                                            CacheInvalidationBus invalidationBus) {
+        MrsTwoLevelCache<User> cache = new MrsTwoLevelCache<>(
+                "user",
+                cacheProperties.getUser().toBytes(),
+                300,
+                byteRedisTemplate,
+                MrsCacheCodec.jsonb(User.class),
+                300,
+                300
+        );
+        cache.enableRefreshAhead(refreshExecutor, HOT_THRESHOLD, MAX_HOT_KEYS, REFRESH_AFTER_SECONDS);
+        invalidationBus.register(cache.getName(), cache.getLocalCache());
+        return cache;
+    }
+
+    /**
+     * 空间信息的二级缓存
+     * <p>本地缓存5分钟，Redis缓存5~10分钟，热点空间常驻本地并提前刷新</p>
+     *
+     * @param cacheProperties   缓存配置（本地缓存的内存预算）
+     * @param byteRedisTemplate 值为字节的RedisTemplate
+     * @param refreshExecutor   热点key后台刷新的线程池
+     * @param invalidationBus   本地缓存失效总线
+     * @return 空间的二级缓存
+     */
+    @Bean
+    public MrsTwoLevelCache<Space> spaceCache(CacheProperties cacheProperties,
+                                              RedisTemplate<String, byte[]> byteRedisTemplate,
+                                              @Qualifier("cacheRefreshPoolExecutor") ThreadPoolExecutor refreshExecutor,
+                                              CacheInvalidationBus invalidationBus) {
+        MrsTwoLevelCache<Space> cache = new MrsTwoLevelCache<>(
+                "space",
+                cacheProperties.getSpace().toBytes(),
+                300,
+                byteRedisTemplate,
+                MrsCacheCodec.jsonb(Space.class),
+                300,
+                300
+        );
+        cache.enableRefreshAhead(refreshExecutor, HOT_THRESHOLD, MAX_HOT_KEYS, REFRESH_AFTER_SECONDS);
+        invalidationBus.register(cache.getName(), cache.getLocalCache());
+        return cache;
+    }
+
+    /**
+     * 团队空间角色的二级缓存，键为(空间ID, 用户ID)
+     * <p>非成员缓存为空字符串，因此不需要开启空值缓存</p>
+     *
+     * @param cacheProperties   缓存配置（本地缓存的内存预算）
+     * @param byteRedisTemplate 值为字节的RedisTemplate
+     * @param invalidationBus   本地缓存失效总线
+     * @return 空间角色的二级缓存
+     */
+    @Bean
+    public MrsTwoLevelCache<String> spaceRoleCache(CacheProperties cacheProperties,
+                                                   RedisTemplate<String, byte[]> byteRedisTemplate,
+                                                   CacheInvalidationBus invalidationBus) {
+        MrsTwoLevelCache<String> cache = new MrsTwoLevelCache<>(
+                "space-role",
+                cacheProperties.getSpaceRole().toBytes(),
+                300,
+                byteRedisTemplate,
+                MrsCacheCodec.jsonb(String.class),
+                300,
+                300
+        );
+        invalidationBus.register(cache.getName(), cache.getLocalCache());
+        return cache;
+    }
+
+    /**
+     * 团队空间成员记录的二级缓存，键为成员ID
+     *
+     * @param cacheProperties   缓存配置（本地缓存的内存预算）
+     * @param byteRedisTemplate 值为字节的RedisTemplate
+     * @param invalidationBus   本地缓存失效总线
+     * @return 空间成员的二级缓存
+     */
+    @Bean
+    public MrsTwoLevelCache<SpaceUser> spaceUserCache(CacheProperties cacheProperties,
+                                                      RedisTemplate<String, byte[]> byteRedisTemplate,
+                                                      CacheInvalidationBus invalidationBus) {
+        MrsTwoLevelCache<SpaceUser> cache = new MrsTwoLevelCache<>(
+                "space-user",
+                cacheProperties.getSpaceUser().toBytes(),
+                300,
+                byteRedisTemplate,
+                MrsCacheCodec.jsonb(SpaceUser.class),
+                300,
+                300,
+                30
+        );
+        invalidationBus.register(cache.getName(), cache.getLocalCache());
+        return cache;
+    }
+
+    /**
+     * 图片分页ID的二级缓存
+     * <p>键中带有空间的版本号，版本变化后旧键不会再被访问，因此不需要跨节点失效</p>
+     *
+     * @param cacheProperties   缓存配置（本地缓存的内存预算）
+     * @param byteRedisTemplate 值为字节的RedisTemplate
+     * @return 图片分页ID的二级缓存
+     */
+    @Bean
+    public MrsTwoLevelCache<PicturePageIds> picturePageCache(CacheProperties cacheProperties,
+                                                             RedisTemplate<String, byte[]> byteRedisTemplate) {
+        return new MrsTwoLevelCache<>(
+                "picture-page",
+                cacheProperties.getPicturePage().toBytes(),
+                300,
+                byteRedisTemplate,
+                MrsCacheCodec.jsonb(PicturePageIds.class),
+                300,
+                300
+        );
+    }
+}
@@ -0,0 +1,50 @@
+package cloud.marisa.picturebackend.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * <p>各个缓存本地（Caffeine）部分的内存预算</p>
+ * <p>条目按编码后的字节数 + 键 + 固定开销计算权重，总权重超过预算时淘汰</p>
+ *
+ * @author MarisaDAZE
+ * @description 缓存配置
+ * @date 2025/4/28
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "mrs.cache.local-max-size")
+public class CacheProperties {
+
+    /**
+     * 图片缓存
+     */
+    private DataSize picture = DataSize.ofMegabytes(32);
+
+    /**
+     * 用户缓存
+     */
+    private DataSize user = DataSize.ofMegabytes(8);
+
+    /**
+     * 空间缓存
+     */
+    private DataSize space = DataSize.ofMegabytes(4);
+
+    /**
+     * 空间角色缓存
+     */
+    private DataSize spaceRole = DataSize.ofMegabytes(8);
+
+    /**
+     * 空间成员缓存
+     */
+    private DataSize spaceUser = DataSize.ofMegabytes(4);
+
+    /**
+     * 图片分页ID缓存
+     */
+    private DataSize picturePage = DataSize.ofMegabytes(8);
+}
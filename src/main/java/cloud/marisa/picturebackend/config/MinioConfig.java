@@ -1,5 +1,7 @@
 package cloud.marisa.picturebackend.config;
 
+import cloud.marisa.picturebackend.util.MrsMinioClient;
+import io.minio.MinioAsyncClient;
 import io.minio.MinioClient;
 import lombok.Data;
 import org.springframework.beans.factory.annotation.Value;
@@ -33,4 +35,17 @@ public class MinioConfig {
                 .build();
     }
 
+    /**
+     * 支持分片上传的MinIO客户端（断点续传）
+     */
+    @Bean
+    public MrsMinioClient mrsMinioClient() {
+        MinioAsyncClient client = MinioAsyncClient.builder()
+                .region("cn-north-1")
+                .endpoint(url)
+                .credentials(accessKey, secretKey)
+                .build();
+        return new MrsMinioClient(client);
+    }
+
 }
@@ -6,6 +6,8 @@ import lombok.ToString;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -50,6 +52,92 @@ public class PictureConfig {
      */
     private List<String> urlImageType;
 
+    /**
+     * 上传时生成派生图（压缩、缩略图、主色调）的单步超时时间（秒）
+     */
+    private Integer deriveTimeout = 30;
+
+    /**
+     * 上传时单个对象写入对象存储的超时时间（秒）
+     */
+    private Integer uploadTimeout = 60;
+
+    /**
+     * 上传时是否只保存原图，派生图（默认图、缩略图）和主色调由后台任务生成
+     * <p>仅对MinIO生效，阿里云OSS仍然同步处理</p>
+     */
+    private Boolean asyncProcess = true;
+
+    /**
+     * 分片上传（断点续传）时允许的最大文件大小
+     */
+    private String chunkMaxSize = "200MB";
+
+    /**
+     * 分片上传时每个分片的大小（对象存储要求除最后一片外不小于5MB）
+     */
+    private String chunkPartSize = "5MB";
+
+    /**
+     * 从网络获取图片时的连接超时时间（秒）
+     */
+    private Integer urlConnectTimeout = 5;
+
+    /**
+     * 从网络获取图片时的读取超时时间（秒），两次读到数据的最大间隔
+     */
+    private Integer urlReadTimeout = 30;
+
+    /**
+     * 单个节点同时处理的上传字节数上限，超过后新的上传返回429
+     */
+    private String uploadInflightMaxSize = "256MB";
+
+    /**
+     * 单个用户同时处理的上传字节数上限
+     */
+    private String uploadUserInflightMaxSize = "64MB";
+
+    /**
+     * 单个节点同时解码的像素数上限（ARGB每像素4字节，1.2亿像素约480MB）
+     */
+    private Long uploadDecodeMaxPixels = 120_000_000L;
+
+    /**
+     * 上传许可不足时最多等待的时间（秒），超时后返回429
+     */
+    private Integer uploadAdmissionWait = 3;
+
+    /**
+     * 按需渲染时允许的宽高（像素），不在列表中的尺寸直接拒绝，防止任意尺寸撑爆缓存
+     */
+    private List<Integer> renderSizes = new ArrayList<>(Arrays.asList(64, 128, 160, 240, 320, 480, 640, 800, 960, 1280, 1600, 1920));
+
+    /**
+     * 按需渲染时允许的输出格式
+     */
+    private List<String> renderFormats = new ArrayList<>(Arrays.asList("webp", "jpg", "png"));
+
+    /**
+     * 按需渲染的输出质量[0-1]
+     */
+    private Float renderQuality = 0.8f;
+
+    /**
+     * 渲染结果在本地磁盘上的缓存目录，为空时使用系统临时目录
+     */
+    private String renderCacheDir;
+
+    /**
+     * 渲染结果在本地磁盘上的缓存上限
+     */
+    private String renderCacheMaxSize = "1GB";
+
+    /**
+     * 渲染结果的浏览器缓存时间（秒）
+     */
+    private Long renderMaxAge = 86400L;
+
     public void setImageMaxSize(String imageMaxSize) {
         this.imageMaxSize = imageMaxSize;
     }
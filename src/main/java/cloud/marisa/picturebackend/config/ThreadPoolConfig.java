@@ -62,4 +62,84 @@ public class ThreadPoolConfig {
                 new ThreadPoolExecutor.AbortPolicy()
         );
     }
+
+    /**
+     * 这个线程池用于MinIO上传时并行生成派生图和写入对象
+     * <p>每次上传最多同时占用3个线程，队列满了由调用线程自己执行，退化为串行上传而不是直接失败</p>
+     */
+    @Bean("minioUploadPoolExecutor")
+    public ThreadPoolExecutor minioUploadPoolExecutor() {
+        return new ThreadPoolExecutor(
+                6,
+                12,
+                60,
+                TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(48),
+                new ThreadPoolExecutor.CallerRunsPolicy()
+        );
+    }
+
+    /**
+     * 这个线程池用于图片的后台处理（生成派生图、尺寸和主色调）
+     * <p>任务已经持久化在数据库中，队列满了直接拒绝，由定时扫描重新拉起</p>
+     */
+    @Bean("pictureProcessPoolExecutor")
+    public ThreadPoolExecutor pictureProcessPoolExecutor() {
+        return new ThreadPoolExecutor(
+                2,
+                4,
+                60,
+                TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(32),
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+    }
+
+    /**
+     * 这个线程池用于批量导入时下载网络图片
+     * <p>以网络IO为主，线程数可以多一些；队列满了由调用线程自己下载</p>
+     */
+    @Bean("pictureBatchFetchPoolExecutor")
+    public ThreadPoolExecutor pictureBatchFetchPoolExecutor() {
+        return new ThreadPoolExecutor(
+                8,
+                8,
+                60,
+                TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(64),
+                new ThreadPoolExecutor.CallerRunsPolicy()
+        );
+    }
+
+    /**
+     * 这个线程池用于批量导入时处理已下载的图片（计算指纹、生成派生图、写入对象存储）
+     * <p>派生图本身在minioUploadPoolExecutor中执行，这里只限制同时处理的图片数量</p>
+     */
+    @Bean("pictureBatchProcessPoolExecutor")
+    public ThreadPoolExecutor pictureBatchProcessPoolExecutor() {
+        return new ThreadPoolExecutor(
+                4,
+                4,
+                60,
+                TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(64),
+                new ThreadPoolExecutor.CallerRunsPolicy()
+        );
+    }
+
+    /**
+     * 这个线程池用于热点缓存的后台刷新
+     * <p>刷新失败或被拒绝时不影响读请求，因此队列满了直接丢弃</p>
+     */
+    @Bean("cacheRefreshPoolExecutor")
+    public ThreadPoolExecutor cacheRefreshPoolExecutor() {
+        return new ThreadPoolExecutor(
+                2,
+                4,
+                60,
+                TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(64),
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+    }
 }
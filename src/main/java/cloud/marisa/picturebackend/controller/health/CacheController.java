@@ -0,0 +1,63 @@
+package cloud.marisa.picturebackend.controller.health;
+
+import cloud.marisa.picturebackend.annotations.AuthCheck;
+import cloud.marisa.picturebackend.common.MrsResult;
+import cloud.marisa.picturebackend.enums.MrsUserRole;
+import cloud.marisa.picturebackend.manager.cache.TwoLevelCacheManager;
+import cloud.marisa.picturebackend.util.cache.MrsCacheStats;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author MarisaDAZE
+ * @description 缓存运维接口
+ * @date 2025/4/28
+ */
+@RestController
+@RequestMapping("/cache")
+@RequiredArgsConstructor
+public class CacheController {
+
+    private final TwoLevelCacheManager twoLevelCacheManager;
+
+    /**
+     * 查看各个缓存当前的热点key
+     *
+     * @return 缓存名称 -> (热点key -> 估计的访问频率)
+     */
+    @GetMapping("/hot-keys")
+    @AuthCheck(mustRole = MrsUserRole.ADMIN)
+    public MrsResult<?> hotKeys() {
+        Map<String, Map<String, Integer>> hotKeys = twoLevelCacheManager.getHotKeys();
+        return MrsResult.ok(hotKeys);
+    }
+
+    /**
+     * 查看各个缓存的统计信息（本地/Redis/回源的命中、耗时、淘汰和估计占用）
+     *
+     * @return 统计信息列表
+     */
+    @GetMapping("/stats")
+    @AuthCheck(mustRole = MrsUserRole.ADMIN)
+    public MrsResult<?> stats() {
+        List<MrsCacheStats> stats = twoLevelCacheManager.getStats();
+        return MrsResult.ok(stats);
+    }
+
+    /**
+     * 查看延迟删除缓存的积压、丢弃和重试情况
+     *
+     * @return 指标名 -> 数值
+     */
+    @GetMapping("/invalidation")
+    @AuthCheck(mustRole = MrsUserRole.ADMIN)
+    public MrsResult<?> invalidation() {
+        Map<String, Long> stats = twoLevelCacheManager.getInvalidationStats();
+        return MrsResult.ok(stats);
+    }
+}
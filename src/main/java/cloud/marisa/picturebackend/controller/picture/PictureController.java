@@ -5,13 +5,18 @@ import cloud.marisa.picturebackend.annotations.SaSpaceCheckPermission;
 import cloud.marisa.picturebackend.api.image.imageexpand.ImageOutPaintingApi;
 import cloud.marisa.picturebackend.api.image.imageexpand.entity.response.create.CreateTaskResponse;
 import cloud.marisa.picturebackend.api.image.imageexpand.entity.response.query.TaskQueryResponse;
-import cloud.marisa.picturebackend.api.image.imagesearch.ImageSearchApiFacade;
 import cloud.marisa.picturebackend.api.image.imagesearch.entity.ImageSearchResult;
 import cloud.marisa.picturebackend.common.MrsResult;
 import cloud.marisa.picturebackend.entity.dao.Picture;
+import cloud.marisa.picturebackend.entity.dao.PictureObject;
 import cloud.marisa.picturebackend.entity.dao.User;
 import cloud.marisa.picturebackend.entity.dto.common.DeleteRequest;
+import cloud.marisa.picturebackend.entity.dto.file.PictureRenderResult;
+import cloud.marisa.picturebackend.entity.dto.file.StoredPictureSource;
 import cloud.marisa.picturebackend.entity.dto.picture.*;
+import cloud.marisa.picturebackend.entity.vo.ChunkUploadVo;
+import cloud.marisa.picturebackend.entity.vo.PictureHashCheckVo;
+import cloud.marisa.picturebackend.entity.vo.PictureUploadBatchVo;
 import cloud.marisa.picturebackend.entity.vo.PictureVo;
 import cloud.marisa.picturebackend.enums.MrsUserRole;
 import cloud.marisa.picturebackend.enums.ReviewStatus;
@@ -20,20 +25,22 @@ import cloud.marisa.picturebackend.exception.ErrorCode;
 import cloud.marisa.picturebackend.exception.ThrowUtils;
 import cloud.marisa.picturebackend.manager.auth.StpKit;
 import cloud.marisa.picturebackend.manager.auth.constant.SpaceUserPermissionConstants;
+import cloud.marisa.picturebackend.manager.upload.ChunkUploadManager;
+import cloud.marisa.picturebackend.manager.upload.InstantUploadManager;
 import cloud.marisa.picturebackend.service.IPictureService;
 import cloud.marisa.picturebackend.service.ISpaceAnalyzeService;
 import cloud.marisa.picturebackend.service.IUserService;
-import cn.hutool.core.util.RandomUtil;
 import cn.hutool.core.util.StrUtil;
 import cn.hutool.json.JSONUtil;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
-import com.github.benmanes.caffeine.cache.Cache;
-import com.github.benmanes.caffeine.cache.Caffeine;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.util.DigestUtils;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
@@ -42,13 +49,11 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import static cloud.marisa.picturebackend.common.Constants.MAX_PAGE_SIZE;
-import static cloud.marisa.picturebackend.common.Constants.PICTURE_CACHE_PREFIX;
 
 /**
  * @author MarisaDAZE
@@ -85,18 +90,19 @@ public class PictureController {
     private final ImageOutPaintingApi imageOutPaintingApi;
 
     /**
-     * redis客户端
+     * 秒传握手
      */
-    private final RedisTemplate<String, String> redisTemplate;
+    private final InstantUploadManager instantUploadManager;
+
+    /**
+     * 分片上传（断点续传）
+     */
+    private final ChunkUploadManager chunkUploadManager;
 
     /**
-     * 本地缓存Caffeine
+     * redis客户端
      */
-    private final Cache<String, String> PICTURE_LOCAL_CACHE = Caffeine.newBuilder()
-            .maximumSize(10000L)
-            // 5分钟后过期（5*60=300）
-            .expireAfterWrite(300, TimeUnit.SECONDS)
-            .build();
+    private final RedisTemplate<String, String> redisTemplate;
 
     /**
      * 上传图片文件
@@ -136,13 +142,162 @@ public class PictureController {
         return MrsResult.ok(pictureVo);
     }
 
+    /**
+     * 秒传预检
+     * <p>提交文件的MD5和大小（可以批量），返回服务端已经有哪些文件</p>
+     * <p>已存在的文件会返回凭证和一个校验区间，用于调用秒传接口</p>
+     *
+     * @param hashCheckRequest   文件哈希的DTO封装
+     * @param httpServletRequest HttpServlet请求对象
+     * @return 每个文件的预检结果
+     */
+    @PostMapping("/upload/precheck")
+    public MrsResult<?> precheckPictureHash(
+            @RequestBody PictureHashCheckRequest hashCheckRequest,
+            HttpServletRequest httpServletRequest) {
+        User loginUser = userService.getLoginUser(httpServletRequest);
+        List<PictureHashCheckVo> result = instantUploadManager.check(hashCheckRequest, loginUser.getId());
+        return MrsResult.ok(result);
+    }
+
+    /**
+     * 秒传图片
+     * <p>引用服务端已有的文件创建（或更新）图片，不需要上传文件</p>
+     *
+     * @param instantUploadRequest 秒传参数的DTO封装
+     * @param httpServletRequest   HttpServlet请求对象
+     * @return 图片VO对象
+     */
+    @PostMapping("/upload/instant")
+    @SaSpaceCheckPermission(SpaceUserPermissionConstants.PICTURE_UPLOAD)
+    public MrsResult<?> instantUploadPicture(
+            @RequestBody PictureInstantUploadRequest instantUploadRequest,
+            HttpServletRequest httpServletRequest) {
+        User loginUser = userService.getLoginUser(httpServletRequest);
+        PictureObject object = instantUploadManager.verify(
+                instantUploadRequest.getToken(),
+                instantUploadRequest.getProof(),
+                loginUser.getId());
+        PictureUploadRequest pictureUploadRequest = new PictureUploadRequest();
+        pictureUploadRequest.setId(instantUploadRequest.getId());
+        pictureUploadRequest.setSpaceId(instantUploadRequest.getSpaceId());
+        pictureUploadRequest.setPicName(instantUploadRequest.getPicName());
+        PictureVo pictureVo = pictureService.saveOrUpdatePicture(object, pictureUploadRequest, loginUser);
+        return MrsResult.ok(pictureVo);
+    }
+
+    /**
+     * 创建分片上传（大文件、弱网环境下使用）
+     *
+     * @param initRequest        文件信息的DTO封装
+     * @param httpServletRequest HttpServlet请求对象
+     * @return 分片上传状态（分片大小和分片数）
+     */
+    @PostMapping("/upload/chunk/init")
+    @SaSpaceCheckPermission(SpaceUserPermissionConstants.PICTURE_UPLOAD)
+    public MrsResult<?> initChunkUpload(
+            @RequestBody ChunkUploadInitRequest initRequest,
+            HttpServletRequest httpServletRequest) {
+        User loginUser = userService.getLoginUser(httpServletRequest);
+        ChunkUploadVo result = chunkUploadManager.init(initRequest, loginUser.getId());
+        return MrsResult.ok(result);
+    }
+
+    /**
+     * 上传一个分片
+     * <p>请求体为分片的原始内容，直接写入对象存储</p>
+     *
+     * @param uploadId           分片上传ID
+     * @param partNumber         分片序号（从1开始）
+     * @param httpServletRequest HttpServlet请求对象
+     * @return 是否成功
+     */
+    @PutMapping("/upload/chunk/part")
+    public MrsResult<?> uploadChunkPart(
+            @RequestParam("uploadId") String uploadId,
+            @RequestParam("partNumber") Integer partNumber,
+            HttpServletRequest httpServletRequest) {
+        User loginUser = userService.getLoginUser(httpServletRequest);
+        try (InputStream is = httpServletRequest.getInputStream()) {
+            chunkUploadManager.uploadPart(uploadId, partNumber, is,
+                    httpServletRequest.getContentLengthLong(), loginUser.getId());
+        } catch (IOException e) {
+            log.error("读取分片失败 {}#{}", uploadId, partNumber, e);
+            throw new BusinessException(ErrorCode.OPERATION_ERROR, "分片上传失败");
+        }
+        return MrsResult.ok(true);
+    }
+
+    /**
+     * 查询分片上传的状态（断点续传时获取已上传的分片）
+     *
+     * @param uploadId           分片上传ID
+     * @param httpServletRequest HttpServlet请求对象
+     * @return 分片上传状态
+     */
+    @GetMapping("/upload/chunk/status")
+    public MrsResult<?> getChunkUploadStatus(
+            @RequestParam("uploadId") String uploadId,
+            HttpServletRequest httpServletRequest) {
+        User loginUser = userService.getLoginUser(httpServletRequest);
+        ChunkUploadVo result = chunkUploadManager.status(uploadId, loginUser.getId());
+        return MrsResult.ok(result);
+    }
+
+    /**
+     * 完成分片上传，合并分片并创建图片
+     * <p>创建图片失败时可以直接重试，不会重复合并；同一个上传同时只能有一个完成请求</p>
+     *
+     * @param completeRequest    完成分片上传的DTO封装
+     * @param httpServletRequest HttpServlet请求对象
+     * @return 图片信息
+     */
+    @PostMapping("/upload/chunk/complete")
+    @SaSpaceCheckPermission(SpaceUserPermissionConstants.PICTURE_UPLOAD)
+    public MrsResult<?> completeChunkUpload(
+            @RequestBody ChunkUploadCompleteRequest completeRequest,
+            HttpServletRequest httpServletRequest) {
+        User loginUser = userService.getLoginUser(httpServletRequest);
+        String uploadId = completeRequest.getUploadId();
+        StoredPictureSource source = chunkUploadManager.complete(uploadId, loginUser.getId());
+        PictureUploadRequest pictureUploadRequest = new PictureUploadRequest();
+        pictureUploadRequest.setId(completeRequest.getId());
+        pictureUploadRequest.setSpaceId(completeRequest.getSpaceId());
+        pictureUploadRequest.setPicName(completeRequest.getPicName());
+        PictureVo pictureVo;
+        try {
+            pictureVo = pictureService.saveOrUpdatePicture(source, pictureUploadRequest, loginUser);
+        } catch (RuntimeException e) {
+            chunkUploadManager.release(uploadId);
+            throw e;
+        }
+        chunkUploadManager.finish(uploadId, loginUser.getId());
+        return MrsResult.ok(pictureVo);
+    }
+
+    /**
+     * 取消分片上传
+     *
+     * @param abortRequest       取消分片上传的DTO封装
+     * @param httpServletRequest HttpServlet请求对象
+     * @return 是否成功
+     */
+    @PostMapping("/upload/chunk/abort")
+    public MrsResult<?> abortChunkUpload(
+            @RequestBody ChunkUploadAbortRequest abortRequest,
+            HttpServletRequest httpServletRequest) {
+        User loginUser = userService.getLoginUser(httpServletRequest);
+        chunkUploadManager.abort(abortRequest.getUploadId(), loginUser.getId());
+        return MrsResult.ok(true);
+    }
+
     /**
      * 批量上传图片
      * <p>仅管理员可用</p>
      *
      * @param uploadBatchRequest 批量上传参数的DTO封装
      * @param httpServletRequest HttpServlet请求对象
-     * @return 成功上传的条数
+     * @return 成功条数和每张图片的导入结果
      */
     @PostMapping("/upload/batch")
     @AuthCheck(mustRole = MrsUserRole.ADMIN)
@@ -153,8 +308,8 @@ public class PictureController {
             throw new BusinessException(ErrorCode.PARAMS_ERROR);
         }
         User loggedUser = userService.getLoginUser(httpServletRequest);
-        Integer successCount = pictureService.uploadPictureBatch(uploadBatchRequest, loggedUser);
-        return MrsResult.ok(successCount);
+        PictureUploadBatchVo batchVo = pictureService.uploadPictureBatch(uploadBatchRequest, loggedUser);
+        return MrsResult.ok(batchVo);
     }
 
     /**
@@ -221,6 +376,33 @@ public class PictureController {
         return MrsResult.ok(pictureVo);
     }
 
+    /**
+     * 按需渲染图片（指定宽高、适应方式和格式）
+     * <p>宽高只能是配置中的几种尺寸，结果带Cache-Control和ETag</p>
+     *
+     * @param renderRequest 渲染请求
+     * @return 渲染后的图片
+     */
+    @GetMapping("/render")
+    public ResponseEntity<byte[]> renderPicture(
+            PictureRenderRequest renderRequest,
+            HttpServletRequest httpServletRequest) {
+        PictureRenderResult result = pictureService.renderPicture(renderRequest, httpServletRequest);
+        CacheControl cacheControl = CacheControl.maxAge(result.getMaxAge(), TimeUnit.SECONDS);
+        cacheControl = result.isPublicCache() ? cacheControl.cachePublic() : cacheControl.cachePrivate();
+        if (result.isNotModified()) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .cacheControl(cacheControl)
+                    .eTag(result.getEtag())
+                    .build();
+        }
+        return ResponseEntity.ok()
+                .cacheControl(cacheControl)
+                .eTag(result.getEtag())
+                .contentType(MediaType.parseMediaType(result.getContentType()))
+                .body(result.getBytes());
+    }
+
     /**
      * 分页查找图片数据
      * <p>仅管理员可用</p>
@@ -282,7 +464,7 @@ public class PictureController {
 
     /**
      * 分页查找图片数据
-     * <p>有二级缓存</p>
+     * <p>有二级缓存，空间内图片发生变化时缓存随之失效</p>
      *
      * @param queryRequest 查询图片的DTO对象
      * @return 图片VO
@@ -291,41 +473,24 @@ public class PictureController {
     public MrsResult<?> listPicturePageVoCache(
             @RequestBody PictureQueryRequest queryRequest,
             HttpServletRequest httpServletRequest) {
-        // TODO: 缓存方案不能直接这样用，得改
         if (queryRequest == null) {
             throw new BusinessException(ErrorCode.PARAMS_ERROR);
         }
         if (queryRequest.getPageSize() > MAX_PAGE_SIZE) {
             throw new BusinessException(ErrorCode.PARAMS_ERROR, "分页参数过大");
         }
-        queryRequest.setReviewStatus(ReviewStatus.PASS.getValue());
-        String queryCondition = JSONUtil.toJsonStr(queryRequest);
-        String md5Hex = DigestUtils.md5DigestAsHex(queryCondition.getBytes(StandardCharsets.UTF_8));
-        String hashKey = PICTURE_CACHE_PREFIX + md5Hex;
-        // 二级缓存架构
-        String localCached = PICTURE_LOCAL_CACHE.getIfPresent(hashKey);
-        // 是否在本地缓存中，注意：不要用isNotBlank， 这可能会有缓存穿透的问题
-        if (localCached != null) {
-            Page<?> pageCache = JSONUtil.toBean(localCached, Page.class);
-            return MrsResult.ok(pageCache);
-        }
-        String redisCached = redisTemplate.opsForValue().get(hashKey);
-        // 是否在redis缓存中
-        if (redisCached != null) {
-            // 更新本地缓存
-            PICTURE_LOCAL_CACHE.put(hashKey, redisCached);
-            Page<?> pageCache = JSONUtil.toBean(redisCached, Page.class);
-            return MrsResult.ok(pageCache);
+        Long spaceId = queryRequest.getSpaceId();
+        if (spaceId == null) {
+            // 公共空间
+            queryRequest.setNullSpaceId(true);
+        } else {
+            // 私有空间
+            queryRequest.setNullSpaceId(false);
+            boolean canView = StpKit.SPACE.hasPermission(SpaceUserPermissionConstants.PICTURE_VIEW);
+            ThrowUtils.throwIf(!canView, ErrorCode.AUTHORIZATION_ERROR);
         }
-        // 均未命中，从数据库获取
-        Page<Picture> picturePage = pictureService.getPicturePage(queryRequest);
-        Page<PictureVo> voPage = pictureService.getPictureVoPage(picturePage, httpServletRequest);
-        String cacheJSON = JSONUtil.toJsonStr(voPage);
-        // 更新本地缓存
-        PICTURE_LOCAL_CACHE.put(hashKey, cacheJSON);
-        // 5分钟的随机过期，防止缓存雪崩
-        int offset = RandomUtil.randomInt(0, 300);
-        redisTemplate.opsForValue().set(hashKey, cacheJSON, 300 + offset, TimeUnit.SECONDS);
+        queryRequest.setReviewStatus(ReviewStatus.PASS.getValue());
+        Page<PictureVo> voPage = pictureService.getPictureVoPageCache(queryRequest, httpServletRequest);
         return MrsResult.ok(voPage);
     }
 
@@ -344,30 +509,15 @@ public class PictureController {
                 pictureRequest.getPictureId() <= 0) {
             throw new BusinessException(ErrorCode.PARAMS_ERROR);
         }
-        Long pictureId = pictureRequest.getPictureId();
-        Picture dbPicture = pictureService.getById(pictureId);
-        if (dbPicture == null) {
-            throw new BusinessException(ErrorCode.NOT_FOUND, "图片不存在");
+        MrsUserRole currentRole = userService.getCurrentUserRole(httpServletRequest);
+        if (currentRole == MrsUserRole.BAN) {
+            throw new BusinessException(ErrorCode.AUTHORIZATION_ERROR, "该账号已被封禁");
         }
-        // 图片空间ID不为空，说明是私有图片
-        Long spaceId = dbPicture.getSpaceId();
-        if (spaceId != null) {
-            /* TODO: 已改版，以图搜图可以在公开图库使用，但需登录且每天有使用次数限制
-             Long userId = dbPicture.getUserId();
-             User loginUser = userService.getLoginUser(httpServletRequest);
-             if (!loginUser.getId().equals(userId)) {
-                 throw new BusinessException(ErrorCode.AUTHORIZATION_ERROR, "无空间访问权限");
-             }
-            */
-            MrsUserRole currentRole = userService.getCurrentUserRole(httpServletRequest);
-            if (currentRole == MrsUserRole.BAN) {
-                throw new BusinessException(ErrorCode.AUTHORIZATION_ERROR, "该账号已被封禁");
-            }
-            if (!userService.hasPermission(currentRole, MrsUserRole.USER)) {
-                throw new BusinessException(ErrorCode.NOT_LOGIN_ERROR, "登录后可使用该功能");
-            }
+        if (!userService.hasPermission(currentRole, MrsUserRole.USER)) {
+            throw new BusinessException(ErrorCode.NOT_LOGIN_ERROR, "登录后可使用该功能");
         }
-        List<ImageSearchResult> imageSearchResults = ImageSearchApiFacade.searchImageByURL(dbPicture.getUrl());
+        List<ImageSearchResult> imageSearchResults = pictureService.searchPictureByPicture(
+                pictureRequest.getPictureId(), httpServletRequest);
         return MrsResult.ok(imageSearchResults);
     }
 
@@ -7,6 +7,7 @@ import cloud.marisa.picturebackend.entity.dao.Space;
 import cloud.marisa.picturebackend.entity.dao.User;
 import cloud.marisa.picturebackend.entity.dto.common.DeleteRequest;
 import cloud.marisa.picturebackend.entity.dto.space.SpaceAddRequest;
+import cloud.marisa.picturebackend.entity.dto.space.SpaceEditRequest;
 import cloud.marisa.picturebackend.entity.dto.space.SpaceQueryRequest;
 import cloud.marisa.picturebackend.entity.dto.space.SpaceUpdateRequest;
 import cloud.marisa.picturebackend.entity.vo.SpaceLevelVo;
@@ -195,6 +196,25 @@ public class SpaceController {
         return MrsResult.failed("更新失败");
     }
 
+    /**
+     * 空间管理员修改空间信息
+     *
+     * @param editRequest 修改数据的DTO封装
+     * @return 是否修改成功
+     */
+    @PostMapping("/edit")
+    @SaSpaceCheckPermission(SpaceUserPermissionConstants.SPACE_USER_MANAGE)
+    public MrsResult<?> editSpace(@RequestBody SpaceEditRequest editRequest) {
+        if (ObjectUtils.isEmpty(editRequest)) {
+            throw new BusinessException(ErrorCode.PARAMS_ERROR);
+        }
+        boolean edited = spaceService.editSpace(editRequest);
+        if (edited) {
+            return MrsResult.ok("修改成功", editRequest.getId());
+        }
+        return MrsResult.failed("修改失败");
+    }
+
     /**
      * 根据ID删除一个空间
      * <p>用户也可用，但需要本人操作</p>
@@ -70,6 +70,12 @@ public class Picture implements Serializable {
     @TableField("fingerprint")
     private String md5;
 
+    /**
+     * 引用的图片对象ID（为空的是对象表之前的历史图片，没有占用引用计数）
+     */
+    @TableField("object_id")
+    private Long objectId;
+
     /**
      * 默认图在文件服务器上的地址
      */
@@ -171,6 +177,12 @@ public class Picture implements Serializable {
     @TableField("m_val_bucket")
     private Integer mValueBucket;
 
+    /**
+     * 感知哈希（64位dHash，用于以图搜图）
+     */
+    @TableField("pic_hash")
+    private Long picHash;
+
     /**
      * 图片长宽比
      */
@@ -226,6 +238,12 @@ public class Picture implements Serializable {
     @TableField("review_time")
     private Date reviewTime;
 
+    /**
+     * 后台处理状态（0:处理完成，1:处理中，2:处理失败）
+     */
+    @TableField("process_status")
+    private Integer processStatus;
+
     /**
      * 逻辑删除（0:未删除，1:已删除）
      */
@@ -0,0 +1,219 @@
+package cloud.marisa.picturebackend.entity.dao;
+
+import cloud.marisa.picturebackend.entity.dto.file.UploadPictureResult;
+import cloud.marisa.picturebackend.enums.PictureProcessStatus;
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import lombok.Data;
+import lombok.ToString;
+
+/**
+ * 图片对象表
+ * <p>同一份文件（按原图的内容哈希区分）只存一次，多张图片引用同一个对象，引用计数归零后文件才会被删除</p>
+ *
+ * @TableName picture_object
+ */
+@Data
+@ToString
+@TableName(value = "picture_object")
+public class PictureObject implements Serializable {
+    @TableField(exist = false)
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 主键ID
+     */
+    @TableId(type = IdType.ASSIGN_ID)
+    private Long id;
+
+    /**
+     * 原图的内容哈希（md5）
+     */
+    @TableField("fingerprint")
+    private String md5;
+
+    /**
+     * 原图大小
+     */
+    @TableField("pic_size")
+    private Long picSize;
+
+    /**
+     * 存储位置（0-MinIO；1-阿里云OSS）
+     */
+    @TableField("storage")
+    private Integer storage;
+
+    /**
+     * 默认图URL
+     */
+    private String url;
+
+    /**
+     * 拇指图URL
+     */
+    @TableField("url_thumb")
+    private String thumbnailUrl;
+
+    /**
+     * 原图URL
+     */
+    @TableField("url_original")
+    private String originalUrl;
+
+    /**
+     * 默认图在文件服务器上的路径
+     */
+    @TableField("saved_path")
+    private String savedPath;
+
+    /**
+     * 拇指图在文件服务器上的路径
+     */
+    @TableField("thumb_path")
+    private String thumbPath;
+
+    /**
+     * 原图在文件服务器上的路径
+     */
+    @TableField("original_path")
+    private String originalPath;
+
+    /**
+     * 图片宽度
+     */
+    @TableField("pic_width")
+    private Integer picWidth;
+
+    /**
+     * 图片高度
+     */
+    @TableField("pic_height")
+    private Integer picHeight;
+
+    /**
+     * 图片长宽比
+     */
+    @TableField("pic_scale")
+    private Double picScale;
+
+    /**
+     * 图片格式
+     */
+    @TableField("pic_format")
+    private String picFormat;
+
+    /**
+     * 图片主色调（r,g,b）
+     */
+    @TableField("pic_color")
+    private String picColor;
+
+    /**
+     * 主要颜色的色调
+     */
+    @TableField("m_color_hue")
+    private Float mColorHue;
+
+    /**
+     * 主要颜色的饱和度
+     */
+    @TableField("m_color_saturation")
+    private Float mColorSaturation;
+
+    /**
+     * 主要颜色的明度
+     */
+    @TableField("m_color_value")
+    private Float mColorValue;
+
+    /**
+     * 主色调桶号
+     */
+    @TableField("m_hue_bucket")
+    private Integer mHueBucket;
+
+    /**
+     * 主要颜色的饱和度桶号
+     */
+    @TableField("m_sat_bucket")
+    private Integer mSaturationBucket;
+
+    /**
+     * 主要颜色的明度桶号
+     */
+    @TableField("m_val_bucket")
+    private Integer mValueBucket;
+
+    /**
+     * 感知哈希（64位dHash）
+     */
+    @TableField("pic_hash")
+    private Long picHash;
+
+    /**
+     * 引用计数（引用这份文件的未删除图片数）
+     */
+    @TableField("ref_count")
+    private Integer refCount;
+
+    /**
+     * 后台处理状态（0:处理完成，1:处理中，2:处理失败）
+     */
+    @TableField("process_status")
+    private Integer processStatus;
+
+    /**
+     * 创建时间
+     */
+    @TableField("create_time")
+    private Date createTime;
+
+    /**
+     * 更新时间
+     */
+    @TableField("update_time")
+    private Date updateTime;
+
+    /**
+     * 根据上传结果创建对象
+     *
+     * @param result  上传结果
+     * @param storage 存储位置
+     * @return 对象信息
+     */
+    public static PictureObject fromUploadResult(UploadPictureResult result, Integer storage) {
+        PictureObject object = new PictureObject();
+        object.setMd5(result.getMd5());
+        object.setPicSize(result.getPicSize());
+        object.setStorage(storage);
+        object.setUrl(result.getUrl());
+        object.setThumbnailUrl(result.getThumbnailUrl());
+        object.setOriginalUrl(result.getOriginalUrl());
+        object.setSavedPath(result.getSavedPath());
+        object.setThumbPath(result.getThumbPath());
+        object.setOriginalPath(result.getOriginalPath());
+        object.setPicWidth(result.getPicWidth());
+        object.setPicHeight(result.getPicHeight());
+        object.setPicScale(result.getPicScale());
+        object.setPicFormat(result.getPicFormat());
+        object.setPicColor(result.getPicColor());
+        object.setMColorHue(result.getMColorHue());
+        object.setMColorSaturation(result.getMColorSaturation());
+        object.setMColorValue(result.getMColorValue());
+        object.setMHueBucket(result.getMHueBucket());
+        object.setMSaturationBucket(result.getMSaturationBucket());
+        object.setMValueBucket(result.getMValueBucket());
+        object.setPicHash(result.getPicHash());
+        object.setProcessStatus(result.getProcessStatus() == null
+                ? PictureProcessStatus.DONE.getValue()
+                : result.getProcessStatus());
+        return object;
+    }
+}
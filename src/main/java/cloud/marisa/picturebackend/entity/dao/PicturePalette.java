@@ -0,0 +1,122 @@
+package cloud.marisa.picturebackend.entity.dao;
+
+import cloud.marisa.picturebackend.util.colors.ColorUtils;
+import cloud.marisa.picturebackend.util.colors.MrsColorHSV;
+import cloud.marisa.picturebackend.util.colors.MrsColorPalette;
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+import lombok.ToString;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * 图片调色板表
+ * <p>每份文件（按原图的内容哈希区分）保存几种主要颜色和它们的覆盖率，引用同一份文件的图片共用</p>
+ *
+ * @TableName picture_palette
+ */
+@Data
+@ToString
+@TableName(value = "picture_palette")
+public class PicturePalette implements Serializable {
+    @TableField(exist = false)
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 主键ID
+     */
+    @TableId(type = IdType.ASSIGN_ID)
+    private Long id;
+
+    /**
+     * 原图的内容哈希（md5）
+     */
+    @TableField("fingerprint")
+    private String md5;
+
+    /**
+     * 在调色板中的排名（按覆盖率从高到低，从0开始）
+     */
+    @TableField("color_rank")
+    private Integer colorRank;
+
+    /**
+     * 颜色（r,g,b）
+     */
+    @TableField("color")
+    private String color;
+
+    /**
+     * 覆盖率（0~1）
+     */
+    @TableField("coverage")
+    private Float coverage;
+
+    /**
+     * 色调（0~360°）
+     */
+    @TableField("color_hue")
+    private Float colorHue;
+
+    /**
+     * 饱和度（0~100）
+     */
+    @TableField("color_saturation")
+    private Float colorSaturation;
+
+    /**
+     * 明度（0~100）
+     */
+    @TableField("color_value")
+    private Float colorValue;
+
+    /**
+     * 色调桶号（每10°一个桶，共36个）
+     */
+    @TableField("hue_bucket")
+    private Integer hueBucket;
+
+    /**
+     * 饱和度桶号（每10%一个桶，共10个）
+     */
+    @TableField("sat_bucket")
+    private Integer saturationBucket;
+
+    /**
+     * 明度桶号（每10%一个桶，共10个）
+     */
+    @TableField("val_bucket")
+    private Integer valueBucket;
+
+    /**
+     * 创建时间
+     */
+    @TableField("create_time")
+    private Date createTime;
+
+    /**
+     * 根据取色结果创建调色板中的一种颜色（还没有内容哈希）
+     *
+     * @param rank  排名
+     * @param entry 取色结果
+     * @return 调色板颜色
+     */
+    public static PicturePalette fromEntry(int rank, MrsColorPalette.Entry entry) {
+        MrsColorHSV colorHSV = ColorUtils.toHSV(entry.getColor());
+        PicturePalette palette = new PicturePalette();
+        palette.setColorRank(rank);
+        palette.setColor(ColorUtils.toRGBString(entry.getColor()));
+        palette.setCoverage(Math.round(entry.getCoverage() * 1000) / 1000f);
+        palette.setColorHue(colorHSV.getHue());
+        palette.setColorSaturation(colorHSV.getSaturation());
+        palette.setColorValue(colorHSV.getValue());
+        palette.setHueBucket(colorHSV.getHueBucket());
+        palette.setSaturationBucket(colorHSV.getSaturationBucket());
+        palette.setValueBucket(colorHSV.getValueBucket());
+        return palette;
+    }
+}
@@ -0,0 +1,74 @@
+package cloud.marisa.picturebackend.entity.dao;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import lombok.Data;
+import lombok.ToString;
+
+/**
+ * 图片处理任务表
+ * <p>上传时只保存原图，派生图、尺寸和主色调由后台任务生成；任务按图片对象去重，同一份文件只处理一次</p>
+ *
+ * @TableName picture_process_job
+ */
+@Data
+@ToString
+@TableName(value = "picture_process_job")
+public class PictureProcessJob implements Serializable {
+    @TableField(exist = false)
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 主键ID
+     */
+    @TableId(type = IdType.ASSIGN_ID)
+    private Long id;
+
+    /**
+     * 要处理的图片对象ID
+     */
+    @TableField("object_id")
+    private Long objectId;
+
+    /**
+     * 任务状态（0:等待执行，1:执行中，2:执行失败）
+     */
+    @TableField("status")
+    private Integer status;
+
+    /**
+     * 已执行次数
+     */
+    @TableField("attempts")
+    private Integer attempts;
+
+    /**
+     * 下次执行时间
+     */
+    @TableField("next_run_time")
+    private Date nextRunTime;
+
+    /**
+     * 最后一次失败的原因
+     */
+    @TableField("last_error")
+    private String lastError;
+
+    /**
+     * 创建时间
+     */
+    @TableField("create_time")
+    private Date createTime;
+
+    /**
+     * 更新时间
+     */
+    @TableField("update_time")
+    private Date updateTime;
+}
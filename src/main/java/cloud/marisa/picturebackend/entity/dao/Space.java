@@ -78,6 +78,12 @@ public class Space implements Serializable {
     @TableField("total_count")
     private Integer totalCount;
 
+    /**
+     * 上传近似重复图片时的处理方式：0-提示 1-拒绝
+     */
+    @TableField("duplicate_policy")
+    private Integer duplicatePolicy;
+
     /**
      * 创建时间
      */
@@ -0,0 +1,44 @@
+package cloud.marisa.picturebackend.entity.dto.file;
+
+import lombok.Data;
+import lombok.ToString;
+
+/**
+ * @author MarisaDAZE
+ * @description 按需渲染的结果
+ * @date 2025/4/28
+ */
+@Data
+@ToString(exclude = "bytes")
+public class PictureRenderResult {
+
+    /**
+     * 实体标签（同一份文件的同一种渲染参数结果不变）
+     */
+    private String etag;
+
+    /**
+     * 内容类型（image/webp）
+     */
+    private String contentType;
+
+    /**
+     * 渲染后的图片，客户端缓存仍然有效时为null
+     */
+    private byte[] bytes;
+
+    /**
+     * 客户端缓存是否仍然有效（If-None-Match命中）
+     */
+    private boolean notModified;
+
+    /**
+     * 是否允许共享缓存（CDN、代理）缓存，私有空间的图片只允许浏览器缓存
+     */
+    private boolean publicCache;
+
+    /**
+     * 客户端缓存的有效期（秒）
+     */
+    private long maxAge;
+}
@@ -0,0 +1,53 @@
+package cloud.marisa.picturebackend.entity.dto.file;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * <p>已经保存在对象存储上的原图（如分片上传合并后的文件）</p>
+ * <p>作为上传输入源时，原图不再经过本机重新上传：已经在图片目录下的直接使用，
+ * 在临时位置上的（分片上传合并后的文件）在对象存储内复制到图片目录下</p>
+ *
+ * @author MarisaDAZE
+ * @description 已存储的原图
+ * @date 2025/4/28
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StoredPictureSource implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 存储位置（0-MinIO；1-阿里云OSS）
+     */
+    private Integer storage;
+
+    /**
+     * 原图在对象存储上的路径
+     */
+    private String path;
+
+    /**
+     * 原始文件名（不含扩展名）
+     */
+    private String fileName;
+
+    /**
+     * 文件大小（Byte）
+     */
+    private Long size;
+
+    /**
+     * 临时访问链接（仅阿里云OSS，派生图走URL上传的流程）
+     */
+    private String url;
+
+    /**
+     * 原图是否在临时位置上（分片上传合并后的文件），是的话复制到图片目录下，临时文件由来源方删除
+     */
+    private boolean temporary;
+}
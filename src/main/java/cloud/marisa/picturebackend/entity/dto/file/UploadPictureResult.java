@@ -1,9 +1,11 @@
 package cloud.marisa.picturebackend.entity.dto.file;
 
+import cloud.marisa.picturebackend.util.colors.MrsColorPalette;
 import lombok.Data;
 import lombok.ToString;
 
 import java.io.Serializable;
+import java.util.List;
 
 /**
  * @author MarisaDAZE
@@ -106,6 +108,16 @@ public class UploadPictureResult implements Serializable {
      */
     private Integer mValueBucket;
 
+    /**
+     * 感知哈希（64位dHash，用于以图搜图）
+     */
+    private Long picHash;
+
+    /**
+     * 调色板（和主色调在同一次取色中得到，按覆盖率从高到低排序）
+     */
+    private List<MrsColorPalette.Entry> palette;
+
     /**
      * 图片长宽比
      */
@@ -116,4 +128,9 @@ public class UploadPictureResult implements Serializable {
      */
     private String picFormat;
 
+    /**
+     * 后台处理状态（派生图还没生成时为处理中）
+     */
+    private Integer processStatus;
+
 }
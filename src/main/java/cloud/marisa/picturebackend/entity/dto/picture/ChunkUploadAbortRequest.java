@@ -0,0 +1,22 @@
+package cloud.marisa.picturebackend.entity.dto.picture;
+
+import lombok.Data;
+import lombok.ToString;
+
+import java.io.Serializable;
+
+/**
+ * @author MarisaDAZE
+ * @description 取消分片上传的DTO对象
+ * @date 2025/4/28
+ */
+@Data
+@ToString
+public class ChunkUploadAbortRequest implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 分片上传ID
+     */
+    private String uploadId;
+}
@@ -0,0 +1,37 @@
+package cloud.marisa.picturebackend.entity.dto.picture;
+
+import lombok.Data;
+import lombok.ToString;
+
+import java.io.Serializable;
+
+/**
+ * @author MarisaDAZE
+ * @description 完成分片上传的DTO对象（合并分片并创建图片）
+ * @date 2025/4/28
+ */
+@Data
+@ToString
+public class ChunkUploadCompleteRequest implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 分片上传ID
+     */
+    private String uploadId;
+
+    /**
+     * 图片ID（不为空时是更新图片）
+     */
+    private Long id;
+
+    /**
+     * 空间ID
+     */
+    private Long spaceId;
+
+    /**
+     * 图片名称
+     */
+    private String picName;
+}
@@ -0,0 +1,32 @@
+package cloud.marisa.picturebackend.entity.dto.picture;
+
+import lombok.Data;
+import lombok.ToString;
+
+import java.io.Serializable;
+
+/**
+ * @author MarisaDAZE
+ * @description 创建分片上传的DTO对象
+ * @date 2025/4/28
+ */
+@Data
+@ToString
+public class ChunkUploadInitRequest implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 文件名（含扩展名）
+     */
+    private String fileName;
+
+    /**
+     * 文件大小（Byte）
+     */
+    private Long size;
+
+    /**
+     * 空间ID（用于提前检查空间容量）
+     */
+    private Long spaceId;
+}
@@ -0,0 +1,39 @@
+package cloud.marisa.picturebackend.entity.dto.picture;
+
+import lombok.Data;
+import lombok.ToString;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * @author MarisaDAZE
+ * @description 秒传预检的DTO对象（客户端计算好的文件哈希）
+ * @date 2025/4/28
+ */
+@Data
+@ToString
+public class PictureHashCheckRequest implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 要检查的文件
+     */
+    private List<Item> items;
+
+    @Data
+    @ToString
+    public static class Item implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * 文件MD5
+         */
+        private String md5;
+
+        /**
+         * 文件大小（Byte）
+         */
+        private Long size;
+    }
+}
@@ -0,0 +1,42 @@
+package cloud.marisa.picturebackend.entity.dto.picture;
+
+import lombok.Data;
+import lombok.ToString;
+
+import java.io.Serializable;
+
+/**
+ * @author MarisaDAZE
+ * @description 秒传的DTO对象（引用已存在的文件创建图片）
+ * @date 2025/4/28
+ */
+@Data
+@ToString
+public class PictureInstantUploadRequest implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 预检时返回的凭证
+     */
+    private String token;
+
+    /**
+     * 文件中指定区间的MD5（证明客户端确实持有这个文件）
+     */
+    private String proof;
+
+    /**
+     * 图片ID（不为空时是更新图片）
+     */
+    private Long id;
+
+    /**
+     * 空间ID
+     */
+    private Long spaceId;
+
+    /**
+     * 图片名称
+     */
+    private String picName;
+}
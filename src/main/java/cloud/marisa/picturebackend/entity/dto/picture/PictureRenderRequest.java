@@ -0,0 +1,43 @@
+package cloud.marisa.picturebackend.entity.dto.picture;
+
+import lombok.Data;
+import lombok.ToString;
+
+import java.io.Serializable;
+
+/**
+ * @author MarisaDAZE
+ * @description 按需渲染图片的请求参数封装
+ * @date 2025/4/28
+ */
+@Data
+@ToString
+public class PictureRenderRequest implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 图片ID
+     */
+    private Long id;
+
+    /**
+     * 目标宽度（像素），为空或0时按高度等比缩放
+     */
+    private Integer width;
+
+    /**
+     * 目标高度（像素），为空或0时按宽度等比缩放
+     */
+    private Integer height;
+
+    /**
+     * 适应方式（contain、cover），默认contain
+     */
+    private String fit;
+
+    /**
+     * 输出格式（webp、jpg、png），默认webp
+     */
+    private String format;
+
+}
@@ -29,4 +29,9 @@ public class PictureUploadBatchRequest implements Serializable {
      * 名称前缀
      */
     private String namePrefix;
+
+    /**
+     * 导入到的空间ID，为空或0时导入到公共图库
+     */
+    private Long spaceId;
 }
@@ -30,4 +30,9 @@ public class SpaceAddRequest implements Serializable {
      */
     private Integer spaceType;
 
+    /**
+     * 上传近似重复图片时的处理方式：0-提示 1-拒绝
+     */
+    private Integer duplicatePolicy;
+
 }
@@ -25,4 +25,9 @@ public class SpaceEditRequest implements Serializable {
      */
     private String spaceName;
 
+    /**
+     * 上传近似重复图片时的处理方式：0-提示 1-拒绝
+     */
+    private Integer duplicatePolicy;
+
 }
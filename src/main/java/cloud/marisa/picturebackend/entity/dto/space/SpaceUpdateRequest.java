@@ -39,4 +39,9 @@ public class SpaceUpdateRequest implements Serializable {
      * 最大存储数量（张）
      */
     private Integer maxCount;
+
+    /**
+     * 上传近似重复图片时的处理方式：0-提示 1-拒绝
+     */
+    private Integer duplicatePolicy;
 }
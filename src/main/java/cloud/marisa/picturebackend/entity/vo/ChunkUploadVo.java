@@ -0,0 +1,49 @@
+package cloud.marisa.picturebackend.entity.vo;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * <p>分片上传的状态</p>
+ * <p>断点续传时客户端根据已上传的分片，只补传缺少的部分</p>
+ *
+ * @author MarisaDAZE
+ * @description 分片上传状态
+ * @date 2025/4/28
+ */
+@Data
+public class ChunkUploadVo implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 分片上传ID
+     */
+    private String uploadId;
+
+    /**
+     * 文件大小（Byte）
+     */
+    private Long size;
+
+    /**
+     * 每个分片的大小（Byte，最后一片可以更小）
+     */
+    private Long partSize;
+
+    /**
+     * 分片总数（分片序号从1开始）
+     */
+    private Integer partCount;
+
+    /**
+     * 已上传的分片序号（升序）
+     */
+    private List<Integer> uploadedParts;
+
+    /**
+     * 分片是否已经合并
+     */
+    private Boolean assembled;
+}
@@ -0,0 +1,48 @@
+package cloud.marisa.picturebackend.entity.vo;
+
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * <p>秒传预检的结果</p>
+ * <p>文件已存在时返回凭证和一个随机区间，客户端计算该区间的MD5后调用秒传接口</p>
+ *
+ * @author MarisaDAZE
+ * @description 秒传预检结果
+ * @date 2025/4/28
+ */
+@Data
+public class PictureHashCheckVo implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 文件MD5
+     */
+    private String md5;
+
+    /**
+     * 文件大小（Byte）
+     */
+    private Long size;
+
+    /**
+     * 服务端是否已有这个文件
+     */
+    private Boolean exists;
+
+    /**
+     * 秒传凭证（仅文件已存在时有值）
+     */
+    private String token;
+
+    /**
+     * 校验区间的起始位置（Byte）
+     */
+    private Long offset;
+
+    /**
+     * 校验区间的长度（Byte）
+     */
+    private Long length;
+}
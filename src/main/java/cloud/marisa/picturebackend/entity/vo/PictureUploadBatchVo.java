@@ -0,0 +1,78 @@
+package cloud.marisa.picturebackend.entity.vo;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>批量导入的结果</p>
+ * <p>每个抓取到的链接都有一条结果，失败的会带上原因</p>
+ *
+ * @author MarisaDAZE
+ * @description 批量导入结果
+ * @date 2025/4/28
+ */
+@Data
+public class PictureUploadBatchVo implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 入库成功的数量
+     */
+    private Integer successCount = 0;
+
+    /**
+     * 失败的数量
+     */
+    private Integer failedCount = 0;
+
+    /**
+     * 总耗时（毫秒）
+     */
+    private Long costMillis;
+
+    /**
+     * 每张图片的导入结果
+     */
+    private List<Item> items = new ArrayList<>();
+
+    /**
+     * 单张图片的导入结果
+     */
+    @Data
+    public static class Item implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * 图片链接
+         */
+        private String url;
+
+        /**
+         * 是否导入成功
+         */
+        private Boolean success;
+
+        /**
+         * 图片ID（成功时）
+         */
+        private Long pictureId;
+
+        /**
+         * 图片名称（成功时）
+         */
+        private String name;
+
+        /**
+         * 失败原因
+         */
+        private String message;
+
+        /**
+         * 下载和处理的耗时（毫秒）
+         */
+        private Long costMillis;
+    }
+}
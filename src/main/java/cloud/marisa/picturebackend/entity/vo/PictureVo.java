@@ -145,6 +145,22 @@ public class PictureVo implements Serializable {
      */
     private Long reviewerId;
 
+    /**
+     * 后台处理状态（0:处理完成，1:处理中，2:处理失败）
+     * <p>处理完成前，默认图和缩略图都是原图</p>
+     */
+    private Integer processStatus;
+
+    /**
+     * 上传时发现的空间内近似重复的图片ID（空间设置为提示时返回）
+     */
+    private Long duplicateOf;
+
+    /**
+     * 和近似重复图片感知哈希的汉明距离
+     */
+    private Integer duplicateDistance;
+
     /**
      * DAO转VO
      *
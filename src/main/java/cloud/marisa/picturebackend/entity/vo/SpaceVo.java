@@ -71,6 +71,11 @@ public class SpaceVo implements Serializable {
      */
     private Integer totalCount;
 
+    /**
+     * 上传近似重复图片时的处理方式：0-提示 1-拒绝
+     */
+    private Integer duplicatePolicy;
+
     /**
      * 创建时间
      */
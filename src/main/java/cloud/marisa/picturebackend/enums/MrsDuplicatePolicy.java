@@ -0,0 +1,39 @@
+package cloud.marisa.picturebackend.enums;
+
+import cloud.marisa.picturebackend.enums.base.MrsBaseEnum;
+import lombok.Getter;
+
+/**
+ * @author MarisaDAZE
+ * @description 空间内上传近似重复图片时的处理方式
+ * @date 2025/4/28
+ */
+@Getter
+public enum MrsDuplicatePolicy implements MrsBaseEnum<Integer> {
+
+    /**
+     * 允许上传，但提示和哪张图片近似重复
+     */
+    WARN(0, "提示"),
+
+    /**
+     * 拒绝上传
+     */
+    REJECT(1, "拒绝");
+
+    MrsDuplicatePolicy(int value, String text) {
+        this.value = value;
+        this.text = text;
+    }
+
+    /**
+     * 策略value
+     */
+    private final Integer value;
+
+    /**
+     * 策略描述
+     */
+    private final String text;
+
+}
@@ -0,0 +1,39 @@
+package cloud.marisa.picturebackend.enums;
+
+import cloud.marisa.picturebackend.enums.base.MrsBaseEnum;
+import lombok.Getter;
+
+/**
+ * @author MarisaDAZE
+ * @description 按需渲染时图片适应目标尺寸的方式
+ * @date 2025/4/28
+ */
+@Getter
+public enum MrsRenderFit implements MrsBaseEnum<String> {
+
+    /**
+     * 等比缩放到目标尺寸以内，不裁剪
+     */
+    CONTAIN("contain", "包含"),
+
+    /**
+     * 等比缩放到铺满目标尺寸，超出部分居中裁剪
+     */
+    COVER("cover", "覆盖");
+
+    MrsRenderFit(String value, String text) {
+        this.value = value;
+        this.text = text;
+    }
+
+    /**
+     * 方式value
+     */
+    private final String value;
+
+    /**
+     * 方式描述
+     */
+    private final String text;
+
+}
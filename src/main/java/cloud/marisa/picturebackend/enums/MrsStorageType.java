@@ -0,0 +1,39 @@
+package cloud.marisa.picturebackend.enums;
+
+import cloud.marisa.picturebackend.enums.base.MrsBaseEnum;
+import lombok.Getter;
+
+/**
+ * @author MarisaDAZE
+ * @description 文件存储位置的枚举
+ * @date 2025/4/28
+ */
+@Getter
+public enum MrsStorageType implements MrsBaseEnum<Integer> {
+
+    /**
+     * 自建MinIO
+     */
+    MINIO(0, "minio"),
+
+    /**
+     * 阿里云OSS
+     */
+    OSS(1, "oss");
+
+    MrsStorageType(int value, String name) {
+        this.value = value;
+        this.name = name;
+    }
+
+    /**
+     * 存储位置value
+     */
+    private final Integer value;
+
+    /**
+     * 存储位置名
+     */
+    private final String name;
+
+}
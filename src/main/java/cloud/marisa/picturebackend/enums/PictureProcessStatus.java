@@ -0,0 +1,36 @@
+package cloud.marisa.picturebackend.enums;
+
+import cloud.marisa.picturebackend.enums.base.MrsBaseEnum;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * <p>图片后台处理（派生图、尺寸、主色调）的状态</p>
+ * <p>处理完成前，默认图和缩略图都暂时使用原图</p>
+ *
+ * @author MarisaDAZE
+ * @description 图片处理状态的枚举
+ * @date 2025/4/28
+ */
+@Getter
+@ToString
+public enum PictureProcessStatus implements MrsBaseEnum<Integer> {
+    DONE(0, "处理完成"),
+    PROCESSING(1, "处理中"),
+    FAILED(2, "处理失败");
+
+    /**
+     * 处理状态
+     */
+    private final Integer value;
+
+    /**
+     * 状态描述
+     */
+    private final String desc;
+
+    PictureProcessStatus(Integer value, String desc) {
+        this.value = value;
+        this.desc = desc;
+    }
+}
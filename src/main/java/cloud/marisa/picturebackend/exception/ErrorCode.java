@@ -16,6 +16,7 @@ public enum ErrorCode {
     AUTHORIZATION_ERROR(40101, "未授权的访问"),
     FORBIDDEN_ERROR(40300, "无访问权限"),
     NOT_FOUND(40400, "资源不存在"),
+    TOO_MANY_REQUESTS(42900, "服务器繁忙，请稍后再试"),
     INTERNAL_SERVER_ERROR(50000, "服务器内部错误"),
     OPERATION_ERROR(50001, "操作失败");
 
@@ -4,7 +4,9 @@ import cloud.marisa.picturebackend.common.MrsResult;
 import cn.dev33.satoken.exception.NotLoginException;
 import cn.dev33.satoken.exception.NotPermissionException;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -13,6 +15,7 @@ import org.springframework.web.bind.annotation.RestControllerAdvice;
 import org.springframework.web.context.request.async.AsyncRequestTimeoutException;
 
 import java.util.*;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.stream.Collectors;
 
 /**
@@ -36,6 +39,34 @@ public class GlobalExceptionHandler {
         return MrsResult.failed(e.getCode(), e.getMessage());
     }
 
+    /**
+     * 服务器繁忙（如上传准入被拒绝）
+     * <p>返回429和Retry-After，客户端可以按这个时间退避重试</p>
+     *
+     * @param e 异常信息
+     * @return 结果对象
+     */
+    @ExceptionHandler(TooManyRequestsException.class)
+    public ResponseEntity<MrsResult<?>> tooManyRequestsExceptionHandler(TooManyRequestsException e) {
+        log.warn("请求被拒绝: {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(MrsResult.failed(e.getCode(), e.getMessage()));
+    }
+
+    /**
+     * 线程池已满，任务被拒绝
+     *
+     * @param e 异常信息
+     * @return 结果对象
+     */
+    @ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity<MrsResult<?>> rejectedExecutionExceptionHandler(RejectedExecutionException e) {
+        log.warn("任务被线程池拒绝: {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(MrsResult.failed(ErrorCode.TOO_MANY_REQUESTS));
+    }
 
     /**
      * 参数校验未通过异常
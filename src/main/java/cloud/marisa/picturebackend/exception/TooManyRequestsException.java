@@ -0,0 +1,25 @@
+package cloud.marisa.picturebackend.exception;
+
+import lombok.Getter;
+
+/**
+ * <p>服务器繁忙，请求被拒绝</p>
+ * <p>响应状态码为429，并通过Retry-After告诉客户端多久之后重试</p>
+ *
+ * @author MarisaDAZE
+ * @description 请求过多异常
+ * @date 2025/4/28
+ */
+@Getter
+public class TooManyRequestsException extends BusinessException {
+
+    /**
+     * 建议的重试间隔（秒）
+     */
+    private final int retryAfterSeconds;
+
+    public TooManyRequestsException(String msg, int retryAfterSeconds) {
+        super(ErrorCode.TOO_MANY_REQUESTS, msg);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
@@ -1,14 +1,13 @@
 package cloud.marisa.picturebackend.manager.auth;
 
 import cloud.marisa.picturebackend.entity.dao.Space;
-import cloud.marisa.picturebackend.entity.dao.SpaceUser;
 import cloud.marisa.picturebackend.entity.dao.User;
 import cloud.marisa.picturebackend.enums.MrsSpaceRole;
 import cloud.marisa.picturebackend.enums.MrsSpaceType;
 import cloud.marisa.picturebackend.enums.MrsUserRole;
 import cloud.marisa.picturebackend.manager.auth.entity.SpaceUserAuthConfig;
 import cloud.marisa.picturebackend.manager.auth.entity.SpaceUserRole;
-import cloud.marisa.picturebackend.service.ISpaceUserService;
+import cloud.marisa.picturebackend.manager.cache.SpaceRoleCacheManager;
 import cloud.marisa.picturebackend.service.IUserService;
 import cloud.marisa.picturebackend.util.EnumUtil;
 import cn.hutool.core.io.resource.ResourceUtil;
@@ -34,7 +33,7 @@ public class SpaceUserAuthManager {
     private IUserService userService;
 
     @Resource
-    private ISpaceUserService spaceUserService;
+    private SpaceRoleCacheManager spaceRoleCacheManager;
 
     private static final SpaceUserAuthConfig SPACE_USER_AUTH_CONFIG;
 
@@ -91,12 +90,8 @@ public class SpaceUserAuthManager {
                 // 不是，无权限
                 return new ArrayList<>();
             case TEAM:
-                // 团队空间，根据空间ID和用户ID查库
-                SpaceUser spaceUser = spaceUserService.lambdaQuery()
-                        .eq(SpaceUser::getSpaceId, space.getId())
-                        .eq(SpaceUser::getUserId, userId)
-                        .one();
-                String role = spaceUser.getSpaceRole();
+                // 团队空间，根据空间ID和用户ID查角色（有缓存）
+                String role = spaceRoleCacheManager.getSpaceRole(space.getId(), userId);
                 MrsSpaceRole spaceRole = EnumUtil.fromValue(role, MrsSpaceRole.class);
                 if (spaceRole == null) {
                     return new ArrayList<>();
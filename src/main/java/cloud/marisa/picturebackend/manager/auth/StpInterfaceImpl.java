@@ -11,9 +11,9 @@ import cloud.marisa.picturebackend.exception.BusinessException;
 import cloud.marisa.picturebackend.exception.ErrorCode;
 import cloud.marisa.picturebackend.manager.auth.constant.SpaceUserPermissionConstants;
 import cloud.marisa.picturebackend.manager.auth.entity.SpaceUserAuthContext;
+import cloud.marisa.picturebackend.manager.cache.SpaceRoleCacheManager;
 import cloud.marisa.picturebackend.service.IPictureService;
 import cloud.marisa.picturebackend.service.ISpaceService;
-import cloud.marisa.picturebackend.service.ISpaceUserService;
 import cloud.marisa.picturebackend.service.IUserService;
 import cloud.marisa.picturebackend.util.EnumUtil;
 import cn.dev33.satoken.stp.StpInterface;
@@ -57,7 +57,7 @@ public class StpInterfaceImpl implements StpInterface {
     private ISpaceService spaceService;
 
     @Resource
-    private ISpaceUserService spaceUserService;
+    private SpaceRoleCacheManager spaceRoleCacheManager;
 
     @Resource
     private SpaceUserAuthManager spaceUserAuthManager;
@@ -98,19 +98,16 @@ public class StpInterfaceImpl implements StpInterface {
             if (spaceUserId <= 0) {
                 throw new BusinessException(ErrorCode.PARAMS_ERROR, "空间用户ID错误");
             }
-            spaceUser = spaceUserService.getById(spaceUserId);
+            spaceUser = spaceRoleCacheManager.getSpaceUserById(spaceUserId);
             if (spaceUser == null) {
                 throw new BusinessException(ErrorCode.NOT_FOUND, "未找到空间用户信息");
             }
-            // TODO: 不太懂为啥要这样，不可以直接用spaceUser吗？
-            SpaceUser dbSpaceUser = spaceUserService.lambdaQuery()
-                    .eq(SpaceUser::getSpaceId, spaceUser.getSpaceId())
-                    .eq(SpaceUser::getUserId, userId)
-                    .one();
-            if (dbSpaceUser == null) {
+            // 被操作的是spaceUser，权限要看的是当前登录用户在这个空间里的角色
+            String role = spaceRoleCacheManager.getSpaceRole(spaceUser.getSpaceId(), userId);
+            if (role == null) {
                 return new ArrayList<>();
             }
-            return spaceUserAuthManager.getPermissionsByRole(dbSpaceUser.getSpaceRole());
+            return spaceUserAuthManager.getPermissionsByRole(role);
         }
 
         // 可能是公共空间，也可能没传空间ID
@@ -121,13 +118,8 @@ public class StpInterfaceImpl implements StpInterface {
             if (pictureId == null) {
                 return adminPermissions;
             }
-            Picture picture = pictureService.lambdaQuery()
-                    .eq(Picture::getId, pictureId)
-                    .select(Picture::getId, Picture::getSpaceId, Picture::getUserId)
-                    .one();
-            if (picture == null) {
-                throw new BusinessException(ErrorCode.NOT_FOUND, "未找到图片信息");
-            }
+            // 图片的空间和创建者从图片缓存中取，图片移动空间时会删除该缓存
+            Picture picture = pictureService.getPictureByIdCache(pictureId);
             spaceId = picture.getSpaceId();
             // 操作公共空间图片，需要管理员或他是图片创建者
             if (spaceId == null) {
@@ -139,10 +131,8 @@ public class StpInterfaceImpl implements StpInterface {
             }
         }
 
-        Space space = spaceService.getById(spaceId);
-        if (space == null) {
-            throw new BusinessException(ErrorCode.NOT_FOUND, "未找到空间信息");
-        }
+        // 空间不存在时会抛出NOT_FOUND
+        Space space = spaceService.getSpaceByIdCache(spaceId);
         MrsSpaceType spaceType = EnumUtil.fromValue(space.getSpaceType(), MrsSpaceType.class);
         // 私人空间操作
         if (spaceType == MrsSpaceType.PRIVATE) {
@@ -154,14 +144,11 @@ public class StpInterfaceImpl implements StpInterface {
             return new ArrayList<>();
         } else {
             // 团队空间操作
-            spaceUser = spaceUserService.lambdaQuery()
-                    .eq(SpaceUser::getSpaceId, spaceId)
-                    .eq(SpaceUser::getUserId, userId)
-                    .one();
-            if (spaceUser == null) {
+            String role = spaceRoleCacheManager.getSpaceRole(spaceId, userId);
+            if (role == null) {
                 return new ArrayList<>();
             }
-            return spaceUserAuthManager.getPermissionsByRole(spaceUser.getSpaceRole());
+            return spaceUserAuthManager.getPermissionsByRole(role);
         }
     }
 
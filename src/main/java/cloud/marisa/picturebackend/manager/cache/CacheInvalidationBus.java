@@ -0,0 +1,221 @@
+package cloud.marisa.picturebackend.manager.cache;
+
+import cloud.marisa.picturebackend.manager.cache.entity.CacheInvalidationMessage;
+import cn.hutool.core.util.IdUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static cloud.marisa.picturebackend.common.Constants.CACHE_INVALIDATION_CHANNEL;
+
+/**
+ * <p>集群内本地缓存（Caffeine）的失效通知</p>
+ * <p>某个节点删除缓存时，把键通过Redis发布/订阅广播给其它节点，</p>
+ * <p>其它节点收到后只删除自己的本地缓存；同一时间窗口内的键会合并成一条消息发送</p>
+ *
+ * @author MarisaDAZE
+ * @description 本地缓存失效总线
+ * @date 2025/4/28
+ */
+@Log4j2
+@Component
+public class CacheInvalidationBus implements MessageListener {
+
+    /**
+     * 合并发送的时间窗口（毫秒）
+     */
+    private static final long FLUSH_INTERVAL_MS = 20;
+
+    /**
+     * 单条消息最多携带的键数量
+     */
+    private static final int MAX_KEYS_PER_MESSAGE = 500;
+
+    /**
+     * 当前节点ID，用于忽略自己发出的消息
+     */
+    private final String nodeId = IdUtil.fastSimpleUUID();
+
+    /**
+     * 缓存名称 -> 本地缓存
+     */
+    private final Map<String, Cache<String, ?>> caches = new ConcurrentHashMap<>();
+
+    /**
+     * 主题名称 -> 自定义的消息处理器（用于本地缓存以外的场景，如布隆过滤器）
+     */
+    private final Map<String, Consumer<List<String>>> handlers = new ConcurrentHashMap<>();
+
+    /**
+     * 本地缓存 -> 缓存名称
+     */
+    private final Map<Cache<String, ?>, String> cacheNames = Collections.synchronizedMap(new IdentityHashMap<>());
+
+    /**
+     * 待发送的键（缓存名称/主题名称 -> 键）
+     */
+    private final Map<String, Set<String>> pending = new ConcurrentHashMap<>();
+
+    /**
+     * 负责合并发送的单线程调度器
+     */
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "cache-invalidation-flusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final RedisMessageListenerContainer listenerContainer;
+
+    public CacheInvalidationBus(StringRedisTemplate stringRedisTemplate,
+                                RedisMessageListenerContainer listenerContainer) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.listenerContainer = listenerContainer;
+    }
+
+    @PostConstruct
+    public void init() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(CACHE_INVALIDATION_CHANNEL));
+        flusher.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        log.info("本地缓存失效总线已启动, 节点ID: {}", nodeId);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        flusher.shutdown();
+        flush();
+    }
+
+    /**
+     * 注册一个需要跨节点失效的本地缓存
+     *
+     * @param cacheName  缓存名称（各节点需一致）
+     * @param localCache 本地缓存
+     */
+    public void register(String cacheName, Cache<String, ?> localCache) {
+        caches.put(cacheName, localCache);
+        cacheNames.put(localCache, cacheName);
+    }
+
+    /**
+     * 通知其它节点删除本地缓存
+     * <p>未注册的缓存会被忽略</p>
+     *
+     * @param localCache 本地缓存
+     * @param keys       缓存键
+     */
+    public void broadcast(Cache<String, ?> localCache, Collection<String> keys) {
+        String cacheName = cacheNames.get(localCache);
+        if (cacheName == null) {
+            return;
+        }
+        publish(cacheName, keys);
+    }
+
+    /**
+     * 订阅一个自定义主题，收到其它节点发布的键时回调
+     *
+     * @param topic   主题名称（不要和缓存名称重复）
+     * @param handler 处理器
+     */
+    public void subscribe(String topic, Consumer<List<String>> handler) {
+        handlers.put(topic, handler);
+    }
+
+    /**
+     * 向其它节点发布一批键（合并后发送）
+     *
+     * @param topic 缓存名称或主题名称
+     * @param keys  键
+     */
+    public void publish(String topic, Collection<String> keys) {
+        if (topic == null || keys == null || keys.isEmpty()) {
+            return;
+        }
+        // 在merge内合并，保证和flush中的remove互斥，不会往已取走的集合里加键
+        pending.merge(topic, new HashSet<>(keys), (oldKeys, newKeys) -> {
+            oldKeys.addAll(newKeys);
+            return oldKeys;
+        });
+    }
+
+    /**
+     * 获取当前节点ID
+     *
+     * @return 节点ID
+     */
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        try {
+            String body = new String(message.getBody(), StandardCharsets.UTF_8);
+            CacheInvalidationMessage msg = JSONUtil.toBean(body, CacheInvalidationMessage.class);
+            // 自己发出的消息，本地早已删除过了
+            if (msg == null || nodeId.equals(msg.getNodeId())) {
+                return;
+            }
+            if (msg.getKeys() == null) {
+                return;
+            }
+            Cache<String, ?> localCache = caches.get(msg.getCacheName());
+            if (localCache != null) {
+                localCache.invalidateAll(msg.getKeys());
+            }
+            Consumer<List<String>> handler = handlers.get(msg.getCacheName());
+            if (handler != null) {
+                handler.accept(msg.getKeys());
+            }
+            log.debug("收到节点 {} 的缓存失效通知 {}: {}", msg.getNodeId(), msg.getCacheName(), msg.getKeys());
+        } catch (Exception e) {
+            log.error("处理缓存失效通知失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 把待发送的键按缓存分组发布出去
+     */
+    private void flush() {
+        for (String cacheName : pending.keySet()) {
+            Set<String> keySet = pending.remove(cacheName);
+            if (keySet == null || keySet.isEmpty()) {
+                continue;
+            }
+            List<String> keys = new ArrayList<>(keySet);
+            for (int i = 0; i < keys.size(); i += MAX_KEYS_PER_MESSAGE) {
+                List<String> batch = keys.subList(i, Math.min(i + MAX_KEYS_PER_MESSAGE, keys.size()));
+                publish(new CacheInvalidationMessage(nodeId, cacheName, new ArrayList<>(batch)));
+            }
+        }
+    }
+
+    private void publish(CacheInvalidationMessage message) {
+        try {
+            stringRedisTemplate.convertAndSend(CACHE_INVALIDATION_CHANNEL, JSONUtil.toJsonStr(message));
+        } catch (Exception e) {
+            // 发送失败时其它节点的本地缓存只能等自然过期
+            log.error("发送缓存失效通知失败 {}: {}", message.getCacheName(), StrUtil.maxLength(e.getMessage(), 200));
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package cloud.marisa.picturebackend.manager.cache;
+
+import cloud.marisa.picturebackend.entity.dao.Picture;
+import cloud.marisa.picturebackend.mapper.PictureMapper;
+import cloud.marisa.picturebackend.util.cache.MrsLongBloomFilter;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import lombok.AllArgsConstructor;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <p>图片ID的布隆过滤器</p>
+ * <p>启动时从数据库全量构建，只对构建开始前生成的ID下结论：这些ID判断不存在的可以直接拒绝，不用再查Redis和数据库；</p>
+ * <p>构建之后（以及构建前的一小段时间内）生成的ID不在过滤器的判断范围内，一律放行，由缓存和数据库决定，
+ * 因此不依赖节点之间的同步，新图片在任何节点上都能立即查到</p>
+ * <p>被删除的图片不会从过滤器中移除，由每天的重建和空值缓存兜底</p>
+ *
+ * @author MarisaDAZE
+ * @description 图片ID布隆过滤器
+ * @date 2025/4/28
+ */
+@Log4j2
+@Component
+@RequiredArgsConstructor
+public class PictureIdBloomFilter {
+
+    /**
+     * 重建时每批读取的ID数量
+     */
+    private static final int SCAN_BATCH_SIZE = 5000;
+
+    /**
+     * 过滤器的最小容量
+     */
+    private static final long MIN_CAPACITY = 1_000_000L;
+
+    /**
+     * 期望的误判率
+     */
+    private static final double FPP = 0.01;
+
+    /**
+     * MyBatis-Plus默认雪花ID的起始时间，ID右移22位是相对它的毫秒数
+     */
+    private static final long SNOWFLAKE_EPOCH = 1288834974657L;
+
+    private static final int SNOWFLAKE_TIMESTAMP_SHIFT = 22;
+
+    /**
+     * 构建开始前这段时间内生成的ID也不下结论（事务可能还没提交，其它节点的时钟也可能有偏差）
+     */
+    private static final long TRUST_MARGIN_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    private final PictureMapper pictureMapper;
+
+    /**
+     * 当前使用的过滤器，未构建完成前为null（此时所有ID都放行）
+     */
+    private volatile Snapshot current;
+
+    private final AtomicBoolean rebuilding = new AtomicBoolean(false);
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        CompletableFuture.runAsync(this::rebuild);
+    }
+
+    /**
+     * 每天凌晨4点重建一次，清理已删除的ID并按数据量扩容
+     */
+    @Scheduled(cron = "0 0 4 * * ?")
+    public void scheduledRebuild() {
+        rebuild();
+    }
+
+    /**
+     * ID是否可能存在
+     *
+     * @param pictureId 图片ID
+     * @return false-一定不存在；true-可能存在（包括构建之后生成的ID）
+     */
+    public boolean mightContain(Long pictureId) {
+        if (pictureId == null || pictureId <= 0) {
+            return false;
+        }
+        Snapshot snapshot = current;
+        return snapshot == null
+                || pictureId >= snapshot.trustedBelowId
+                || snapshot.filter.mightContain(pictureId);
+    }
+
+    /**
+     * 从数据库全量重建过滤器
+     */
+    public void rebuild() {
+        if (!rebuilding.compareAndSet(false, true)) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        // 在读取任何数据之前确定判断范围，这之前生成的ID在下面的扫描中一定能读到
+        long trustedBelowId = (start - TRUST_MARGIN_MILLIS - SNOWFLAKE_EPOCH) << SNOWFLAKE_TIMESTAMP_SHIFT;
+        try {
+            long count = pictureMapper.selectCount(new LambdaQueryWrapper<>());
+            MrsLongBloomFilter filter = new MrsLongBloomFilter(Math.max(count * 2, MIN_CAPACITY), FPP);
+            long lastId = 0L;
+            long total = 0L;
+            while (true) {
+                LambdaQueryWrapper<Picture> queryWrapper = new LambdaQueryWrapper<>();
+                queryWrapper.select(Picture::getId)
+                        .gt(Picture::getId, lastId)
+                        .orderByAsc(Picture::getId)
+                        .last("LIMIT " + SCAN_BATCH_SIZE);
+                List<Picture> pictures = pictureMapper.selectList(queryWrapper);
+                if (pictures.isEmpty()) {
+                    break;
+                }
+                for (Picture picture : pictures) {
+                    filter.put(picture.getId());
+                }
+                total += pictures.size();
+                lastId = pictures.get(pictures.size() - 1).getId();
+                if (pictures.size() < SCAN_BATCH_SIZE) {
+                    break;
+                }
+            }
+            current = new Snapshot(filter, trustedBelowId);
+            log.info("图片ID布隆过滤器构建完成, 共{}条, 耗时{}ms", total, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.error("图片ID布隆过滤器构建失败", e);
+        } finally {
+            rebuilding.set(false);
+        }
+    }
+
+    /**
+     * 过滤器和它的判断范围
+     */
+    @AllArgsConstructor
+    private static class Snapshot {
+
+        private final MrsLongBloomFilter filter;
+
+        /**
+         * 小于这个值的ID才由过滤器判断
+         */
+        private final long trustedBelowId;
+    }
+}
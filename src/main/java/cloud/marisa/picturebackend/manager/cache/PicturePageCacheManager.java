@@ -0,0 +1,114 @@
+package cloud.marisa.picturebackend.manager.cache;
+
+import cloud.marisa.picturebackend.entity.dto.picture.PictureQueryRequest;
+import cloud.marisa.picturebackend.manager.cache.entity.PicturePageIds;
+import cloud.marisa.picturebackend.util.cache.MrsTwoLevelCache;
+import cn.hutool.json.JSONUtil;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static cloud.marisa.picturebackend.common.Constants.PICTURE_CACHE_PREFIX;
+import static cloud.marisa.picturebackend.common.Constants.PICTURE_PAGE_GENERATION_PREFIX;
+
+/**
+ * <p>图片分页结果的版本化缓存</p>
+ * <p>每个空间（公共空间为0）在Redis中有一个版本号，缓存键里带上版本号；</p>
+ * <p>空间内的图片发生上传/编辑/删除/审核时版本号+1，旧版本的缓存自然失效，</p>
+ * <p>不需要逐个去找哪些分页结果受影响</p>
+ *
+ * @author MarisaDAZE
+ * @description 图片分页缓存管理器
+ * @date 2025/4/28
+ */
+@Log4j2
+@Component
+@RequiredArgsConstructor
+public class PicturePageCacheManager {
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 分页ID的二级缓存
+     */
+    private final MrsTwoLevelCache<PicturePageIds> picturePageCache;
+
+    /**
+     * 获取分页结果（只有ID和总数）
+     *
+     * @param spaceId      空间ID，公共空间为0
+     * @param queryRequest 查询条件
+     * @param loader       缓存未命中时的查询函数
+     * @return 分页ID
+     */
+    public PicturePageIds getPage(long spaceId, PictureQueryRequest queryRequest, Supplier<PicturePageIds> loader) {
+        long generation = getGeneration(spaceId);
+        // 拿不到版本号时无法判断缓存是否过期，直接查库
+        if (generation < 0) {
+            return loader.get();
+        }
+        String condition = JSONUtil.toJsonStr(queryRequest);
+        String md5Hex = DigestUtils.md5DigestAsHex(condition.getBytes(StandardCharsets.UTF_8));
+        String cacheKey = PICTURE_CACHE_PREFIX + ":" + spaceId + ":" + generation + ":" + md5Hex;
+        return picturePageCache.get(cacheKey, key -> loader.get());
+    }
+
+    /**
+     * 获取空间当前的版本号
+     *
+     * @param spaceId 空间ID
+     * @return 版本号，Redis不可用时返回-1
+     */
+    public long getGeneration(long spaceId) {
+        try {
+            String value = stringRedisTemplate.opsForValue().get(PICTURE_PAGE_GENERATION_PREFIX + spaceId);
+            return value == null ? 0L : Long.parseLong(value);
+        } catch (Exception e) {
+            log.warn("获取空间 {} 的分页缓存版本失败: {}", spaceId, e.getMessage());
+            return -1L;
+        }
+    }
+
+    /**
+     * 使空间的分页缓存失效（版本号+1）
+     * <p>在事务中调用时，会等事务提交后再执行</p>
+     *
+     * @param spaceIds 空间ID，null视为公共空间
+     */
+    public void bumpGeneration(Long... spaceIds) {
+        Set<Long> ids = Arrays.stream(spaceIds)
+                .map(id -> Objects.requireNonNullElse(id, 0L))
+                .collect(Collectors.toSet());
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    doBump(ids);
+                }
+            });
+        } else {
+            doBump(ids);
+        }
+    }
+
+    private void doBump(Set<Long> spaceIds) {
+        for (Long spaceId : spaceIds) {
+            try {
+                stringRedisTemplate.opsForValue().increment(PICTURE_PAGE_GENERATION_PREFIX + spaceId);
+            } catch (Exception e) {
+                log.error("更新空间 {} 的分页缓存版本失败: {}", spaceId, e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package cloud.marisa.picturebackend.manager.cache;
+
+import cloud.marisa.picturebackend.entity.dao.SpaceUser;
+import cloud.marisa.picturebackend.mapper.SpaceUserMapper;
+import cloud.marisa.picturebackend.util.cache.MrsCacheUtil;
+import cloud.marisa.picturebackend.util.cache.MrsTwoLevelCache;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static cloud.marisa.picturebackend.common.Constants.SPACE_USER_CACHE_NAME;
+
+/**
+ * <p>团队空间角色的缓存</p>
+ * <p>缓存 (空间ID, 用户ID) -> 角色 和 空间成员ID -> 成员记录，</p>
+ * <p>权限校验在缓存命中时不需要查库；成员的增删改需要调用本类删除缓存</p>
+ *
+ * @author MarisaDAZE
+ * @description 空间角色缓存管理器
+ * @date 2025/4/28
+ */
+@Log4j2
+@Component
+@RequiredArgsConstructor
+public class SpaceRoleCacheManager {
+
+    /**
+     * 不是空间成员时缓存的角色（空字符串）
+     */
+    private static final String NO_ROLE = "";
+
+    /**
+     * 以(空间ID, 用户ID)为键时的缓存前缀
+     */
+    private static final String ROLE_PREFIX = "role:";
+
+    /**
+     * 以成员ID为键时的缓存前缀
+     */
+    private static final String ID_PREFIX = "id:";
+
+    private final SpaceUserMapper spaceUserMapper;
+
+    private final RedisTemplate<String, byte[]> byteRedisTemplate;
+
+    /**
+     * (空间ID, 用户ID) -> 角色
+     */
+    private final MrsTwoLevelCache<String> spaceRoleCache;
+
+    /**
+     * 成员ID -> 成员记录
+     */
+    private final MrsTwoLevelCache<SpaceUser> spaceUserCache;
+
+    /**
+     * 获取用户在团队空间中的角色
+     *
+     * @param spaceId 空间ID
+     * @param userId  用户ID
+     * @return 角色，不是空间成员时返回null
+     */
+    public String getSpaceRole(Long spaceId, Long userId) {
+        if (spaceId == null || userId == null) {
+            return null;
+        }
+        String role = spaceRoleCache.get(roleKey(spaceId, userId), key -> {
+            LambdaQueryWrapper<SpaceUser> queryWrapper = new LambdaQueryWrapper<>();
+            queryWrapper.select(SpaceUser::getSpaceRole)
+                    .eq(SpaceUser::getSpaceId, spaceId)
+                    .eq(SpaceUser::getUserId, userId);
+            SpaceUser spaceUser = spaceUserMapper.selectOne(queryWrapper);
+            // 非成员也要缓存，否则无权限的请求每次都会查库
+            return spaceUser == null || spaceUser.getSpaceRole() == null ? NO_ROLE : spaceUser.getSpaceRole();
+        });
+        return NO_ROLE.equals(role) ? null : role;
+    }
+
+    /**
+     * 根据成员ID获取成员记录
+     * <p>返回的对象是缓存中的共享实例，不要修改</p>
+     *
+     * @param spaceUserId 成员ID
+     * @return 成员记录，不存在时返回null
+     */
+    public SpaceUser getSpaceUserById(Long spaceUserId) {
+        if (spaceUserId == null) {
+            return null;
+        }
+        return spaceUserCache.get(idKey(spaceUserId), key -> spaceUserMapper.selectById(spaceUserId));
+    }
+
+    /**
+     * 删除成员相关的缓存
+     *
+     * @param spaceUsers 成员记录，需要有空间ID和用户ID，有ID时会同时删除ID的缓存
+     */
+    public void removeCache(SpaceUser... spaceUsers) {
+        MrsCacheUtil.removeCache(spaceRoleCache.getLocalCache(), byteRedisTemplate, roleKeys(spaceUsers));
+        List<String> idKeys = idKeys(spaceUsers);
+        if (!idKeys.isEmpty()) {
+            MrsCacheUtil.removeCache(spaceUserCache.getLocalCache(), byteRedisTemplate, idKeys);
+        }
+    }
+
+    /**
+     * 延迟删除成员相关的缓存（缓存双删的第二次）
+     *
+     * @param spaceUsers 成员记录，需要有空间ID和用户ID，有ID时会同时删除ID的缓存
+     */
+    public void delayRemoveCache(SpaceUser... spaceUsers) {
+        MrsCacheUtil.delayRemoveCache(spaceRoleCache.getLocalCache(), byteRedisTemplate, roleKeys(spaceUsers), 3);
+        List<String> idKeys = idKeys(spaceUsers);
+        if (!idKeys.isEmpty()) {
+            MrsCacheUtil.delayRemoveCache(spaceUserCache.getLocalCache(), byteRedisTemplate, idKeys, 3);
+        }
+    }
+
+    private static List<String> roleKeys(SpaceUser... spaceUsers) {
+        List<String> keys = new ArrayList<>(spaceUsers.length);
+        for (SpaceUser spaceUser : spaceUsers) {
+            if (spaceUser.getSpaceId() != null && spaceUser.getUserId() != null) {
+                keys.add(roleKey(spaceUser.getSpaceId(), spaceUser.getUserId()));
+            }
+        }
+        return keys;
+    }
+
+    private static List<String> idKeys(SpaceUser... spaceUsers) {
+        List<String> keys = new ArrayList<>(spaceUsers.length);
+        for (SpaceUser spaceUser : spaceUsers) {
+            if (spaceUser.getId() != null) {
+                keys.add(idKey(spaceUser.getId()));
+            }
+        }
+        return keys;
+    }
+
+    private static String roleKey(Long spaceId, Long userId) {
+        return SPACE_USER_CACHE_NAME + ROLE_PREFIX + spaceId + ":" + userId;
+    }
+
+    private static String idKey(Long spaceUserId) {
+        return SPACE_USER_CACHE_NAME + ID_PREFIX + spaceUserId;
+    }
+}
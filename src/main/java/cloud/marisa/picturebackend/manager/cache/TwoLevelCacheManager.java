@@ -0,0 +1,107 @@
+package cloud.marisa.picturebackend.manager.cache;
+
+import cloud.marisa.picturebackend.util.cache.MrsCacheStats;
+import cloud.marisa.picturebackend.util.cache.MrsCacheUtil;
+import cloud.marisa.picturebackend.util.cache.MrsInvalidationScheduler;
+import cloud.marisa.picturebackend.util.cache.MrsTwoLevelCache;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>汇总所有二级缓存，负责定时维护和运维查询</p>
+ * <p>同时作为缓存指标的注册表，各缓存按本地/Redis/回源三层统计</p>
+ *
+ * @author MarisaDAZE
+ * @description 二级缓存管理器
+ * @date 2025/4/28
+ */
+@Log4j2
+@Component
+@RequiredArgsConstructor
+public class TwoLevelCacheManager {
+
+    /**
+     * 容器中所有的二级缓存
+     */
+    private final List<MrsTwoLevelCache<?>> caches;
+
+    /**
+     * 每10秒降级一次已经不热的key
+     */
+    @Scheduled(fixedDelay = 10000)
+    public void demoteColdKeys() {
+        for (MrsTwoLevelCache<?> cache : caches) {
+            try {
+                cache.demoteColdKeys();
+            } catch (Exception e) {
+                log.warn("[{}] 降级热点key失败: {}", cache.getName(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 获取各个缓存当前的热点key
+     *
+     * @return 缓存名称 -> (热点key -> 估计的访问频率)
+     */
+    public Map<String, Map<String, Integer>> getHotKeys() {
+        Map<String, Map<String, Integer>> result = new LinkedHashMap<>();
+        for (MrsTwoLevelCache<?> cache : caches) {
+            result.put(cache.getName(), cache.getHotKeys());
+        }
+        return result;
+    }
+
+    /**
+     * 获取各个缓存的统计信息
+     *
+     * @return 统计信息列表
+     */
+    public List<MrsCacheStats> getStats() {
+        List<MrsCacheStats> result = new ArrayList<>(caches.size());
+        for (MrsTwoLevelCache<?> cache : caches) {
+            result.add(cache.stats());
+        }
+        return result;
+    }
+
+    /**
+     * 获取延迟删除缓存的统计信息
+     *
+     * @return 指标名 -> 数值
+     */
+    public Map<String, Long> getInvalidationStats() {
+        MrsInvalidationScheduler scheduler = MrsCacheUtil.getInvalidationScheduler();
+        Map<String, Long> result = new LinkedHashMap<>();
+        result.put("pendingKeys", scheduler.getPendingKeys());
+        result.put("removedKeys", scheduler.getRemovedKeys());
+        result.put("droppedKeys", scheduler.getDroppedKeys());
+        result.put("retriedBatches", scheduler.getRetriedBatches());
+        return result;
+    }
+
+    /**
+     * 每5分钟输出一次缓存统计
+     */
+    @Scheduled(fixedDelay = 300000, initialDelay = 300000)
+    public void logStats() {
+        for (MrsTwoLevelCache<?> cache : caches) {
+            MrsCacheStats stats = cache.stats();
+            log.info("[{}] 本地命中率: {}, Redis命中率: {}, 回源: {}次/平均{}ms, 条目: {}, 估计占用: {}字节",
+                    stats.getName(),
+                    String.format("%.4f", stats.getLocalHitRate()),
+                    String.format("%.4f", stats.getRemoteHitRate()),
+                    stats.getLoads(),
+                    String.format("%.2f", stats.getLoadAvgMillis()),
+                    stats.getLocalSize(),
+                    stats.getEstimatedBytes());
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package cloud.marisa.picturebackend.manager.cache.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * @author MarisaDAZE
+ * @description 本地缓存失效通知
+ * @date 2025/4/28
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CacheInvalidationMessage implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 发出通知的节点ID
+     */
+    private String nodeId;
+
+    /**
+     * 缓存名称
+     */
+    private String cacheName;
+
+    /**
+     * 需要失效的键
+     */
+    private List<String> keys;
+}
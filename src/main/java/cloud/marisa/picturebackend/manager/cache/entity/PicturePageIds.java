@@ -0,0 +1,33 @@
+package cloud.marisa.picturebackend.manager.cache.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * <p>图片分页查询的缓存结果</p>
+ * <p>只存有序的图片ID和总数，图片详情从单张图片的缓存中取</p>
+ *
+ * @author MarisaDAZE
+ * @description 图片分页ID缓存
+ * @date 2025/4/28
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PicturePageIds implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 当前页的图片ID（有序）
+     */
+    private List<Long> ids;
+
+    /**
+     * 总条数
+     */
+    private long total;
+}
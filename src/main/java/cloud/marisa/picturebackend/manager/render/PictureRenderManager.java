@@ -0,0 +1,456 @@
+package cloud.marisa.picturebackend.manager.render;
+
+import cloud.marisa.picturebackend.api.image.AliyunOssUtil;
+import cloud.marisa.picturebackend.config.PictureConfig;
+import cloud.marisa.picturebackend.entity.dao.Picture;
+import cloud.marisa.picturebackend.entity.dto.picture.PictureRenderRequest;
+import cloud.marisa.picturebackend.enums.MrsRenderFit;
+import cloud.marisa.picturebackend.enums.MrsStorageType;
+import cloud.marisa.picturebackend.exception.BusinessException;
+import cloud.marisa.picturebackend.exception.ErrorCode;
+import cloud.marisa.picturebackend.exception.ThrowUtils;
+import cloud.marisa.picturebackend.manager.upload.UploadAdmissionManager;
+import cloud.marisa.picturebackend.util.EnumUtil;
+import cloud.marisa.picturebackend.util.ImageUtil;
+import cloud.marisa.picturebackend.util.MinioUtil;
+import cloud.marisa.picturebackend.util.MrsPathUtil;
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.io.unit.DataSize;
+import cn.hutool.core.util.StrUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import net.coobird.thumbnailator.Thumbnails;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static cloud.marisa.picturebackend.common.Constants.THUMB_MAX_SIZE;
+
+/**
+ * <p>图片按需渲染（指定宽高、适应方式和格式）</p>
+ * <p>从够用的最小派生图（缩略图或默认图）生成，结果按文件的内容哈希缓存在对象存储和本地磁盘上；</p>
+ * <p>同一份文件的同一种渲染参数结果不变，文件被清理时一起删除</p>
+ *
+ * @author MarisaDAZE
+ * @description 图片按需渲染管理器
+ * @date 2025/4/28
+ */
+@Log4j2
+@Component
+@RequiredArgsConstructor
+public class PictureRenderManager {
+
+    /**
+     * 渲染算法的版本，改了缩放或编码方式时加一，旧的缓存自然失效
+     */
+    private static final int RENDER_VERSION = 1;
+
+    /**
+     * 渲染结果在对象存储上的目录（图片目录下）
+     */
+    private static final String RENDER_FOLDER = "render/";
+
+    @Value("${minio.folders.pictures}")
+    private String PICTURE_PATH;
+
+    private final MinioUtil minioUtil;
+
+    private final AliyunOssUtil ossUtil;
+
+    private final PictureConfig pictureConfig;
+
+    private final UploadAdmissionManager uploadAdmissionManager;
+
+    /**
+     * 本地磁盘缓存目录
+     */
+    private Path cacheDir;
+
+    /**
+     * 本地磁盘缓存的索引（缓存key -> 文件），按文件大小淘汰，淘汰时删除文件
+     */
+    private Cache<String, Path> diskCache;
+
+    /**
+     * 正在渲染的key，同一个key只渲染一次，其它请求等结果
+     */
+    private final ConcurrentHashMap<String, CompletableFuture<byte[]>> rendering = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() throws IOException {
+        String dir = pictureConfig.getRenderCacheDir();
+        cacheDir = StrUtil.isNotBlank(dir)
+                ? Paths.get(dir)
+                : Paths.get(System.getProperty("java.io.tmpdir"), "picture-render");
+        // 上次运行留下的文件不在索引里，清掉重新缓存
+        if (Files.exists(cacheDir)) {
+            FileUtil.clean(cacheDir.toFile());
+        }
+        Files.createDirectories(cacheDir);
+        long maxBytes = DataSize.parse(pictureConfig.getRenderCacheMaxSize()).toBytes();
+        diskCache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((String key, Path file) -> (int) Math.min(Integer.MAX_VALUE, file.toFile().length()))
+                .removalListener((String key, Path file, RemovalCause cause) -> {
+                    // 同一个key重新写入时文件名不变，不能删
+                    if (file != null && cause != RemovalCause.REPLACED) {
+                        deleteQuietly(file);
+                    }
+                })
+                .build();
+        log.info("图片渲染缓存目录: {}, 上限: {}", cacheDir, pictureConfig.getRenderCacheMaxSize());
+    }
+
+    /**
+     * 校验并解析渲染参数
+     *
+     * @param renderRequest 渲染请求
+     * @return 渲染参数
+     */
+    public RenderSpec resolveSpec(PictureRenderRequest renderRequest) {
+        int width = renderRequest.getWidth() == null ? 0 : renderRequest.getWidth();
+        int height = renderRequest.getHeight() == null ? 0 : renderRequest.getHeight();
+        ThrowUtils.throwIf(width == 0 && height == 0, ErrorCode.PARAMS_ERROR, "宽高不能都为空");
+        // 只允许固定的几种尺寸，否则任意宽高组合都能生成新的缓存
+        ThrowUtils.throwIf(width != 0 && !pictureConfig.getRenderSizes().contains(width),
+                ErrorCode.PARAMS_ERROR, "不支持的宽度");
+        ThrowUtils.throwIf(height != 0 && !pictureConfig.getRenderSizes().contains(height),
+                ErrorCode.PARAMS_ERROR, "不支持的高度");
+        MrsRenderFit fit = MrsRenderFit.CONTAIN;
+        if (StrUtil.isNotBlank(renderRequest.getFit())) {
+            fit = EnumUtil.fromValue(renderRequest.getFit().toLowerCase(), MrsRenderFit.class);
+            ThrowUtils.throwIf(fit == null, ErrorCode.PARAMS_ERROR, "不支持的适应方式");
+        }
+        String format = StrUtil.isBlank(renderRequest.getFormat())
+                ? "webp"
+                : renderRequest.getFormat().toLowerCase();
+        if ("jpeg".equals(format)) {
+            format = "jpg";
+        }
+        ThrowUtils.throwIf(!pictureConfig.getRenderFormats().contains(format),
+                ErrorCode.PARAMS_ERROR, "不支持的输出格式");
+        return new RenderSpec(width, height, fit, format);
+    }
+
+    /**
+     * 实体标签，不用渲染就能算出来，客户端缓存有效时直接返回304
+     *
+     * @param fileKey 文件标识（原图的内容哈希）
+     * @param spec    渲染参数
+     * @return 实体标签（不带引号）
+     */
+    public String getEtag(String fileKey, RenderSpec spec) {
+        return fileKey + "-" + spec.getVariant().replace('.', '-');
+    }
+
+    /**
+     * 获取渲染结果：本地磁盘 -> 对象存储 -> 从派生图渲染
+     *
+     * @param picture 图片（使用其中的存储路径和宽高）
+     * @param fileKey 文件标识（原图的内容哈希）
+     * @param storage 文件所在的存储
+     * @param spec    渲染参数
+     * @return 渲染后的图片
+     */
+    public byte[] render(Picture picture, String fileKey, MrsStorageType storage, RenderSpec spec) {
+        String key = fileKey + "/" + spec.getVariant();
+        byte[] cached = readLocal(key);
+        if (cached != null) {
+            return cached;
+        }
+        CompletableFuture<byte[]> future = new CompletableFuture<>();
+        CompletableFuture<byte[]> running = rendering.putIfAbsent(key, future);
+        if (running != null) {
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+        try {
+            byte[] bytes = loadOrRender(picture, fileKey, storage, spec);
+            writeLocal(key, bytes);
+            future.complete(bytes);
+            return bytes;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            rendering.remove(key, future);
+        }
+    }
+
+    /**
+     * 删除一份文件的所有渲染结果（文件被清理时调用）
+     *
+     * @param fileKey 文件标识（原图的内容哈希）
+     * @param storage 文件所在的存储
+     */
+    public void removeRenders(String fileKey, MrsStorageType storage) {
+        String prefix = fileKey + "/";
+        diskCache.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+        String objectPrefix = getRenderFolder() + prefix;
+        try {
+            if (storage == MrsStorageType.OSS) {
+                ossUtil.removeByPrefix(objectPrefix);
+            } else {
+                minioUtil.deleteByPrefix(objectPrefix);
+            }
+        } catch (Exception e) {
+            log.error("删除渲染结果 {} 失败", objectPrefix, e);
+        }
+    }
+
+    private byte[] loadOrRender(Picture picture, String fileKey, MrsStorageType storage, RenderSpec spec) {
+        String objectPath = getRenderFolder() + fileKey + "/" + spec.getVariant();
+        byte[] bytes = readObject(storage, objectPath);
+        if (bytes != null) {
+            return bytes;
+        }
+        bytes = doRender(picture, storage, spec);
+        // 写回对象存储失败不影响这次返回，下次再渲染
+        try {
+            if (storage == MrsStorageType.OSS) {
+                ossUtil.uploadInputStream(objectPath, new ByteArrayInputStream(bytes));
+            } else {
+                minioUtil.putObject(new ByteArrayInputStream(bytes), bytes.length, objectPath);
+            }
+        } catch (Exception e) {
+            log.error("保存渲染结果 {} 失败", objectPath, e);
+        }
+        return bytes;
+    }
+
+    private byte[] doRender(Picture picture, MrsStorageType storage, RenderSpec spec) {
+        long start = System.currentTimeMillis();
+        Integer picWidth = picture.getPicWidth();
+        Integer picHeight = picture.getPicHeight();
+        // 输出图片的最长边，用来挑派生图和决定降采样解码的尺寸
+        int longest = (picWidth != null && picHeight != null)
+                ? (int) Math.ceil(Math.max(picWidth, picHeight) * spec.getScale(picWidth, picHeight))
+                : Math.max(spec.getWidth(), spec.getHeight());
+        String sourcePath = chooseSource(picture, longest);
+        ThrowUtils.throwIf(StrUtil.isBlank(sourcePath), ErrorCode.NOT_FOUND, "图片文件不存在");
+        Path tempFile = null;
+        try {
+            tempFile = Files.createTempFile("render", ".tmp");
+            try (InputStream is = storage == MrsStorageType.OSS
+                    ? ossUtil.downloadInputStream(sourcePath)
+                    : minioUtil.downloadInputStream(sourcePath)) {
+                Files.copy(is, tempFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+            // 和上传共用解码许可，渲染不能把上传的内存挤掉
+            Dimension header = ImageUtil.readImageSize(tempFile);
+            long pixels = ImageUtil.getDecodedPixels(header.width, header.height, longest);
+            try (UploadAdmissionManager.UploadPermit ignored = uploadAdmissionManager.acquirePixels(pixels)) {
+                BufferedImage image = ImageUtil.decodeImage(tempFile, longest).getImage();
+                BufferedImage output = resize(image, spec);
+                byte[] bytes = ImageUtil.encodeImage(output, 1, pictureConfig.getRenderQuality(), spec.getFormat());
+                log.info("渲染图片 {} -> {}, 耗时{}ms", sourcePath, spec.getVariant(), System.currentTimeMillis() - start);
+                return bytes;
+            }
+        } catch (BusinessException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("渲染图片 {} 失败", sourcePath, e);
+            throw new BusinessException(ErrorCode.OPERATION_ERROR, "图片渲染失败");
+        } finally {
+            if (tempFile != null) {
+                deleteQuietly(tempFile);
+            }
+        }
+    }
+
+    /**
+     * 选择够用的最小派生图：缩略图够大就用缩略图，否则用默认图（和原图同尺寸）
+     */
+    private static String chooseSource(Picture picture, int longest) {
+        Integer picWidth = picture.getPicWidth();
+        Integer picHeight = picture.getPicHeight();
+        if (StrUtil.isNotBlank(picture.getThumbPath()) && picWidth != null && picHeight != null) {
+            int thumbLongest = Math.min(Math.max(picWidth, picHeight), THUMB_MAX_SIZE);
+            if (thumbLongest >= longest) {
+                return picture.getThumbPath();
+            }
+        }
+        if (StrUtil.isNotBlank(picture.getSavedPath())) {
+            return picture.getSavedPath();
+        }
+        return picture.getOriginalPath();
+    }
+
+    /**
+     * 按渲染参数缩放（只缩小不放大），cover时居中裁剪
+     */
+    private static BufferedImage resize(BufferedImage image, RenderSpec spec) throws IOException {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        double scale = spec.getScale(width, height);
+        int scaledWidth = Math.max(1, (int) Math.round(width * scale));
+        int scaledHeight = Math.max(1, (int) Math.round(height * scale));
+        BufferedImage output = (scaledWidth == width && scaledHeight == height)
+                ? image
+                : Thumbnails.of(image).forceSize(scaledWidth, scaledHeight).asBufferedImage();
+        if (spec.getFit() == MrsRenderFit.COVER && spec.getWidth() > 0 && spec.getHeight() > 0) {
+            int cropWidth = Math.min(spec.getWidth(), scaledWidth);
+            int cropHeight = Math.min(spec.getHeight(), scaledHeight);
+            if (cropWidth < scaledWidth || cropHeight < scaledHeight) {
+                output = output.getSubimage((scaledWidth - cropWidth) / 2, (scaledHeight - cropHeight) / 2,
+                        cropWidth, cropHeight);
+            }
+        }
+        // jpg不支持透明通道，铺白底
+        if ("jpg".equals(spec.getFormat()) && output.getColorModel().hasAlpha()) {
+            BufferedImage rgb = new BufferedImage(output.getWidth(), output.getHeight(), BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = rgb.createGraphics();
+            graphics.drawImage(output, 0, 0, Color.WHITE, null);
+            graphics.dispose();
+            output = rgb;
+        }
+        return output;
+    }
+
+    private byte[] readLocal(String key) {
+        Path file = diskCache.getIfPresent(key);
+        if (file == null) {
+            return null;
+        }
+        try {
+            return Files.readAllBytes(file);
+        } catch (IOException e) {
+            // 文件被外部删掉了
+            diskCache.invalidate(key);
+            return null;
+        }
+    }
+
+    private void writeLocal(String key, byte[] bytes) {
+        Path file = cacheDir.resolve(key.replace('/', '_'));
+        try {
+            Files.write(file, bytes);
+            diskCache.put(key, file);
+        } catch (IOException e) {
+            log.warn("写入渲染缓存 {} 失败", file, e);
+        }
+    }
+
+    private byte[] readObject(MrsStorageType storage, String objectPath) {
+        try {
+            if (storage == MrsStorageType.OSS) {
+                if (!ossUtil.exists(objectPath)) {
+                    return null;
+                }
+                try (InputStream is = ossUtil.downloadInputStream(objectPath)) {
+                    return is.readAllBytes();
+                }
+            }
+            if (!minioUtil.exists(objectPath)) {
+                return null;
+            }
+            try (InputStream is = minioUtil.downloadInputStream(objectPath)) {
+                return is.readAllBytes();
+            }
+        } catch (Exception e) {
+            log.warn("读取渲染结果 {} 失败", objectPath, e);
+            return null;
+        }
+    }
+
+    private String getRenderFolder() {
+        return MrsPathUtil.repairPath(PICTURE_PATH) + RENDER_FOLDER;
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("删除文件 {} 失败", file, e);
+        }
+    }
+
+    /**
+     * 渲染参数
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class RenderSpec {
+
+        /**
+         * 目标宽度，0表示按高度等比缩放
+         */
+        private final int width;
+
+        /**
+         * 目标高度，0表示按宽度等比缩放
+         */
+        private final int height;
+
+        /**
+         * 适应方式
+         */
+        private final MrsRenderFit fit;
+
+        /**
+         * 输出格式（webp、jpg、png）
+         */
+        private final String format;
+
+        /**
+         * 渲染结果的文件名（v1-320x0-contain.webp）
+         *
+         * @return 文件名
+         */
+        public String getVariant() {
+            return "v" + RENDER_VERSION + "-" + width + "x" + height + "-" + fit.getValue() + "." + format;
+        }
+
+        /**
+         * 内容类型
+         *
+         * @return MIME类型
+         */
+        public String getContentType() {
+            return "jpg".equals(format) ? "image/jpeg" : "image/" + format;
+        }
+
+        /**
+         * 相对于给定尺寸的缩放比例，只缩小不放大
+         *
+         * @param sourceWidth  源图宽度
+         * @param sourceHeight 源图高度
+         * @return 缩放比例（不超过1）
+         */
+        public double getScale(int sourceWidth, int sourceHeight) {
+            double scaleX = (double) width / sourceWidth;
+            double scaleY = (double) height / sourceHeight;
+            double scale;
+            if (width > 0 && height > 0) {
+                scale = fit == MrsRenderFit.COVER ? Math.max(scaleX, scaleY) : Math.min(scaleX, scaleY);
+            } else {
+                scale = width > 0 ? scaleX : scaleY;
+            }
+            return Math.min(scale, 1);
+        }
+    }
+}
@@ -9,6 +9,7 @@ import cloud.marisa.picturebackend.entity.dao.Picture;
 import cloud.marisa.picturebackend.enums.ReviewStatus;
 import cloud.marisa.picturebackend.enums.notice.MrsNoticeRead;
 import cloud.marisa.picturebackend.enums.notice.MrsNoticeType;
+import cloud.marisa.picturebackend.manager.cache.PicturePageCacheManager;
 import cloud.marisa.picturebackend.queue.OverflowStorageDao;
 import cloud.marisa.picturebackend.service.INoticeService;
 import cloud.marisa.picturebackend.service.IPictureService;
@@ -69,6 +70,12 @@ public class PictureReviewManager {
     @Resource
     private OverflowStorageDao<Picture> overflowStorage;
 
+    /**
+     * 图片分页结果的版本化缓存
+     */
+    @Resource
+    private PicturePageCacheManager picturePageCacheManager;
+
     // 每隔5秒尝试进行一次审核
     @Scheduled(cron = "0/5 * * * * ?")
     public void startConsumer() {
@@ -153,6 +160,7 @@ public class PictureReviewManager {
                 pictureService.removeCacheByKeys(ids);
                 pictureService.update(updateWrapper);
                 pictureService.delayRemoveCacheByKeys(ids);
+                picturePageCacheManager.bumpGeneration(picture.getSpaceId());
                 pushMessage(picture, reviewMessage);
                 break;
             }
@@ -0,0 +1,355 @@
+package cloud.marisa.picturebackend.manager.search;
+
+import cloud.marisa.picturebackend.entity.dao.Picture;
+import cloud.marisa.picturebackend.enums.ReviewStatus;
+import cloud.marisa.picturebackend.manager.cache.CacheInvalidationBus;
+import cloud.marisa.picturebackend.mapper.PictureMapper;
+import cloud.marisa.picturebackend.util.search.MrsHammingBkTree;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+/**
+ * <p>图片感知哈希的内存索引（以图搜图）</p>
+ * <p>每个空间一棵BK树，按汉明距离查询相似图片，不依赖外部服务；</p>
+ * <p>启动时从数据库全量构建，图片新增、删除、审核、移动后按ID重新加载并通知其它节点；</p>
+ * <p>失效的树节点不立即删除，查询时按最新的图片信息过滤，失效的太多时重建这个空间的树</p>
+ *
+ * @author MarisaDAZE
+ * @description 图片感知哈希索引
+ * @date 2025/4/28
+ */
+@Log4j2
+@Component
+@RequiredArgsConstructor
+public class PictureHashIndex {
+
+    /**
+     * 跨节点同步变更ID的主题
+     */
+    private static final String TOPIC = "picture-hash-index";
+
+    /**
+     * 重建时每批读取的图片数量
+     */
+    private static final int SCAN_BATCH_SIZE = 5000;
+
+    /**
+     * 一个空间的树中失效的节点超过这个数量，并且超过有效节点的一半时重建
+     */
+    private static final int MIN_STALE_TO_REBUILD = 1024;
+
+    private final PictureMapper pictureMapper;
+
+    private final CacheInvalidationBus cacheInvalidationBus;
+
+    /**
+     * 当前使用的索引，未构建完成前为null
+     */
+    private volatile Snapshot current;
+
+    /**
+     * 重建中的索引，重建期间的变更需要同时写入
+     */
+    private volatile Snapshot building;
+
+    private final AtomicBoolean rebuilding = new AtomicBoolean(false);
+
+    @PostConstruct
+    public void init() {
+        cacheInvalidationBus.subscribe(TOPIC, ids -> refreshLocal(ids.stream()
+                .map(Long::valueOf)
+                .collect(Collectors.toList())));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        CompletableFuture.runAsync(this::rebuild);
+    }
+
+    /**
+     * 每天凌晨4点半重建一次，清理所有失效的节点
+     */
+    @Scheduled(cron = "0 30 4 * * ?")
+    public void scheduledRebuild() {
+        rebuild();
+    }
+
+    /**
+     * 索引是否已经构建完成
+     *
+     * @return 是否可用
+     */
+    public boolean isReady() {
+        return current != null;
+    }
+
+    /**
+     * 查询空间内相似的图片
+     *
+     * @param hash        目标图片的感知哈希
+     * @param spaceId     空间ID（公共图库为0）
+     * @param passedOnly  是否只查审核通过的图片
+     * @param maxDistance 最大汉明距离
+     * @param limit       最多返回的数量
+     * @param excludeId   排除的图片ID（目标图片自己），可以为空
+     * @return 命中的图片，按距离从近到远排序
+     */
+    public List<Hit> search(long hash, long spaceId, boolean passedOnly, int maxDistance, int limit, Long excludeId) {
+        Snapshot snapshot = current;
+        if (snapshot == null) {
+            return new ArrayList<>();
+        }
+        SpaceTree space = snapshot.spaces.get(spaceId);
+        if (space == null) {
+            return new ArrayList<>();
+        }
+        // 同一个ID可能在树中出现多次（失效的旧节点），以最新的哈希为准
+        Map<Long, Integer> distances = new HashMap<>();
+        space.lock.readLock().lock();
+        try {
+            space.tree.search(hash, maxDistance, (id, ignored) -> {
+                IndexedPicture picture = snapshot.pictures.get(id);
+                if (picture == null || picture.spaceId != spaceId || Objects.equals(id, excludeId)) {
+                    return;
+                }
+                if (passedOnly && picture.reviewStatus != ReviewStatus.PASS.getValue()) {
+                    return;
+                }
+                int distance = Long.bitCount(picture.hash ^ hash);
+                if (distance <= maxDistance) {
+                    distances.put(id, distance);
+                }
+            });
+        } finally {
+            space.lock.readLock().unlock();
+        }
+        return distances.entrySet().stream()
+                .map(e -> new Hit(e.getKey(), e.getValue()))
+                .sorted(Comparator.comparingInt(Hit::getDistance)
+                        .thenComparing(Hit::getPictureId, Comparator.reverseOrder()))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 图片变更后调用（新增、删除、审核、移动空间、补算哈希），重新加载并通知其它节点
+     *
+     * @param pictureIds 图片ID
+     */
+    public void refresh(Collection<Long> pictureIds) {
+        if (pictureIds == null || pictureIds.isEmpty()) {
+            return;
+        }
+        refreshLocal(pictureIds);
+        cacheInvalidationBus.publish(TOPIC, pictureIds.stream()
+                .map(String::valueOf)
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * 从数据库全量重建索引
+     */
+    public void rebuild() {
+        if (!rebuilding.compareAndSet(false, true)) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            Snapshot snapshot = new Snapshot();
+            building = snapshot;
+            long lastId = 0L;
+            long total = 0L;
+            while (true) {
+                LambdaQueryWrapper<Picture> queryWrapper = indexQuery()
+                        .gt(Picture::getId, lastId)
+                        .orderByAsc(Picture::getId)
+                        .last("LIMIT " + SCAN_BATCH_SIZE);
+                List<Picture> pictures = pictureMapper.selectList(queryWrapper);
+                if (pictures.isEmpty()) {
+                    break;
+                }
+                pictures.forEach(snapshot::put);
+                total += pictures.size();
+                lastId = pictures.get(pictures.size() - 1).getId();
+                if (pictures.size() < SCAN_BATCH_SIZE) {
+                    break;
+                }
+            }
+            current = snapshot;
+            log.info("图片感知哈希索引构建完成, 共{}张图片, {}个空间, 耗时{}ms",
+                    total, snapshot.spaces.size(), System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.error("图片感知哈希索引构建失败", e);
+        } finally {
+            building = null;
+            rebuilding.set(false);
+        }
+    }
+
+    private void refreshLocal(Collection<Long> pictureIds) {
+        Snapshot snapshot = current;
+        Snapshot buildingSnapshot = building;
+        if (snapshot == null && buildingSnapshot == null) {
+            return;
+        }
+        try {
+            LambdaQueryWrapper<Picture> queryWrapper = indexQuery().in(Picture::getId, pictureIds);
+            Map<Long, Picture> pictures = pictureMapper.selectList(queryWrapper).stream()
+                    .collect(Collectors.toMap(Picture::getId, p -> p));
+            for (Long id : pictureIds) {
+                Picture picture = pictures.get(id);
+                for (Snapshot target : new Snapshot[]{snapshot, buildingSnapshot}) {
+                    if (target == null) {
+                        continue;
+                    }
+                    if (picture == null) {
+                        target.remove(id);
+                    } else {
+                        target.put(picture);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            log.error("刷新图片感知哈希索引失败: {}", pictureIds, e);
+        }
+    }
+
+    /**
+     * 索引需要的字段，只查有哈希的未删除图片
+     */
+    private static LambdaQueryWrapper<Picture> indexQuery() {
+        LambdaQueryWrapper<Picture> queryWrapper = new LambdaQueryWrapper<>();
+        queryWrapper.select(Picture::getId, Picture::getSpaceId, Picture::getReviewStatus, Picture::getPicHash)
+                .eq(Picture::getIsDelete, 0)
+                .isNotNull(Picture::getPicHash);
+        return queryWrapper;
+    }
+
+    /**
+     * 查询命中的图片
+     */
+    @Data
+    @AllArgsConstructor
+    public static class Hit {
+
+        /**
+         * 图片ID
+         */
+        private Long pictureId;
+
+        /**
+         * 和目标图片的汉明距离（0~64）
+         */
+        private Integer distance;
+    }
+
+    /**
+     * 索引中的图片信息
+     */
+    @AllArgsConstructor
+    private static class IndexedPicture {
+        private final long spaceId;
+        private final int reviewStatus;
+        private final long hash;
+    }
+
+    /**
+     * 一个空间的BK树
+     */
+    private static class SpaceTree {
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private MrsHammingBkTree tree = new MrsHammingBkTree();
+        /**
+         * 树中已经失效的节点数
+         */
+        private int stale;
+    }
+
+    /**
+     * 一份完整的索引
+     */
+    private static class Snapshot {
+
+        /**
+         * 图片ID -> 最新的图片信息
+         */
+        private final ConcurrentHashMap<Long, IndexedPicture> pictures = new ConcurrentHashMap<>();
+
+        /**
+         * 空间ID -> BK树
+         */
+        private final ConcurrentHashMap<Long, SpaceTree> spaces = new ConcurrentHashMap<>();
+
+        void put(Picture picture) {
+            long spaceId = picture.getSpaceId() == null ? 0L : picture.getSpaceId();
+            int reviewStatus = picture.getReviewStatus() == null ? 0 : picture.getReviewStatus();
+            long hash = picture.getPicHash();
+            IndexedPicture indexed = new IndexedPicture(spaceId, reviewStatus, hash);
+            SpaceTree space = spaces.computeIfAbsent(spaceId, k -> new SpaceTree());
+            IndexedPicture old;
+            space.lock.writeLock().lock();
+            try {
+                old = pictures.put(picture.getId(), indexed);
+                // 只是审核状态变了，树不用动
+                if (old != null && old.spaceId == spaceId && old.hash == hash) {
+                    return;
+                }
+                space.tree.add(hash, picture.getId());
+            } finally {
+                space.lock.writeLock().unlock();
+            }
+            if (old != null) {
+                markStale(old.spaceId);
+            }
+        }
+
+        void remove(Long pictureId) {
+            IndexedPicture old = pictures.remove(pictureId);
+            if (old != null) {
+                markStale(old.spaceId);
+            }
+        }
+
+        /**
+         * 记录一个失效的节点，失效的太多时用有效的图片重建这个空间的树
+         */
+        private void markStale(long spaceId) {
+            SpaceTree space = spaces.get(spaceId);
+            if (space == null) {
+                return;
+            }
+            space.lock.writeLock().lock();
+            try {
+                space.stale++;
+                if (space.stale < MIN_STALE_TO_REBUILD || space.stale * 2 < space.tree.size()) {
+                    return;
+                }
+                MrsHammingBkTree tree = new MrsHammingBkTree();
+                pictures.forEach((id, picture) -> {
+                    if (picture.spaceId == spaceId) {
+                        tree.add(picture.hash, id);
+                    }
+                });
+                space.tree = tree;
+                space.stale = 0;
+            } finally {
+                space.lock.writeLock().unlock();
+            }
+        }
+    }
+}
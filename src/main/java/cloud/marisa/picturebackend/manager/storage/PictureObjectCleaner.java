@@ -0,0 +1,55 @@
+package cloud.marisa.picturebackend.manager.storage;
+
+import cloud.marisa.picturebackend.service.IPictureObjectService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * <p>定时清理没有被引用的图片对象</p>
+ * <p>引用计数归零后保留一段时间，期间再次上传同一份文件还可以秒传</p>
+ *
+ * @author MarisaDAZE
+ * @description 图片对象清理
+ * @date 2025/4/28
+ */
+@Log4j2
+@Component
+@RequiredArgsConstructor
+public class PictureObjectCleaner {
+
+    /**
+     * 引用计数归零后的保留时间（分钟）
+     */
+    private static final int GRACE_MINUTES = 60;
+
+    /**
+     * 每批清理的数量
+     */
+    private static final int BATCH_SIZE = 100;
+
+    private final IPictureObjectService pictureObjectService;
+
+    /**
+     * 每10分钟清理一次，一次最多清理10批
+     */
+    @Scheduled(fixedDelay = 600000, initialDelay = 600000)
+    public void sweep() {
+        int total = 0;
+        try {
+            for (int i = 0; i < 10; i++) {
+                int swept = pictureObjectService.sweepUnreferenced(GRACE_MINUTES, BATCH_SIZE);
+                total += swept;
+                if (swept < BATCH_SIZE) {
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            log.error("清理图片对象失败", e);
+        }
+        if (total > 0) {
+            log.info("清理了{}个没有引用的图片对象", total);
+        }
+    }
+}
@@ -11,7 +11,6 @@ import cloud.marisa.picturebackend.util.ImageUtil;
 import cloud.marisa.picturebackend.util.MrsPathUtil;
 import cloud.marisa.picturebackend.util.colors.ColorUtils;
 import cn.hutool.core.io.unit.DataSize;
-import cn.hutool.http.HttpUtil;
 import com.alibaba.fastjson2.JSONObject;
 import com.aliyun.oss.model.GetObjectRequest;
 import com.aliyun.oss.model.OSSObject;
@@ -23,7 +22,6 @@ import java.awt.*;
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ThreadPoolExecutor;
 
@@ -59,6 +57,11 @@ public class AliyunPictureUploadURL extends AliyunPictureUploadManager {
      */
     private final ThreadPoolExecutor pictureUploadPoolExecutor;
 
+    /**
+     * 网络图片下载
+     */
+    private final PictureUrlFetcher pictureUrlFetcher;
+
     /**
      * 将文件上传到对应的文件服务器
      *
@@ -69,19 +72,51 @@ public class AliyunPictureUploadURL extends AliyunPictureUploadManager {
     public UploadPictureResult uploadPicture(
             Object inputSource,
             String savePath) {
+        return uploadPicture(inputSource, savePath, DataSize.parse(pictureConfig.getImageMaxSize()).toBytes());
+    }
+
+    /**
+     * 将文件上传到对应的文件服务器
+     *
+     * @param inputSource 要保存的文件对象
+     * @param savePath    保存全路径（/path/to/...）
+     * @param maxSize     下载的大小上限（字节）
+     * @return 图片基础信息
+     */
+    public UploadPictureResult uploadPicture(
+            Object inputSource,
+            String savePath,
+            long maxSize) {
         if (inputSource == null) {
             throw new BusinessException(ErrorCode.PARAMS_ERROR);
         }
+        // 边下载边写入临时文件，不会把整张图读进内存
+        Path tempFile = pictureUrlFetcher.download((String) inputSource, maxSize);
         try {
-            // 准备图片异步处理
-            Path tempFile = Files.createTempFile("upload-", ".tmp");
-            // 获取图片的输入流
-            InputStream inputStream = getPictureStream((String) inputSource);
-            try (inputStream) { // 复制流
-                Files.copy(inputStream, tempFile, StandardCopyOption.REPLACE_EXISTING);
+            return uploadLocalPicture(tempFile, savePath);
+        } finally {
+            try {
+                Files.deleteIfExists(tempFile);
+            } catch (IOException e) {
+                log.error("URL上传==>删除临时文件失败: ", e);
             }
+        }
+    }
+
+    /**
+     * 将已经下载到本地的图片上传到对应的文件服务器
+     *
+     * @param tempFile 本地临时文件（由调用方负责删除）
+     * @param savePath 保存全路径（/path/to/...）
+     * @return 图片基础信息
+     */
+    public UploadPictureResult uploadLocalPicture(Path tempFile, String savePath) {
+        try {
             // 解析基础信息
-            String imageType = ImageUtil.getImageTypePlus(Files.newInputStream(tempFile));
+            String imageType;
+            try (InputStream is = Files.newInputStream(tempFile)) {
+                imageType = ImageUtil.getImageTypePlus(is);
+            }
             log.info("URL上传==>图片类型: {}", imageType);
             String fileName = String.format("URL_%d.%s", System.currentTimeMillis(), imageType);
             log.info("URL上传==>图片名称: {}", fileName);
@@ -131,17 +166,6 @@ public class AliyunPictureUploadURL extends AliyunPictureUploadManager {
         }
     }
 
-    /**
-     * 根据URL获取图片的输入流
-     *
-     * @param url 图片URL
-     * @return 图片输入流
-     */
-    private InputStream getPictureStream(String url) {
-        byte[] bytes = HttpUtil.downloadBytes(url);
-        return new ByteArrayInputStream(bytes);
-    }
-
     /**
      * 上传缩略图文件到 文件服务器
      *
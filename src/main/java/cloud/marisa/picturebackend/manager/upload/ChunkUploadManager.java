@@ -0,0 +1,434 @@
+package cloud.marisa.picturebackend.manager.upload;
+
+import cloud.marisa.picturebackend.api.image.AliyunOssUtil;
+import cloud.marisa.picturebackend.config.PictureConfig;
+import cloud.marisa.picturebackend.entity.dao.Space;
+import cloud.marisa.picturebackend.entity.dto.file.StoredPictureSource;
+import cloud.marisa.picturebackend.entity.dto.picture.ChunkUploadInitRequest;
+import cloud.marisa.picturebackend.entity.vo.ChunkUploadVo;
+import cloud.marisa.picturebackend.enums.MrsStorageType;
+import cloud.marisa.picturebackend.exception.BusinessException;
+import cloud.marisa.picturebackend.exception.ErrorCode;
+import cloud.marisa.picturebackend.exception.ThrowUtils;
+import cloud.marisa.picturebackend.service.ISpaceService;
+import cloud.marisa.picturebackend.util.MinioUtil;
+import cloud.marisa.picturebackend.util.MrsPathUtil;
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.io.unit.DataSize;
+import cn.hutool.core.util.IdUtil;
+import cn.hutool.core.util.StrUtil;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.InputStream;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static cloud.marisa.picturebackend.common.Constants.CHUNK_UPLOAD_PREFIX;
+
+/**
+ * <p>分片上传（断点续传）</p>
+ * <p>直接使用对象存储的分片上传，每个分片收到后立刻写入对象存储，服务端不在内存或磁盘中拼接整个文件；</p>
+ * <p>会话和已上传的分片记录在Redis中，任意节点都可以接收分片，中断后可以查询状态并只补传缺少的分片</p>
+ * <p>1、init：创建会话和对象存储的分片上传</p>
+ * <p>2、part：上传一个分片（可以并发、乱序、重传）</p>
+ * <p>3、complete：合并分片，之后和普通上传一样生成派生图并保存图片（同一个会话同时只能有一个请求在合并和创建图片）</p>
+ * <p>4、abort：取消上传并清理对象存储上的分片</p>
+ * <p>会话24小时没有新分片会过期，过期会话在对象存储上残留的分片由存储桶的生命周期规则清理</p>
+ *
+ * @author MarisaDAZE
+ * @description 分片上传
+ * @date 2025/4/28
+ */
+@Log4j2
+@Component
+@RequiredArgsConstructor
+public class ChunkUploadManager {
+
+    /**
+     * 会话有效期（小时），每收到一个分片都会续期
+     */
+    private static final long SESSION_TTL_HOURS = 24;
+
+    /**
+     * 对象存储允许的最小分片（最后一片除外）
+     */
+    private static final long MIN_PART_SIZE = 5L * 1024 * 1024;
+
+    /**
+     * 对象存储允许的最大分片数
+     */
+    private static final int MAX_PART_COUNT = 10000;
+
+    /**
+     * 合并并创建图片的占用有效期（分钟），节点中途宕机时占用到期后可以重试
+     */
+    private static final long CLAIM_TTL_MINUTES = 10;
+
+    /**
+     * 阿里云OSS上合并后文件的临时链接有效期（分钟）
+     */
+    private static final long URL_EXPIRE_MINUTES = 30;
+
+    private static final String FIELD_USER_ID = "userId";
+    private static final String FIELD_STORAGE = "storage";
+    private static final String FIELD_OBJECT_KEY = "objectKey";
+    private static final String FIELD_STORAGE_UPLOAD_ID = "storageUploadId";
+    private static final String FIELD_FILE_NAME = "fileName";
+    private static final String FIELD_SIZE = "size";
+    private static final String FIELD_PART_SIZE = "partSize";
+    private static final String FIELD_PART_COUNT = "partCount";
+    private static final String FIELD_ASSEMBLED = "assembled";
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final PictureConfig pictureConfig;
+
+    private final ISpaceService spaceService;
+
+    private final MinioUtil minioUtil;
+
+    private final AliyunOssUtil ossUtil;
+
+    private final UploadAdmissionManager uploadAdmissionManager;
+
+    /**
+     * 图片在文件服务器上的目录
+     */
+    @Value("${minio.folders.pictures}")
+    private String PICTURE_PATH;
+
+    /**
+     * 是否上传到阿里云OSS
+     */
+    @Value("${mrs.file.picture.is-use-oss:false}")
+    private Boolean useOss;
+
+    /**
+     * 创建分片上传
+     *
+     * @param request 文件信息
+     * @param userId  当前用户ID
+     * @return 分片上传状态（包含分片大小和分片数）
+     */
+    public ChunkUploadVo init(ChunkUploadInitRequest request, Long userId) {
+        ThrowUtils.throwIf(request == null, ErrorCode.PARAMS_ERROR);
+        String fileName = request.getFileName();
+        Long size = request.getSize();
+        ThrowUtils.throwIf(StrUtil.isBlank(fileName), ErrorCode.PARAMS_ERROR, "文件名为空");
+        ThrowUtils.throwIf(fileName.length() > 128, ErrorCode.PARAMS_ERROR, "文件名过长");
+        ThrowUtils.throwIf(size == null || size <= 0, ErrorCode.PARAMS_ERROR, "文件为空");
+        long maxSize = DataSize.parse(pictureConfig.getChunkMaxSize()).toBytes();
+        if (size > maxSize) {
+            throw new BusinessException(ErrorCode.PARAMS_ERROR, "文件最大不能超过" + pictureConfig.getChunkMaxSize());
+        }
+        String suffix = FileUtil.getSuffix(fileName);
+        boolean allowed = pictureConfig.getImageSuffix().stream()
+                .map(sfx -> sfx.startsWith(".") ? sfx.substring(1) : sfx)
+                .anyMatch(s -> s.equalsIgnoreCase(suffix));
+        if (!allowed) {
+            throw new BusinessException(ErrorCode.PARAMS_ERROR, "不支持的文件类型 ." + suffix);
+        }
+        // 空间容量不足的话，没必要让客户端上传完再失败
+        Long spaceId = request.getSpaceId();
+        if (spaceId != null && spaceId > 0) {
+            Space space = spaceService.getSpaceByIdCache(spaceId);
+            ThrowUtils.throwIf(space == null, ErrorCode.NOT_FOUND, "空间不存在");
+            if (space.getTotalSize() + size > space.getMaxSize()) {
+                throw new BusinessException(ErrorCode.OPERATION_ERROR, "空间容量不足");
+            }
+            if (space.getTotalCount() + 1 > space.getMaxCount()) {
+                throw new BusinessException(ErrorCode.OPERATION_ERROR, "剩余可用数不足");
+            }
+        }
+        // 分片数超过上限时加大分片
+        long partSize = Math.max(DataSize.parse(pictureConfig.getChunkPartSize()).toBytes(), MIN_PART_SIZE);
+        partSize = Math.max(partSize, (size + MAX_PART_COUNT - 1) / MAX_PART_COUNT);
+        int partCount = (int) ((size + partSize - 1) / partSize);
+        String uploadId = IdUtil.fastSimpleUUID();
+        MrsStorageType storage = (useOss != null && useOss) ? MrsStorageType.OSS : MrsStorageType.MINIO;
+        String objectKey = MrsPathUtil.repairPath(PICTURE_PATH) + "chunk/" + uploadId + "." + suffix.toLowerCase();
+        String storageUploadId;
+        try {
+            storageUploadId = storage == MrsStorageType.OSS
+                    ? ossUtil.initiateMultipartUpload(objectKey)
+                    : minioUtil.createMultipartUpload(objectKey);
+        } catch (Exception e) {
+            log.error("创建分片上传失败 {}", objectKey, e);
+            throw new BusinessException(ErrorCode.OPERATION_ERROR, "创建分片上传失败");
+        }
+        Map<String, String> session = new HashMap<>();
+        session.put(FIELD_USER_ID, String.valueOf(userId));
+        session.put(FIELD_STORAGE, String.valueOf(storage.getValue()));
+        session.put(FIELD_OBJECT_KEY, objectKey);
+        session.put(FIELD_STORAGE_UPLOAD_ID, storageUploadId);
+        session.put(FIELD_FILE_NAME, fileName);
+        session.put(FIELD_SIZE, String.valueOf(size));
+        session.put(FIELD_PART_SIZE, String.valueOf(partSize));
+        session.put(FIELD_PART_COUNT, String.valueOf(partCount));
+        session.put(FIELD_ASSEMBLED, "0");
+        String sessionKey = CHUNK_UPLOAD_PREFIX + uploadId;
+        stringRedisTemplate.opsForHash().putAll(sessionKey, session);
+        stringRedisTemplate.expire(sessionKey, SESSION_TTL_HOURS, TimeUnit.HOURS);
+        log.info("创建分片上传 {}, 文件 {}, 大小 {}, 分片 {}x{}", uploadId, fileName, size, partCount, partSize);
+        return toVo(uploadId, session, Collections.emptyList());
+    }
+
+    /**
+     * 查询分片上传的状态（断点续传时使用）
+     *
+     * @param uploadId 分片上传ID
+     * @param userId   当前用户ID
+     * @return 分片上传状态
+     */
+    public ChunkUploadVo status(String uploadId, Long userId) {
+        Map<String, String> session = getSession(uploadId, userId);
+        return toVo(uploadId, session, getUploadedParts(uploadId));
+    }
+
+    /**
+     * 上传一个分片，分片直接写入对象存储
+     * <p>同一个分片重复上传时以最后一次为准</p>
+     *
+     * @param uploadId   分片上传ID
+     * @param partNumber 分片序号（从1开始）
+     * @param is         分片内容
+     * @param length     分片大小（请求的Content-Length）
+     * @param userId     当前用户ID
+     */
+    public void uploadPart(String uploadId, Integer partNumber, InputStream is, long length, Long userId) {
+        Map<String, String> session = getSession(uploadId, userId);
+        ThrowUtils.throwIf("1".equals(session.get(FIELD_ASSEMBLED)), ErrorCode.OPERATION_ERROR, "分片已合并");
+        int partCount = Integer.parseInt(session.get(FIELD_PART_COUNT));
+        ThrowUtils.throwIf(partNumber == null || partNumber < 1 || partNumber > partCount,
+                ErrorCode.PARAMS_ERROR, "非法的分片序号");
+        // 除最后一片外，每片大小必须等于分片大小
+        long size = Long.parseLong(session.get(FIELD_SIZE));
+        long partSize = Long.parseLong(session.get(FIELD_PART_SIZE));
+        long expected = partNumber < partCount ? partSize : size - partSize * (partCount - 1);
+        if (length != expected) {
+            throw new BusinessException(ErrorCode.PARAMS_ERROR, "分片大小错误，应为" + expected);
+        }
+        String objectKey = session.get(FIELD_OBJECT_KEY);
+        String storageUploadId = session.get(FIELD_STORAGE_UPLOAD_ID);
+        String etag;
+        try (UploadAdmissionManager.UploadPermit ignored = uploadAdmissionManager.acquireBytes(userId, length)) {
+            etag = isOss(session)
+                    ? ossUtil.uploadPart(objectKey, storageUploadId, partNumber, is, length)
+                    : minioUtil.uploadPart(objectKey, storageUploadId, partNumber, is, length);
+        } catch (BusinessException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("分片上传失败 {}#{}", uploadId, partNumber, e);
+            throw new BusinessException(ErrorCode.OPERATION_ERROR, "分片上传失败");
+        }
+        String sessionKey = CHUNK_UPLOAD_PREFIX + uploadId;
+        String partsKey = getPartsKey(uploadId);
+        stringRedisTemplate.opsForHash().put(partsKey, String.valueOf(partNumber), etag);
+        stringRedisTemplate.expire(sessionKey, SESSION_TTL_HOURS, TimeUnit.HOURS);
+        stringRedisTemplate.expire(partsKey, SESSION_TTL_HOURS, TimeUnit.HOURS);
+    }
+
+    /**
+     * 合并分片
+     * <p>合并后的文件放在临时目录（chunk/）下，创建图片时复制到所在空间的图片目录下作为原图，
+     * 重复调用时不会再次合并（创建图片失败后可以直接重试）</p>
+     * <p>调用前先原子地占用会话，同一个会话同时只能有一个请求在合并和创建图片，否则会创建出两张图片；
+     * 占用在{@link #finish}时结束，创建图片失败时要调用{@link #release}释放</p>
+     *
+     * @param uploadId 分片上传ID
+     * @param userId   当前用户ID
+     * @return 合并后的文件
+     */
+    public StoredPictureSource complete(String uploadId, Long userId) {
+        Map<String, String> session = getSession(uploadId, userId);
+        claim(uploadId);
+        try {
+            return assemble(uploadId, session);
+        } catch (RuntimeException e) {
+            release(uploadId);
+            throw e;
+        }
+    }
+
+    /**
+     * 创建图片失败后释放占用，之后可以重试
+     *
+     * @param uploadId 分片上传ID
+     */
+    public void release(String uploadId) {
+        stringRedisTemplate.delete(getClaimKey(uploadId));
+    }
+
+    /**
+     * 原子地占用会话（SET NX），已经被占用时拒绝
+     * <p>占用单独放一个带过期时间的键，节点中途宕机也不会让会话一直无法完成</p>
+     *
+     * @param uploadId 分片上传ID
+     */
+    private void claim(String uploadId) {
+        Boolean claimed = stringRedisTemplate.opsForValue()
+                .setIfAbsent(getClaimKey(uploadId), "1", CLAIM_TTL_MINUTES, TimeUnit.MINUTES);
+        ThrowUtils.throwIf(!Boolean.TRUE.equals(claimed), ErrorCode.OPERATION_ERROR, "正在合并分片，请勿重复提交");
+    }
+
+    /**
+     * 合并分片（已经合并过的直接返回）
+     *
+     * @param uploadId 分片上传ID
+     * @param session  会话信息
+     * @return 合并后的文件
+     */
+    private StoredPictureSource assemble(String uploadId, Map<String, String> session) {
+        String objectKey = session.get(FIELD_OBJECT_KEY);
+        if (!"1".equals(session.get(FIELD_ASSEMBLED))) {
+            int partCount = Integer.parseInt(session.get(FIELD_PART_COUNT));
+            Map<Object, Object> parts = stringRedisTemplate.opsForHash().entries(getPartsKey(uploadId));
+            SortedMap<Integer, String> etags = new TreeMap<>();
+            parts.forEach((k, v) -> etags.put(Integer.parseInt((String) k), (String) v));
+            if (etags.size() != partCount) {
+                throw new BusinessException(ErrorCode.PARAMS_ERROR,
+                        "分片未上传完整（" + etags.size() + "/" + partCount + "）");
+            }
+            String storageUploadId = session.get(FIELD_STORAGE_UPLOAD_ID);
+            try {
+                if (isOss(session)) {
+                    ossUtil.completeMultipartUpload(objectKey, storageUploadId, etags);
+                } else {
+                    minioUtil.completeMultipartUpload(objectKey, storageUploadId, etags);
+                }
+            } catch (Exception e) {
+                log.error("合并分片失败 {}", uploadId, e);
+                throw new BusinessException(ErrorCode.OPERATION_ERROR, "合并分片失败");
+            }
+            stringRedisTemplate.opsForHash().put(CHUNK_UPLOAD_PREFIX + uploadId, FIELD_ASSEMBLED, "1");
+            log.info("分片合并完成 {}, 文件 {}", uploadId, objectKey);
+        }
+        String fileName = session.get(FIELD_FILE_NAME);
+        StoredPictureSource source = new StoredPictureSource(
+                Integer.parseInt(session.get(FIELD_STORAGE)),
+                objectKey,
+                FileUtil.mainName(fileName),
+                Long.parseLong(session.get(FIELD_SIZE)),
+                null,
+                true);
+        if (isOss(session)) {
+            source.setUrl(ossUtil.generatePresignedUrl(objectKey, URL_EXPIRE_MINUTES, TimeUnit.MINUTES));
+        }
+        return source;
+    }
+
+    /**
+     * 图片创建成功后结束会话
+     * <p>合并后的文件已经复制（MinIO）或重新上传（阿里云OSS）到图片目录下了，可以删除</p>
+     *
+     * @param uploadId 分片上传ID
+     * @param userId   当前用户ID
+     */
+    public void finish(String uploadId, Long userId) {
+        Map<String, String> session = getSession(uploadId, userId);
+        String objectKey = session.get(FIELD_OBJECT_KEY);
+        try {
+            if (isOss(session)) {
+                ossUtil.removeFile(objectKey);
+            } else {
+                minioUtil.delete(objectKey);
+            }
+        } catch (Exception e) {
+            log.warn("删除合并后的文件失败 {}", uploadId, e);
+        }
+        removeSession(uploadId);
+    }
+
+    /**
+     * 取消分片上传，清理对象存储上的分片或已合并的文件
+     *
+     * @param uploadId 分片上传ID
+     * @param userId   当前用户ID
+     */
+    public void abort(String uploadId, Long userId) {
+        Map<String, String> session = getSession(uploadId, userId);
+        // 正在创建图片时不能删除合并后的文件
+        ThrowUtils.throwIf(Boolean.TRUE.equals(stringRedisTemplate.hasKey(getClaimKey(uploadId))),
+                ErrorCode.OPERATION_ERROR, "正在合并分片，无法取消");
+        String objectKey = session.get(FIELD_OBJECT_KEY);
+        boolean oss = isOss(session);
+        try {
+            if ("1".equals(session.get(FIELD_ASSEMBLED))) {
+                if (oss) {
+                    ossUtil.removeFile(objectKey);
+                } else {
+                    minioUtil.delete(objectKey);
+                }
+            } else {
+                String storageUploadId = session.get(FIELD_STORAGE_UPLOAD_ID);
+                if (oss) {
+                    ossUtil.abortMultipartUpload(objectKey, storageUploadId);
+                } else {
+                    minioUtil.abortMultipartUpload(objectKey, storageUploadId);
+                }
+            }
+        } catch (Exception e) {
+            // 清理失败不影响取消，残留的分片由生命周期规则兜底
+            log.warn("取消分片上传时清理失败 {}", uploadId, e);
+        }
+        removeSession(uploadId);
+    }
+
+    /**
+     * 读取会话并校验所有者
+     *
+     * @param uploadId 分片上传ID
+     * @param userId   当前用户ID
+     * @return 会话信息
+     */
+    private Map<String, String> getSession(String uploadId, Long userId) {
+        ThrowUtils.throwIf(StrUtil.isBlank(uploadId), ErrorCode.PARAMS_ERROR);
+        Map<Object, Object> entries = stringRedisTemplate.opsForHash().entries(CHUNK_UPLOAD_PREFIX + uploadId);
+        ThrowUtils.throwIf(entries.isEmpty(), ErrorCode.NOT_FOUND, "上传任务不存在或已过期");
+        Map<String, String> session = new HashMap<>(entries.size());
+        entries.forEach((k, v) -> session.put((String) k, (String) v));
+        ThrowUtils.throwIf(!Objects.equals(session.get(FIELD_USER_ID), String.valueOf(userId)),
+                ErrorCode.NOT_FOUND, "上传任务不存在或已过期");
+        return session;
+    }
+
+    private void removeSession(String uploadId) {
+        stringRedisTemplate.delete(Arrays.asList(
+                CHUNK_UPLOAD_PREFIX + uploadId, getPartsKey(uploadId), getClaimKey(uploadId)));
+    }
+
+    private List<Integer> getUploadedParts(String uploadId) {
+        return stringRedisTemplate.opsForHash().keys(getPartsKey(uploadId)).stream()
+                .map(k -> Integer.parseInt((String) k))
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    private ChunkUploadVo toVo(String uploadId, Map<String, String> session, List<Integer> uploadedParts) {
+        ChunkUploadVo vo = new ChunkUploadVo();
+        vo.setUploadId(uploadId);
+        vo.setSize(Long.parseLong(session.get(FIELD_SIZE)));
+        vo.setPartSize(Long.parseLong(session.get(FIELD_PART_SIZE)));
+        vo.setPartCount(Integer.parseInt(session.get(FIELD_PART_COUNT)));
+        vo.setUploadedParts(uploadedParts);
+        vo.setAssembled("1".equals(session.get(FIELD_ASSEMBLED)));
+        return vo;
+    }
+
+    private boolean isOss(Map<String, String> session) {
+        return String.valueOf(MrsStorageType.OSS.getValue()).equals(session.get(FIELD_STORAGE));
+    }
+
+    private static String getPartsKey(String uploadId) {
+        return CHUNK_UPLOAD_PREFIX + uploadId + ":parts";
+    }
+
+    private static String getClaimKey(String uploadId) {
+        return CHUNK_UPLOAD_PREFIX + uploadId + ":claim";
+    }
+}
@@ -0,0 +1,192 @@
+package cloud.marisa.picturebackend.manager.upload;
+
+import cloud.marisa.picturebackend.entity.dao.PictureObject;
+import cloud.marisa.picturebackend.entity.dto.picture.PictureHashCheckRequest;
+import cloud.marisa.picturebackend.entity.vo.PictureHashCheckVo;
+import cloud.marisa.picturebackend.exception.BusinessException;
+import cloud.marisa.picturebackend.exception.ErrorCode;
+import cloud.marisa.picturebackend.exception.ThrowUtils;
+import cloud.marisa.picturebackend.service.IPictureObjectService;
+import cn.hutool.core.util.IdUtil;
+import cn.hutool.core.util.RandomUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.crypto.digest.MD5;
+import cn.hutool.json.JSONUtil;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static cloud.marisa.picturebackend.common.Constants.INSTANT_UPLOAD_TOKEN_PREFIX;
+
+/**
+ * <p>客户端秒传的握手</p>
+ * <p>1、预检：客户端提交文件的MD5和大小，服务端返回哪些文件已经存在；</p>
+ * <p>对已存在的文件，返回一个凭证和原图中的一个随机区间</p>
+ * <p>2、秒传：客户端提交凭证和该区间的MD5，校验通过后直接引用已有的文件创建图片，不用再上传文件</p>
+ * <p>区间校验是为了证明客户端确实持有这个文件，否则只凭一个MD5就能拿到别人的图片</p>
+ *
+ * @author MarisaDAZE
+ * @description 秒传握手
+ * @date 2025/4/28
+ */
+@Log4j2
+@Component
+@RequiredArgsConstructor
+public class InstantUploadManager {
+
+    /**
+     * 单次预检最多的文件数
+     */
+    private static final int MAX_CHECK_ITEMS = 500;
+
+    /**
+     * 校验区间的最大长度（Byte）
+     */
+    private static final int PROOF_LENGTH = 4096;
+
+    /**
+     * 凭证有效期（分钟）
+     */
+    private static final long TOKEN_TTL_MINUTES = 10;
+
+    private final IPictureObjectService pictureObjectService;
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 预检：哪些文件服务端已经有了
+     *
+     * @param request 客户端计算好的文件哈希
+     * @param userId  当前用户ID
+     * @return 每个文件的预检结果（顺序与请求一致）
+     */
+    public List<PictureHashCheckVo> check(PictureHashCheckRequest request, Long userId) {
+        List<PictureHashCheckRequest.Item> items = request == null ? null : request.getItems();
+        ThrowUtils.throwIf(items == null || items.isEmpty(), ErrorCode.PARAMS_ERROR);
+        ThrowUtils.throwIf(items.size() > MAX_CHECK_ITEMS, ErrorCode.PARAMS_ERROR, "单次最多检查" + MAX_CHECK_ITEMS + "个文件");
+        // 一次查出所有已存在的对象
+        List<String> md5s = items.stream()
+                .map(PictureHashCheckRequest.Item::getMd5)
+                .filter(StrUtil::isNotBlank)
+                .map(String::toLowerCase)
+                .distinct()
+                .collect(Collectors.toList());
+        Map<String, PictureObject> objects = pictureObjectService.getByHashes(md5s);
+        List<PictureHashCheckVo> result = new ArrayList<>(items.size());
+        // 签发的凭证 key -> 凭证内容，最后一次管道写入
+        Map<String, String> tickets = new HashMap<>();
+        for (PictureHashCheckRequest.Item item : items) {
+            PictureHashCheckVo vo = new PictureHashCheckVo();
+            String md5 = StrUtil.isBlank(item.getMd5()) ? null : item.getMd5().toLowerCase();
+            vo.setMd5(md5);
+            vo.setSize(item.getSize());
+            PictureObject object = md5 == null ? null : objects.get(md5);
+            boolean exists = object != null
+                    && object.getRefCount() != null && object.getRefCount() > 0
+                    && Objects.equals(object.getPicSize(), item.getSize());
+            vo.setExists(exists);
+            if (exists) {
+                issueToken(vo, object, userId, tickets);
+            }
+            result.add(vo);
+        }
+        saveTickets(tickets);
+        return result;
+    }
+
+    /**
+     * 秒传：校验凭证和区间MD5，返回要引用的对象
+     * <p>凭证只能使用一次</p>
+     *
+     * @param token  预检时返回的凭证
+     * @param proof  校验区间的MD5
+     * @param userId 当前用户ID
+     * @return 要引用的对象
+     */
+    public PictureObject verify(String token, String proof, Long userId) {
+        ThrowUtils.throwIf(StrUtil.hasBlank(token, proof), ErrorCode.PARAMS_ERROR);
+        String json = stringRedisTemplate.opsForValue().getAndDelete(INSTANT_UPLOAD_TOKEN_PREFIX + token);
+        ThrowUtils.throwIf(json == null, ErrorCode.PARAMS_ERROR, "秒传凭证无效或已过期");
+        InstantUploadTicket ticket = JSONUtil.toBean(json, InstantUploadTicket.class);
+        ThrowUtils.throwIf(!Objects.equals(ticket.getUserId(), userId), ErrorCode.PARAMS_ERROR, "秒传凭证无效或已过期");
+        PictureObject object = pictureObjectService.getById(ticket.getObjectId());
+        if (object == null || !Objects.equals(object.getMd5(), ticket.getMd5())) {
+            throw new BusinessException(ErrorCode.NOT_FOUND, "文件已失效，请重新上传");
+        }
+        // 读取原图中的同一段，比较MD5
+        byte[] bytes = pictureObjectService.readOriginalRange(object, ticket.getOffset(), ticket.getLength());
+        String expected = MD5.create().digestHex(bytes);
+        if (!expected.equalsIgnoreCase(proof)) {
+            log.warn("秒传校验失败, 用户 {}, 文件 {}", userId, object.getMd5());
+            throw new BusinessException(ErrorCode.PARAMS_ERROR, "文件校验失败");
+        }
+        return object;
+    }
+
+    /**
+     * 为已存在的文件签发凭证，并随机选择一个校验区间
+     *
+     * @param vo      预检结果
+     * @param object  已存在的对象
+     * @param userId  当前用户ID
+     * @param tickets 待写入的凭证（key -> 凭证内容）
+     */
+    private void issueToken(PictureHashCheckVo vo, PictureObject object, Long userId, Map<String, String> tickets) {
+        long size = object.getPicSize();
+        int length = (int) Math.min(size, PROOF_LENGTH);
+        long offset = size > length ? RandomUtil.randomLong(size - length + 1) : 0L;
+        InstantUploadTicket ticket = new InstantUploadTicket();
+        ticket.setUserId(userId);
+        ticket.setObjectId(object.getId());
+        ticket.setMd5(object.getMd5());
+        ticket.setOffset(offset);
+        ticket.setLength(length);
+        String token = IdUtil.fastSimpleUUID();
+        tickets.put(INSTANT_UPLOAD_TOKEN_PREFIX + token, JSONUtil.toJsonStr(ticket));
+        vo.setToken(token);
+        vo.setOffset(offset);
+        vo.setLength((long) length);
+    }
+
+    /**
+     * 通过一次管道批量写入凭证（各自带过期时间），一次预检最多签发几百个凭证，不逐个往返Redis
+     *
+     * @param tickets key -> 凭证内容
+     */
+    private void saveTickets(Map<String, String> tickets) {
+        if (tickets.isEmpty()) {
+            return;
+        }
+        RedisSerializer<String> serializer = stringRedisTemplate.getStringSerializer();
+        long ttlSeconds = TimeUnit.MINUTES.toSeconds(TOKEN_TTL_MINUTES);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            tickets.forEach((key, json) ->
+                    connection.stringCommands().setEx(serializer.serialize(key), ttlSeconds, serializer.serialize(json)));
+            return null;
+        });
+    }
+
+    /**
+     * 秒传凭证的内容
+     */
+    @Data
+    public static class InstantUploadTicket {
+        private Long userId;
+        private Long objectId;
+        private String md5;
+        private Long offset;
+        private Integer length;
+    }
+}
@@ -0,0 +1,377 @@
+package cloud.marisa.picturebackend.manager.upload;
+
+import cloud.marisa.picturebackend.entity.dao.Picture;
+import cloud.marisa.picturebackend.entity.dao.PictureObject;
+import cloud.marisa.picturebackend.entity.dao.PictureProcessJob;
+import cloud.marisa.picturebackend.entity.dto.file.StoredPictureSource;
+import cloud.marisa.picturebackend.entity.dto.file.UploadPictureResult;
+import cloud.marisa.picturebackend.enums.MrsStorageType;
+import cloud.marisa.picturebackend.enums.PictureProcessStatus;
+import cloud.marisa.picturebackend.exception.TooManyRequestsException;
+import cloud.marisa.picturebackend.manager.cache.PicturePageCacheManager;
+import cloud.marisa.picturebackend.manager.search.PictureHashIndex;
+import cloud.marisa.picturebackend.mapper.PictureMapper;
+import cloud.marisa.picturebackend.mapper.PictureProcessJobMapper;
+import cloud.marisa.picturebackend.service.IPictureObjectService;
+import cloud.marisa.picturebackend.service.IPicturePaletteService;
+import cloud.marisa.picturebackend.upload.picture.PictureStoredObjectUpload;
+import cloud.marisa.picturebackend.util.cache.MrsCacheUtil;
+import cloud.marisa.picturebackend.util.cache.MrsTwoLevelCache;
+import cn.hutool.core.date.DateUtil;
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.util.IdUtil;
+import cn.hutool.core.util.StrUtil;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.stream.Collectors;
+
+import static cloud.marisa.picturebackend.common.Constants.PICTURE_CACHE_NAME;
+import static cloud.marisa.picturebackend.service.impl.PictureServiceImpl.PICTURE_ID;
+
+/**
+ * <p>图片的后台处理</p>
+ * <p>上传时只保存原图（同步拿到原图URL、名称、大小、宽高和MD5），默认图、缩略图、主色调和调色板在这里生成；</p>
+ * <p>任务保存在数据库中，和图片在同一个事务里提交，服务重启或宕机后不会丢失；</p>
+ * <p>事务提交后立即交给本节点的线程池执行，线程池满了或执行失败时由定时扫描重新拉起，多个节点通过条件更新抢占任务</p>
+ * <p>任务按图片对象（同一份文件）执行，完成后回填对象和所有引用它的图片</p>
+ *
+ * @author MarisaDAZE
+ * @description 图片后台处理
+ * @date 2025/4/28
+ */
+@Log4j2
+@Component
+@RequiredArgsConstructor
+public class PictureProcessManager {
+
+    /**
+     * 最多执行次数，超过后标记为处理失败（图片继续使用原图）
+     */
+    private static final int MAX_ATTEMPTS = 5;
+
+    /**
+     * 重试的基础间隔（秒），每次失败翻倍
+     */
+    private static final int RETRY_BASE_SECONDS = 30;
+
+    /**
+     * 节点繁忙（解码预算不足）时推迟执行的间隔（秒），不计入执行次数
+     */
+    private static final int BUSY_RETRY_SECONDS = 15;
+
+    /**
+     * 执行中的任务超过这个时间（分钟）没有完成，视为执行者已经宕机
+     */
+    private static final int STALE_MINUTES = 10;
+
+    /**
+     * 每次扫描最多拉起的任务数
+     */
+    private static final int SCAN_BATCH_SIZE = 20;
+
+    private final PictureProcessJobMapper jobMapper;
+
+    private final PictureMapper pictureMapper;
+
+    private final IPictureObjectService pictureObjectService;
+
+    private final IPicturePaletteService picturePaletteService;
+
+    private final PictureStoredObjectUpload pictureStoredObjectUpload;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final MrsTwoLevelCache<Picture> pictureCache;
+
+    private final RedisTemplate<String, Object> redisTemplate;
+
+    private final PicturePageCacheManager picturePageCacheManager;
+
+    private final PictureHashIndex pictureHashIndex;
+
+    private final ThreadPoolExecutor pictureProcessPoolExecutor;
+
+    /**
+     * 提交处理任务（应在保存图片的事务中调用）
+     * <p>同一个对象重复提交时只保留一个任务，事务提交后才开始执行</p>
+     *
+     * @param object 待处理的图片对象
+     */
+    public void submit(PictureObject object) {
+        if (object == null || !Objects.equals(object.getProcessStatus(), PictureProcessStatus.PROCESSING.getValue())) {
+            return;
+        }
+        PictureProcessJob job = new PictureProcessJob();
+        job.setId(IdUtil.getSnowflakeNextId());
+        job.setObjectId(object.getId());
+        jobMapper.insertIgnore(job);
+        Long objectId = object.getId();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    dispatch(objectId);
+                }
+            });
+        } else {
+            dispatch(objectId);
+        }
+    }
+
+    /**
+     * 每5秒拉起到期的任务，以及宕机节点遗留的任务
+     */
+    @Scheduled(fixedDelay = 5000, initialDelay = 10000)
+    public void scanJobs() {
+        if (pictureProcessPoolExecutor.getQueue().remainingCapacity() == 0) {
+            return;
+        }
+        try {
+            List<Long> objectIds = jobMapper.selectRunnable(staleBefore(), SCAN_BATCH_SIZE);
+            objectIds.forEach(this::dispatch);
+        } catch (Exception e) {
+            log.error("扫描图片处理任务失败", e);
+        }
+    }
+
+    /**
+     * 每5分钟修复处理状态落后的图片
+     * <p>图片引用对象时对象还在处理中，但图片所在事务晚于回填提交，会错过回填</p>
+     */
+    @Scheduled(fixedDelay = 300000, initialDelay = 60000)
+    public void repairPictures() {
+        try {
+            LambdaQueryWrapper<Picture> queryWrapper = new LambdaQueryWrapper<>();
+            queryWrapper.select(Picture::getMd5)
+                    .eq(Picture::getProcessStatus, PictureProcessStatus.PROCESSING.getValue())
+                    .lt(Picture::getEditTime, DateUtil.offsetMinute(new Date(), -STALE_MINUTES))
+                    .last("LIMIT 100");
+            Set<String> md5s = pictureMapper.selectList(queryWrapper).stream()
+                    .map(Picture::getMd5)
+                    .filter(StrUtil::isNotBlank)
+                    .collect(Collectors.toSet());
+            for (PictureObject object : pictureObjectService.getByHashes(md5s).values()) {
+                if (!Objects.equals(object.getProcessStatus(), PictureProcessStatus.PROCESSING.getValue())) {
+                    applyToPictures(object);
+                }
+            }
+        } catch (Exception e) {
+            log.error("修复图片处理状态失败", e);
+        }
+    }
+
+    /**
+     * 交给线程池执行，线程池满了就等下次扫描
+     *
+     * @param objectId 对象ID
+     */
+    private void dispatch(Long objectId) {
+        try {
+            pictureProcessPoolExecutor.execute(() -> runJob(objectId));
+        } catch (RejectedExecutionException e) {
+            log.debug("图片处理线程池已满，任务 {} 等待下次扫描", objectId);
+        }
+    }
+
+    /**
+     * 抢占并执行任务
+     *
+     * @param objectId 对象ID
+     */
+    private void runJob(Long objectId) {
+        if (jobMapper.claim(objectId, staleBefore()) == 0) {
+            return;
+        }
+        PictureObject object = pictureObjectService.getById(objectId);
+        // 对象已经被清理了，或者已经处理过了
+        if (object == null || !Objects.equals(object.getProcessStatus(), PictureProcessStatus.PROCESSING.getValue())) {
+            deleteJob(objectId);
+            return;
+        }
+        long start = System.currentTimeMillis();
+        // 只更新处理结果，不能带上读取时的引用计数
+        PictureObject update = new PictureObject();
+        try {
+            UploadPictureResult result = derive(object);
+            update.setId(objectId);
+            copyDerived(result, update);
+            update.setProcessStatus(PictureProcessStatus.DONE.getValue());
+            transactionTemplate.executeWithoutResult(status -> {
+                pictureObjectService.updateById(update);
+                picturePaletteService.savePalette(object.getMd5(), result.getPalette());
+                deleteJob(objectId);
+            });
+            log.info("图片 {} 处理完成, 耗时{}ms", object.getMd5(), System.currentTimeMillis() - start);
+        } catch (TooManyRequestsException e) {
+            // 没拿到解码许可，任务根本没有执行，不能算作一次失败
+            jobMapper.postpone(objectId, DateUtil.offsetSecond(new Date(), BUSY_RETRY_SECONDS));
+            log.debug("节点繁忙，图片 {} 推迟处理", object.getMd5());
+            return;
+        } catch (Exception e) {
+            onFailure(object, e);
+            return;
+        }
+        // 对象已经处理完成并提交了，回填失败不能再把对象标记为失败
+        update.setMd5(object.getMd5());
+        applyCommitted(update);
+    }
+
+    /**
+     * 对象状态提交后回填到图片
+     * <p>回填失败（如缓存、Redis异常）只记录日志，没回填上的图片由{@link #repairPictures()}定时修复</p>
+     *
+     * @param object 已提交的对象处理结果
+     */
+    private void applyCommitted(PictureObject object) {
+        try {
+            applyToPictures(object);
+        } catch (Exception e) {
+            log.error("图片 {} 处理结果回填失败，等待定时修复", object.getMd5(), e);
+        }
+    }
+
+    /**
+     * 从原图生成默认图、缩略图和主色调（原图不会重新上传）
+     *
+     * @param object 图片对象
+     * @return 处理结果
+     */
+    private UploadPictureResult derive(PictureObject object) {
+        if (!Objects.equals(object.getStorage(), MrsStorageType.MINIO.getValue())) {
+            throw new IllegalStateException("不支持的存储位置 " + object.getStorage());
+        }
+        String originalPath = object.getOriginalPath();
+        String pathPrefix = originalPath.substring(0, originalPath.lastIndexOf('/') + 1);
+        StoredPictureSource source = new StoredPictureSource(
+                object.getStorage(),
+                originalPath,
+                FileUtil.mainName(originalPath),
+                object.getPicSize(),
+                null,
+                false);
+        return pictureStoredObjectUpload.uploadPictureObject(source, pathPrefix);
+    }
+
+    /**
+     * 处理失败，按次数退避重试，超过最大次数后标记为失败
+     *
+     * @param object 图片对象
+     * @param e      失败原因
+     */
+    private void onFailure(PictureObject object, Exception e) {
+        Long objectId = object.getId();
+        String error = StrUtil.maxLength(StrUtil.blankToDefault(e.getMessage(), e.getClass().getName()), 500);
+        PictureProcessJob job = jobMapper.selectOne(new LambdaQueryWrapper<PictureProcessJob>()
+                .eq(PictureProcessJob::getObjectId, objectId));
+        int attempts = job == null ? MAX_ATTEMPTS : job.getAttempts();
+        if (attempts < MAX_ATTEMPTS) {
+            Date nextRunTime = DateUtil.offsetSecond(new Date(), RETRY_BASE_SECONDS << (attempts - 1));
+            jobMapper.retryLater(objectId, nextRunTime, error);
+            log.warn("图片 {} 第{}次处理失败, {}后重试", object.getMd5(), attempts, nextRunTime, e);
+            return;
+        }
+        log.error("图片 {} 处理失败，不再重试", object.getMd5(), e);
+        PictureObject update = new PictureObject();
+        update.setId(objectId);
+        update.setProcessStatus(PictureProcessStatus.FAILED.getValue());
+        transactionTemplate.executeWithoutResult(status -> {
+            pictureObjectService.updateById(update);
+            jobMapper.markFailed(objectId, error);
+        });
+        update.setMd5(object.getMd5());
+        applyCommitted(update);
+    }
+
+    /**
+     * 把对象的处理结果回填到所有还在处理中的图片，并删除它们的缓存
+     *
+     * @param object 处理完成（或失败）的对象
+     */
+    private void applyToPictures(PictureObject object) {
+        LambdaQueryWrapper<Picture> queryWrapper = new LambdaQueryWrapper<>();
+        queryWrapper.select(Picture::getId, Picture::getSpaceId)
+                .eq(Picture::getMd5, object.getMd5())
+                .eq(Picture::getProcessStatus, PictureProcessStatus.PROCESSING.getValue());
+        List<Picture> pictures = pictureMapper.selectList(queryWrapper);
+        if (pictures.isEmpty()) {
+            return;
+        }
+        LambdaUpdateWrapper<Picture> updateWrapper = new LambdaUpdateWrapper<>();
+        updateWrapper.eq(Picture::getMd5, object.getMd5())
+                .eq(Picture::getProcessStatus, PictureProcessStatus.PROCESSING.getValue())
+                .set(Picture::getProcessStatus, object.getProcessStatus());
+        if (Objects.equals(object.getProcessStatus(), PictureProcessStatus.DONE.getValue())) {
+            updateWrapper.set(Picture::getUrl, object.getUrl())
+                    .set(Picture::getSavedPath, object.getSavedPath())
+                    .set(Picture::getThumbnailUrl, object.getThumbnailUrl())
+                    .set(Picture::getThumbPath, object.getThumbPath())
+                    .set(Picture::getPicWidth, object.getPicWidth())
+                    .set(Picture::getPicHeight, object.getPicHeight())
+                    .set(Picture::getPicScale, object.getPicScale())
+                    .set(Picture::getPicColor, object.getPicColor())
+                    .set(Picture::getMColorHue, object.getMColorHue())
+                    .set(Picture::getMColorSaturation, object.getMColorSaturation())
+                    .set(Picture::getMColorValue, object.getMColorValue())
+                    .set(Picture::getMHueBucket, object.getMHueBucket())
+                    .set(Picture::getMSaturationBucket, object.getMSaturationBucket())
+                    .set(Picture::getMValueBucket, object.getMValueBucket())
+                    .set(Picture::getPicHash, object.getPicHash());
+        }
+        pictureMapper.update(null, updateWrapper);
+        List<String> cacheKeys = pictures.stream()
+                .map(p -> PICTURE_CACHE_NAME + PICTURE_ID + p.getId())
+                .collect(Collectors.toList());
+        MrsCacheUtil.removeCache(pictureCache.getLocalCache(), redisTemplate, cacheKeys);
+        picturePageCacheManager.bumpGeneration(pictures.stream()
+                .map(Picture::getSpaceId)
+                .toArray(Long[]::new));
+        pictureHashIndex.refresh(pictures.stream()
+                .map(Picture::getId)
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * 复制处理结果中的派生图和图片信息
+     *
+     * @param result 处理结果
+     * @param object 图片对象
+     */
+    private static void copyDerived(UploadPictureResult result, PictureObject object) {
+        object.setUrl(result.getUrl());
+        object.setSavedPath(result.getSavedPath());
+        object.setThumbnailUrl(result.getThumbnailUrl());
+        object.setThumbPath(result.getThumbPath());
+        object.setPicWidth(result.getPicWidth());
+        object.setPicHeight(result.getPicHeight());
+        object.setPicScale(result.getPicScale());
+        object.setPicColor(result.getPicColor());
+        object.setMColorHue(result.getMColorHue());
+        object.setMColorSaturation(result.getMColorSaturation());
+        object.setMColorValue(result.getMColorValue());
+        object.setMHueBucket(result.getMHueBucket());
+        object.setMSaturationBucket(result.getMSaturationBucket());
+        object.setMValueBucket(result.getMValueBucket());
+        object.setPicHash(result.getPicHash());
+    }
+
+    private void deleteJob(Long objectId) {
+        jobMapper.delete(new LambdaQueryWrapper<PictureProcessJob>()
+                .eq(PictureProcessJob::getObjectId, objectId));
+    }
+
+    private static Date staleBefore() {
+        return DateUtil.offsetMinute(new Date(), -STALE_MINUTES);
+    }
+}
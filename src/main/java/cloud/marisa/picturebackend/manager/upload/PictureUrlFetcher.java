@@ -0,0 +1,259 @@
+package cloud.marisa.picturebackend.manager.upload;
+
+import cloud.marisa.picturebackend.config.PictureConfig;
+import cloud.marisa.picturebackend.exception.BusinessException;
+import cloud.marisa.picturebackend.exception.ErrorCode;
+import cn.hutool.core.io.unit.DataSize;
+import cn.hutool.core.io.unit.DataSizeUtil;
+import cn.hutool.core.util.StrUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>从网络地址获取图片（URL上传共用）</p>
+ * <p>先用HEAD请求探测类型和大小，再把响应体边读边写到临时文件，超过大小上限立即中断，整个文件不会进入堆内存；</p>
+ * <p>所有请求共用一个连接池，同一个主机的keep-alive连接会被复用</p>
+ *
+ * @author MarisaDAZE
+ * @description 网络图片下载
+ * @date 2025/4/28
+ */
+@Log4j2
+@Component
+@RequiredArgsConstructor
+public class PictureUrlFetcher {
+
+    /**
+     * 连接池最多保留的空闲连接数
+     */
+    private static final int MAX_IDLE_CONNECTIONS = 16;
+
+    /**
+     * 空闲连接的保留时间（秒）
+     */
+    private static final int KEEP_ALIVE_SECONDS = 60;
+
+    /**
+     * 探测结果的缓存时间（秒），同一次上传的校验、取文件名、取大小只发一次HEAD请求
+     */
+    private static final int PROBE_CACHE_SECONDS = 60;
+
+    /**
+     * 读取缓冲区大小
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    private final PictureConfig pictureConfig;
+
+    private OkHttpClient client;
+
+    private Cache<String, UrlProbe> probeCache;
+
+    @PostConstruct
+    public void init() {
+        client = new OkHttpClient.Builder()
+                .connectTimeout(pictureConfig.getUrlConnectTimeout(), TimeUnit.SECONDS)
+                .readTimeout(pictureConfig.getUrlReadTimeout(), TimeUnit.SECONDS)
+                .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS))
+                .followRedirects(true)
+                .build();
+        probeCache = Caffeine.newBuilder()
+                .maximumSize(1024)
+                .expireAfterWrite(Duration.ofSeconds(PROBE_CACHE_SECONDS))
+                .build();
+    }
+
+    @PreDestroy
+    public void destroy() {
+        client.dispatcher().executorService().shutdown();
+        client.connectionPool().evictAll();
+    }
+
+    /**
+     * 用HEAD请求探测URL的类型和大小
+     * <p>有些地址不支持HEAD请求，此时返回的结果中ok为false，不会报错</p>
+     *
+     * @param url 图片地址
+     * @return 探测结果
+     */
+    public UrlProbe probe(String url) {
+        return probeCache.get(url, this::doProbe);
+    }
+
+    /**
+     * 校验URL指向的文件类型和大小（以HEAD请求的结果为准）
+     *
+     * @param url 图片地址
+     */
+    public void validate(String url) {
+        UrlProbe probe = probe(url);
+        if (!probe.isOk()) {
+            return;
+        }
+        // 校验文件类型
+        String contentType = probe.getContentType();
+        if (StrUtil.isNotBlank(contentType)) {
+            boolean contains = pictureConfig.getUrlImageType().contains(probe.getMimeType());
+            if (!contains) {
+                throw new BusinessException(ErrorCode.PARAMS_ERROR, "不支持的文件类型 " + contentType);
+            }
+        }
+        // 校验文件大小
+        Long contentLength = probe.getContentLength();
+        String maxSizeStr = pictureConfig.getImageMaxSize();
+        if (contentLength != null && contentLength > DataSize.parse(maxSizeStr).toBytes()) {
+            throw new BusinessException(ErrorCode.PARAMS_ERROR, "文件最大不能超过 " + maxSizeStr);
+        }
+    }
+
+    /**
+     * 下载图片到临时文件，大小上限为图片的最大体积
+     *
+     * @param url 图片地址
+     * @return 临时文件（由调用方负责删除）
+     */
+    public Path download(String url) {
+        return download(url, DataSize.parse(pictureConfig.getImageMaxSize()).toBytes());
+    }
+
+    /**
+     * 下载图片到临时文件
+     *
+     * @param url      图片地址
+     * @param maxBytes 大小上限（字节），超过后中断下载
+     * @return 临时文件（由调用方负责删除）
+     */
+    public Path download(String url, long maxBytes) {
+        // HEAD请求已经声明超过上限的，不用再下载
+        UrlProbe probe = probe(url);
+        if (probe.getContentLength() != null && probe.getContentLength() > maxBytes) {
+            throw new BusinessException(ErrorCode.PARAMS_ERROR, "文件最大不能超过 " + DataSizeUtil.format(maxBytes));
+        }
+        long start = System.currentTimeMillis();
+        Request request;
+        try {
+            request = new Request.Builder().url(url).get().build();
+        } catch (IllegalArgumentException e) {
+            throw new BusinessException(ErrorCode.PARAMS_ERROR, "无法解析的URL地址");
+        }
+        Path tempFile = null;
+        // 未读完就关闭的响应不会放回连接池，超限时连接直接断开
+        try (Response response = client.newCall(request).execute()) {
+            ResponseBody body = response.body();
+            if (!response.isSuccessful() || body == null) {
+                log.warn("图片下载失败, 状态码: {}, URL: {}", response.code(), url);
+                throw new BusinessException(ErrorCode.OPERATION_ERROR, "图片下载失败");
+            }
+            if (body.contentLength() > maxBytes) {
+                throw new BusinessException(ErrorCode.PARAMS_ERROR, "文件最大不能超过 " + DataSizeUtil.format(maxBytes));
+            }
+            tempFile = Files.createTempFile("url-", ".tmp");
+            long total = 0L;
+            try (InputStream is = body.byteStream();
+                 OutputStream os = Files.newOutputStream(tempFile)) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = is.read(buffer)) != -1) {
+                    total += read;
+                    if (total > maxBytes) {
+                        throw new BusinessException(ErrorCode.PARAMS_ERROR, "文件最大不能超过 " + DataSizeUtil.format(maxBytes));
+                    }
+                    os.write(buffer, 0, read);
+                }
+            }
+            log.info("图片下载完成, 大小: {}, 耗时: {}ms", total, System.currentTimeMillis() - start);
+            return tempFile;
+        } catch (IOException e) {
+            log.error("图片下载失败, URL: {}", url, e);
+            deleteTempFile(tempFile);
+            throw new BusinessException(ErrorCode.OPERATION_ERROR, "图片下载失败");
+        } catch (RuntimeException e) {
+            deleteTempFile(tempFile);
+            throw e;
+        }
+    }
+
+    private UrlProbe doProbe(String url) {
+        Request request = new Request.Builder().url(url).head().build();
+        try (Response response = client.newCall(request).execute()) {
+            if (!response.isSuccessful()) {
+                return UrlProbe.failed();
+            }
+            String contentLength = response.header("Content-Length");
+            Long length = null;
+            if (StrUtil.isNotBlank(contentLength)) {
+                try {
+                    length = Long.parseLong(contentLength.trim());
+                } catch (NumberFormatException e) {
+                    throw new BusinessException(ErrorCode.PARAMS_ERROR, "文件大小格式错误");
+                }
+            }
+            return new UrlProbe(true, response.header("Content-Type"), length);
+        } catch (IOException | IllegalArgumentException e) {
+            log.info("HEAD请求失败: {}, {}", url, e.getMessage());
+            return UrlProbe.failed();
+        }
+    }
+
+    private void deleteTempFile(Path tempFile) {
+        try {
+            if (tempFile != null) Files.deleteIfExists(tempFile);
+        } catch (IOException e) {
+            log.error("删除临时文件失败: {}", tempFile, e);
+        }
+    }
+
+    /**
+     * HEAD请求的探测结果
+     */
+    @Data
+    @AllArgsConstructor
+    public static class UrlProbe {
+
+        /**
+         * HEAD请求是否成功
+         */
+        private boolean ok;
+
+        /**
+         * Content-Type（可能带有charset等参数）
+         */
+        private String contentType;
+
+        /**
+         * Content-Length，未声明时为null
+         */
+        private Long contentLength;
+
+        public static UrlProbe failed() {
+            return new UrlProbe(false, null, null);
+        }
+
+        /**
+         * 去掉参数后的MIME类型（如image/png）
+         */
+        public String getMimeType() {
+            return StrUtil.isBlank(contentType) ? null : contentType.split(";")[0].trim();
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package cloud.marisa.picturebackend.manager.upload;
+
+import cloud.marisa.picturebackend.config.PictureConfig;
+import cloud.marisa.picturebackend.exception.TooManyRequestsException;
+import cn.hutool.core.io.unit.DataSize;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>上传准入控制（单节点）</p>
+ * <p>按正在处理的字节数和解码像素数发放许可，两个预算都用公平信号量，等待的请求按先来后到获得许可；</p>
+ * <p>每个用户同时处理的字节数不能超过自己的份额，一个用户的大批量上传不会占满整个节点；</p>
+ * <p>短时间内拿不到许可的请求直接拒绝，返回429和建议的重试时间</p>
+ *
+ * @author MarisaDAZE
+ * @description 上传准入控制
+ * @date 2025/4/28
+ */
+@Log4j2
+@Component
+@RequiredArgsConstructor
+public class UploadAdmissionManager {
+
+    /**
+     * 字节预算的许可单位（1个许可=1KB）
+     */
+    private static final long BYTES_PER_PERMIT = 1024L;
+
+    /**
+     * 像素预算的许可单位（1个许可=1024像素）
+     */
+    private static final long PIXELS_PER_PERMIT = 1024L;
+
+    /**
+     * 每次上传至少占用的字节数，大小未知的小请求也要占一点预算
+     */
+    private static final long MIN_CHARGE_BYTES = 64 * 1024L;
+
+    /**
+     * 估算重试时间用的处理速度（字节/秒）
+     */
+    private static final long DRAIN_BYTES_PER_SECOND = 32 * 1024 * 1024L;
+
+    /**
+     * 建议的最长重试间隔（秒）
+     */
+    private static final int MAX_RETRY_AFTER = 30;
+
+    private final PictureConfig pictureConfig;
+
+    private Semaphore bytePermits;
+
+    private int totalBytePermits;
+
+    private Semaphore pixelPermits;
+
+    private int totalPixelPermits;
+
+    /**
+     * 每个用户最多同时处理的字节数
+     */
+    private long userMaxBytes;
+
+    /**
+     * 拿不到许可时的最长等待时间（毫秒）
+     */
+    private long waitMillis;
+
+    /**
+     * 正在处理的字节数
+     */
+    private final AtomicLong inflightBytes = new AtomicLong();
+
+    /**
+     * 每个用户正在处理的字节数（处理完的用户会被移除）
+     */
+    private final ConcurrentHashMap<Long, Long> userInflightBytes = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        long maxBytes = DataSize.parse(pictureConfig.getUploadInflightMaxSize()).toBytes();
+        totalBytePermits = (int) Math.max(1L, maxBytes / BYTES_PER_PERMIT);
+        bytePermits = new Semaphore(totalBytePermits, true);
+        totalPixelPermits = (int) Math.max(1L, pictureConfig.getUploadDecodeMaxPixels() / PIXELS_PER_PERMIT);
+        pixelPermits = new Semaphore(totalPixelPermits, true);
+        userMaxBytes = DataSize.parse(pictureConfig.getUploadUserInflightMaxSize()).toBytes();
+        waitMillis = TimeUnit.SECONDS.toMillis(pictureConfig.getUploadAdmissionWait());
+        log.info("上传准入控制: 字节预算{}, 单用户{}, 像素预算{}",
+                pictureConfig.getUploadInflightMaxSize(),
+                pictureConfig.getUploadUserInflightMaxSize(),
+                pictureConfig.getUploadDecodeMaxPixels());
+    }
+
+    /**
+     * 按字节数申请上传许可
+     * <p>用户没有其它上传在处理时，单个文件即使超过份额也放行（只受节点总预算限制）</p>
+     *
+     * @param userId 用户ID，为空时不做用户级限制（如后台任务）
+     * @param bytes  预计处理的字节数
+     * @return 许可，处理完后关闭
+     */
+    public UploadPermit acquireBytes(Long userId, long bytes) {
+        long charge = Math.max(bytes, MIN_CHARGE_BYTES);
+        int permits = toPermits(charge, BYTES_PER_PERMIT, totalBytePermits);
+        // 先占用户份额，超出份额的直接拒绝，不去排队占用全局许可
+        if (userId != null) {
+            userInflightBytes.compute(userId, (key, used) -> {
+                long current = used == null ? 0L : used;
+                if (current > 0 && current + charge > userMaxBytes) {
+                    throw new TooManyRequestsException("上传任务过多，请等待当前上传完成", retryAfter(current));
+                }
+                return current + charge;
+            });
+        }
+        if (!tryAcquire(bytePermits, permits)) {
+            releaseUser(userId, charge);
+            log.warn("上传准入被拒绝: 用户{}, 大小{}, 正在处理{}", userId, charge, inflightBytes.get());
+            throw new TooManyRequestsException("上传的人太多了，请稍后再试", retryAfter(inflightBytes.get()));
+        }
+        inflightBytes.addAndGet(charge);
+        return new UploadPermit(() -> {
+            inflightBytes.addAndGet(-charge);
+            bytePermits.release(permits);
+            releaseUser(userId, charge);
+        });
+    }
+
+    /**
+     * 按解码后的像素数申请解码许可
+     *
+     * @param pixels 解码后的像素数
+     * @return 许可，解码出的图片不再使用后关闭
+     */
+    public UploadPermit acquirePixels(long pixels) {
+        int permits = toPermits(pixels, PIXELS_PER_PERMIT, totalPixelPermits);
+        if (!tryAcquire(pixelPermits, permits)) {
+            log.warn("解码准入被拒绝: 像素{}, 剩余许可{}", pixels, pixelPermits.availablePermits());
+            throw new TooManyRequestsException("图片处理繁忙，请稍后再试", retryAfter(inflightBytes.get()));
+        }
+        return new UploadPermit(() -> pixelPermits.release(permits));
+    }
+
+    /**
+     * 当前正在处理的字节数
+     *
+     * @return 字节数
+     */
+    public long getInflightBytes() {
+        return inflightBytes.get();
+    }
+
+    private boolean tryAcquire(Semaphore semaphore, int permits) {
+        try {
+            return semaphore.tryAcquire(permits, waitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void releaseUser(Long userId, long charge) {
+        if (userId == null) {
+            return;
+        }
+        userInflightBytes.computeIfPresent(userId, (key, used) -> used - charge <= 0 ? null : used - charge);
+    }
+
+    /**
+     * 换算成许可数，超过总预算的按总预算算（否则永远拿不到）
+     */
+    private static int toPermits(long amount, long unit, int total) {
+        long permits = (amount + unit - 1) / unit;
+        return (int) Math.max(1L, Math.min(permits, total));
+    }
+
+    /**
+     * 按积压的字节数估算多久之后能处理完
+     */
+    private static int retryAfter(long backlogBytes) {
+        long seconds = backlogBytes / DRAIN_BYTES_PER_SECOND + 1;
+        return (int) Math.min(MAX_RETRY_AFTER, seconds);
+    }
+
+    /**
+     * 上传许可，关闭时归还（重复关闭只归还一次）
+     */
+    public static class UploadPermit implements AutoCloseable {
+
+        private final Runnable releaser;
+
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        private UploadPermit(Runnable releaser) {
+            this.releaser = releaser;
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                releaser.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package cloud.marisa.picturebackend.mapper;
+
+import cloud.marisa.picturebackend.entity.dao.PictureObject;
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+
+/**
+ * @author MarisaDAZE
+ * @description 针对表【picture_object(图片对象表)】的数据库操作Mapper
+ * @date 2025/4/28
+ * @Entity cloud.marisa.picturebackend.entity.dao.PictureObject
+ */
+public interface PictureObjectMapper extends BaseMapper<PictureObject> {
+
+    /**
+     * 新增对象，指纹已存在时只把引用计数+1
+     *
+     * @param object 对象信息
+     * @return 影响行数（新增为1，计数+1为2）
+     */
+    int insertOrIncrement(@Param("object") PictureObject object);
+
+    /**
+     * 引用计数+1
+     *
+     * @param id 对象ID
+     * @return 影响行数，0表示对象已被清理
+     */
+    int incrementRef(@Param("id") Long id);
+
+    /**
+     * 引用计数-1（不会减到负数）
+     *
+     * @param id 对象ID
+     * @return 影响行数
+     */
+    int decrementRef(@Param("id") Long id);
+
+    /**
+     * 删除没有引用的对象
+     *
+     * @param id 对象ID
+     * @return 影响行数，0表示对象又被引用了
+     */
+    int deleteUnreferenced(@Param("id") Long id);
+}
@@ -0,0 +1,46 @@
+package cloud.marisa.picturebackend.mapper;
+
+import cloud.marisa.picturebackend.entity.dao.Picture;
+import cloud.marisa.picturebackend.entity.dao.PicturePalette;
+import cloud.marisa.picturebackend.util.colors.MrsColorHSV;
+import com.baomidou.mybatisplus.core.conditions.Wrapper;
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.baomidou.mybatisplus.core.toolkit.Constants;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+
+/**
+ * @author MarisaDAZE
+ * @description 针对表【picture_palette(图片调色板表)】的数据库操作Mapper
+ * @date 2025/4/28
+ * @Entity cloud.marisa.picturebackend.entity.dao.PicturePalette
+ */
+public interface PicturePaletteMapper extends BaseMapper<PicturePalette> {
+
+    /**
+     * 按调色板查询颜色相近的图片
+     * <p>先用桶号走联合索引缩小范围，再按色差过滤；</p>
+     * <p>一张图片有多种颜色命中时取得分最高的一种，得分 = 覆盖率 * (1 - 色差)</p>
+     * <p>图片的其它查询条件（空间、审核状态、关键词等）在截断数量之前生效</p>
+     *
+     * @param color       目标颜色
+     * @param hueBuckets  候选的色调桶
+     * @param satBuckets  候选的饱和度桶
+     * @param valBuckets  候选的明度桶
+     * @param hueRange    最大允许色相差（°）
+     * @param satValRange 最大允许饱和度/明度差
+     * @param ew          图片表的查询条件
+     * @param limit       最多查询的数量
+     * @return 图片ID，按得分从高到低排序
+     */
+    List<Long> selectPictureIdsByColor(
+            @Param("color") MrsColorHSV color,
+            @Param("hueBuckets") List<Integer> hueBuckets,
+            @Param("satBuckets") List<Integer> satBuckets,
+            @Param("valBuckets") List<Integer> valBuckets,
+            @Param("hueRange") float hueRange,
+            @Param("satValRange") float satValRange,
+            @Param(Constants.WRAPPER) Wrapper<Picture> ew,
+            @Param("limit") int limit);
+}
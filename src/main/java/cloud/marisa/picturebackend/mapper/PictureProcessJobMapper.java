@@ -0,0 +1,73 @@
+package cloud.marisa.picturebackend.mapper;
+
+import cloud.marisa.picturebackend.entity.dao.PictureProcessJob;
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * @author MarisaDAZE
+ * @description 针对表【picture_process_job(图片处理任务表)】的数据库操作Mapper
+ * @date 2025/4/28
+ * @Entity cloud.marisa.picturebackend.entity.dao.PictureProcessJob
+ */
+public interface PictureProcessJobMapper extends BaseMapper<PictureProcessJob> {
+
+    /**
+     * 新增任务，同一个对象已经有任务时忽略
+     *
+     * @param job 任务信息
+     * @return 影响行数
+     */
+    int insertIgnore(@Param("job") PictureProcessJob job);
+
+    /**
+     * 查询可以执行的任务（到期的等待任务，以及执行超时的任务）
+     *
+     * @param staleBefore 执行中的任务在这个时间之前没有更新，视为执行者已经宕机
+     * @param limit       最多查询的数量
+     * @return 对象ID列表
+     */
+    List<Long> selectRunnable(@Param("staleBefore") Date staleBefore, @Param("limit") int limit);
+
+    /**
+     * 抢占任务，多个节点同时抢占时只有一个能成功
+     *
+     * @param objectId    对象ID
+     * @param staleBefore 执行超时的判定时间
+     * @return 影响行数，0表示任务不存在、未到期或已被抢占
+     */
+    int claim(@Param("objectId") Long objectId, @Param("staleBefore") Date staleBefore);
+
+    /**
+     * 任务失败，等待下次重试
+     *
+     * @param objectId    对象ID
+     * @param nextRunTime 下次执行时间
+     * @param lastError   失败原因
+     * @return 影响行数
+     */
+    int retryLater(@Param("objectId") Long objectId,
+                   @Param("nextRunTime") Date nextRunTime,
+                   @Param("lastError") String lastError);
+
+    /**
+     * 任务没有执行（节点繁忙），推迟执行并退回这次抢占时增加的执行次数
+     *
+     * @param objectId    对象ID
+     * @param nextRunTime 下次执行时间
+     * @return 影响行数
+     */
+    int postpone(@Param("objectId") Long objectId, @Param("nextRunTime") Date nextRunTime);
+
+    /**
+     * 任务彻底失败，不再重试
+     *
+     * @param objectId  对象ID
+     * @param lastError 失败原因
+     * @return 影响行数
+     */
+    int markFailed(@Param("objectId") Long objectId, @Param("lastError") String lastError);
+}
@@ -0,0 +1,90 @@
+package cloud.marisa.picturebackend.service;
+
+import cloud.marisa.picturebackend.entity.dao.PictureObject;
+import cloud.marisa.picturebackend.entity.dto.file.UploadPictureResult;
+import cloud.marisa.picturebackend.enums.MrsStorageType;
+import com.baomidou.mybatisplus.extension.service.IService;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * @author MarisaDAZE
+ * @description 针对表【picture_object(图片对象表)】的数据库操作Service
+ * @date 2025/4/28
+ */
+public interface IPictureObjectService extends IService<PictureObject> {
+
+    /**
+     * 根据内容哈希查询对象（秒传）
+     *
+     * @param md5     原图的内容哈希
+     * @param picSize 原图大小，必须一致
+     * @return 对象信息，不存在或已无引用时返回null
+     */
+    PictureObject getByHash(String md5, Long picSize);
+
+    /**
+     * 根据内容哈希批量查询对象（一次查询）
+     *
+     * @param md5s 原图的内容哈希
+     * @return 内容哈希 -> 对象信息
+     */
+    Map<String, PictureObject> getByHashes(Collection<String> md5s);
+
+    /**
+     * 读取原图中的一段
+     *
+     * @param object 对象信息
+     * @param offset 起始位置
+     * @param length 长度
+     * @return 这一段的字节
+     */
+    byte[] readOriginalRange(PictureObject object, long offset, int length);
+
+    /**
+     * 引用一个已存在的对象（引用计数+1）
+     * <p>需要和图片的保存在同一个事务中调用</p>
+     *
+     * @param object 对象信息
+     */
+    void acquire(PictureObject object);
+
+    /**
+     * 登记一份刚上传的文件（引用计数+1）
+     * <p>需要和图片的保存在同一个事务中调用；</p>
+     * <p>如果同一份文件被并发上传，返回先登记的那一份，本次上传的文件会在事务提交后删除</p>
+     *
+     * @param result  上传结果
+     * @param storage 存储位置
+     * @return 实际引用的对象
+     */
+    PictureObject register(UploadPictureResult result, MrsStorageType storage);
+
+    /**
+     * 删除一次上传已经写入对象存储、但最终没有登记的文件（超出空间额度、近似重复被拒绝、保存失败等）
+     *
+     * @param result   上传结果
+     * @param storage  存储位置
+     * @param keepPath 不能删除的路径（如分片上传合并后的原图，由分片上传会话负责），可以为空
+     */
+    void discardUpload(UploadPictureResult result, MrsStorageType storage, String keepPath);
+
+    /**
+     * 释放一次引用（引用计数-1）
+     * <p>计数归零的对象由定时任务延迟清理，期间再次上传同一份文件仍可以秒传；</p>
+     * <p>只能释放图片记录上保存的对象ID，没有对象ID的历史图片没有占用引用计数</p>
+     *
+     * @param objectId 图片引用的对象ID，为空时不释放
+     */
+    void release(Long objectId);
+
+    /**
+     * 清理引用计数为0且超过保留时间的对象（删除文件和记录）
+     *
+     * @param graceMinutes 保留时间（分钟）
+     * @param limit        单次最多清理的数量
+     * @return 清理的数量
+     */
+    int sweepUnreferenced(int graceMinutes, int limit);
+}
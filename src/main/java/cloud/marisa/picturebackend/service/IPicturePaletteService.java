@@ -0,0 +1,45 @@
+package cloud.marisa.picturebackend.service;
+
+import cloud.marisa.picturebackend.entity.dao.Picture;
+import cloud.marisa.picturebackend.entity.dao.PicturePalette;
+import cloud.marisa.picturebackend.util.colors.MrsColorPalette;
+import com.baomidou.mybatisplus.core.conditions.Wrapper;
+import com.baomidou.mybatisplus.extension.service.IService;
+
+import java.util.List;
+
+/**
+ * @author MarisaDAZE
+ * @description 针对表【picture_palette(图片调色板表)】的数据库操作Service
+ * @date 2025/4/28
+ */
+public interface IPicturePaletteService extends IService<PicturePalette> {
+
+    /**
+     * 保存一份文件的调色板（覆盖已有的）
+     * <p>需要和图片对象的保存在同一个事务中调用</p>
+     *
+     * @param md5     原图的内容哈希
+     * @param entries 调色板，按覆盖率从高到低排序
+     */
+    void savePalette(String md5, List<MrsColorPalette.Entry> entries);
+
+    /**
+     * 删除一份文件的调色板
+     *
+     * @param md5 原图的内容哈希
+     */
+    void removePalette(String md5);
+
+    /**
+     * 按调色板搜索颜色相近的图片
+     * <p>图片的任意一种颜色和目标颜色相近即可命中，按覆盖率加权排序</p>
+     *
+     * @param searchColor   目标颜色（16进制色或r,g,b）
+     * @param similarity    相似度阈值（0~1）
+     * @param pictureFilter 图片表的查询条件（空间、审核状态等），在截断数量之前生效
+     * @param limit         最多查询的数量
+     * @return 图片ID，按得分从高到低排序
+     */
+    List<Long> searchPictureIds(String searchColor, float similarity, Wrapper<Picture> pictureFilter, int limit);
+}
@@ -1,12 +1,15 @@
 package cloud.marisa.picturebackend.service;
 
 import cloud.marisa.picturebackend.api.image.imageexpand.entity.response.create.CreateTaskResponse;
+import cloud.marisa.picturebackend.api.image.imagesearch.entity.ImageSearchResult;
 import cloud.marisa.picturebackend.entity.dao.Picture;
 import cloud.marisa.picturebackend.entity.dao.User;
 import cloud.marisa.picturebackend.entity.dto.api.RandomPictureRequest;
 import cloud.marisa.picturebackend.entity.dto.api.SearchPictureRequest;
 import cloud.marisa.picturebackend.entity.dto.common.DeleteRequest;
+import cloud.marisa.picturebackend.entity.dto.file.PictureRenderResult;
 import cloud.marisa.picturebackend.entity.dto.picture.*;
+import cloud.marisa.picturebackend.entity.vo.PictureUploadBatchVo;
 import cloud.marisa.picturebackend.entity.vo.PictureVo;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.IService;
@@ -36,7 +39,7 @@ public interface IPictureService extends IService<Picture> {
      * 创建或更新一张图片到数据库
      * <p>同时将文件保存到文件服务器</p>
      *
-     * @param inputSource   上传内容（文件对象/URL）
+     * @param inputSource   上传内容（文件对象/URL/秒传时已存在的文件对象）
      * @param uploadRequest 上传参数的DTO封装
      * @param loginUser     登录用户信息
      * @return 图片VO
@@ -48,9 +51,9 @@ public interface IPictureService extends IService<Picture> {
      *
      * @param uploadBatchRequest 批量上传参数的DTO封装
      * @param loggedUser         当前登录用户
-     * @return 入库成功的数量
+     * @return 每张图片的导入结果
      */
-    Integer uploadPictureBatch(PictureUploadBatchRequest uploadBatchRequest, User loggedUser);
+    PictureUploadBatchVo uploadPictureBatch(PictureUploadBatchRequest uploadBatchRequest, User loggedUser);
 
     /**
      * 创建扩图任务
@@ -89,6 +92,7 @@ public interface IPictureService extends IService<Picture> {
 
     /**
      * 根据ID获取一张图片信息
+     * <p>返回的是缓存中的共享对象，需要修改时请先复制一份</p>
      *
      * @param pid 图片ID
      * @return 图片对象
@@ -139,6 +143,16 @@ public interface IPictureService extends IService<Picture> {
      */
     Page<PictureVo> getPictureVoPage(Page<Picture> picturePage, HttpServletRequest servletRequest);
 
+    /**
+     * 分页获取图片的Vo信息（带缓存）
+     * <p>缓存按空间版本号失效，只缓存图片ID和总数</p>
+     *
+     * @param queryRequest   查询请求的DTO对象
+     * @param servletRequest HttpServlet请求对象
+     * @return VO的分页对象
+     */
+    Page<PictureVo> getPictureVoPageCache(PictureQueryRequest queryRequest, HttpServletRequest servletRequest);
+
     /**
      * 根据颜色获取最接近的图片
      * <p>默认前12张</p>
@@ -150,6 +164,26 @@ public interface IPictureService extends IService<Picture> {
      */
     List<PictureVo> getPictureByColor(Long spaceId, PictureQueryRequest queryRequest, HttpServletRequest httpServletRequest);
 
+    /**
+     * 以图搜图：在图片所在的空间内按感知哈希查找相似的图片
+     * <p>公共图库只返回审核通过的图片，私人空间和团队空间需要有查看权限</p>
+     *
+     * @param pictureId      图片ID
+     * @param servletRequest HttpServlet请求对象
+     * @return 相似图片列表（按相似度从高到低）
+     */
+    List<ImageSearchResult> searchPictureByPicture(Long pictureId, HttpServletRequest servletRequest);
+
+    /**
+     * 按需渲染图片（指定宽高、适应方式和格式）
+     * <p>公共图库审核通过的图片任何人可看，私人空间和团队空间需要有查看权限</p>
+     *
+     * @param renderRequest  渲染请求
+     * @param servletRequest HttpServlet请求对象（读取If-None-Match）
+     * @return 渲染结果
+     */
+    PictureRenderResult renderPicture(PictureRenderRequest renderRequest, HttpServletRequest servletRequest);
+
     /**
      * 校验图片信息
      * <p>不通过时会抛出参数错误</p>
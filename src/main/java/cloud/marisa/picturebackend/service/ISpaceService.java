@@ -4,6 +4,7 @@ import cloud.marisa.picturebackend.entity.dao.Space;
 import cloud.marisa.picturebackend.entity.dao.User;
 import cloud.marisa.picturebackend.entity.dto.common.DeleteRequest;
 import cloud.marisa.picturebackend.entity.dto.space.SpaceAddRequest;
+import cloud.marisa.picturebackend.entity.dto.space.SpaceEditRequest;
 import cloud.marisa.picturebackend.entity.dto.space.SpaceQueryRequest;
 import cloud.marisa.picturebackend.entity.dto.space.SpaceUpdateRequest;
 import cloud.marisa.picturebackend.entity.vo.SpaceVo;
@@ -11,6 +12,9 @@ import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.IService;
 
+import java.util.Collection;
+import java.util.Map;
+
 
 /**
  * @author Marisa
@@ -45,6 +49,14 @@ public interface ISpaceService extends IService<Space> {
      */
     boolean updateSpace(SpaceUpdateRequest updateRequest);
 
+    /**
+     * 空间管理员修改空间信息（名称、近似重复图片的处理方式）
+     *
+     * @param editRequest 修改空间参数的DTO封装
+     * @return 是否修改成功
+     */
+    boolean editSpace(SpaceEditRequest editRequest);
+
     /**
      * 更新空间信息
      * <p>附带清除缓存</p>
@@ -63,6 +75,15 @@ public interface ISpaceService extends IService<Space> {
      */
     Space getSpaceByIdCache(Long spaceId);
 
+    /**
+     * 根据ID批量查询空间信息（有缓存）
+     * <p>返回的对象是缓存中的共享实例，不要修改</p>
+     *
+     * @param spaceIds 空间ID集合
+     * @return 空间ID -> 空间，不存在的空间不在结果中
+     */
+    Map<Long, Space> getSpaceMapByIdsCache(Collection<Long> spaceIds);
+
     /**
      * 创建一个空间
      *
@@ -8,7 +8,9 @@ import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.IService;
 
 import javax.servlet.http.HttpServletRequest;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /**
  * @author Marisa
@@ -104,6 +106,16 @@ public interface IUserService extends IService<User> {
      */
     UserVo getUserVoByIdCache(Long id);
 
+    /**
+     * 根据ID批量查询用户信息（走多级缓存）
+     * <p>本地缓存未命中的键一次MGET，Redis也未命中的一次IN查询</p>
+     * <p>返回的对象是缓存中的共享实例，不要修改</p>
+     *
+     * @param ids 用户ID集合
+     * @return 用户ID -> 用户，不存在的用户不在结果中
+     */
+    Map<Long, User> getUserMapByIdsCache(Collection<Long> ids);
+
     /**
      * 根据ID删除一个用户
      * <p>需要管理员及以上权限</p>
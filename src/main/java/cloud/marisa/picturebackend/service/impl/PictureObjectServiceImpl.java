@@ -0,0 +1,229 @@
+package cloud.marisa.picturebackend.service.impl;
+
+import cloud.marisa.picturebackend.api.image.AliyunOssUtil;
+import cloud.marisa.picturebackend.config.aliyun.oss.AliyunOssConfigProperties;
+import cloud.marisa.picturebackend.entity.dao.PictureObject;
+import cloud.marisa.picturebackend.entity.dto.file.UploadPictureResult;
+import cloud.marisa.picturebackend.enums.MrsStorageType;
+import cloud.marisa.picturebackend.exception.BusinessException;
+import cloud.marisa.picturebackend.exception.ErrorCode;
+import cloud.marisa.picturebackend.manager.render.PictureRenderManager;
+import cloud.marisa.picturebackend.mapper.PictureObjectMapper;
+import cloud.marisa.picturebackend.service.IPictureObjectService;
+import cloud.marisa.picturebackend.service.IPicturePaletteService;
+import cloud.marisa.picturebackend.util.MinioUtil;
+import cn.hutool.core.date.DateUtil;
+import cn.hutool.core.util.StrUtil;
+import com.aliyun.oss.model.GetObjectRequest;
+import com.aliyun.oss.model.OSSObject;
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * @author MarisaDAZE
+ * @description 针对表【picture_object(图片对象表)】的数据库操作Service实现
+ * @date 2025/4/28
+ */
+@Log4j2
+@Service
+@RequiredArgsConstructor
+public class PictureObjectServiceImpl extends ServiceImpl<PictureObjectMapper, PictureObject>
+        implements IPictureObjectService {
+
+    private final MinioUtil minioUtil;
+
+    private final AliyunOssUtil ossUtil;
+
+    private final AliyunOssConfigProperties ossProperties;
+
+    private final IPicturePaletteService picturePaletteService;
+
+    private final PictureRenderManager pictureRenderManager;
+
+    @Override
+    public PictureObject getByHash(String md5, Long picSize) {
+        if (StrUtil.isBlank(md5) || picSize == null) {
+            return null;
+        }
+        PictureObject object = this.lambdaQuery()
+                .eq(PictureObject::getMd5, md5)
+                .one();
+        if (object == null || !Objects.equals(object.getPicSize(), picSize)) {
+            return null;
+        }
+        return object;
+    }
+
+    @Override
+    public Map<String, PictureObject> getByHashes(Collection<String> md5s) {
+        if (md5s == null || md5s.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        return this.lambdaQuery()
+                .in(PictureObject::getMd5, md5s)
+                .list()
+                .stream()
+                .collect(Collectors.toMap(PictureObject::getMd5, Function.identity(), (a, b) -> a));
+    }
+
+    @Override
+    public byte[] readOriginalRange(PictureObject object, long offset, int length) {
+        String path = object.getOriginalPath();
+        try {
+            if (Objects.equals(object.getStorage(), MrsStorageType.OSS.getValue())) {
+                GetObjectRequest request = new GetObjectRequest(ossProperties.getBucketName(), path);
+                request.setRange(offset, offset + length - 1);
+                try (OSSObject ossObject = ossUtil.getObject(request);
+                     InputStream is = ossObject.getObjectContent()) {
+                    return is.readNBytes(length);
+                }
+            }
+            return minioUtil.downloadRange(path, offset, length);
+        } catch (Exception e) {
+            log.error("读取文件 {} 失败", path, e);
+            throw new BusinessException(ErrorCode.OPERATION_ERROR, "文件读取失败");
+        }
+    }
+
+    @Override
+    public void acquire(PictureObject object) {
+        int updated = this.baseMapper.incrementRef(object.getId());
+        if (updated == 0) {
+            // 查询之后对象刚好被清理了
+            throw new BusinessException(ErrorCode.OPERATION_ERROR, "图片已失效，请重新上传");
+        }
+    }
+
+    @Override
+    public PictureObject register(UploadPictureResult result, MrsStorageType storage) {
+        PictureObject object = PictureObject.fromUploadResult(result, storage.getValue());
+        this.baseMapper.insertOrIncrement(object);
+        PictureObject saved = this.lambdaQuery()
+                .eq(PictureObject::getMd5, object.getMd5())
+                .one();
+        if (saved == null) {
+            throw new BusinessException(ErrorCode.OPERATION_ERROR, "保存图片失败");
+        }
+        // 同一份文件被并发上传了，使用先登记的那一份，本次上传的文件作废
+        if (!Objects.equals(saved.getOriginalPath(), object.getOriginalPath())) {
+            log.info("文件 {} 已存在，删除重复上传的文件 {}", object.getMd5(), object.getOriginalPath());
+            // 只删除本次上传的文件，渲染结果属于先登记的那一份
+            runAfterCommit(() -> deletePaths(storage == MrsStorageType.OSS,
+                    object.getSavedPath(), object.getThumbPath(), object.getOriginalPath()));
+            return saved;
+        }
+        // 新登记的对象，保存同步取色得到的调色板（后台处理的对象在处理完成时保存）
+        picturePaletteService.savePalette(saved.getMd5(), result.getPalette());
+        return saved;
+    }
+
+    @Override
+    public void discardUpload(UploadPictureResult result, MrsStorageType storage, String keepPath) {
+        if (result == null) {
+            return;
+        }
+        log.info("删除未登记的上传文件 {}", result.getOriginalPath());
+        deletePaths(storage == MrsStorageType.OSS, Stream.of(result.getSavedPath(), result.getThumbPath(), result.getOriginalPath())
+                .filter(path -> !Objects.equals(path, keepPath))
+                .distinct()
+                .toArray(String[]::new));
+    }
+
+    @Override
+    public void release(Long objectId) {
+        if (objectId == null) {
+            return;
+        }
+        this.baseMapper.decrementRef(objectId);
+    }
+
+    @Override
+    public int sweepUnreferenced(int graceMinutes, int limit) {
+        Date deadline = DateUtil.offsetMinute(new Date(), -graceMinutes);
+        List<PictureObject> objects = this.lambdaQuery()
+                .eq(PictureObject::getRefCount, 0)
+                .lt(PictureObject::getUpdateTime, deadline)
+                .last("LIMIT " + limit)
+                .list();
+        int swept = 0;
+        for (PictureObject object : objects) {
+            // 先删记录再删文件，删除失败说明对象又被引用了
+            if (this.baseMapper.deleteUnreferenced(object.getId()) == 0) {
+                continue;
+            }
+            picturePaletteService.removePalette(object.getMd5());
+            deleteFiles(object);
+            swept++;
+        }
+        return swept;
+    }
+
+    /**
+     * 删除对象对应的文件（默认图、缩略图、原图、按需渲染的结果）
+     *
+     * @param object 对象信息
+     */
+    private void deleteFiles(PictureObject object) {
+        boolean isOss = Objects.equals(object.getStorage(), MrsStorageType.OSS.getValue());
+        deletePaths(isOss, object.getSavedPath(), object.getThumbPath(), object.getOriginalPath());
+        if (StrUtil.isNotBlank(object.getMd5())) {
+            pictureRenderManager.removeRenders(object.getMd5(), isOss ? MrsStorageType.OSS : MrsStorageType.MINIO);
+        }
+    }
+
+    /**
+     * 删除对象存储上的文件，删除失败只记录日志
+     *
+     * @param isOss 是否在阿里云OSS上
+     * @param paths 文件路径
+     */
+    private void deletePaths(boolean isOss, String... paths) {
+        for (String path : paths) {
+            if (StrUtil.isBlank(path)) {
+                continue;
+            }
+            try {
+                if (isOss) {
+                    ossUtil.removeFile(path);
+                } else {
+                    minioUtil.delete(path);
+                }
+            } catch (Exception e) {
+                log.error("删除文件 {} 失败", path, e);
+            }
+        }
+    }
+
+    /**
+     * 在事务提交后执行，不在事务中时直接执行
+     *
+     * @param task 任务
+     */
+    private void runAfterCommit(Runnable task) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    task.run();
+                }
+            });
+        } else {
+            task.run();
+        }
+    }
+}
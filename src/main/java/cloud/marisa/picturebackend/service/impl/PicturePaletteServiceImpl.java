@@ -0,0 +1,73 @@
+package cloud.marisa.picturebackend.service.impl;
+
+import cloud.marisa.picturebackend.entity.dao.Picture;
+import cloud.marisa.picturebackend.entity.dao.PicturePalette;
+import cloud.marisa.picturebackend.exception.ErrorCode;
+import cloud.marisa.picturebackend.exception.ThrowUtils;
+import cloud.marisa.picturebackend.mapper.PicturePaletteMapper;
+import cloud.marisa.picturebackend.service.IPicturePaletteService;
+import cloud.marisa.picturebackend.util.colors.ColorUtils;
+import cloud.marisa.picturebackend.util.colors.MrsColorHSV;
+import cloud.marisa.picturebackend.util.colors.MrsColorPalette;
+import cn.hutool.core.util.StrUtil;
+import com.baomidou.mybatisplus.core.conditions.Wrapper;
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author MarisaDAZE
+ * @description 针对表【picture_palette(图片调色板表)】的数据库操作Service实现
+ * @date 2025/4/28
+ */
+@Log4j2
+@Service
+public class PicturePaletteServiceImpl extends ServiceImpl<PicturePaletteMapper, PicturePalette>
+        implements IPicturePaletteService {
+
+    @Override
+    public void savePalette(String md5, List<MrsColorPalette.Entry> entries) {
+        if (StrUtil.isBlank(md5) || entries == null || entries.isEmpty()) {
+            return;
+        }
+        removePalette(md5);
+        List<PicturePalette> palettes = new ArrayList<>(entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            PicturePalette palette = PicturePalette.fromEntry(i, entries.get(i));
+            palette.setMd5(md5);
+            palettes.add(palette);
+        }
+        this.saveBatch(palettes);
+    }
+
+    @Override
+    public void removePalette(String md5) {
+        if (StrUtil.isBlank(md5)) {
+            return;
+        }
+        this.lambdaUpdate()
+                .eq(PicturePalette::getMd5, md5)
+                .remove();
+    }
+
+    @Override
+    public List<Long> searchPictureIds(String searchColor, float similarity, Wrapper<Picture> pictureFilter, int limit) {
+        ThrowUtils.throwIf(similarity <= 0 || similarity > 1,
+                ErrorCode.PARAMS_ERROR, "相似度需在(0,1]之间但实际是 " + similarity);
+        MrsColorHSV colorHSV = ColorUtils.toHSV(searchColor);
+        // 根据相似度计算允许偏差，和主色调的查询保持一致
+        float hueRange = (1 - similarity) * 360;
+        float satValRange = (1 - similarity) * 100;
+        List<Integer> hueBuckets = ColorUtils.calculateHueBuckets(colorHSV.getHue(), (int) Math.ceil(hueRange / 10));
+        int satValTolerance = (int) Math.ceil(satValRange / 10);
+        List<Integer> satBuckets = ColorUtils.calculateLinearBuckets(colorHSV.getSaturationBucket(), satValTolerance);
+        List<Integer> valBuckets = ColorUtils.calculateLinearBuckets(colorHSV.getValueBucket(), satValTolerance);
+        List<Long> pictureIds = this.baseMapper.selectPictureIdsByColor(
+                colorHSV, hueBuckets, satBuckets, valBuckets, hueRange, satValRange, pictureFilter, limit);
+        log.info("调色板搜索 {}, 命中{}张图片", searchColor, pictureIds.size());
+        return pictureIds;
+    }
+}
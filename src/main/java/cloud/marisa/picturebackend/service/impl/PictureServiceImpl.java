@@ -4,13 +4,18 @@ import cloud.marisa.picturebackend.api.image.imageexpand.ImageOutPaintingApi;
 import cloud.marisa.picturebackend.api.image.imageexpand.entity.request.ImagePaintingParameters;
 import cloud.marisa.picturebackend.api.image.imageexpand.entity.request.ImageRequestParam;
 import cloud.marisa.picturebackend.api.image.imageexpand.entity.response.create.CreateTaskResponse;
+import cloud.marisa.picturebackend.api.image.imagesearch.entity.ImageSearchResult;
 import cloud.marisa.picturebackend.common.ApiConstants;
+import cloud.marisa.picturebackend.config.PictureConfig;
 import cloud.marisa.picturebackend.entity.dao.*;
 import cloud.marisa.picturebackend.entity.dto.api.RandomPictureRequest;
 import cloud.marisa.picturebackend.entity.dto.api.SearchPictureRequest;
 import cloud.marisa.picturebackend.entity.dto.common.DeleteRequest;
+import cloud.marisa.picturebackend.entity.dto.file.PictureRenderResult;
+import cloud.marisa.picturebackend.entity.dto.file.StoredPictureSource;
 import cloud.marisa.picturebackend.entity.dto.file.UploadPictureResult;
 import cloud.marisa.picturebackend.entity.dto.picture.*;
+import cloud.marisa.picturebackend.entity.vo.PictureUploadBatchVo;
 import cloud.marisa.picturebackend.entity.vo.PictureVo;
 import cloud.marisa.picturebackend.entity.vo.UserVo;
 import cloud.marisa.picturebackend.enums.*;
@@ -22,20 +27,33 @@ import cloud.marisa.picturebackend.exception.ThrowUtils;
 import cloud.marisa.picturebackend.manager.auth.SpaceUserAuthManager;
 import cloud.marisa.picturebackend.manager.auth.StpKit;
 import cloud.marisa.picturebackend.manager.auth.constant.SpaceUserPermissionConstants;
+import cloud.marisa.picturebackend.manager.cache.PictureIdBloomFilter;
+import cloud.marisa.picturebackend.manager.cache.PicturePageCacheManager;
+import cloud.marisa.picturebackend.manager.cache.entity.PicturePageIds;
+import cloud.marisa.picturebackend.manager.render.PictureRenderManager;
+import cloud.marisa.picturebackend.manager.search.PictureHashIndex;
 import cloud.marisa.picturebackend.manager.upload.AliyunPictureUploadMultipart;
 import cloud.marisa.picturebackend.manager.upload.AliyunPictureUploadURL;
+import cloud.marisa.picturebackend.manager.upload.PictureProcessManager;
+import cloud.marisa.picturebackend.manager.upload.PictureUrlFetcher;
+import cloud.marisa.picturebackend.manager.upload.UploadAdmissionManager;
 import cloud.marisa.picturebackend.mapper.PictureMapper;
 import cloud.marisa.picturebackend.queue.OverflowStorageDao;
 import cloud.marisa.picturebackend.service.*;
+import cloud.marisa.picturebackend.upload.picture.PictureLocalFileUpload;
 import cloud.marisa.picturebackend.upload.picture.PictureMultipartFileUpload;
+import cloud.marisa.picturebackend.upload.picture.PictureStoredObjectUpload;
+import cloud.marisa.picturebackend.upload.picture.PictureUploadTemplate;
 import cloud.marisa.picturebackend.upload.picture.PictureUrlUpload;
 import cloud.marisa.picturebackend.util.*;
 import cloud.marisa.picturebackend.util.cache.MrsCacheUtil;
+import cloud.marisa.picturebackend.util.cache.MrsTwoLevelCache;
 import cloud.marisa.picturebackend.util.colors.ColorUtils;
 import cloud.marisa.picturebackend.util.colors.MrsColorHSV;
 import cn.hutool.core.collection.CollectionUtil;
+import cn.hutool.core.io.unit.DataSize;
+import cn.hutool.core.util.NumberUtil;
 import cn.hutool.core.util.ObjUtil;
-import cn.hutool.core.util.RandomUtil;
 import cn.hutool.core.util.StrUtil;
 import cn.hutool.crypto.digest.MD5;
 import cn.hutool.json.JSONUtil;
@@ -44,8 +62,7 @@ import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import com.baomidou.mybatisplus.core.toolkit.support.SFunction;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import com.github.benmanes.caffeine.cache.Cache;
-import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.beans.BeanUtils;
@@ -58,16 +75,21 @@ import org.springframework.util.ObjectUtils;
 import org.springframework.web.multipart.MultipartFile;
 
 import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 import static cloud.marisa.picturebackend.common.Constants.PICTURE_CACHE_NAME;
+import static cloud.marisa.picturebackend.common.Constants.PIC_HASH_DECODE_SIZE;
 
 
 /**
@@ -139,6 +161,36 @@ public class PictureServiceImpl
      */
     private final PictureMultipartFileUpload pictureMultipartFileUpload;
 
+    /**
+     * 图片上传服务（原图已经在MinIO上，如分片上传合并后的文件）
+     */
+    private final PictureStoredObjectUpload pictureStoredObjectUpload;
+
+    /**
+     * 图片上传服务（已经下载到本地的文件，用于批量导入）
+     */
+    private final PictureLocalFileUpload pictureLocalFileUpload;
+
+    /**
+     * 网络图片下载
+     */
+    private final PictureUrlFetcher pictureUrlFetcher;
+
+    /**
+     * 上传准入控制
+     */
+    private final UploadAdmissionManager uploadAdmissionManager;
+
+    /**
+     * 图片后台处理（生成派生图、主色调）
+     */
+    private final PictureProcessManager pictureProcessManager;
+
+    /**
+     * 图片配置信息
+     */
+    private final PictureConfig pictureConfig;
+
     /**
      * OSS图片上传服务（通过URL上传）
      */
@@ -153,6 +205,16 @@ public class PictureServiceImpl
      */
     private final ThreadPoolExecutor editBatchPoolExecutor;
 
+    /**
+     * 批量导入的下载线程池
+     */
+    private final ThreadPoolExecutor pictureBatchFetchPoolExecutor;
+
+    /**
+     * 批量导入的处理线程池
+     */
+    private final ThreadPoolExecutor pictureBatchProcessPoolExecutor;
+
     /**
      * AI扩图API
      */
@@ -179,19 +241,66 @@ public class PictureServiceImpl
      */
     private final IApiKeyService apiKeyService;
 
+    /**
+     * 图片信息的二级缓存（Caffeine + Redis）
+     */
+    private final MrsTwoLevelCache<Picture> pictureCache;
+
+    /**
+     * 图片分页结果的版本化缓存
+     */
+    private final PicturePageCacheManager picturePageCacheManager;
+
+    /**
+     * 图片ID的布隆过滤器
+     */
+    private final PictureIdBloomFilter pictureIdBloomFilter;
+
+    /**
+     * 图片对象服务（按内容去重的文件及其引用计数）
+     */
+    private final IPictureObjectService pictureObjectService;
+
+    /**
+     * 图片调色板服务（按颜色搜索）
+     */
+    private final IPicturePaletteService picturePaletteService;
+
+    /**
+     * 图片感知哈希索引（以图搜图）
+     */
+    private final PictureHashIndex pictureHashIndex;
+
+    /**
+     * 图片按需渲染
+     */
+    private final PictureRenderManager pictureRenderManager;
+
     /**
      * 以图片ID为键时的缓存前缀
      */
     public static final String PICTURE_ID = "picture-id:";
 
     /**
-     * 图片信息的本地缓存Caffeine
+     * 按颜色搜索时返回的图片数量
      */
-    public final Cache<String, String> PICTURE_LOCAL_CACHE = Caffeine.newBuilder()
-            .maximumSize(10000L)
-            // 5分钟后过期（5*60=300）
-            .expireAfterWrite(300, TimeUnit.SECONDS)
-            .build();
+    private static final int COLOR_SEARCH_SIZE = 12;
+
+    /**
+     * 以图搜图时返回的图片数量
+     */
+    private static final int SIMILAR_SEARCH_SIZE = 20;
+
+    /**
+     * 以图搜图时允许的最大汉明距离（64位差异哈希）
+     */
+    private static final int SIMILAR_MAX_DISTANCE = 12;
+
+    /**
+     * 上传时判定为近似重复的最大汉明距离（重新导出、压缩、轻微缩放的同一张图）
+     */
+    private static final int DUPLICATE_MAX_DISTANCE = 4;
+
 
     @Override
     public String upload(MultipartFile multipartFile) {
@@ -207,6 +316,56 @@ public class PictureServiceImpl
         if (ObjectUtils.isEmpty(loginUser)) {
             throw new BusinessException(ErrorCode.NOT_LOGIN_ERROR);
         }
+        // 秒传不需要处理文件，其它方式按文件大小申请上传许可，处理完成后归还
+        if (inputSource instanceof PictureObject) {
+            return doSaveOrUpdatePicture(inputSource, uploadRequest, loginUser);
+        }
+        try (UploadAdmissionManager.UploadPermit ignored =
+                     uploadAdmissionManager.acquireBytes(loginUser.getId(), estimateUploadSize(inputSource))) {
+            return doSaveOrUpdatePicture(inputSource, uploadRequest, loginUser);
+        }
+    }
+
+    /**
+     * 估算一次上传要处理的字节数
+     * <p>URL上传先校验链接，不合法的链接不发出任何请求；以HEAD请求声明的大小为准，没有声明的按最大体积算</p>
+     * <p>每次最多按普通图片的最大体积计算：分片上传合并后的文件从对象存储流式读取到临时文件，
+     * 不会整个进入内存，解码占用的内存由像素预算控制，按文件的完整大小计算会让一个大文件占满节点的字节预算</p>
+     *
+     * @param inputSource 文件输入
+     * @return 字节数
+     */
+    private long estimateUploadSize(Object inputSource) {
+        long maxCharge = DataSize.parse(pictureConfig.getImageMaxSize()).toBytes();
+        if (inputSource instanceof MultipartFile) {
+            return Math.min(((MultipartFile) inputSource).getSize(), maxCharge);
+        }
+        if (inputSource instanceof StoredPictureSource) {
+            return Math.min(((StoredPictureSource) inputSource).getSize(), maxCharge);
+        }
+        if (inputSource instanceof String) {
+            String url = (String) inputSource;
+            ThrowUtils.throwIf(StrUtil.isBlank(url), ErrorCode.PARAMS_ERROR, "文件地址不能为空");
+            ThrowUtils.throwIf(!MrsPathUtil.isWebURL(url), ErrorCode.PARAMS_ERROR, "仅支持http(s)协议的链接");
+            // 校验类型和大小，和下面取大小共用一次HEAD请求
+            pictureUrlFetcher.validate(url);
+            Long contentLength = pictureUrlFetcher.probe(url).getContentLength();
+            if (contentLength != null) {
+                return Math.min(contentLength, maxCharge);
+            }
+        }
+        return maxCharge;
+    }
+
+    /**
+     * 保存或更新图片（已经拿到上传许可）
+     *
+     * @param inputSource   文件输入
+     * @param uploadRequest 上传参数
+     * @param loginUser     登录用户
+     * @return 图片VO
+     */
+    private PictureVo doSaveOrUpdatePicture(Object inputSource, PictureUploadRequest uploadRequest, User loginUser) {
         //
         Long pictureId = uploadRequest.getId();
         if (pictureId != null && pictureId <= 0) {
@@ -241,12 +400,15 @@ public class PictureServiceImpl
         // 图片的保存位置（文件服务器上的相对路径前缀）
         String uploadPath = MrsPathUtil.repairPath(PICTURE_PATH) + suffixPath;
         // 图片ID不为空，是更新图片操作
+        Long oldObjectId = null;
         if (pictureId != null) {
-            // 检查图片是否存在
-            boolean exists = this.lambdaQuery()
+            // 检查图片是否存在（同时取出旧文件的对象ID，更新成功后要释放对旧文件的引用）
+            Picture oldPicture = this.lambdaQuery()
+                    .select(Picture::getId, Picture::getObjectId)
                     .eq(Picture::getId, pictureId)
-                    .exists();
-            ThrowUtils.throwIf(!exists, ErrorCode.NOT_FOUND, "图片不存在");
+                    .one();
+            ThrowUtils.throwIf(oldPicture == null, ErrorCode.NOT_FOUND, "图片不存在");
+            oldObjectId = oldPicture.getObjectId();
             /* 检查图片是否存在（已废弃）
              * Picture dbPic = this.getById(pictureId);
              * if (dbPic == null) {
@@ -270,128 +432,270 @@ public class PictureServiceImpl
          */
         long current = System.currentTimeMillis();
         Picture picture;
+        // 秒传时引用的已有文件对象
+        PictureObject reusedObject = null;
+        // 本次上传的文件
+        UploadPictureResult uploadResult = null;
         // 为文件秒传准备的MD5，仅支持文件模式上传，URL模式暂不支持
         if (inputSource instanceof MultipartFile) {
             // 文件上传模式，支持秒传功能
-            String hex = uploadRequest.getMd5();
-            if (StrUtil.isBlank(hex)) {
-                hex = MD5.create().digestHex(pictureMultipartFileUpload.getPictureStream(inputSource));
+            // MD5由服务端计算，不使用前端传来的值（否则只凭一个MD5就能引用到别人的图片）
+            boolean isOss = useOss != null && useOss;
+            // MinIO：上传文件只读一次，写临时文件时顺带算出MD5，不能秒传时直接用这份临时文件上传
+            // OSS：上传逻辑会分别读取上传文件，这里只计算MD5
+            PictureUploadTemplate.SpooledPicture spooled = null;
+            String hex;
+            if (isOss) {
+                try (InputStream is = pictureMultipartFileUpload.getPictureStream(inputSource)) {
+                    hex = MD5.create().digestHex(is);
+                } catch (IOException e) {
+                    log.error("计算文件MD5失败", e);
+                    throw new BusinessException(ErrorCode.OPERATION_ERROR, "文件读取失败");
+                }
+            } else {
+                spooled = pictureMultipartFileUpload.spoolPicture(inputSource);
+                hex = spooled.getMd5();
+            }
+            // 判断这份文件是否已经存储过了（秒传是否可用），文件按内容去重，和用户、空间无关
+            try {
+                reusedObject = pictureObjectService.getByHash(hex, ((MultipartFile) inputSource).getSize());
+            } catch (RuntimeException e) {
+                if (spooled != null) {
+                    spooled.discard();
+                }
+                throw e;
             }
-            // 判断图片是否已经被其他用户上传过了（秒传是否可用）
-            List<Picture> records = this.lambdaQuery()
-                    .eq(Picture::getMd5, hex)
-                    // 这里不要用.one()，它的底层是selectList().get(0)，因此并不能优化性能
-                    .page(new Page<>(1, 1))
-                    .getRecords();
-            Picture repeatPicture = records.isEmpty() ? null : records.get(0);
             // 库中不存在，走正常上传逻辑
-            if (repeatPicture == null) {
-                // 保存图片到文件服务器
-                UploadPictureResult uploadResult;
-                if (useOss != null && useOss) {
+            if (reusedObject == null) {
+                // 保存图片到文件服务器（临时文件交给上传方法删除）
+                if (isOss) {
                     uploadResult = aliyunPictureUploadMultipart.uploadPicture(inputSource, uploadPath);
                 } else {
-                    uploadResult = pictureMultipartFileUpload.uploadPictureObject(inputSource, uploadPath);
+                    uploadResult = isAsyncProcess()
+                            ? pictureMultipartFileUpload.uploadOriginalObject(inputSource, spooled, uploadPath)
+                            : pictureMultipartFileUpload.uploadPictureObject(inputSource, spooled, uploadPath);
                 }
                 log.info("上传耗时: {}", (System.currentTimeMillis() - current));
                 log.info("原始上传数据 {}", uploadResult);
                 picture = getPicture(loginUser, uploadResult);
             } else {
-                // TODO: 图片秒传功能有点BUG
-                // 划分空间后，秒传时还需要将图片拷贝到自己的空间下
-                // 而拷贝存在开销，秒传的意义是为了让用户上传图片时0等待
-                // 拷贝操作或许应异步进行，先给用户一个可访问的图片链接
-                // 但用户马上要编辑该怎么办？
-                picture = getPicture(loginUser, repeatPicture);
+                // 秒传：直接引用已有的文件，只需要新增一条图片记录
+                // 文件不属于任何空间，由引用计数决定什么时候删除，因此不需要拷贝
+                if (spooled != null) {
+                    spooled.discard();
+                }
+                picture = getPicture(loginUser, reusedObject);
                 log.info("触发秒传");
                 log.info("上传耗时: {}", (System.currentTimeMillis() - current));
             }
+        } else if (inputSource instanceof PictureObject) {
+            // 客户端秒传（已经过预检和文件校验），直接引用已有的文件
+            reusedObject = (PictureObject) inputSource;
+            picture = getPicture(loginUser, reusedObject);
+            log.info("触发秒传（客户端）");
+        } else if (inputSource instanceof StoredPictureSource) {
+            // 分片上传合并后的文件，原图已经在对象存储上了
+            StoredPictureSource stored = (StoredPictureSource) inputSource;
+            if (Objects.equals(stored.getStorage(), MrsStorageType.OSS.getValue())) {
+                long maxSize = DataSize.parse(pictureConfig.getChunkMaxSize()).toBytes();
+                uploadResult = aliyunPictureUploadURL.uploadPicture(stored.getUrl(), uploadPath, maxSize);
+            } else {
+                // 合并后的文件在MinIO内复制到空间的图片目录下作为原图，不经过本机
+                uploadResult = isAsyncProcess()
+                        ? pictureStoredObjectUpload.uploadOriginalObject(inputSource, uploadPath)
+                        : pictureStoredObjectUpload.uploadPictureObject(inputSource, uploadPath);
+            }
+            picture = getPicture(loginUser, uploadResult);
+            log.info("上传耗时: {}", (System.currentTimeMillis() - current));
+            log.info("原始上传数据 {}", uploadResult);
         } else {
             // 通过URL的方式上传图片，这个没办法做秒传，无法单凭一个URL就拿到目标文件的MD5
             // 此外还要兼容一些随机图的API，所以也没法把URL字符串直接MD5做标识
-            UploadPictureResult uploadResult;
             if (useOss != null && useOss) {
                 uploadResult = aliyunPictureUploadURL.uploadPicture(inputSource, uploadPath);
             } else {
-                uploadResult = pictureUrlUpload.uploadPictureObject(inputSource, uploadPath);
+                uploadResult = isAsyncProcess()
+                        ? pictureUrlUpload.uploadOriginalObject(inputSource, uploadPath)
+                        : pictureUrlUpload.uploadPictureObject(inputSource, uploadPath);
             }
             picture = getPicture(loginUser, uploadResult);
             log.info("上传耗时: {}", (System.currentTimeMillis() - current));
             log.info("原始上传数据 {}", uploadResult);
         }
-        // 公共空间 id=0L, 私人空间 id=<雪花ID>
-        picture.setSpaceId(spaceId);
-        // 上传到私有空间，需要限制大小和数量
-        if (spaceId != 0L) {
-            // picture.setSpaceId(spaceId);
-            Space _space = space.get();
-            // 这里只是校验，更新空间数据在最下面
-            Long totalSize = _space.getTotalSize();
-            Long maxSize = _space.getMaxSize();
-            Integer totalCount = _space.getTotalCount();
-            Integer maxCount = _space.getMaxCount();
-            Long fileSize = picture.getPicSize();
-            if ((totalSize + fileSize) > maxSize) {
-                throw new BusinessException(ErrorCode.OPERATION_ERROR, "空间容量不足");
-            }
-            if ((totalCount + 1) > maxCount) {
-                throw new BusinessException(ErrorCode.OPERATION_ERROR, "剩余可用数不足");
-            }
-        }
-        // 自定义文件名（图片名不影响存储名）
-        String picName = uploadRequest.getPicName();
-        if (StrUtil.isNotBlank(picName)) {
-            picture.setName(picName);
-        }
-        // 填充审核信息
-        fillReviewParams(picture, loginUser);
-        if (pictureId != null) {
-            picture.setId(pictureId);
-            picture.setEditTime(new Date());
-        }
-        log.info("最终图片信息 {}", picture);
-        // 开启事务，保证图片和空间数据都保存成功
-        transactionTemplate.execute(status -> {
-            Long picId = picture.getId();
-            List<String> cacheKeys = new ArrayList<>();
-            // 删除缓存
-            if (picId != null) {
-                String cacheKey = PICTURE_CACHE_NAME + PICTURE_ID + picId;
-                cacheKeys = Collections.singletonList(cacheKey);
-                MrsCacheUtil.removeCache(PICTURE_LOCAL_CACHE, redisTemplate, cacheKeys);
+        // 分片上传合并后的原图由分片上传会话负责清理，其余本次上传的文件在保存失败时要删掉
+        String keepPath = inputSource instanceof StoredPictureSource ? ((StoredPictureSource) inputSource).getPath() : null;
+        MrsStorageType storageType = (useOss != null && useOss) ? MrsStorageType.OSS : MrsStorageType.MINIO;
+        PictureHashIndex.Hit duplicate;
+        try {
+            // 公共空间 id=0L, 私人空间 id=<雪花ID>
+            picture.setSpaceId(spaceId);
+            // 上传到私有空间，需要限制大小和数量
+            if (spaceId != 0L) {
+                // picture.setSpaceId(spaceId);
+                Space _space = space.get();
+                // 这里只是校验，更新空间数据在最下面
+                Long totalSize = _space.getTotalSize();
+                Long maxSize = _space.getMaxSize();
+                Integer totalCount = _space.getTotalCount();
+                Integer maxCount = _space.getMaxCount();
+                Long fileSize = picture.getPicSize();
+                if ((totalSize + fileSize) > maxSize) {
+                    throw new BusinessException(ErrorCode.OPERATION_ERROR, "空间容量不足");
+                }
+                if ((totalCount + 1) > maxCount) {
+                    throw new BusinessException(ErrorCode.OPERATION_ERROR, "剩余可用数不足");
+                }
             }
-            // 更新图片
-            boolean pictureSaved = this.saveOrUpdate(picture);
-            // 通过线程池异步延迟删除缓存
-            if (picId != null) {
-                MrsCacheUtil.delayRemoveCache(PICTURE_LOCAL_CACHE, redisTemplate, cacheKeys, 3);
+            // 空间内已有近似重复的图片（同一张图重新导出、压缩过），按空间设置提示或拒绝
+            duplicate = this.checkNearDuplicate(picture, space.get(), pictureId);
+            // 自定义文件名（图片名不影响存储名）
+            String picName = uploadRequest.getPicName();
+            if (StrUtil.isNotBlank(picName)) {
+                picture.setName(picName);
             }
-            if (!pictureSaved) {
-                throw new BusinessException(ErrorCode.OPERATION_ERROR, "保存图片失败");
+            // 填充审核信息
+            fillReviewParams(picture, loginUser);
+            if (pictureId != null) {
+                picture.setId(pictureId);
+                picture.setEditTime(new Date());
             }
-            Space _space = space.get();
-            // 上传的私有空间，更新空间信息
-            if (_space != null) {
-                Long totalSize = _space.getTotalSize() + picture.getPicSize();
-                Integer totalCount = _space.getTotalCount() + 1;
-                // 更新空间数据
-                LambdaUpdateWrapper<Space> updateWrapper = new LambdaUpdateWrapper<>();
-                updateWrapper.eq(Space::getId, _space.getId());
-                updateWrapper.set(Space::getTotalSize, totalSize);
-                updateWrapper.set(Space::getTotalCount, totalCount);
-                updateWrapper.set(Space::getEditTime, new Date());
-                boolean spaceUpdated = spaceService.updateSpaceByCache(updateWrapper, _space.getId());
-                if (!spaceUpdated) {
-                    throw new BusinessException(ErrorCode.OPERATION_ERROR, "更新空间失败");
+            log.info("最终图片信息 {}", picture);
+            PictureObject objectToAcquire = reusedObject;
+            UploadPictureResult objectToRegister = uploadResult;
+            Long objectToRelease = oldObjectId;
+            // 开启事务，保证图片和空间数据都保存成功
+            transactionTemplate.execute(status -> {
+                Long picId = picture.getId();
+                // 引用文件对象：秒传时引用已有的对象，否则登记刚上传的文件
+                if (objectToAcquire != null) {
+                    pictureObjectService.acquire(objectToAcquire);
+                    picture.setObjectId(objectToAcquire.getId());
+                } else if (objectToRegister != null && StrUtil.isNotBlank(objectToRegister.getMd5())) {
+                    PictureObject object = pictureObjectService.register(objectToRegister, storageType);
+                    // 同一份文件被并发上传时，以先登记的为准
+                    fillObjectPath(picture, object);
+                    picture.setObjectId(object.getId());
+                    // 只保存了原图的，派生图交给后台任务生成（和图片一起提交）
+                    pictureProcessManager.submit(object);
+                }
+                // 更新图片时释放对旧文件的引用
+                pictureObjectService.release(objectToRelease);
+                List<String> cacheKeys = new ArrayList<>();
+                // 删除缓存
+                if (picId != null) {
+                    String cacheKey = PICTURE_CACHE_NAME + PICTURE_ID + picId;
+                    cacheKeys = Collections.singletonList(cacheKey);
+                    MrsCacheUtil.removeCache(pictureCache.getLocalCache(), redisTemplate, cacheKeys);
+                }
+                // 更新图片
+                boolean pictureSaved = this.saveOrUpdate(picture);
+                // 通过线程池异步延迟删除缓存
+                if (picId != null) {
+                    MrsCacheUtil.delayRemoveCache(pictureCache.getLocalCache(), redisTemplate, cacheKeys, 3);
+                }
+                if (!pictureSaved) {
+                    throw new BusinessException(ErrorCode.OPERATION_ERROR, "保存图片失败");
+                }
+                // 新文件没有登记对象时，清掉旧的对象ID（更新时空字段不会被写入）
+                if (picId != null && picture.getObjectId() == null && objectToRelease != null) {
+                    this.lambdaUpdate()
+                            .set(Picture::getObjectId, null)
+                            .eq(Picture::getId, picId)
+                            .update();
+                }
+                Space _space = space.get();
+                // 上传的私有空间，更新空间信息
+                if (_space != null) {
+                    Long totalSize = _space.getTotalSize() + picture.getPicSize();
+                    Integer totalCount = _space.getTotalCount() + 1;
+                    // 更新空间数据
+                    LambdaUpdateWrapper<Space> updateWrapper = new LambdaUpdateWrapper<>();
+                    updateWrapper.eq(Space::getId, _space.getId());
+                    updateWrapper.set(Space::getTotalSize, totalSize);
+                    updateWrapper.set(Space::getTotalCount, totalCount);
+                    updateWrapper.set(Space::getEditTime, new Date());
+                    boolean spaceUpdated = spaceService.updateSpaceByCache(updateWrapper, _space.getId());
+                    if (!spaceUpdated) {
+                        throw new BusinessException(ErrorCode.OPERATION_ERROR, "更新空间失败");
+                    }
                 }
+                return null;
+            });
+        } catch (RuntimeException e) {
+            pictureObjectService.discardUpload(uploadResult, storageType, keepPath);
+            throw e;
+        }
+        // 更换了文件，按图片ID缓存的旧渲染结果作废
+        if (pictureId != null) {
+            pictureRenderManager.removeRenders(renderKey(pictureId), storageType);
+        }
+        // 空间内的分页缓存失效
+        picturePageCacheManager.bumpGeneration(picture.getSpaceId());
+        pictureHashIndex.refresh(Collections.singletonList(picture.getId()));
+        PictureVo pictureVo = PictureVo.toVO(picture);
+        if (duplicate != null) {
+            pictureVo.setDuplicateOf(duplicate.getPictureId());
+            pictureVo.setDuplicateDistance(duplicate.getDistance());
+        }
+        return pictureVo;
+    }
+
+    /**
+     * 批量导入时查找近似重复的图片（空间内已有的，或本批次中已经导入的）
+     *
+     * @param picHash  感知哈希
+     * @param spaceId  空间ID
+     * @param accepted 本批次中已经接受的图片
+     * @return 提示信息，没有近似重复的图片时返回null
+     */
+    private String findBatchDuplicate(long picHash, Long spaceId, List<Picture> accepted) {
+        List<PictureHashIndex.Hit> hits = pictureHashIndex.search(
+                picHash, spaceId, false, DUPLICATE_MAX_DISTANCE, 1, null);
+        if (!hits.isEmpty()) {
+            return "空间内已存在近似重复的图片: " + hits.get(0).getPictureId();
+        }
+        for (Picture picture : accepted) {
+            Long hash = picture.getPicHash();
+            if (hash != null && Long.bitCount(hash ^ picHash) <= DUPLICATE_MAX_DISTANCE) {
+                return "和本批次中的图片近似重复: " + picture.getName();
             }
+        }
+        return null;
+    }
+
+    /**
+     * 检查空间内是否已有和上传图片近似重复的图片
+     * <p>MD5只能发现完全相同的文件，这里按感知哈希查找内容相同、字节不同的图片</p>
+     *
+     * @param picture   上传的图片（已填充感知哈希）
+     * @param space     目标空间，公共图库为null
+     * @param excludeId 更新图片时排除图片自己
+     * @return 最相近的图片，没有时返回null
+     */
+    private PictureHashIndex.Hit checkNearDuplicate(Picture picture, Space space, Long excludeId) {
+        Long picHash = picture.getPicHash();
+        // OSS上传等没有计算感知哈希的情况不检查
+        if (space == null || picHash == null) {
             return null;
-        });
-        return PictureVo.toVO(picture);
+        }
+        List<PictureHashIndex.Hit> hits = pictureHashIndex.search(
+                picHash, space.getId(), false, DUPLICATE_MAX_DISTANCE, 1, excludeId);
+        if (hits.isEmpty()) {
+            return null;
+        }
+        PictureHashIndex.Hit duplicate = hits.get(0);
+        MrsDuplicatePolicy policy = EnumUtil.fromValue(space.getDuplicatePolicy(), MrsDuplicatePolicy.class);
+        if (policy == MrsDuplicatePolicy.REJECT) {
+            throw new BusinessException(ErrorCode.OPERATION_ERROR,
+                    "空间内已存在近似重复的图片: " + duplicate.getPictureId());
+        }
+        log.info("上传的图片和空间 {} 中的图片 {} 近似重复, 距离: {}",
+                space.getId(), duplicate.getPictureId(), duplicate.getDistance());
+        return duplicate;
     }
 
     @Override
-    public Integer uploadPictureBatch(PictureUploadBatchRequest uploadBatchRequest, User loggedUser) {
+    public PictureUploadBatchVo uploadPictureBatch(PictureUploadBatchRequest uploadBatchRequest, User loggedUser) {
         String searchText = uploadBatchRequest.getSearchText();
         Integer count = uploadBatchRequest.getCount();
         if (StrUtil.isBlank(searchText)) {
@@ -400,32 +704,211 @@ public class PictureServiceImpl
         if (count == null || count <= 0 || count > 30) {
             throw new BusinessException(ErrorCode.PARAMS_ERROR);
         }
+        Long spaceId = uploadBatchRequest.getSpaceId();
+        if (spaceId == null) spaceId = 0L;
+        ThrowUtils.throwIf(spaceId < 0, ErrorCode.PARAMS_ERROR, "非法的空间ID");
+        Space space = spaceId != 0L ? spaceService.getSpaceByIdCache(spaceId) : null;
+        ThrowUtils.throwIf(spaceId != 0L && space == null, ErrorCode.NOT_FOUND, "空间不存在");
         String pictureURL = String.format(pictureBathUrl, searchText);
         // 从预设站点获取图片链接
         // TODO: 修改图片服务时，这里应该改为从 Bing 提供的API服务，或者从Pixiv的API接口抓原图，直接爬质量太差了
         List<String> picturesURL = WebDocumentUtil.getPictureUrlInBing(pictureURL);
-        PictureUploadRequest uploadRequest = new PictureUploadRequest();
         // 批量导入的名称前缀
         String namePrefix = uploadBatchRequest.getNamePrefix();
         if (StrUtil.isBlank(namePrefix)) {
             namePrefix = searchText;
         }
-        int uploadCount = 0;
-        for (String purl : picturesURL) {
-            PictureVo vo = new PictureVo();
+        String uploadPath = MrsPathUtil.repairPath(PICTURE_PATH) + (spaceId != 0L ? spaceId + "/" : "common/");
+        long start = System.currentTimeMillis();
+        PictureUploadBatchVo batchVo = new PictureUploadBatchVo();
+        List<BatchImportItem> imported = new ArrayList<>();
+        // 本批次中已经出现过的文件指纹，重复的图片只导入一张
+        Map<String, String> seenMd5 = new ConcurrentHashMap<>();
+        int next = 0;
+        // 需要多少张就并行导入多少张，失败的再从剩下的链接里补，直到数量够了或者链接用完
+        while (imported.size() < count && next < picturesURL.size()) {
+            int end = Math.min(picturesURL.size(), next + count - imported.size());
+            List<CompletableFuture<BatchImportItem>> futures = picturesURL.subList(next, end).stream()
+                    .map(url -> importBatchItem(url, uploadPath, seenMd5))
+                    .collect(Collectors.toList());
+            next = end;
+            for (CompletableFuture<BatchImportItem> future : futures) {
+                BatchImportItem item = future.join();
+                batchVo.getItems().add(item.getResult());
+                if (Boolean.TRUE.equals(item.getResult().getSuccess())) {
+                    imported.add(item);
+                }
+            }
+        }
+        // 组装图片信息，并按空间剩余容量截断
+        MrsStorageType storageType = (useOss != null && useOss) ? MrsStorageType.OSS : MrsStorageType.MINIO;
+        List<Picture> pictures = new ArrayList<>();
+        List<BatchImportItem> accepted = new ArrayList<>();
+        long deltaSize = 0L;
+        for (BatchImportItem item : imported) {
+            Picture picture = item.getReusedObject() != null
+                    ? getPicture(loggedUser, item.getReusedObject())
+                    : getPicture(loggedUser, item.getUploadResult());
+            if (space != null && picture.getPicHash() != null) {
+                // 空间内或本批次中已有近似重复的图片，按空间设置提示或跳过
+                String duplicateMessage = this.findBatchDuplicate(picture.getPicHash(), space.getId(), pictures);
+                if (duplicateMessage != null) {
+                    MrsDuplicatePolicy policy = EnumUtil.fromValue(space.getDuplicatePolicy(), MrsDuplicatePolicy.class);
+                    if (policy == MrsDuplicatePolicy.REJECT) {
+                        item.fail(duplicateMessage);
+                        pictureObjectService.discardUpload(item.getUploadResult(), storageType, null);
+                        continue;
+                    }
+                    item.getResult().setMessage(duplicateMessage);
+                }
+            }
+            if (space != null) {
+                if (space.getTotalSize() + deltaSize + picture.getPicSize() > space.getMaxSize()) {
+                    item.fail("空间容量不足");
+                    pictureObjectService.discardUpload(item.getUploadResult(), storageType, null);
+                    continue;
+                }
+                if (space.getTotalCount() + pictures.size() + 1 > space.getMaxCount()) {
+                    item.fail("剩余可用数不足");
+                    pictureObjectService.discardUpload(item.getUploadResult(), storageType, null);
+                    continue;
+                }
+            }
+            picture.setName(namePrefix + "_" + (pictures.size() + 1));
+            picture.setSpaceId(spaceId);
+            fillReviewParams(picture, loggedUser);
+            deltaSize += picture.getPicSize();
+            pictures.add(picture);
+            accepted.add(item);
+        }
+        if (!pictures.isEmpty()) {
+            long totalSize = deltaSize;
+            // 所有图片一次性入库，空间只更新一次；入库失败时本批次新上传的文件都要删掉
             try {
-                uploadRequest.setPicName(namePrefix + "_" + (uploadCount + 1));
-                vo = this.saveOrUpdatePicture(purl, uploadRequest, loggedUser);
-                uploadCount++;
-            } catch (Exception e) {
-                System.err.println("图片上传失败 " + vo.getId());
-                continue;
+                transactionTemplate.execute(status -> {
+                    for (int i = 0; i < accepted.size(); i++) {
+                        BatchImportItem item = accepted.get(i);
+                        if (item.getReusedObject() != null) {
+                            pictureObjectService.acquire(item.getReusedObject());
+                            pictures.get(i).setObjectId(item.getReusedObject().getId());
+                        } else if (StrUtil.isNotBlank(item.getUploadResult().getMd5())) {
+                            PictureObject object = pictureObjectService.register(item.getUploadResult(), storageType);
+                            fillObjectPath(pictures.get(i), object);
+                            pictures.get(i).setObjectId(object.getId());
+                            pictureProcessManager.submit(object);
+                        }
+                    }
+                    if (!this.saveBatch(pictures)) {
+                        throw new BusinessException(ErrorCode.OPERATION_ERROR, "保存图片失败");
+                    }
+                    if (space != null) {
+                        LambdaUpdateWrapper<Space> updateWrapper = new LambdaUpdateWrapper<>();
+                        updateWrapper.eq(Space::getId, space.getId());
+                        updateWrapper.setSql("total_size = total_size + " + totalSize);
+                        updateWrapper.setSql("total_count = total_count + " + pictures.size());
+                        updateWrapper.set(Space::getEditTime, new Date());
+                        boolean spaceUpdated = spaceService.updateSpaceByCache(updateWrapper, space.getId());
+                        if (!spaceUpdated) {
+                            throw new BusinessException(ErrorCode.OPERATION_ERROR, "更新空间失败");
+                        }
+                    }
+                    return null;
+                });
+            } catch (RuntimeException e) {
+                accepted.forEach(item -> pictureObjectService.discardUpload(item.getUploadResult(), storageType, null));
+                throw e;
             }
-            if (uploadCount >= count) {
-                break;
+            for (int i = 0; i < pictures.size(); i++) {
+                Picture picture = pictures.get(i);
+                accepted.get(i).getResult().setPictureId(picture.getId());
+                accepted.get(i).getResult().setName(picture.getName());
             }
+            picturePageCacheManager.bumpGeneration(spaceId);
+            pictureHashIndex.refresh(pictures.stream()
+                    .map(Picture::getId)
+                    .collect(Collectors.toList()));
+        }
+        int successCount = pictures.size();
+        batchVo.setSuccessCount(successCount);
+        batchVo.setFailedCount(batchVo.getItems().size() - successCount);
+        batchVo.setCostMillis(System.currentTimeMillis() - start);
+        log.info("批量导入完成, 关键词: {}, 成功: {}, 失败: {}, 耗时: {}ms",
+                searchText, successCount, batchVo.getFailedCount(), batchVo.getCostMillis());
+        return batchVo;
+    }
+
+    /**
+     * 批量导入中的一张图片：先在下载线程池中下载到临时文件，再交给处理线程池上传
+     * <p>返回的Future不会异常结束，失败原因记录在结果里</p>
+     *
+     * @param url        图片链接
+     * @param uploadPath 保存路径前缀
+     * @param seenMd5    本批次中已经出现过的文件指纹
+     * @return 导入结果
+     */
+    private CompletableFuture<BatchImportItem> importBatchItem(String url, String uploadPath, Map<String, String> seenMd5) {
+        BatchImportItem item = new BatchImportItem(url);
+        long start = System.currentTimeMillis();
+        return CompletableFuture
+                .supplyAsync(() -> {
+                    ThrowUtils.throwIf(!MrsPathUtil.isWebURL(url), ErrorCode.PARAMS_ERROR, "仅支持http(s)协议的链接");
+                    pictureUrlFetcher.validate(url);
+                    // 后台导入不占用户份额，但和普通上传共用节点的字节预算
+                    item.setPermit(uploadAdmissionManager.acquireBytes(null, estimateUploadSize(url)));
+                    return pictureUrlFetcher.download(url);
+                }, pictureBatchFetchPoolExecutor)
+                .thenApplyAsync(tempFile -> {
+                    try {
+                        processBatchItem(item, tempFile, uploadPath, seenMd5);
+                    } finally {
+                        try {
+                            Files.deleteIfExists(tempFile);
+                        } catch (IOException e) {
+                            log.error("删除临时文件失败: {}", tempFile, e);
+                        }
+                    }
+                    return item;
+                }, pictureBatchProcessPoolExecutor)
+                .handle((result, ex) -> {
+                    if (item.getPermit() != null) {
+                        item.getPermit().close();
+                    }
+                    if (ex != null) {
+                        Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                        log.warn("批量导入失败: {}, {}", url, cause.getMessage());
+                        item.fail(cause instanceof BusinessException ? cause.getMessage() : "图片导入失败");
+                    }
+                    item.getResult().setCostMillis(System.currentTimeMillis() - start);
+                    return item;
+                });
+    }
+
+    /**
+     * 处理已经下载好的图片：已经存储过的文件直接引用，否则上传到文件服务器
+     *
+     * @param item       导入结果
+     * @param tempFile   下载好的临时文件
+     * @param uploadPath 保存路径前缀
+     * @param seenMd5    本批次中已经出现过的文件指纹
+     */
+    private void processBatchItem(BatchImportItem item, Path tempFile, String uploadPath, Map<String, String> seenMd5) {
+        // 下载好的文件直接使用，读一遍得到MD5，上传时不再复制和重新计算
+        PictureUploadTemplate.SpooledPicture spooled = pictureLocalFileUpload.spoolPicture(tempFile);
+        String md5 = spooled.getMd5();
+        if (seenMd5.putIfAbsent(md5, item.getResult().getUrl()) != null) {
+            throw new BusinessException(ErrorCode.PARAMS_ERROR, "重复的图片");
+        }
+        PictureObject reusedObject = pictureObjectService.getByHash(md5, spooled.getSize());
+        if (reusedObject != null) {
+            item.setReusedObject(reusedObject);
+        } else if (useOss != null && useOss) {
+            item.setUploadResult(aliyunPictureUploadURL.uploadLocalPicture(tempFile, uploadPath));
+        } else {
+            item.setUploadResult(isAsyncProcess()
+                    ? pictureLocalFileUpload.uploadOriginalObject(tempFile, spooled, uploadPath)
+                    : pictureLocalFileUpload.uploadPictureObject(tempFile, spooled, uploadPath));
         }
-        return uploadCount;
+        item.getResult().setSuccess(true);
     }
 
     @Override
@@ -533,14 +1016,17 @@ public class PictureServiceImpl
         // 删除缓存
         String cacheKey = PICTURE_CACHE_NAME + PICTURE_ID + picture.getId();
         List<String> cacheKeys = Collections.singletonList(cacheKey);
-        MrsCacheUtil.removeCache(PICTURE_LOCAL_CACHE, redisTemplate, cacheKeys);
+        MrsCacheUtil.removeCache(pictureCache.getLocalCache(), redisTemplate, cacheKeys);
         // 更新图片
         boolean updated = this.updateById(picture);
         // 通过线程池异步延迟删除缓存
-        MrsCacheUtil.delayRemoveCache(PICTURE_LOCAL_CACHE, redisTemplate, cacheKeys, 3);
+        MrsCacheUtil.delayRemoveCache(pictureCache.getLocalCache(), redisTemplate, cacheKeys, 3);
         if (!updated) {
             throw new BusinessException(ErrorCode.OPERATION_ERROR);
         }
+        // 原空间和新空间的分页缓存都要失效
+        picturePageCacheManager.bumpGeneration(dbPicture.getSpaceId(), spaceId);
+        pictureHashIndex.refresh(Collections.singletonList(picture.getId()));
         // 啥都完成了，如果不是管理员上传图片，就将内容推给AI审核
         // 这里推到Redis，在AI审核服务那里进行取ID和图片进行处理
         Integer pending = ReviewStatus.PENDING.getValue();
@@ -611,11 +1097,11 @@ public class PictureServiceImpl
                         .map(Picture::getId)
                         .map(pid -> PICTURE_CACHE_NAME + PICTURE_ID + pid)
                         .collect(Collectors.toList());
-                MrsCacheUtil.removeCache(PICTURE_LOCAL_CACHE, redisTemplate, cacheKeys);
+                MrsCacheUtil.removeCache(pictureCache.getLocalCache(), redisTemplate, cacheKeys);
                 // 更新图片
                 boolean updated = this.updateBatchById(pictures);
                 // 通过线程池异步延迟删除缓存
-                MrsCacheUtil.delayRemoveCache(PICTURE_LOCAL_CACHE, redisTemplate, cacheKeys, 3);
+                MrsCacheUtil.delayRemoveCache(pictureCache.getLocalCache(), redisTemplate, cacheKeys, 3);
                 if (!updated) {
                     throw new BusinessException(ErrorCode.OPERATION_ERROR);
                 }
@@ -624,6 +1110,7 @@ public class PictureServiceImpl
         }
         // 等待所有任务完成
         CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        picturePageCacheManager.bumpGeneration(editRequest.getSpaceId());
         return true;
     }
 
@@ -649,7 +1136,6 @@ public class PictureServiceImpl
 
     @Override
     public Long updatePicture(PictureUpdateRequest updateRequest) {
-        // TODO: 缓存暂时先加到这里，剩下的明天再加
         // 图片空间ID
         Long newSpaceId = updateRequest.getSpaceId();
         if (newSpaceId == null) newSpaceId = 0L;
@@ -671,45 +1157,36 @@ public class PictureServiceImpl
             ThrowUtils.throwIf(!exists, ErrorCode.NOT_FOUND, "空间不存在");
         }
         picture.setSpaceId(newSpaceId);
+        // 删除缓存
+        String cacheKey = PICTURE_CACHE_NAME + PICTURE_ID + picture.getId();
+        List<String> cacheKeys = Collections.singletonList(cacheKey);
+        MrsCacheUtil.removeCache(pictureCache.getLocalCache(), redisTemplate, cacheKeys);
         // 更新图片信息
         boolean updated = this.updateById(picture);
+        // 通过线程池异步延迟删除缓存
+        MrsCacheUtil.delayRemoveCache(pictureCache.getLocalCache(), redisTemplate, cacheKeys, 3);
         if (!updated) {
             throw new BusinessException(ErrorCode.OPERATION_ERROR);
         }
+        picturePageCacheManager.bumpGeneration(dbPicture.getSpaceId(), newSpaceId);
+        pictureHashIndex.refresh(Collections.singletonList(picture.getId()));
         return picture.getId();
     }
 
     @Override
     public Picture getPictureByIdCache(Long pid) {
-        // 多级缓存
+        // 布隆过滤器判断不存在的，一定不存在（过滤器只对构建前生成的ID下结论，新图片一律放行）
+        if (!pictureIdBloomFilter.mightContain(pid)) {
+            throw new BusinessException(ErrorCode.NOT_FOUND, "图片不存在");
+        }
+        // 多级缓存（本地 -> Redis -> 数据库），同一个key只会有一个线程去加载
+        // 数据库中也不存在的ID会被短暂缓存
         String cacheKey = PICTURE_CACHE_NAME + PICTURE_ID + pid;
-        log.info("缓存的key: {}", cacheKey);
-        String cacheJson = PICTURE_LOCAL_CACHE.getIfPresent(cacheKey);
-        log.info("cacheJson: {}", cacheJson);
-        Picture picture = JSONUtil.toBean(cacheJson, Picture.class);
-        log.info("picture: {}", picture);
-        // 本地缓存中没有，尝试从redis缓存中取
-        if (cacheJson == null) {
-            Object cacheRedis = redisTemplate.opsForValue().get(cacheKey);
-            log.info("cacheRedis: {}", cacheRedis);
-            log.info("cacheRedis: {}", cacheRedis instanceof Picture);
-            // redis缓存命中
-            if (cacheRedis != null) {
-                String jsonStr = JSONUtil.toJsonStr(cacheRedis);
-                picture = JSONUtil.toBean(jsonStr, Picture.class);
-            } else {
-                // 两层缓存中都没有，去数据库中查
-                picture = this.getById(pid);
-                // 图片真的不存在
-                if (picture == null) {
-                    throw new BusinessException(ErrorCode.NOT_FOUND, "图片不存在");
-                }
-            }
+        Picture picture = pictureCache.get(cacheKey, key -> this.getById(pid));
+        // 图片真的不存在
+        if (picture == null) {
+            throw new BusinessException(ErrorCode.NOT_FOUND, "图片不存在");
         }
-        PICTURE_LOCAL_CACHE.put(cacheKey, JSONUtil.toJsonStr(picture));
-        // 设置随机过期时间（5分钟），防止雪崩
-        int offset = RandomUtil.randomInt(0, 300);
-        redisTemplate.opsForValue().set(cacheKey, picture, 300 + offset, TimeUnit.SECONDS);
         return picture;
     }
 
@@ -728,6 +1205,58 @@ public class PictureServiceImpl
         return res;
     }
 
+    /**
+     * 封装图片信息（秒传）
+     *
+     * @param loginUser 登录用户
+     * @param object    已存储的文件对象
+     * @return 图片的DAO对象
+     */
+    private static Picture getPicture(User loginUser, PictureObject object) {
+        Picture picture = new Picture();
+        BeanUtils.copyProperties(object, picture, "id", "createTime", "updateTime");
+        return getPicture(loginUser, picture);
+    }
+
+    /**
+     * 使用文件对象的存储路径
+     *
+     * @param picture 图片信息
+     * @param object  文件对象
+     */
+    private static void fillObjectPath(Picture picture, PictureObject object) {
+        picture.setUrl(object.getUrl());
+        picture.setSavedPath(object.getSavedPath());
+        picture.setThumbnailUrl(object.getThumbnailUrl());
+        picture.setThumbPath(object.getThumbPath());
+        picture.setOriginalUrl(object.getOriginalUrl());
+        picture.setOriginalPath(object.getOriginalPath());
+        // 先登记的对象可能已经处理完了（或者还在处理中），派生信息也以它为准
+        picture.setProcessStatus(object.getProcessStatus());
+        if (Objects.equals(object.getProcessStatus(), PictureProcessStatus.DONE.getValue())) {
+            picture.setPicWidth(object.getPicWidth());
+            picture.setPicHeight(object.getPicHeight());
+            picture.setPicScale(object.getPicScale());
+            picture.setPicColor(object.getPicColor());
+            picture.setMColorHue(object.getMColorHue());
+            picture.setMColorSaturation(object.getMColorSaturation());
+            picture.setMColorValue(object.getMColorValue());
+            picture.setMHueBucket(object.getMHueBucket());
+            picture.setMSaturationBucket(object.getMSaturationBucket());
+            picture.setMValueBucket(object.getMValueBucket());
+            picture.setPicHash(object.getPicHash());
+        }
+    }
+
+    /**
+     * 是否只保存原图，派生图由后台任务生成（仅MinIO）
+     *
+     * @return 是否异步处理
+     */
+    private boolean isAsyncProcess() {
+        return Boolean.TRUE.equals(pictureConfig.getAsyncProcess());
+    }
+
     /**
      * 封装图片信息
      *
@@ -760,6 +1289,8 @@ public class PictureServiceImpl
         picture.setMHueBucket(dbPicture.getMHueBucket());
         picture.setMSaturationBucket(dbPicture.getMSaturationBucket());
         picture.setMValueBucket(dbPicture.getMValueBucket());
+        // 感知哈希
+        picture.setPicHash(dbPicture.getPicHash());
         // ...
         picture.setMd5(dbPicture.getMd5());
         picture.setPicSize(dbPicture.getPicSize());
@@ -767,6 +1298,10 @@ public class PictureServiceImpl
         picture.setPicHeight(dbPicture.getPicHeight());
         picture.setPicFormat(dbPicture.getPicFormat());
         picture.setPicScale(dbPicture.getPicScale());
+        // 处理状态
+        picture.setProcessStatus(dbPicture.getProcessStatus() == null
+                ? PictureProcessStatus.DONE.getValue()
+                : dbPicture.getProcessStatus());
         return picture;
     }
 
@@ -800,18 +1335,25 @@ public class PictureServiceImpl
          * User loggedUser = userService.getLoginUser(httpServletRequest);
          * checkPictureAuth(picture, loggedUser);
          * */
-        transactionTemplate.execute(status -> {
+        Long objectId = transactionTemplate.execute(status -> {
             // 删除缓存
             String cacheKey = PICTURE_CACHE_NAME + PICTURE_ID + picId;
             List<String> cacheKeys = Collections.singletonList(cacheKey);
-            MrsCacheUtil.removeCache(PICTURE_LOCAL_CACHE, redisTemplate, cacheKeys);
+            MrsCacheUtil.removeCache(pictureCache.getLocalCache(), redisTemplate, cacheKeys);
+            // 引用的对象ID以数据库为准（缓存中可能是加字段之前的旧数据）
+            Picture dbPicture = this.lambdaQuery()
+                    .select(Picture::getId, Picture::getObjectId)
+                    .eq(Picture::getId, picId)
+                    .one();
             // 删除图片
             boolean picRemoved = this.removeById(picId);
             // 通过线程池异步延迟删除缓存
-            MrsCacheUtil.delayRemoveCache(PICTURE_LOCAL_CACHE, redisTemplate, cacheKeys, 3);
+            MrsCacheUtil.delayRemoveCache(pictureCache.getLocalCache(), redisTemplate, cacheKeys, 3);
             if (!picRemoved) {
                 throw new BusinessException(ErrorCode.OPERATION_ERROR, "数据库错误，图片删除失败");
             }
+            // 释放对文件的引用，没有引用的文件由定时任务清理；没有对象ID的历史图片没有占用引用计数
+            pictureObjectService.release(dbPicture.getObjectId());
             // 空间不为空，回收空间占用
             Space space = atomicSpace.get();
             if (space != null) {
@@ -825,10 +1367,15 @@ public class PictureServiceImpl
                     throw new BusinessException(ErrorCode.OPERATION_ERROR, "空间回收失败");
                 }
             }
-            return null;
+            return dbPicture.getObjectId();
         });
-        // TODO: 这里应该有个定时任务，定时删除图片，减少内存占用
-        // minioUtil.delete(picture.getSavedPath());
+        // 引用了文件对象的渲染结果在文件清理时删除，历史图片的按图片ID缓存，这里直接删除
+        if (objectId == null) {
+            MrsStorageType storageType = (useOss != null && useOss) ? MrsStorageType.OSS : MrsStorageType.MINIO;
+            pictureRenderManager.removeRenders(renderKey(picId), storageType);
+        }
+        picturePageCacheManager.bumpGeneration(spaceId);
+        pictureHashIndex.refresh(Collections.singletonList(picId));
         return true;
     }
 
@@ -1124,10 +1671,8 @@ public class PictureServiceImpl
             result.setRecords(new ArrayList<>());
             return result;
         }
-        // 根据ID查询用户列表，并按照 userId-User的形式映射成Map
-        Map<Long, List<UserVo>> userVos = userService.listByIds(userIds).stream()
-                .map(UserVo::toVO)
-                .collect(Collectors.groupingBy(userVo -> (userVo != null) ? userVo.getId() : -1));
+        // 根据ID批量查询用户（走多级缓存），userId-User
+        Map<Long, User> users = userService.getUserMapByIdsCache(userIds);
         // 组装图片Vo列表
         List<PictureVo> pictureVos = records.stream()
                 .map(picture -> {
@@ -1137,11 +1682,7 @@ public class PictureServiceImpl
                         // 那样容易被爬，所以这里只返回缩略图的URL
                         vo.setUrl(null);
                         vo.setOriginalUrl(null);
-                        if (userVos.containsKey(picture.getUserId())) {
-                            vo.setUser(userVos.get(picture.getUserId()).get(0));
-                        } else {
-                            vo.setUser(null);
-                        }
+                        vo.setUser(UserVo.toVO(users.get(picture.getUserId())));
                         // 公共图库权限列表
                         List<String> permissions = spaceUserAuthManager.getPermissionsByRole(MrsSpaceRole.VIEWER.getValue());
                         vo.setPermissionList(permissions);
@@ -1153,20 +1694,272 @@ public class PictureServiceImpl
         return result;
     }
 
+    @Override
+    public Page<PictureVo> getPictureVoPageCache(PictureQueryRequest queryRequest, HttpServletRequest servletRequest) {
+        int current = queryRequest.getCurrent();
+        int size = queryRequest.getPageSize();
+        long spaceId = queryRequest.getSpaceId() == null ? 0L : queryRequest.getSpaceId();
+        // 缓存里只有ID和总数
+        PicturePageIds pageIds = picturePageCacheManager.getPage(spaceId, queryRequest, () -> {
+            LambdaQueryWrapper<Picture> queryWrapper = getQueryWrapper(queryRequest);
+            queryWrapper.select(Picture::getId);
+            Page<Picture> idPage = this.page(new Page<>(current, size), queryWrapper);
+            List<Long> ids = idPage.getRecords().stream()
+                    .map(Picture::getId)
+                    .collect(Collectors.toList());
+            return new PicturePageIds(ids, idPage.getTotal());
+        });
+        // 图片详情从单张图片的缓存中取
+        Page<Picture> picturePage = new Page<>(current, size, pageIds.getTotal());
+        picturePage.setRecords(this.getPicturesByIdsCache(pageIds.getIds()));
+        return this.getPictureVoPage(picturePage, servletRequest);
+    }
+
+    /**
+     * 按ID顺序从缓存获取图片，已不存在的图片会被跳过
+     *
+     * @param ids 图片ID列表
+     * @return 图片列表
+     */
+    private List<Picture> getPicturesByIdsCache(List<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<String, Long> keyToId = new LinkedHashMap<>(ids.size());
+        for (Long id : ids) {
+            if (pictureIdBloomFilter.mightContain(id)) {
+                keyToId.put(PICTURE_CACHE_NAME + PICTURE_ID + id, id);
+            }
+        }
+        // 本地缓存 -> 一次MGET -> 一次IN查询
+        Map<String, Picture> cached = pictureCache.getAll(keyToId.keySet(), missingKeys -> {
+            List<Long> missingIds = missingKeys.stream()
+                    .map(keyToId::get)
+                    .collect(Collectors.toList());
+            return this.listByIds(missingIds).stream()
+                    .collect(Collectors.toMap(picture -> PICTURE_CACHE_NAME + PICTURE_ID + picture.getId(), picture -> picture));
+        });
+        List<Picture> pictures = new ArrayList<>(cached.size());
+        for (String key : keyToId.keySet()) {
+            Picture picture = cached.get(key);
+            if (picture != null) {
+                pictures.add(picture);
+            }
+        }
+        return pictures;
+    }
+
     @Override
     public List<PictureVo> getPictureByColor(Long spaceId, PictureQueryRequest queryRequest, HttpServletRequest servletRequest) {
         queryRequest.setSpaceId(spaceId);
-        LambdaQueryWrapper<Picture> queryWrapper = getQueryWrapper(queryRequest);
-        String sql = queryWrapper.getTargetSql();
-        System.out.println("=======================");
-        System.out.println(sql);
-        System.out.println("=======================");
-        // 只要前12条
-        Page<Picture> page = this.page(new Page<>(1, 12), queryWrapper);
+        String picColor = queryRequest.getPicColor();
+        List<Picture> pictures = new ArrayList<>();
+        List<Long> matchedIds = new ArrayList<>();
+        if (StrUtil.isNotBlank(picColor)) {
+            // 1. 先按调色板查，图片中任意一种颜色相近都能命中，覆盖率高的排在前面
+            // 其它查询条件和调色板一起在数据库里过滤，颜色条件已经由调色板处理了，排序按得分
+            String sortField = queryRequest.getSortField();
+            queryRequest.setPicColor(null);
+            queryRequest.setSortField(null);
+            LambdaQueryWrapper<Picture> pictureFilter = getQueryWrapper(queryRequest)
+                    .eq(Picture::getIsDelete, 0);
+            queryRequest.setPicColor(picColor);
+            queryRequest.setSortField(sortField);
+            matchedIds = picturePaletteService.searchPictureIds(
+                    picColor, similarity, pictureFilter, COLOR_SEARCH_SIZE);
+            pictures.addAll(this.getPicturesByIdsCache(matchedIds));
+        }
+        // 2. 不够的用主色调补齐（还没有调色板的历史图片）
+        if (pictures.size() < COLOR_SEARCH_SIZE) {
+            LambdaQueryWrapper<Picture> queryWrapper = getQueryWrapper(queryRequest);
+            if (!matchedIds.isEmpty()) {
+                queryWrapper.notIn(Picture::getId, matchedIds);
+            }
+            Page<Picture> page = this.page(new Page<>(1, COLOR_SEARCH_SIZE - pictures.size(), false), queryWrapper);
+            pictures.addAll(page.getRecords());
+        }
+        Page<Picture> page = new Page<>(1, COLOR_SEARCH_SIZE, pictures.size());
+        page.setRecords(pictures);
         Page<PictureVo> pictureVoPage = this.getPictureVoPage(page, servletRequest);
         return pictureVoPage.getRecords();
     }
 
+    @Override
+    public List<ImageSearchResult> searchPictureByPicture(Long pictureId, HttpServletRequest servletRequest) {
+        Picture picture = this.getPictureByIdCache(pictureId);
+        User loggedUser = userService.getLoginUser(servletRequest);
+        // 校验审核状态
+        pictureReviewShow(picture, loggedUser);
+        long spaceId = picture.getSpaceId() == null ? 0L : picture.getSpaceId();
+        // 私人空间或团队空间，需要有查看权限
+        if (spaceId != 0L) {
+            boolean canView = StpKit.SPACE.hasPermission(SpaceUserPermissionConstants.PICTURE_VIEW);
+            ThrowUtils.throwIf(!canView, ErrorCode.AUTHORIZATION_ERROR);
+        }
+        Long picHash = picture.getPicHash();
+        if (picHash == null) {
+            picHash = this.backfillPicHash(picture);
+        }
+        // 公共图库只能搜到审核通过的图片，空间内的图片不需要审核
+        boolean passedOnly = spaceId == 0L;
+        List<PictureHashIndex.Hit> hits = pictureHashIndex.search(
+                picHash, spaceId, passedOnly, SIMILAR_MAX_DISTANCE, SIMILAR_SEARCH_SIZE, pictureId);
+        if (hits.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<Long, Integer> distances = hits.stream()
+                .collect(Collectors.toMap(PictureHashIndex.Hit::getPictureId, PictureHashIndex.Hit::getDistance));
+        List<Long> ids = hits.stream()
+                .map(PictureHashIndex.Hit::getPictureId)
+                .collect(Collectors.toList());
+        // 索引只是候选，最终以缓存中的图片为准
+        List<ImageSearchResult> results = new ArrayList<>(ids.size());
+        for (Picture hit : this.getPicturesByIdsCache(ids)) {
+            long hitSpaceId = hit.getSpaceId() == null ? 0L : hit.getSpaceId();
+            if (hitSpaceId != spaceId) {
+                continue;
+            }
+            if (passedOnly && !ReviewStatus.PASS.getValue().equals(hit.getReviewStatus())) {
+                continue;
+            }
+            int distance = distances.get(hit.getId());
+            ImageSearchResult result = new ImageSearchResult();
+            result.setPictureId(hit.getId());
+            result.setName(hit.getName());
+            result.setThumbUrl(hit.getThumbnailUrl());
+            result.setFromUrl(hit.getUrl());
+            result.setDistance(distance);
+            result.setSimilarity(NumberUtil.round(1 - distance / 64.0, 4).doubleValue());
+            results.add(result);
+        }
+        return results;
+    }
+
+    @Override
+    public PictureRenderResult renderPicture(PictureRenderRequest renderRequest, HttpServletRequest servletRequest) {
+        ThrowUtils.throwIf(renderRequest.getId() == null || renderRequest.getId() <= 0, ErrorCode.PARAMS_ERROR);
+        PictureRenderManager.RenderSpec spec = pictureRenderManager.resolveSpec(renderRequest);
+        Picture picture = this.getPictureByIdCache(renderRequest.getId());
+        long spaceId = picture.getSpaceId() == null ? 0L : picture.getSpaceId();
+        boolean passed = ReviewStatus.PASS.getValue().equals(picture.getReviewStatus());
+        if (spaceId != 0L) {
+            // 私人空间或团队空间，需要登录并有查看权限
+            userService.getLoginUser(servletRequest);
+            boolean canView = StpKit.SPACE.hasPermission(SpaceUserPermissionConstants.PICTURE_VIEW);
+            ThrowUtils.throwIf(!canView, ErrorCode.AUTHORIZATION_ERROR);
+        } else if (!passed) {
+            // 公共图库未过审的图片，只有本人或管理员能看
+            User loggedUser = userService.getLoginUserIfLogin(servletRequest);
+            ThrowUtils.throwIf(loggedUser == null, ErrorCode.NOT_LOGIN_ERROR);
+            pictureReviewShow(picture, loggedUser);
+        }
+        // 引用了文件对象的按内容哈希缓存，同一份文件被多张图片引用时只渲染一次，文件清理时一起删除；
+        // 没有对象的历史图片按图片ID缓存，图片删除或更换文件时删除
+        String fileKey = picture.getObjectId() != null && StrUtil.isNotBlank(picture.getMd5())
+                ? picture.getMd5()
+                : renderKey(picture.getId());
+        PictureRenderResult result = new PictureRenderResult();
+        result.setEtag(pictureRenderManager.getEtag(fileKey, spec));
+        result.setContentType(spec.getContentType());
+        result.setPublicCache(spaceId == 0L && passed);
+        result.setMaxAge(pictureConfig.getRenderMaxAge());
+        if (etagMatches(servletRequest.getHeader("If-None-Match"), result.getEtag())) {
+            result.setNotModified(true);
+            return result;
+        }
+        MrsStorageType storageType = (useOss != null && useOss) ? MrsStorageType.OSS : MrsStorageType.MINIO;
+        PictureObject object = picture.getObjectId() != null ? pictureObjectService.getById(picture.getObjectId()) : null;
+        if (object != null) {
+            storageType = Objects.equals(object.getStorage(), MrsStorageType.OSS.getValue())
+                    ? MrsStorageType.OSS
+                    : MrsStorageType.MINIO;
+        }
+        result.setBytes(pictureRenderManager.render(picture, fileKey, storageType, spec));
+        return result;
+    }
+
+    /**
+     * 没有文件对象的图片，渲染结果按图片ID缓存
+     *
+     * @param pictureId 图片ID
+     * @return 渲染结果的文件标识
+     */
+    private static String renderKey(Long pictureId) {
+        return "picture-" + pictureId;
+    }
+
+    /**
+     * If-None-Match是否命中实体标签（支持弱标签、多个标签和*）
+     *
+     * @param ifNoneMatch If-None-Match请求头
+     * @param etag        实体标签（不带引号）
+     * @return 是否命中
+     */
+    private static boolean etagMatches(String ifNoneMatch, String etag) {
+        if (StrUtil.isBlank(ifNoneMatch)) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if ("*".equals(tag)) {
+                return true;
+            }
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (StrUtil.unWrap(tag, '"').equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 为没有感知哈希的历史图片补算哈希（从缩略图计算）
+     *
+     * @param picture 图片
+     * @return 感知哈希
+     */
+    private long backfillPicHash(Picture picture) {
+        String source = StrUtil.isNotBlank(picture.getThumbnailUrl()) ? picture.getThumbnailUrl() : picture.getUrl();
+        ThrowUtils.throwIf(StrUtil.isBlank(source), ErrorCode.OPERATION_ERROR, "图片地址不存在");
+        Path tempFile = null;
+        long picHash;
+        try {
+            tempFile = pictureUrlFetcher.download(source);
+            picHash = ImageUtil.differenceHash(ImageUtil.decodeImage(tempFile, PIC_HASH_DECODE_SIZE).getImage());
+        } catch (IOException e) {
+            log.error("补算感知哈希失败, pictureId: {}", picture.getId(), e);
+            throw new BusinessException(ErrorCode.OPERATION_ERROR, "图片解析失败");
+        } finally {
+            if (tempFile != null) {
+                try {
+                    Files.deleteIfExists(tempFile);
+                } catch (IOException e) {
+                    log.warn("删除临时文件失败: {}", tempFile, e);
+                }
+            }
+        }
+        // 同一份文件的图片哈希相同，一起补上
+        String md5 = picture.getMd5();
+        if (StrUtil.isNotBlank(md5)) {
+            pictureObjectService.lambdaUpdate()
+                    .eq(PictureObject::getMd5, md5)
+                    .isNull(PictureObject::getPicHash)
+                    .set(PictureObject::getPicHash, picHash)
+                    .update();
+        }
+        List<String> cacheKeys = Collections.singletonList(PICTURE_CACHE_NAME + PICTURE_ID + picture.getId());
+        MrsCacheUtil.removeCache(pictureCache.getLocalCache(), redisTemplate, cacheKeys);
+        this.lambdaUpdate()
+                .eq(Picture::getId, picture.getId())
+                .set(Picture::getPicHash, picHash)
+                .update();
+        MrsCacheUtil.delayRemoveCache(pictureCache.getLocalCache(), redisTemplate, cacheKeys, 3);
+        pictureHashIndex.refresh(Collections.singletonList(picture.getId()));
+        return picHash;
+    }
+
     @Override
     public void validPicture(Picture picture) {
         if (ObjUtil.isNull(picture)) {
@@ -1192,10 +1985,13 @@ public class PictureServiceImpl
         if (reviewStatus == null || reviewStatus == ReviewStatus.PENDING) {
             throw new BusinessException(ErrorCode.PARAMS_ERROR);
         }
-        Picture picture = this.getPictureByIdCache(reviewRequest.getId());
-        if (picture == null) {
+        Picture cachedPicture = this.getPictureByIdCache(reviewRequest.getId());
+        if (cachedPicture == null) {
             throw new BusinessException(ErrorCode.NOT_FOUND);
         }
+        // 缓存里的对象是共享的，复制一份再修改
+        Picture picture = new Picture();
+        BeanUtils.copyProperties(cachedPicture, picture);
         ReviewStatus currentStatus = EnumUtil.fromValue(picture.getReviewStatus(), ReviewStatus.class);
         if (currentStatus == reviewStatus) {
             throw new BusinessException(ErrorCode.PARAMS_ERROR, "请勿重复发起审核");
@@ -1209,14 +2005,16 @@ public class PictureServiceImpl
         // 删除缓存
         String cacheKey = PICTURE_CACHE_NAME + PICTURE_ID + pictureId;
         List<String> cacheKeys = Collections.singletonList(cacheKey);
-        MrsCacheUtil.removeCache(PICTURE_LOCAL_CACHE, redisTemplate, cacheKeys);
+        MrsCacheUtil.removeCache(pictureCache.getLocalCache(), redisTemplate, cacheKeys);
         // 更新图片
         boolean updated = this.updateById(picture);
         // 通过线程池异步延迟删除缓存
-        MrsCacheUtil.delayRemoveCache(PICTURE_LOCAL_CACHE, redisTemplate, cacheKeys, 3);
+        MrsCacheUtil.delayRemoveCache(pictureCache.getLocalCache(), redisTemplate, cacheKeys, 3);
         if (!updated) {
             throw new BusinessException(ErrorCode.OPERATION_ERROR, "数据库错误，图片更新失败");
         }
+        picturePageCacheManager.bumpGeneration(picture.getSpaceId());
+        pictureHashIndex.refresh(Collections.singletonList(pictureId));
         // 发消息
         pushMessage(picture, loginUser, reviewRequest);
     }
@@ -1313,7 +2111,7 @@ public class PictureServiceImpl
                 .map(id -> PICTURE_CACHE_NAME + PICTURE_ID + id)
                 .collect(Collectors.toList());
         // 立即删除缓存
-        MrsCacheUtil.removeCache(PICTURE_LOCAL_CACHE, redisTemplate, keys);
+        MrsCacheUtil.removeCache(pictureCache.getLocalCache(), redisTemplate, keys);
     }
 
     @Override
@@ -1322,7 +2120,7 @@ public class PictureServiceImpl
                 .map(id -> PICTURE_CACHE_NAME + PICTURE_ID + id)
                 .collect(Collectors.toList());
         // 通过线程池异步延迟删除缓存
-        MrsCacheUtil.delayRemoveCache(PICTURE_LOCAL_CACHE, redisTemplate, keys, 3);
+        MrsCacheUtil.delayRemoveCache(pictureCache.getLocalCache(), redisTemplate, keys, 3);
 
     }
 
@@ -1518,11 +2316,11 @@ public class PictureServiceImpl
         float satValRange = (1 - similarity) * 100; // 最大允许饱和度/明度差
         // Step 3: 确定需要查询的桶范围
         int hueTolerance = (int) Math.ceil(hueRange / 10); // 每个桶10°
-        List<Integer> hueBuckets = calculateBuckets(hue, hueTolerance);
+        List<Integer> hueBuckets = ColorUtils.calculateHueBuckets(hue, hueTolerance);
         int satTolerance = (int) Math.ceil(satValRange / 10); // 每个桶10%
-        List<Integer> satBuckets = calculateLinearBuckets(colorHSV.getSaturationBucket(), satTolerance);
+        List<Integer> satBuckets = ColorUtils.calculateLinearBuckets(colorHSV.getSaturationBucket(), satTolerance);
         int valTolerance = (int) Math.ceil(satValRange / 10);
-        List<Integer> valBuckets = calculateLinearBuckets(colorHSV.getValueBucket(), valTolerance);
+        List<Integer> valBuckets = ColorUtils.calculateLinearBuckets(colorHSV.getValueBucket(), valTolerance);
         log.info("色调桶范围: {}", hueBuckets.stream().sorted().collect(Collectors.toList()));
         log.info("饱和度范围: {}", satBuckets.stream().sorted().collect(Collectors.toList()));
         log.info("明度桶范围: {}", valBuckets.stream().sorted().collect(Collectors.toList()));
@@ -1543,33 +2341,39 @@ public class PictureServiceImpl
     }
 
     /**
-     * 计算候选桶（处理环形色相）
-     *
-     * @param targetHue 目标色相
-     * @param tolerance 色相容差
-     * @return 桶号
+     * 批量导入中一张图片的处理状态
      */
-    private List<Integer> calculateBuckets(float targetHue, int tolerance) {
-        List<Integer> buckets = new ArrayList<>();
-        int baseBucket = (int) Math.floor(targetHue / 10);
-        for (int i = -tolerance; i <= tolerance; i++) {
-            int bucket = (baseBucket + i + 36) % 36; // 处理负值和溢出
-            buckets.add(bucket);
-        }
-        return buckets;
-    }
+    @Data
+    private static class BatchImportItem {
 
-    /**
-     * 计算线性分桶（0-9号桶）
-     */
-    private static List<Integer> calculateLinearBuckets(int base, int tolerance) {
-        List<Integer> buckets = new ArrayList<>();
-        for (int i = -tolerance; i <= tolerance; i++) {
-            int bucket = base + i;
-            if (bucket >= 0 && bucket <= 9) {
-                buckets.add(bucket);
-            }
+        /**
+         * 返回给调用方的结果
+         */
+        private final PictureUploadBatchVo.Item result = new PictureUploadBatchVo.Item();
+
+        /**
+         * 已经存储过的文件（直接引用）
+         */
+        private PictureObject reusedObject;
+
+        /**
+         * 本次上传的文件
+         */
+        private UploadPictureResult uploadResult;
+
+        /**
+         * 上传许可（下载和处理完成后归还）
+         */
+        private UploadAdmissionManager.UploadPermit permit;
+
+        BatchImportItem(String url) {
+            result.setUrl(url);
+            result.setSuccess(false);
+        }
+
+        void fail(String message) {
+            result.setSuccess(false);
+            result.setMessage(message);
         }
-        return buckets;
     }
-}
\ No newline at end of file
+}
@@ -5,6 +5,7 @@ import cloud.marisa.picturebackend.entity.dao.SpaceUser;
 import cloud.marisa.picturebackend.entity.dao.User;
 import cloud.marisa.picturebackend.entity.dto.common.DeleteRequest;
 import cloud.marisa.picturebackend.entity.dto.space.SpaceAddRequest;
+import cloud.marisa.picturebackend.entity.dto.space.SpaceEditRequest;
 import cloud.marisa.picturebackend.entity.dto.space.SpaceQueryRequest;
 import cloud.marisa.picturebackend.entity.dto.space.SpaceUpdateRequest;
 import cloud.marisa.picturebackend.entity.vo.SpaceVo;
@@ -13,22 +14,20 @@ import cloud.marisa.picturebackend.enums.*;
 import cloud.marisa.picturebackend.exception.BusinessException;
 import cloud.marisa.picturebackend.exception.ErrorCode;
 import cloud.marisa.picturebackend.exception.ThrowUtils;
+import cloud.marisa.picturebackend.manager.cache.SpaceRoleCacheManager;
 import cloud.marisa.picturebackend.mapper.SpaceMapper;
 import cloud.marisa.picturebackend.service.ISpaceUserService;
 import cloud.marisa.picturebackend.service.IUserService;
 import cloud.marisa.picturebackend.service.ISpaceService;
 import cloud.marisa.picturebackend.util.EnumUtil;
 import cloud.marisa.picturebackend.util.cache.MrsCacheUtil;
-import cn.hutool.core.util.RandomUtil;
+import cloud.marisa.picturebackend.util.cache.MrsTwoLevelCache;
 import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONUtil;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import com.baomidou.mybatisplus.core.toolkit.support.SFunction;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import com.github.benmanes.caffeine.cache.Cache;
-import com.github.benmanes.caffeine.cache.Caffeine;
 import lombok.extern.log4j.Log4j2;
 import org.redisson.api.RLock;
 import org.redisson.api.RedissonClient;
@@ -96,13 +95,16 @@ public class SpaceServiceImpl
     private static final String SPACE_ID = "space-id:";
 
     /**
-     * 空间信息的本地缓存Caffeine
+     * 空间信息的二级缓存（Caffeine + Redis）
      */
-    private final Cache<String, String> SPACE_LOCAL_CACHE = Caffeine.newBuilder()
-            .maximumSize(10000L)
-            // 5分钟后过期（5*60=300）
-            .expireAfterWrite(300, TimeUnit.SECONDS)
-            .build();
+    @Resource
+    private MrsTwoLevelCache<Space> spaceCache;
+
+    /**
+     * 空间角色缓存
+     */
+    @Resource
+    private SpaceRoleCacheManager spaceRoleCacheManager;
 
 
     @Override
@@ -128,19 +130,13 @@ public class SpaceServiceImpl
             voPage.setRecords(new ArrayList<>());
             return voPage;
         }
-        // 根据用户ID，批量查询用户信息并转换成UserVo对象，最后按照UserId进行分组
-        Map<Long, List<UserVo>> userVos = userService.listByIds(ids)
-                .stream().map(UserVo::toVO)
-                .collect(Collectors.groupingBy(userVo -> (userVo != null) ? userVo.getId() : -1));
+        // 根据用户ID，批量查询用户信息（走多级缓存）
+        Map<Long, User> users = userService.getUserMapByIdsCache(ids);
         // 往空间Vo对象列表中添加用户信息
         List<SpaceVo> spaceVos = records.stream().map(space -> {
             SpaceVo vo = SpaceVo.toVo(space);
             Long spaceUserId = space.getUserId();
-            if (userVos.containsKey(spaceUserId)) {
-                vo.setUser(userVos.get(space.getUserId()).get(0));
-            } else {
-                vo.setUser(null);
-            }
+            vo.setUser(UserVo.toVO(users.get(spaceUserId)));
             /* 空间图片权限，但这里不加好像也没事
              * Long userId = loggedUser.getId();
              * MrsUserRole userRole = EnumUtil.fromValue(loggedUser.getUserRole(), MrsUserRole.class);
@@ -169,10 +165,37 @@ public class SpaceServiceImpl
         }
         String cacheKey = SPACE_CACHE_NAME + SPACE_ID + spaceId;
         List<String> cacheKeys = Collections.singletonList(cacheKey);
-        MrsCacheUtil.removeCache(SPACE_LOCAL_CACHE, redisTemplate, cacheKeys);
+        MrsCacheUtil.removeCache(spaceCache.getLocalCache(), redisTemplate, cacheKeys);
         boolean updated = this.updateById(space);
         // 通过线程池异步延迟删除缓存
-        MrsCacheUtil.delayRemoveCache(SPACE_LOCAL_CACHE, redisTemplate, cacheKeys, 3);
+        MrsCacheUtil.delayRemoveCache(spaceCache.getLocalCache(), redisTemplate, cacheKeys, 3);
+        if (!updated) {
+            throw new BusinessException(ErrorCode.OPERATION_ERROR);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean editSpace(SpaceEditRequest editRequest) {
+        Long spaceId = editRequest.getId();
+        ThrowUtils.throwIf(spaceId == null || spaceId <= 0, ErrorCode.PARAMS_ERROR);
+        // 空间管理员只能改名称和设置，容量、等级由管理员调整
+        Space space = new Space();
+        space.setId(spaceId);
+        space.setSpaceName(editRequest.getSpaceName());
+        space.setDuplicatePolicy(editRequest.getDuplicatePolicy());
+        validSpace(space, false);
+        boolean exists = this.lambdaQuery().eq(Space::getId, spaceId).exists();
+        if (!exists) {
+            throw new BusinessException(ErrorCode.NOT_FOUND, "空间不存在");
+        }
+        space.setEditTime(new Date());
+        String cacheKey = SPACE_CACHE_NAME + SPACE_ID + spaceId;
+        List<String> cacheKeys = Collections.singletonList(cacheKey);
+        MrsCacheUtil.removeCache(spaceCache.getLocalCache(), redisTemplate, cacheKeys);
+        boolean updated = this.updateById(space);
+        // 通过线程池异步延迟删除缓存
+        MrsCacheUtil.delayRemoveCache(spaceCache.getLocalCache(), redisTemplate, cacheKeys, 3);
         if (!updated) {
             throw new BusinessException(ErrorCode.OPERATION_ERROR);
         }
@@ -183,10 +206,10 @@ public class SpaceServiceImpl
     public boolean updateSpaceByCache(LambdaUpdateWrapper<Space> updateWrapper, Long spaceId) {
         String cacheKey = SPACE_CACHE_NAME + SPACE_ID + spaceId;
         List<String> cacheKeys = Collections.singletonList(cacheKey);
-        MrsCacheUtil.removeCache(SPACE_LOCAL_CACHE, redisTemplate, cacheKeys);
+        MrsCacheUtil.removeCache(spaceCache.getLocalCache(), redisTemplate, cacheKeys);
         boolean updated = this.update(updateWrapper);
         // 通过线程池异步延迟删除缓存
-        MrsCacheUtil.delayRemoveCache(SPACE_LOCAL_CACHE, redisTemplate, cacheKeys, 3);
+        MrsCacheUtil.delayRemoveCache(spaceCache.getLocalCache(), redisTemplate, cacheKeys, 3);
         return updated;
     }
 
@@ -195,31 +218,36 @@ public class SpaceServiceImpl
         // 多级缓存
         String cacheKey = SPACE_CACHE_NAME + SPACE_ID + spaceId;
         log.info("getSpaceByIdCache 缓存的key: {}", cacheKey);
-        String cacheJson = SPACE_LOCAL_CACHE.getIfPresent(cacheKey);
-        Space space = JSONUtil.toBean(cacheJson, Space.class);
-        // 本地缓存中没有，尝试从redis缓存中取
-        if (cacheJson == null) {
-            Object cacheRedis = redisTemplate.opsForValue().get(cacheKey);
-            // redis缓存命中
-            if (cacheRedis != null) {
-                String jsonStr = JSONUtil.toJsonStr(cacheRedis);
-                space = JSONUtil.toBean(jsonStr, Space.class);
-            } else {
-                // 两层缓存中都没有，去数据库中查
-                space = this.getById(spaceId);
-                // 空间真的不存在
-                if (space == null) {
-                    throw new BusinessException(ErrorCode.NOT_FOUND, "空间不存在");
-                }
-            }
+        Space space = spaceCache.get(cacheKey, key -> this.getById(spaceId));
+        // 空间真的不存在
+        if (space == null) {
+            throw new BusinessException(ErrorCode.NOT_FOUND, "空间不存在");
         }
-        SPACE_LOCAL_CACHE.put(cacheKey, JSONUtil.toJsonStr(space));
-        // 设置随机过期时间（5分钟），防止雪崩
-        int offset = RandomUtil.randomInt(0, 300);
-        redisTemplate.opsForValue().set(cacheKey, space, 300 + offset, TimeUnit.SECONDS);
         return space;
     }
 
+    @Override
+    public Map<Long, Space> getSpaceMapByIdsCache(Collection<Long> spaceIds) {
+        if (spaceIds == null || spaceIds.isEmpty()) {
+            return new HashMap<>();
+        }
+        Map<String, Long> keyToId = new HashMap<>(spaceIds.size());
+        for (Long spaceId : spaceIds) {
+            keyToId.put(SPACE_CACHE_NAME + SPACE_ID + spaceId, spaceId);
+        }
+        // 本地缓存 -> 一次MGET -> 一次IN查询
+        Map<String, Space> cached = spaceCache.getAll(keyToId.keySet(), missingKeys -> {
+            List<Long> missingIds = missingKeys.stream()
+                    .map(keyToId::get)
+                    .collect(Collectors.toList());
+            return this.listByIds(missingIds).stream()
+                    .collect(Collectors.toMap(space -> SPACE_CACHE_NAME + SPACE_ID + space.getId(), space -> space));
+        });
+        Map<Long, Space> result = new HashMap<>(cached.size());
+        cached.forEach((key, space) -> result.put(keyToId.get(key), space));
+        return result;
+    }
+
     @Override
     public long addSpace(SpaceAddRequest addRequest, User loggedUser) {
         Space space = new Space();
@@ -237,6 +265,10 @@ public class SpaceServiceImpl
         MrsSpaceType mst = EnumUtil.fromValue(addRequest.getSpaceType(), MrsSpaceType.class);
         MrsSpaceType spaceType = (mst == null) ? MrsSpaceType.PRIVATE : mst;
         space.setSpaceType(spaceType.getValue());
+        // 近似重复图片默认只提示
+        if (space.getDuplicatePolicy() == null) {
+            space.setDuplicatePolicy(MrsDuplicatePolicy.WARN.getValue());
+        }
         // 填充空间等级信息
         fillSpaceBySpaceLevel(space);
         validSpace(space, true);
@@ -276,7 +308,9 @@ public class SpaceServiceImpl
                     spaceUser.setUserId(uid);
                     spaceUser.setSpaceId(space.getId());
                     spaceUser.setSpaceRole(MrsSpaceRole.ADMIN.getValue());
+                    spaceRoleCacheManager.removeCache(spaceUser);
                     boolean spaceUserSaved = spaceUserService.save(spaceUser);
+                    spaceRoleCacheManager.delayRemoveCache(spaceUser);
                     if (!spaceUserSaved) {
                         log.error("创建团队成员记录失败");
                         throw new BusinessException(ErrorCode.OPERATION_ERROR, "创建团队成员记录失败");
@@ -334,10 +368,10 @@ public class SpaceServiceImpl
         // 缓存双删
         String cacheKey = SPACE_CACHE_NAME + SPACE_ID + spaceId;
         List<String> cacheKeys = Collections.singletonList(cacheKey);
-        MrsCacheUtil.removeCache(SPACE_LOCAL_CACHE, redisTemplate, cacheKeys);
+        MrsCacheUtil.removeCache(spaceCache.getLocalCache(), redisTemplate, cacheKeys);
         boolean removed = this.removeById(spaceId);
         // 通过线程池异步延迟删除缓存
-        MrsCacheUtil.delayRemoveCache(SPACE_LOCAL_CACHE, redisTemplate, cacheKeys, 3);
+        MrsCacheUtil.delayRemoveCache(spaceCache.getLocalCache(), redisTemplate, cacheKeys, 3);
         return removed;
     }
 
@@ -389,6 +423,10 @@ public class SpaceServiceImpl
         if (space.getSpaceType() != null && spaceTypeEnum == null) {
             throw new BusinessException(ErrorCode.PARAMS_ERROR, "未知的空间类型");
         }
+        if (space.getDuplicatePolicy() != null &&
+                EnumUtil.fromValue(space.getDuplicatePolicy(), MrsDuplicatePolicy.class) == null) {
+            throw new BusinessException(ErrorCode.PARAMS_ERROR, "未知的重复图片处理方式");
+        }
     }
 
     /**
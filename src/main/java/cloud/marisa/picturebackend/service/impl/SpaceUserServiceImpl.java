@@ -14,6 +14,7 @@ import cloud.marisa.picturebackend.enums.MrsSpaceRole;
 import cloud.marisa.picturebackend.exception.BusinessException;
 import cloud.marisa.picturebackend.exception.ErrorCode;
 import cloud.marisa.picturebackend.exception.ThrowUtils;
+import cloud.marisa.picturebackend.manager.cache.SpaceRoleCacheManager;
 import cloud.marisa.picturebackend.mapper.SpaceUserMapper;
 import cloud.marisa.picturebackend.service.ISpaceService;
 import cloud.marisa.picturebackend.service.IUserService;
@@ -57,6 +58,12 @@ public class SpaceUserServiceImpl
     @Resource
     private ISpaceService spaceService;
 
+    /**
+     * 空间角色缓存
+     */
+    @Resource
+    private SpaceRoleCacheManager spaceRoleCacheManager;
+
     @Override
     public SpaceUser getSpaceUser(
             SpaceUserQueryRequest queryRequest,
@@ -122,24 +129,19 @@ public class SpaceUserServiceImpl
                     return SpaceUserVo.toVo(spaceUser);
                 })
                 .collect(Collectors.toList());
-        // 批量查询用户并按用户ID分组（UserId-User）
-        Map<Long, List<User>> usersMap = userService.listByIds(userIdSet)
-                .stream()
-                .collect(Collectors.groupingBy(User::getId));
-        // 批量查询空间并按空间ID分组（SpaceId-Space）
-        Map<Long, List<Space>> spacesMap = spaceService.listByIds(spaceIdSet)
-                .stream()
-                .collect(Collectors.groupingBy(Space::getId));
+        // 批量查询用户（UserId-User），走多级缓存
+        Map<Long, User> usersMap = userService.getUserMapByIdsCache(userIdSet);
+        // 批量查询空间（SpaceId-Space），走多级缓存
+        Map<Long, Space> spacesMap = spaceService.getSpaceMapByIdsCache(spaceIdSet);
         // 组装结果并返回
         voList.forEach(vo -> {
             Long userId = vo.getUserId();
             if (userId != null && userId > 0) {
-                User user = usersMap.get(userId).get(0);
-                vo.setUser(UserVo.toVO(user));
+                vo.setUser(UserVo.toVO(usersMap.get(userId)));
             }
             Long spaceId = vo.getSpaceId();
             if (spaceId != null && spaceId > 0) {
-                Space space = spacesMap.get(spaceId).get(0);
+                Space space = spacesMap.get(spaceId);
                 // 列表中就没必要把空间对应的用户都查出来了
                 // 很耗费性能，不如让用户点详情的时候再针对性的查库
                 vo.setSpace(SpaceVo.toVo(space));
@@ -169,7 +171,10 @@ public class SpaceUserServiceImpl
         // TODO: 这里要根据不同的创建者等级，限制团队人数
 
         validSpaceUser(spaceUser, true);
+        // 缓存双删（之前可能缓存了“非成员”）
+        spaceRoleCacheManager.removeCache(spaceUser);
         boolean saved = this.save(spaceUser);
+        spaceRoleCacheManager.delayRemoveCache(spaceUser);
         if (!saved) {
             throw new BusinessException(ErrorCode.OPERATION_ERROR);
         }
@@ -192,7 +197,11 @@ public class SpaceUserServiceImpl
         if (dbSpaceUser == null) {
             throw new BusinessException(ErrorCode.NOT_FOUND, "团队成员不存在");
         }
-        return this.updateById(spaceUser);
+        // 缓存双删
+        spaceRoleCacheManager.removeCache(dbSpaceUser);
+        boolean updated = this.updateById(spaceUser);
+        spaceRoleCacheManager.delayRemoveCache(dbSpaceUser);
+        return updated;
     }
 
     @Override
@@ -207,7 +216,11 @@ public class SpaceUserServiceImpl
         if (spaceUser == null) {
             throw new BusinessException(ErrorCode.NOT_FOUND);
         }
-        return this.removeById(id);
+        // 缓存双删
+        spaceRoleCacheManager.removeCache(spaceUser);
+        boolean removed = this.removeById(id);
+        spaceRoleCacheManager.delayRemoveCache(spaceUser);
+        return removed;
     }
 
     /**
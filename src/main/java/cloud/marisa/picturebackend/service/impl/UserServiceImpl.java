@@ -14,15 +14,13 @@ import cloud.marisa.picturebackend.util.EnumUtil;
 import cloud.marisa.picturebackend.util.MrsRandomUtil;
 import cloud.marisa.picturebackend.util.SessionUtil;
 import cloud.marisa.picturebackend.util.cache.MrsCacheUtil;
+import cloud.marisa.picturebackend.util.cache.MrsTwoLevelCache;
 import cn.hutool.core.util.RandomUtil;
 import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONUtil;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.toolkit.support.SFunction;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import com.github.benmanes.caffeine.cache.Cache;
-import com.github.benmanes.caffeine.cache.Caffeine;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.beans.BeanUtils;
@@ -35,9 +33,11 @@ import org.springframework.util.ObjectUtils;
 import javax.servlet.http.HttpServletRequest;
 import java.lang.Object;
 
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 import static cloud.marisa.picturebackend.common.Constants.USER_CACHE_NAME;
@@ -70,13 +70,9 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User>
     private static final String ID_PREFIX = "user-id:";
 
     /**
-     * 用户信息的本地缓存Caffeine
+     * 用户信息的二级缓存（Caffeine + Redis）
      */
-    private final Cache<String, String> USER_LOCAL_CACHE = Caffeine.newBuilder()
-            .maximumSize(10000L)
-            // 5分钟后过期（5*60=300）
-            .expireAfterWrite(300, TimeUnit.SECONDS)
-            .build();
+    private final MrsTwoLevelCache<User> userCache;
 
     @Override
     public long register(AccountRegisterRequest request) {
@@ -202,11 +198,11 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User>
         // 删除缓存
         String cacheKey = USER_CACHE_NAME + ID_PREFIX + id;
         List<String> cacheKeys = Collections.singletonList(cacheKey);
-        MrsCacheUtil.removeCache(USER_LOCAL_CACHE, redisTemplate, cacheKeys);
+        MrsCacheUtil.removeCache(userCache.getLocalCache(), redisTemplate, cacheKeys);
         // 更新库中的数据
         boolean updated = this.updateById(dbUser);
         // 通过线程池异步延迟删除缓存
-        MrsCacheUtil.delayRemoveCache(USER_LOCAL_CACHE, redisTemplate, cacheKeys, 3);
+        MrsCacheUtil.delayRemoveCache(userCache.getLocalCache(), redisTemplate, cacheKeys, 3);
         if (!updated) {
             throw new BusinessException(ErrorCode.INTERNAL_SERVER_ERROR, "修改失败，数据库错误。");
         }
@@ -232,34 +228,38 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User>
         if (id == null) {
             throw new BusinessException(ErrorCode.PARAMS_ERROR, "id不能为空");
         }
-        // 多级缓存技术
+        // 多级缓存（本地 -> Redis -> 数据库）
         String cacheKey = USER_CACHE_NAME + ID_PREFIX + id;
-        log.info("缓存的key: {}", cacheKey);
-        String cacheJson = USER_LOCAL_CACHE.getIfPresent(cacheKey);
-        User user = JSONUtil.toBean(cacheJson, User.class);
-        // 本地缓存中没有，尝试从redis缓存中取
-        if (cacheJson == null) {
-            Object cacheRedis = redisTemplate.opsForValue().get(cacheKey);
-            // redis缓存命中
-            if (cacheRedis != null) {
-                String jsonStr = JSONUtil.toJsonStr(cacheRedis);
-                user = JSONUtil.toBean(jsonStr, User.class);
-            } else {
-                // 两层缓存中都没有，去数据库中查
-                user = this.getById(id);
-                // 用户真的不存在
-                if (user == null) {
-                    throw new BusinessException(ErrorCode.NOT_FOUND, "用户不存在");
-                }
-            }
+        User user = userCache.get(cacheKey, key -> this.getById(id));
+        // 用户真的不存在
+        if (user == null) {
+            throw new BusinessException(ErrorCode.NOT_FOUND, "用户不存在");
         }
-        USER_LOCAL_CACHE.put(cacheKey, JSONUtil.toJsonStr(user));
-        // 设置随机过期时间（5分钟），防止雪崩
-        int offset = RandomUtil.randomInt(0, 300);
-        redisTemplate.opsForValue().set(cacheKey, user, 300 + offset, TimeUnit.SECONDS);
         return UserVo.toVO(user);
     }
 
+    @Override
+    public Map<Long, User> getUserMapByIdsCache(Collection<Long> ids) {
+        if (CollectionUtils.isEmpty(ids)) {
+            return new HashMap<>();
+        }
+        Map<String, Long> keyToId = new HashMap<>(ids.size());
+        for (Long id : ids) {
+            keyToId.put(USER_CACHE_NAME + ID_PREFIX + id, id);
+        }
+        // 本地缓存 -> 一次MGET -> 一次IN查询
+        Map<String, User> cached = userCache.getAll(keyToId.keySet(), missingKeys -> {
+            List<Long> missingIds = missingKeys.stream()
+                    .map(keyToId::get)
+                    .collect(Collectors.toList());
+            return this.listByIds(missingIds).stream()
+                    .collect(Collectors.toMap(user -> USER_CACHE_NAME + ID_PREFIX + user.getId(), user -> user));
+        });
+        Map<Long, User> result = new HashMap<>(cached.size());
+        cached.forEach((key, user) -> result.put(keyToId.get(key), user));
+        return result;
+    }
+
     @Override
     public boolean deleteById(Long id) {
         if (id == null) {
@@ -268,11 +268,11 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User>
         // 删除缓存
         String cacheKey = USER_CACHE_NAME + ID_PREFIX + id;
         List<String> cacheKeys = Collections.singletonList(cacheKey);
-        MrsCacheUtil.removeCache(USER_LOCAL_CACHE, redisTemplate, cacheKeys);
+        MrsCacheUtil.removeCache(userCache.getLocalCache(), redisTemplate, cacheKeys);
         // 删库中的数据
         boolean removed = this.removeById(id);
         // 通过线程池异步延迟删除缓存
-        MrsCacheUtil.delayRemoveCache(USER_LOCAL_CACHE, redisTemplate, cacheKeys, 3);
+        MrsCacheUtil.delayRemoveCache(userCache.getLocalCache(), redisTemplate, cacheKeys, 3);
         if (!removed) {
             throw new BusinessException(ErrorCode.INTERNAL_SERVER_ERROR, "删除失败，数据库错误。");
         }
@@ -288,10 +288,10 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User>
         List<String> cacheKeys = ids.stream()
                 .map(id -> USER_CACHE_NAME + ID_PREFIX + id)
                 .collect(Collectors.toList());
-        MrsCacheUtil.removeCache(USER_LOCAL_CACHE, redisTemplate, cacheKeys);
+        MrsCacheUtil.removeCache(userCache.getLocalCache(), redisTemplate, cacheKeys);
         boolean removed = this.removeByIds(ids);
         // 通过线程池异步延迟删除缓存
-        MrsCacheUtil.delayRemoveCache(USER_LOCAL_CACHE, redisTemplate, cacheKeys, 4);
+        MrsCacheUtil.delayRemoveCache(userCache.getLocalCache(), redisTemplate, cacheKeys, 4);
         if (!removed) {
             throw new BusinessException(ErrorCode.INTERNAL_SERVER_ERROR, "删除失败，数据库错误。");
         }
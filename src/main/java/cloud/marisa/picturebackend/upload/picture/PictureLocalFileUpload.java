@@ -0,0 +1,61 @@
+package cloud.marisa.picturebackend.upload.picture;
+
+import cloud.marisa.picturebackend.exception.BusinessException;
+import cloud.marisa.picturebackend.exception.ErrorCode;
+import cloud.marisa.picturebackend.util.MrsPathUtil;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * <p>已经下载到本地的图片文件（批量导入时先下载再处理）</p>
+ * <p>临时文件由调用方负责删除</p>
+ *
+ * @author MarisaDAZE
+ * @description 本地文件的图片上传
+ * @date 2025/4/28
+ */
+@Component
+public class PictureLocalFileUpload extends PictureUploadTemplate {
+
+    @Override
+    protected void validPicture(Object inputSource) {
+        if (!(inputSource instanceof Path) || !Files.isRegularFile((Path) inputSource)) {
+            throw new BusinessException(ErrorCode.PARAMS_ERROR, "文件为空");
+        }
+    }
+
+    @Override
+    protected String getFileName(Object inputSource) {
+        return MrsPathUtil.trimName(((Path) inputSource).getFileName().toString());
+    }
+
+    @Override
+    public InputStream getPictureStream(Object inputSource) {
+        try {
+            return Files.newInputStream((Path) inputSource);
+        } catch (IOException e) {
+            throw new BusinessException(ErrorCode.PARAMS_ERROR, "文件读取失败");
+        }
+    }
+
+    /**
+     * 直接使用本地文件，不再复制一份（文件由调用方删除）
+     */
+    @Override
+    protected SpooledPicture readPicture(Object inputSource) throws IOException {
+        return inspectPicture((Path) inputSource, false);
+    }
+
+    @Override
+    public Long getPictureSize(Object inputSource) {
+        try {
+            return Files.size((Path) inputSource);
+        } catch (IOException e) {
+            throw new BusinessException(ErrorCode.PARAMS_ERROR, "文件读取失败");
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package cloud.marisa.picturebackend.upload.picture;
+
+import cloud.marisa.picturebackend.entity.dto.file.StoredPictureSource;
+import cloud.marisa.picturebackend.exception.BusinessException;
+import cloud.marisa.picturebackend.exception.ErrorCode;
+import cloud.marisa.picturebackend.util.MinioUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.InputStream;
+
+/**
+ * <p>已经保存在MinIO上的原图（分片上传合并后的文件、后台处理的原图）</p>
+ * <p>原图从MinIO流式读取，只生成并上传默认图和缩略图；临时位置上的原图在MinIO内复制到图片目录下</p>
+ *
+ * @author MarisaDAZE
+ * @description 已存储原图的图片上传
+ * @date 2025/4/28
+ */
+@Component
+public class PictureStoredObjectUpload extends PictureUploadTemplate {
+
+    @Autowired
+    private MinioUtil minioUtil;
+
+    @Override
+    protected void validPicture(Object inputSource) {
+        if (!(inputSource instanceof StoredPictureSource)) {
+            throw new BusinessException(ErrorCode.PARAMS_ERROR, "文件为空");
+        }
+    }
+
+    @Override
+    protected String getFileName(Object inputSource) {
+        return ((StoredPictureSource) inputSource).getFileName();
+    }
+
+    @Override
+    public InputStream getPictureStream(Object inputSource) {
+        StoredPictureSource source = (StoredPictureSource) inputSource;
+        try {
+            return minioUtil.downloadInputStream(source.getPath());
+        } catch (Exception e) {
+            throw new BusinessException(ErrorCode.PARAMS_ERROR, "文件读取失败");
+        }
+    }
+
+    @Override
+    public Long getPictureSize(Object inputSource) {
+        return ((StoredPictureSource) inputSource).getSize();
+    }
+
+    @Override
+    protected String getStoredOriginalPath(Object inputSource) {
+        return ((StoredPictureSource) inputSource).getPath();
+    }
+
+    @Override
+    protected boolean isStoredOriginalTemporary(Object inputSource) {
+        return ((StoredPictureSource) inputSource).isTemporary();
+    }
+}
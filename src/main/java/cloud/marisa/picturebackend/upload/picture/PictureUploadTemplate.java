@@ -3,15 +3,19 @@ package cloud.marisa.picturebackend.upload.picture;
 import cloud.marisa.picturebackend.api.image.AliyunOssUtil;
 import cloud.marisa.picturebackend.config.PictureConfig;
 import cloud.marisa.picturebackend.entity.dto.file.UploadPictureResult;
+import cloud.marisa.picturebackend.enums.PictureProcessStatus;
 import cloud.marisa.picturebackend.exception.BusinessException;
 import cloud.marisa.picturebackend.exception.ErrorCode;
+import cloud.marisa.picturebackend.manager.upload.UploadAdmissionManager;
 import cloud.marisa.picturebackend.util.ImageUtil;
 import cloud.marisa.picturebackend.util.MinioUtil;
 import cloud.marisa.picturebackend.util.MrsStreamUtil;
 import cloud.marisa.picturebackend.util.colors.ColorUtils;
 import cloud.marisa.picturebackend.util.colors.DominantColorExtractor;
 import cloud.marisa.picturebackend.util.colors.MrsColorHSV;
+import cloud.marisa.picturebackend.util.colors.MrsColorPalette;
 import cn.hutool.core.date.DateUtil;
+import cn.hutool.core.util.HexUtil;
 import cn.hutool.core.util.NumberUtil;
 import cn.hutool.crypto.digest.MD5;
 import lombok.AllArgsConstructor;
@@ -19,22 +23,38 @@ import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Resource;
-import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import static cloud.marisa.picturebackend.common.Constants.PALETTE_SIZE;
+import static cloud.marisa.picturebackend.common.Constants.PIC_HASH_DECODE_SIZE;
 import static cloud.marisa.picturebackend.common.Constants.THUMB_MAX_SIZE;
 
 /**
@@ -46,6 +66,11 @@ import static cloud.marisa.picturebackend.common.Constants.THUMB_MAX_SIZE;
 @Component
 public abstract class PictureUploadTemplate {
 
+    /**
+     * 小于这个大小（100KB）的图片直接用原图作为缩略图
+     */
+    private static final long THUMB_SKIP_SIZE = 100 * 1024;
+
     /**
      * MinIO上传工具类
      */
@@ -59,6 +84,18 @@ public abstract class PictureUploadTemplate {
     @Resource
     private PictureConfig pictureConfig;
 
+    /**
+     * 上传准入控制（解码像素预算）
+     */
+    @Resource
+    private UploadAdmissionManager uploadAdmissionManager;
+
+    /**
+     * MinIO上传线程池（并行生成派生图和上传）
+     */
+    @Resource
+    private ThreadPoolExecutor minioUploadPoolExecutor;
+
     /**
      * 上传图片文件
      *
@@ -67,8 +104,38 @@ public abstract class PictureUploadTemplate {
      * @return 文件信息
      */
     public final UploadPictureResult uploadPictureObject(Object inputSource, String pathPrefix) {
+        return uploadPictureObject(inputSource, spoolPicture(inputSource), pathPrefix);
+    }
+
+    /**
+     * 校验并读取输入源（只读一次），得到本地文件和MD5、大小、文件类型
+     * <p>调用方可以先用MD5判断能否秒传，不能秒传时再把结果交给上传方法，不用再读一次输入源；</p>
+     * <p>不上传时由调用方调用{@link SpooledPicture#discard()}删除临时文件</p>
+     *
+     * @param inputSource 文件输入（文件或URL）
+     * @return 读取结果
+     */
+    public final SpooledPicture spoolPicture(Object inputSource) {
         // 校验文件信息
         validPicture(inputSource);
+        try {
+            return readPicture(inputSource);
+        } catch (IOException e) {
+            log.error("图片读取失败", e);
+            throw new BusinessException(ErrorCode.OPERATION_ERROR, "文件读取失败");
+        }
+    }
+
+    /**
+     * 上传已经读取好的图片文件
+     * <p>读取结果交给这个方法之后由它负责删除临时文件</p>
+     *
+     * @param inputSource 文件输入（文件或URL）
+     * @param spooled     {@link #spoolPicture(Object)}的结果
+     * @param pathPrefix  保存路径前缀
+     * @return 文件信息
+     */
+    public final UploadPictureResult uploadPictureObject(Object inputSource, SpooledPicture spooled, String pathPrefix) {
         UploadPictureResult result = new UploadPictureResult();
         // 获取文件名（不含文件扩展名）
         String fileName = getFileName(inputSource);
@@ -79,41 +146,143 @@ public abstract class PictureUploadTemplate {
         FileNameInfo thumbInfo;     // 拇指图信息
         FileNameInfo defaultInfo;   // 默认图信息
         FileNameInfo originalInfo;  // 原图信息
-        // 保存图片
-        try (InputStream inputStream = getPictureStream(inputSource)) {
-            // 准备临时文件
-            Path tempFile = Files.createTempFile("copy", ".tmp");
-            Files.copy(inputStream, tempFile, StandardCopyOption.REPLACE_EXISTING);
-            // 获取图片信息（原图信息）
-            UploadPictureResult pictureInfo = ImageUtil.getPictureInfo(Files.newInputStream(tempFile));
-            BeanUtils.copyProperties(pictureInfo, result);
+        // 1、读取：输入源只读一次，写临时文件的同时计算MD5、大小和文件类型（已经由spoolPicture完成）
+        Path tempFile = spooled.getFile();
+        UploadAdmissionManager.UploadPermit pixelPermit = null;
+        // 并行处理失败时，临时文件和解码许可交给还在执行的步骤结束后再释放
+        boolean cleanupDeferred = false;
+        try {
+            // 2、解码：整张图只解码一次，后面的默认图、缩略图、主色调都从这里派生
+            // 默认图不重新编码时只需要缩略图尺寸，按缩略图降采样解码；否则受解码预算限制
+            float rate = pictureConfig.getCompressRate();
+            int targetSize = rate < 1 ? 0 : THUMB_MAX_SIZE;
+            // 解码前先按解码后的像素数申请许可，解码出的图片用完后归还
+            Dimension header = ImageUtil.readImageSize(tempFile);
+            pixelPermit = uploadAdmissionManager.acquirePixels(
+                    ImageUtil.getDecodedPixels(header.width, header.height, targetSize));
+            ImageUtil.DecodedImage decoded = ImageUtil.decodeImage(tempFile, targetSize);
+            int width = decoded.getWidth();
+            int height = decoded.getHeight();
+            result.setPicWidth(width);
+            result.setPicHeight(height);
+            result.setPicScale(NumberUtil.round(width * 1.0 / height, 2).doubleValue());
+            result.setPicSize(spooled.getSize());
+            result.setPicFormat(spooled.getFormat());
+            result.setMd5(spooled.getMd5());
+            log.info("图片信息: {}", result);
             String suffix = result.getPicFormat();
             // 处理上传后的文件名
             thumbInfo = createFileName("thumb-" + fileName, compressSuffix, pathPrefix);
             defaultInfo = createFileName("default-" + fileName, suffix, pathPrefix);
             originalInfo = createFileName("original-" + fileName, suffix, pathPrefix);
-
-            InputStream defaultPictureStream = Files.newInputStream(tempFile);
+            // 原图已经在图片目录下了（如后台处理），直接使用，不再重复上传；
+            // 在临时位置上的（如分片上传合并后的文件）在对象存储内复制到图片目录下，和普通上传的原图放在一起
+            String storedOriginalPath = getStoredOriginalPath(inputSource);
+            boolean reuseOriginal = storedOriginalPath != null && !isStoredOriginalTemporary(inputSource);
+            if (reuseOriginal) {
+                originalInfo = new FileNameInfo(
+                        storedOriginalPath.substring(storedOriginalPath.lastIndexOf('/') + 1),
+                        suffix,
+                        storedOriginalPath);
+            }
             // 如果默认图要进行压缩
-            float rate = pictureConfig.getCompressRate();
             if (rate < 1) {
                 defaultInfo = createFileName("default-" + fileName, compressSuffix, pathPrefix);
-                defaultPictureStream = ImageUtil.compressImage(defaultPictureStream, rate, compressSuffix);
             }
             log.info("拇指图保存信息 {}", thumbInfo);
             log.info("默认图保存信息 {}", defaultInfo);
             log.info("原图保存信息 {}", originalInfo);
-
-            // 上传压缩后的图片（默认图，可能会被压缩）
-            minioUtil.upload(defaultPictureStream, defaultInfo.getFilePath());
-            // 上传缩略图
-            InputStream thumbnailStream = ImageUtil.createThumbnail(Files.newInputStream(tempFile), THUMB_MAX_SIZE, compressSuffix);
-            byte[] thumbnailBytes = thumbnailStream.readAllBytes(); // 缩略图的内存小，通常在50KB左右
-            thumbnailStream.close();
-            minioUtil.upload(new ByteArrayInputStream(thumbnailBytes), thumbInfo.getFilePath());
-            // 获取图片主要颜色
-            // Color color = ImageUtil.getDominantColor2(new ByteArrayInputStream(thumbnailBytes));
-            Color color = DominantColorExtractor.extractDominantColor(new ByteArrayInputStream(thumbnailBytes));
+            // 3、派生和上传：原图、默认图、缩略图并行处理，每一步都有超时时间
+            int deriveTimeout = pictureConfig.getDeriveTimeout();
+            int uploadTimeout = pictureConfig.getUploadTimeout();
+            Path source = tempFile;
+            BufferedImage image = decoded.getImage();
+            StageGroup stages = new StageGroup();
+            // 原图（已经在对象存储上的不再上传）
+            String originalPath = originalInfo.getFilePath();
+            CompletableFuture<Void> originalFuture = CompletableFuture.completedFuture(null);
+            if (storedOriginalPath == null) {
+                originalFuture = stages.run("上传原图", uploadTimeout, () -> {
+                    try (InputStream is = Files.newInputStream(source)) {
+                        minioUtil.putObject(is, spooled.getSize(), originalPath);
+                    }
+                    return null;
+                });
+            } else if (!reuseOriginal) {
+                originalFuture = stages.run("复制原图", uploadTimeout, () -> {
+                    minioUtil.copyObject(storedOriginalPath, originalPath);
+                    return null;
+                });
+            }
+            // 默认图（可能会被压缩）
+            String defaultPath = defaultInfo.getFilePath();
+            CompletableFuture<Void> defaultFuture;
+            if (rate < 1) {
+                defaultFuture = stages.run("压缩默认图", deriveTimeout,
+                                () -> ImageUtil.encodeImage(image, 1.0, rate, compressSuffix))
+                        .thenCompose(bytes -> stages.run("上传默认图", uploadTimeout, () -> {
+                            minioUtil.putObject(new ByteArrayInputStream(bytes), bytes.length, defaultPath);
+                            return null;
+                        }));
+            } else {
+                defaultFuture = stages.run("上传默认图", uploadTimeout, () -> {
+                    try (InputStream is = Files.newInputStream(source)) {
+                        minioUtil.putObject(is, spooled.getSize(), defaultPath);
+                    }
+                    return null;
+                });
+            }
+            // 缩略图，原图小于100KB时直接使用原图
+            boolean skipThumbnail = spooled.getSize() < THUMB_SKIP_SIZE;
+            CompletableFuture<BufferedImage> thumbImageFuture = skipThumbnail
+                    ? CompletableFuture.completedFuture(image)
+                    : stages.run("生成缩略图", deriveTimeout, () -> ImageUtil.resizeToFit(image, THUMB_MAX_SIZE));
+            String thumbPath = thumbInfo.getFilePath();
+            CompletableFuture<Void> thumbFuture = thumbImageFuture
+                    .thenCompose(thumb -> stages.run("上传缩略图", uploadTimeout, () -> {
+                        byte[] bytes = skipThumbnail
+                                ? Files.readAllBytes(source)
+                                : ImageUtil.encodeImage(thumb, 1.0, null, compressSuffix);
+                        stages.checkActive();
+                        minioUtil.putObject(new ByteArrayInputStream(bytes), bytes.length, thumbPath);
+                        return null;
+                    }));
+            // 获取图片主要颜色和调色板（直接使用缩略图的像素，不用再解码）
+            CompletableFuture<MrsColorPalette> colorFuture = thumbImageFuture
+                    .thenCompose(thumb -> stages.run("提取主色调", deriveTimeout,
+                            () -> DominantColorExtractor.extractColors(thumb, PALETTE_SIZE)));
+            // 感知哈希（以图搜图用）
+            CompletableFuture<Long> hashFuture = thumbImageFuture
+                    .thenCompose(thumb -> stages.run("计算感知哈希", deriveTimeout,
+                            () -> ImageUtil.differenceHash(thumb)));
+            try {
+                CompletableFuture.allOf(originalFuture, defaultFuture, thumbFuture, colorFuture, hashFuture).join();
+            } catch (CompletionException e) {
+                // 有一步失败了：取消剩下的步骤，等已经开始的步骤都结束后，再删除已上传的对象、临时文件并归还许可
+                // （超时的步骤仍在执行，这时删掉的对象会被它重新写入，临时文件也可能还在被读取）
+                UploadAdmissionManager.UploadPermit permit = pixelPermit;
+                cleanupDeferred = true;
+                stages.cancelThen(uploadTimeout, () -> {
+                    if (!reuseOriginal) {
+                        minioUtil.delete(originalPath);
+                    }
+                    minioUtil.delete(defaultPath);
+                    minioUtil.delete(thumbPath);
+                    permit.close();
+                    spooled.discard();
+                });
+                Throwable cause = e.getCause() instanceof CompletionException ? e.getCause().getCause() : e.getCause();
+                if (cause instanceof TimeoutException) {
+                    log.error("图片上传超时", e);
+                    throw new BusinessException(ErrorCode.OPERATION_ERROR, "图片上传超时");
+                }
+                log.error("图片上传失败", e);
+                throw new BusinessException(ErrorCode.OPERATION_ERROR);
+            }
+            result.setPicHash(hashFuture.join());
+            MrsColorPalette colors = colorFuture.join();
+            result.setPalette(colors.getEntries());
+            Color color = colors.getDominant();
             String rgbString = ColorUtils.toRGBString(color);
             result.setPicColor(rgbString);
             // 主颜色的hsv分量
@@ -125,16 +294,16 @@ public abstract class PictureUploadTemplate {
             result.setMHueBucket(colorHSV.getHueBucket());
             result.setMSaturationBucket(colorHSV.getSaturationBucket());
             result.setMValueBucket(colorHSV.getValueBucket());
-            // 上传原图
-            minioUtil.upload(Files.newInputStream(tempFile), originalInfo.getFilePath());
-            // 图片指纹
-            String hex = MD5.create().digestHex(Files.newInputStream(tempFile));
-            result.setMd5(hex);
-            // 删除临时文件
-            Files.deleteIfExists(tempFile);
         } catch (IOException e) {
             log.error("图片上传失败", e);
             throw new BusinessException(ErrorCode.OPERATION_ERROR);
+        } finally {
+            if (!cleanupDeferred) {
+                if (pixelPermit != null) {
+                    pixelPermit.close();
+                }
+                spooled.discard();
+            }
         }
         // 默认图的参数信息
         result.setPicName(originalInfo.getFileName());
@@ -150,6 +319,247 @@ public abstract class PictureUploadTemplate {
         return result;
     }
 
+    /**
+     * 只保存原图，默认图、缩略图和主色调交给后台任务生成
+     * <p>输入源只读一次，读取时顺带算出MD5、大小和格式；宽高只读文件头，不解码像素</p>
+     * <p>后台处理完成前，默认图和缩略图都使用原图</p>
+     *
+     * @param inputSource 文件输入（文件或URL）
+     * @param pathPrefix  保存路径前缀
+     * @return 文件信息（处理状态为处理中）
+     */
+    public final UploadPictureResult uploadOriginalObject(Object inputSource, String pathPrefix) {
+        return uploadOriginalObject(inputSource, spoolPicture(inputSource), pathPrefix);
+    }
+
+    /**
+     * 只保存已经读取好的原图，默认图、缩略图和主色调交给后台任务生成
+     * <p>读取结果交给这个方法之后由它负责删除临时文件</p>
+     *
+     * @param inputSource 文件输入（文件或URL）
+     * @param spooled     {@link #spoolPicture(Object)}的结果
+     * @param pathPrefix  保存路径前缀
+     * @return 文件信息（处理状态为处理中）
+     */
+    public final UploadPictureResult uploadOriginalObject(Object inputSource, SpooledPicture spooled, String pathPrefix) {
+        UploadPictureResult result = new UploadPictureResult();
+        String fileName = getFileName(inputSource);
+        log.info("原始文件名 {}", fileName);
+        String storedOriginalPath = getStoredOriginalPath(inputSource);
+        String originalPath;
+        Path tempFile = spooled.getFile();
+        try {
+            Dimension size = ImageUtil.readImageSize(tempFile);
+            result.setPicWidth(size.width);
+            result.setPicHeight(size.height);
+            result.setPicScale(NumberUtil.round(size.width * 1.0 / size.height, 2).doubleValue());
+            result.setPicSize(spooled.getSize());
+            result.setPicFormat(spooled.getFormat());
+            result.setMd5(spooled.getMd5());
+            // 感知哈希降采样解码就能算，上传时就要用来检查近似重复，不等后台处理
+            result.setPicHash(computePicHash(tempFile));
+            if (storedOriginalPath != null && !isStoredOriginalTemporary(inputSource)) {
+                originalPath = storedOriginalPath;
+            } else {
+                originalPath = createFileName("original-" + fileName, spooled.getFormat(), pathPrefix).getFilePath();
+                if (storedOriginalPath != null) {
+                    // 临时位置上的原图在对象存储内复制过来，不经过本机
+                    minioUtil.copyObject(storedOriginalPath, originalPath);
+                } else {
+                    try (InputStream is = Files.newInputStream(tempFile)) {
+                        minioUtil.putObject(is, spooled.getSize(), originalPath);
+                    }
+                }
+            }
+        } catch (BusinessException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("图片上传失败", e);
+            throw new BusinessException(ErrorCode.OPERATION_ERROR);
+        } finally {
+            spooled.discard();
+        }
+        String originalUrl = minioUtil.getFileUrl(originalPath);
+        result.setPicName(originalPath.substring(originalPath.lastIndexOf('/') + 1));
+        result.setOriginalPath(originalPath);
+        result.setOriginalUrl(originalUrl);
+        // 派生图生成前先用原图顶上
+        result.setSavedPath(originalPath);
+        result.setUrl(originalUrl);
+        result.setThumbnailUrl(originalUrl);
+        result.setProcessStatus(PictureProcessStatus.PROCESSING.getValue());
+        return result;
+    }
+
+    /**
+     * 读取输入源：写入临时文件，同时计算MD5、文件大小和文件类型
+     * <p>输入源本身已经是本地文件时，子类可以重写为直接使用该文件</p>
+     *
+     * @param inputSource 文件输入（文件或URL）
+     * @return 读取结果
+     * @throws IOException 读取失败
+     */
+    protected SpooledPicture readPicture(Object inputSource) throws IOException {
+        Path tempFile = Files.createTempFile("copy", ".tmp");
+        try {
+            MessageDigest digest = MD5.create().getDigest();
+            try (InputStream is = new BufferedInputStream(new DigestInputStream(getPictureStream(inputSource), digest))) {
+                // 读取前 8 个字节用于检测文件类型
+                is.mark(8);
+                byte[] header = new byte[8];
+                int bytesRead = is.readNBytes(header, 0, header.length);
+                is.reset();
+                String pictureType = MrsStreamUtil.determineFileType(header, bytesRead);
+                long size = Files.copy(is, tempFile, StandardCopyOption.REPLACE_EXISTING);
+                return new SpooledPicture(tempFile, true, size, pictureType, HexUtil.encodeHexStr(digest.digest()));
+            }
+        } catch (IOException | RuntimeException e) {
+            deleteTempFile(tempFile);
+            throw e;
+        }
+    }
+
+    /**
+     * 直接使用已经在本地的图片文件，读一遍算出MD5、文件大小和文件类型，不再复制
+     *
+     * @param file      图片文件
+     * @param temporary 是否是临时文件（为true时上传结束后删除，否则由调用方删除）
+     * @return 读取结果
+     * @throws IOException 读取失败
+     */
+    protected static SpooledPicture inspectPicture(Path file, boolean temporary) throws IOException {
+        MessageDigest digest = MD5.create().getDigest();
+        try (InputStream is = new DigestInputStream(Files.newInputStream(file), digest)) {
+            byte[] header = new byte[8];
+            int bytesRead = is.readNBytes(header, 0, header.length);
+            String pictureType = MrsStreamUtil.determineFileType(header, bytesRead);
+            long size = bytesRead + is.transferTo(OutputStream.nullOutputStream());
+            return new SpooledPicture(file, temporary, size, pictureType, HexUtil.encodeHexStr(digest.digest()));
+        }
+    }
+
+    /**
+     * 一次上传中并行执行的各个步骤
+     * <p>超时只会让返回的结果失败，已经在执行的任务不会被中断，因此要单独记录每个任务本身；</p>
+     * <p>取消后还没开始的步骤直接失败，正在执行的步骤在写对象存储前检查并放弃，</p>
+     * <p>所有已经开始的任务结束后才做清理</p>
+     */
+    private class StageGroup {
+
+        private final AtomicBoolean cancelled = new AtomicBoolean(false);
+
+        /**
+         * 每个步骤的任务本身（不带超时）
+         */
+        private final List<CompletableFuture<?>> tasks = new CopyOnWriteArrayList<>();
+
+        /**
+         * 在上传线程池中执行一步处理，超时后这一步直接失败
+         *
+         * @param stageName      步骤名称
+         * @param timeoutSeconds 超时时间（秒）
+         * @param task           要执行的任务
+         * @param <T>            结果类型
+         * @return 这一步的结果
+         */
+        <T> CompletableFuture<T> run(String stageName, int timeoutSeconds, Callable<T> task) {
+            CompletableFuture<T> raw = CompletableFuture.supplyAsync(() -> {
+                long start = System.currentTimeMillis();
+                try {
+                    checkActive();
+                    T value = task.call();
+                    log.debug("{}完成, 耗时{}ms", stageName, System.currentTimeMillis() - start);
+                    return value;
+                } catch (Exception e) {
+                    throw new CompletionException(stageName + "失败", e);
+                }
+            }, minioUploadPoolExecutor);
+            tasks.add(raw);
+            return raw.copy().orTimeout(timeoutSeconds, TimeUnit.SECONDS);
+        }
+
+        /**
+         * 已经取消时抛出异常，写对象存储之前调用
+         */
+        void checkActive() {
+            if (cancelled.get()) {
+                throw new CancellationException("上传已取消");
+            }
+        }
+
+        /**
+         * 取消剩下的步骤，等已经开始的任务都结束后执行清理
+         * <p>最多等待指定的时间，还没结束的任务由最后一个结束的任务执行清理</p>
+         *
+         * @param waitSeconds 最多等待的时间（秒）
+         * @param cleanup     清理操作
+         */
+        void cancelThen(int waitSeconds, Runnable cleanup) {
+            cancelled.set(true);
+            // 取消前已经排进线程池的后续步骤也会被加进来，直到数量不再变化
+            List<CompletableFuture<?>> snapshot;
+            CompletableFuture<Void> all;
+            do {
+                snapshot = new ArrayList<>(tasks);
+                all = CompletableFuture.allOf(snapshot.toArray(new CompletableFuture[0]));
+                try {
+                    all.get(waitSeconds, TimeUnit.SECONDS);
+                } catch (TimeoutException e) {
+                    log.warn("有{}个上传步骤仍在执行，结束后再清理", snapshot.stream().filter(f -> !f.isDone()).count());
+                    all.whenComplete((r, ex) -> runCleanup(cleanup));
+                    return;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    all.whenComplete((r, ex) -> runCleanup(cleanup));
+                    return;
+                } catch (ExecutionException e) {
+                    // 任务失败也算结束了
+                }
+            } while (snapshot.size() != tasks.size());
+            runCleanup(cleanup);
+        }
+
+        private void runCleanup(Runnable cleanup) {
+            try {
+                cleanup.run();
+            } catch (Exception e) {
+                log.error("清理上传失败的文件出错", e);
+            }
+        }
+    }
+
+    /**
+     * 计算感知哈希（降采样解码）
+     *
+     * @param tempFile 图片文件
+     * @return 感知哈希，计算失败时为null
+     */
+    private Long computePicHash(Path tempFile) {
+        try {
+            return ImageUtil.differenceHash(ImageUtil.decodeImage(tempFile, PIC_HASH_DECODE_SIZE).getImage());
+        } catch (Exception e) {
+            // 算不出来时由后台处理补上，不影响上传
+            log.warn("计算感知哈希失败 {}", tempFile, e);
+            return null;
+        }
+    }
+
+    /**
+     * 删除临时文件
+     *
+     * @param tempFile 临时文件
+     */
+    private static void deleteTempFile(Path tempFile) {
+        if (tempFile == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(tempFile);
+        } catch (IOException e) {
+            log.warn("临时文件删除失败 {}", tempFile, e);
+        }
+    }
+
 
     /**
      * 校验图片是否符合规范
@@ -182,6 +592,28 @@ public abstract class PictureUploadTemplate {
      */
     public abstract Long getPictureSize(Object inputSource);
 
+    /**
+     * 原图已经保存在对象存储上时，返回它的路径
+     * <p>返回null时（默认）会上传原图</p>
+     *
+     * @param inputSource 输入源
+     * @return 原图的路径
+     */
+    protected String getStoredOriginalPath(Object inputSource) {
+        return null;
+    }
+
+    /**
+     * 已保存的原图是否在临时位置上（如分片上传合并后的文件）
+     * <p>是的话在对象存储内复制到图片的保存目录下，临时文件由来源方删除；否则原图直接使用</p>
+     *
+     * @param inputSource 输入源
+     * @return 是否在临时位置上
+     */
+    protected boolean isStoredOriginalTemporary(Object inputSource) {
+        return false;
+    }
+
     /**
      * 生成文件名、保存路径等信息
      *
@@ -199,6 +631,34 @@ public abstract class PictureUploadTemplate {
         String uploadPath = (pathPrefix.endsWith("/") ? pathPrefix : pathPrefix + "/") + uploadName;
         return new FileNameInfo(uploadName, suffix, uploadPath);
     }
+    /**
+     * 读取输入源后得到的本地文件和图片信息
+     */
+    @Data
+    @AllArgsConstructor
+    public static class SpooledPicture {
+        /**
+         * 图片所在的本地文件
+         */
+        private Path file;
+        /**
+         * 是否是读取时创建的临时文件（用完即删）；为false时文件由调用方负责删除
+         */
+        private boolean temporary;
+        private long size;
+        private String format;
+        private String md5;
+
+        /**
+         * 不再使用时删除临时文件（调用方自己的文件不删除）
+         */
+        public void discard() {
+            if (temporary) {
+                deleteTempFile(file);
+            }
+        }
+    }
+
     @Data
     @ToString
     @AllArgsConstructor
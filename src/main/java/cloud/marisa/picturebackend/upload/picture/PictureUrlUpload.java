@@ -1,23 +1,20 @@
 package cloud.marisa.picturebackend.upload.picture;
 
-import cloud.marisa.picturebackend.config.PictureConfig;
 import cloud.marisa.picturebackend.exception.BusinessException;
 import cloud.marisa.picturebackend.exception.ErrorCode;
+import cloud.marisa.picturebackend.manager.upload.PictureUrlFetcher;
 import cloud.marisa.picturebackend.util.MrsPathUtil;
-import cn.hutool.core.io.unit.DataSize;
 import cn.hutool.core.util.StrUtil;
-import cn.hutool.http.HttpResponse;
-import cn.hutool.http.HttpStatus;
-import cn.hutool.http.HttpUtil;
-import cn.hutool.http.Method;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
 /**
  * @author MarisaDAZE
@@ -28,7 +25,7 @@ import java.nio.file.Path;
 @Component
 public class PictureUrlUpload extends PictureUploadTemplate {
     @Autowired
-    private PictureConfig pictureConfig;
+    private PictureUrlFetcher pictureUrlFetcher;
 
     @Override
     protected void validPicture(Object inputSource) {
@@ -39,69 +36,57 @@ public class PictureUrlUpload extends PictureUploadTemplate {
         if (!MrsPathUtil.isWebURL(url)) {
             throw new BusinessException(ErrorCode.PARAMS_ERROR, "仅支持http(s)协议的链接");
         }
-        try (HttpResponse response = HttpUtil.createRequest(Method.HEAD, url).execute()) {
-            // 有些URL地址可能不支持Head请求访问，所以这里即使请求没成功也不报错
-            if (response.getStatus() != HttpStatus.HTTP_OK) {
-                return;
-            }
-            // 校验文件类型
-            String contentType = response.header("Content-Type");
-            if (StrUtil.isNotBlank(contentType)) {
-                boolean contains = pictureConfig.getUrlImageType().contains(contentType);
-                if (!contains) {
-                    throw new BusinessException(ErrorCode.PARAMS_ERROR, "不支持的文件类型 " + contentType);
-                }
-            }
-            // 校验文件大小
-            String contentLength = response.header("Content-Length");
-            if (StrUtil.isNotBlank(contentLength)) {
-                try {
-                    long fileSize = Long.parseLong(contentLength);
-                    String maxSizeStr = pictureConfig.getImageMaxSize();
-                    long maxSize = DataSize.parse(maxSizeStr).toBytes();
-                    if (fileSize > maxSize) {
-                        throw new BusinessException(ErrorCode.PARAMS_ERROR, "文件最大不能超过 " + maxSizeStr);
-                    }
-                } catch (NumberFormatException e) {
-                    throw new BusinessException(ErrorCode.PARAMS_ERROR, "文件大小格式错误");
-                }
-            }
-        }
+        // 有些URL地址可能不支持Head请求访问，所以这里即使请求没成功也不报错
+        pictureUrlFetcher.validate(url);
     }
 
     @Override
     public String getFileName(Object inputSource) {
         String fileURL = (String) inputSource;
-        try (HttpResponse response = HttpUtil.createRequest(Method.HEAD, fileURL).execute()) {
-            log.info("请求状态：{}", response.isOk());
-            // 如果请求失败，则返回URL中的文件名，尽管他并不准确
-            if (!response.isOk()) {
-                return getFileNameByURL(fileURL);
-            }
-            // 这里不应该这么做，比如application/x-gzip这个MIME类型对应的文件格式是.gz
-            // 正确的做法应该用Map建立映射关系
-            String contentType = response.header("Content-Type");
-            if (StrUtil.isBlank(contentType)) {
-                return getFileNameByURL(fileURL);
-            }
-            String[] parts = contentType.split(";");
-            String mimeType = parts[0].trim(); // 去掉可能的多余参数（如 charset）
-            String[] typeParts = mimeType.split("/");
-            if (typeParts.length == 2) {
-                return typeParts[1];
-            }
-            return typeParts[0];
-        } catch (Exception e) {
+        PictureUrlFetcher.UrlProbe probe = pictureUrlFetcher.probe(fileURL);
+        log.info("请求状态：{}", probe.isOk());
+        // 如果请求失败，则返回URL中的文件名，尽管他并不准确
+        if (!probe.isOk()) {
+            return getFileNameByURL(fileURL);
+        }
+        // 这里不应该这么做，比如application/x-gzip这个MIME类型对应的文件格式是.gz
+        // 正确的做法应该用Map建立映射关系
+        String mimeType = probe.getMimeType();
+        if (StrUtil.isBlank(mimeType)) {
             return getFileNameByURL(fileURL);
         }
+        String[] typeParts = mimeType.split("/");
+        if (typeParts.length == 2) {
+            return typeParts[1];
+        }
+        return typeParts[0];
     }
 
     @Override
     public InputStream getPictureStream(Object inputSource) {
         String url = (String) inputSource;
-        byte[] bytes = HttpUtil.downloadBytes(url);
-        return new ByteArrayInputStream(bytes);
+        // 先落到临时文件，流关闭时删除
+        Path tempFile = pictureUrlFetcher.download(url);
+        try {
+            return Files.newInputStream(tempFile, StandardOpenOption.DELETE_ON_CLOSE);
+        } catch (IOException e) {
+            log.error("读取临时文件失败: ", e);
+            throw new BusinessException(ErrorCode.OPERATION_ERROR, "图片下载失败");
+        }
+    }
 
+    /**
+     * 下载得到的临时文件直接作为上传用的文件，不再复制一份
+     */
+    @Override
+    protected SpooledPicture readPicture(Object inputSource) throws IOException {
+        Path tempFile = pictureUrlFetcher.download((String) inputSource);
+        try {
+            return inspectPicture(tempFile, true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
     }
 
     @Override
@@ -110,10 +95,7 @@ public class PictureUrlUpload extends PictureUploadTemplate {
             throw new BusinessException(ErrorCode.PARAMS_ERROR);
         }
         String url = (String) inputSource;
-        try (HttpResponse response = HttpUtil.createRequest(Method.HEAD, url).execute()) {
-            String contentLength = response.header("Content-Length");
-            return StrUtil.isBlank(contentLength) ? null : Long.parseLong(contentLength);
-        }
+        return pictureUrlFetcher.probe(url).getContentLength();
     }
 
     private String getFileNameByURL(String url) {
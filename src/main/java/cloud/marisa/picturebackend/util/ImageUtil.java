@@ -5,6 +5,7 @@ import cloud.marisa.picturebackend.exception.BusinessException;
 import cloud.marisa.picturebackend.exception.ErrorCode;
 import cloud.marisa.picturebackend.upload.picture.CountingInputStream;
 import cn.hutool.core.util.NumberUtil;
+import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.Getter;
 import lombok.Setter;
@@ -12,9 +13,12 @@ import lombok.ToString;
 import lombok.extern.log4j.Log4j2;
 import net.coobird.thumbnailator.Thumbnails;
 import net.coobird.thumbnailator.tasks.UnsupportedFormatException;
-import org.apache.commons.compress.utils.IOUtils;
+import net.coobird.thumbnailator.util.exif.ExifFilterUtils;
+import net.coobird.thumbnailator.util.exif.ExifUtils;
+import net.coobird.thumbnailator.util.exif.Orientation;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
 import javax.imageio.ImageReader;
 import javax.imageio.stream.ImageInputStream;
 import java.awt.image.BufferedImage;
@@ -29,6 +33,9 @@ import java.io.InputStream;
 import java.util.List;
 import java.util.stream.Collectors;
 
+import static cloud.marisa.picturebackend.common.Constants.DECODE_MAX_PIXELS;
+import static cloud.marisa.picturebackend.common.Constants.IMAGE_MAX_PIXELS;
+
 /**
  * @author MarisaDAZE
  * @description 图片工具类
@@ -146,27 +153,245 @@ public class ImageUtil {
             if (inputStream.available() < minThumbSize) {
                 return inputStream;
             }
-            // 压缩
-            byte[] imageData = IOUtils.toByteArray(inputStream);
-            BufferedImage image = ImageIO.read(new ByteArrayInputStream(imageData));
-            int width = image.getWidth();
-            int height = image.getHeight();
-            float scale = Math.min((maxSize / width), (maxSize / height));
-            if (scale > 1) scale = 1;
-            ByteArrayOutputStream os = new ByteArrayOutputStream();
-            Thumbnails.Builder<? extends InputStream> builder = Thumbnails.of(new ByteArrayInputStream(imageData))
-                    .scale(scale);
-            if (suffix != null) {
-                suffix = suffix.startsWith(".") ? suffix.substring(1) : suffix;
-                builder.outputFormat(suffix);
+            // 按缩略图尺寸降采样解码，不读入整个文件，也不解码全分辨率
+            BufferedImage thumb;
+            try (ImageInputStream iis = ImageIO.createImageInputStream(inputStream)) {
+                DecodedImage decoded = decodeImage(iis, (int) maxSize);
+                thumb = resizeToFit(decoded.getImage(), maxSize);
             }
-            builder.toOutputStream(os);
-            return new ByteArrayInputStream(os.toByteArray());
+            byte[] bytes = encodeImage(thumb, 1.0, null, suffix == null ? DEFAULT_SUFFIX : suffix);
+            return new ByteArrayInputStream(bytes);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * 从文件解码图片（只解码一次，默认图、缩略图、主色调都从这个结果派生）
+     * <p>会按EXIF方向旋转，和Thumbnails直接处理输入流的效果一致；宽高仍是文件中的原始宽高</p>
+     * <p>像素数超过解码预算时按比例降采样，峰值内存不超过预算</p>
+     *
+     * @param file 图片文件
+     * @return 解码结果
+     * @throws IOException 读取失败
+     */
+    public static DecodedImage decodeImage(Path file) throws IOException {
+        return decodeImage(file, 0);
+    }
+
+    /**
+     * 从文件解码图片，解码时按目标尺寸降采样
+     * <p>只需要缩略图或主色调时使用，大图不会按全分辨率解码</p>
+     *
+     * @param file       图片文件
+     * @param targetSize 目标最长边，解码结果的最长边不小于它的2倍；0表示不按目标尺寸降采样
+     * @return 解码结果
+     * @throws IOException 读取失败
+     */
+    public static DecodedImage decodeImage(Path file, int targetSize) throws IOException {
+        try (ImageInputStream iis = ImageIO.createImageInputStream(file.toFile())) {
+            return decodeImage(iis, targetSize);
+        }
+    }
+
+    /**
+     * 解码图片，先只读文件头检查像素数，再按目标尺寸和解码预算降采样解码
+     *
+     * @param iis        图片输入流
+     * @param targetSize 目标最长边，0表示不按目标尺寸降采样
+     * @return 解码结果
+     * @throws IOException 读取失败
+     */
+    public static DecodedImage decodeImage(ImageInputStream iis, int targetSize) throws IOException {
+        if (iis == null) {
+            throw new BusinessException(ErrorCode.PARAMS_ERROR, "文件读取失败");
+        }
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+        if (!readers.hasNext()) {
+            throw new BusinessException(ErrorCode.PARAMS_ERROR, "不支持的图片格式");
+        }
+        ImageReader reader = readers.next();
+        try {
+            reader.setInput(iis, true, false);
+            int width = reader.getWidth(0);
+            int height = reader.getHeight(0);
+            checkPixels(width, height);
+            ImageReadParam param = reader.getDefaultReadParam();
+            int subsampling = getSubsampling(width, height, targetSize);
+            if (subsampling > 1) {
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+            }
+            BufferedImage image = reader.read(0, param);
+            Orientation orientation = null;
+            try {
+                orientation = ExifUtils.getExifOrientation(reader, 0);
+            } catch (Exception e) {
+                log.debug("读取EXIF方向失败: {}", e.getMessage());
+            }
+            if (orientation != null && orientation != Orientation.TOP_LEFT) {
+                image = ExifFilterUtils.getFilterForOrientation(orientation).apply(image);
+            }
+            return new DecodedImage(image, width, height);
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    /**
+     * 像素数检查（防止解压炸弹：文件很小，解码后却要占用几个GB的内存）
+     *
+     * @param width  图片宽度
+     * @param height 图片高度
+     */
+    public static void checkPixels(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new BusinessException(ErrorCode.PARAMS_ERROR, "文件读取失败");
+        }
+        if ((long) width * height > IMAGE_MAX_PIXELS) {
+            throw new BusinessException(ErrorCode.PARAMS_ERROR, "图片分辨率过大");
+        }
+    }
+
+    /**
+     * 计算解码时的降采样倍数（每隔几个像素取一个）
+     *
+     * @param width      图片宽度
+     * @param height     图片高度
+     * @param targetSize 目标最长边，0表示只按解码预算计算
+     * @return 降采样倍数，1表示不降采样
+     */
+    private static int getSubsampling(int width, int height, int targetSize) {
+        // 不超过解码预算
+        int subsampling = (int) Math.ceil(Math.sqrt((double) width * height / DECODE_MAX_PIXELS));
+        if (targetSize > 0) {
+            // 保留目标尺寸的2倍，剩下的由Thumbnailator高质量缩小
+            subsampling = Math.max(subsampling, Math.max(width, height) / (targetSize * 2));
+        }
+        return Math.max(1, subsampling);
+    }
+
+    /**
+     * 按解码时的降采样倍数，估算解码后的像素数（用于申请解码许可）
+     *
+     * @param width      图片宽度
+     * @param height     图片高度
+     * @param targetSize 目标最长边，0表示只按解码预算计算
+     * @return 解码后的像素数
+     */
+    public static long getDecodedPixels(int width, int height, int targetSize) {
+        int subsampling = getSubsampling(width, height, targetSize);
+        long decodedWidth = (width + subsampling - 1) / subsampling;
+        long decodedHeight = (height + subsampling - 1) / subsampling;
+        return decodedWidth * decodedHeight;
+    }
+
+    /**
+     * 只读取文件头中的图片宽高，不解码像素
+     *
+     * @param file 图片文件
+     * @return 图片宽高（未按EXIF方向旋转）
+     * @throws IOException 读取失败
+     */
+    public static Dimension readImageSize(Path file) throws IOException {
+        try (ImageInputStream iis = ImageIO.createImageInputStream(file.toFile())) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+            if (!readers.hasNext()) {
+                throw new BusinessException(ErrorCode.PARAMS_ERROR, "不支持的图片格式");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(iis, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                checkPixels(width, height);
+                return new Dimension(width, height);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * 缩放并编码图片
+     *
+     * @param image   已解码的图片
+     * @param scale   缩放比例，1表示不缩放
+     * @param quality 输出质量[0-1]，null表示使用默认值
+     * @param suffix  输出的文件格式
+     * @return 编码后的字节
+     * @throws IOException 编码失败
+     */
+    public static byte[] encodeImage(BufferedImage image, double scale, Float quality, String suffix) throws IOException {
+        suffix = suffix.startsWith(".") ? suffix.substring(1) : suffix;
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        Thumbnails.Builder<BufferedImage> builder = Thumbnails.of(image)
+                .scale(scale)
+                .outputFormat(suffix);
+        if (quality != null) {
+            builder.outputQuality(quality);
+        }
+        builder.toOutputStream(os);
+        return os.toByteArray();
+    }
+
+    /**
+     * 按最大边长缩小图片（不编码）
+     *
+     * @param image   已解码的图片
+     * @param maxSize 最大边长
+     * @return 缩小后的图片，本来就不超过最大边长时返回原图
+     * @throws IOException 处理失败
+     */
+    public static BufferedImage resizeToFit(BufferedImage image, float maxSize) throws IOException {
+        float scale = Math.min(maxSize / image.getWidth(), maxSize / image.getHeight());
+        if (scale >= 1) {
+            return image;
+        }
+        return Thumbnails.of(image).scale(scale).asBufferedImage();
+    }
+
+    /**
+     * 计算64位差值哈希（dHash）
+     * <p>把图片分成9x8个格子求平均亮度，每行相邻两格比较得到8位，共64位；</p>
+     * <p>缩放、压缩、轻微调色后哈希基本不变，两张图片的相似程度用汉明距离衡量</p>
+     *
+     * @param image 已解码的图片
+     * @return 哈希值
+     */
+    public static long differenceHash(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        long[] sums = new long[9 * 8];
+        int[] counts = new int[9 * 8];
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            int cellRow = y * 8 / height * 9;
+            for (int x = 0; x < width; x++) {
+                int rgb = row[x];
+                // ITU-R BT.601 亮度（整数运算）
+                int luma = (((rgb >> 16) & 0xFF) * 299 + ((rgb >> 8) & 0xFF) * 587 + (rgb & 0xFF) * 114) / 1000;
+                int cell = cellRow + x * 9 / width;
+                sums[cell] += luma;
+                counts[cell]++;
+            }
+        }
+        long hash = 0L;
+        for (int y = 0; y < 8; y++) {
+            for (int x = 0; x < 8; x++) {
+                int left = y * 9 + x;
+                // 图片不足9像素宽时有的格子是空的，按0处理
+                long leftValue = counts[left] == 0 ? 0 : sums[left] / counts[left];
+                long rightValue = counts[left + 1] == 0 ? 0 : sums[left + 1] / counts[left + 1];
+                hash <<= 1;
+                if (leftValue > rightValue) {
+                    hash |= 1L;
+                }
+            }
+        }
+        return hash;
+    }
+
     /**
      * 获取图片信息
      *
@@ -563,6 +788,28 @@ public class ImageUtil {
         return hsl;
     }
 
+    /**
+     * 解码后的图片
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class DecodedImage {
+        /**
+         * 已按EXIF方向旋转的图片
+         */
+        private final BufferedImage image;
+
+        /**
+         * 文件中的原始宽度
+         */
+        private final int width;
+
+        /**
+         * 文件中的原始高度
+         */
+        private final int height;
+    }
+
     // 统计类调整为存储HSL信息
     @Data
     @ToString
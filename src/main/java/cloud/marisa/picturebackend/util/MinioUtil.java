@@ -1,7 +1,10 @@
 package cloud.marisa.picturebackend.util;
 
 import io.minio.*;
+import io.minio.errors.ErrorResponseException;
 import io.minio.http.Method;
+import io.minio.messages.Item;
+import io.minio.messages.Part;
 import okhttp3.OkHttpClient;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.MediaType;
@@ -17,6 +20,7 @@ import javax.net.ssl.X509TrustManager;
 import java.io.*;
 
 import java.security.cert.X509Certificate;
+import java.util.SortedMap;
 import java.util.concurrent.TimeUnit;
 
 @Component
@@ -28,6 +32,9 @@ public class MinioUtil {
     @Autowired
     private MinioClient minioClient;
 
+    @Autowired
+    private MrsMinioClient mrsMinioClient;
+
     /**
      * 判断bucket是否存在，不存在则创建
      */
@@ -129,6 +136,96 @@ public class MinioUtil {
         }
     }
 
+    /**
+     * 上传文件，失败时抛出异常
+     * <p>方法调用后自动关闭流</p>
+     *
+     * @param is       文件流
+     * @param size     文件大小
+     * @param fileName 文件名称（/path/to/example.txt）
+     * @throws Exception 上传失败
+     */
+    public void putObject(InputStream is, long size, String fileName) throws Exception {
+        try (is) {
+            minioClient.putObject(PutObjectArgs.builder()
+                    .bucket(configuration.getBucketName())
+                    .object(fileName)
+                    .stream(is, size, -1)
+                    .contentType(getContentType(fileName))
+                    .build());
+        }
+    }
+
+    /**
+     * 在存储桶内复制文件（服务端复制，不经过本机）
+     *
+     * @param source 源文件（/path/to/example.txt）
+     * @param target 目标文件（/path/to/example.txt）
+     * @throws Exception 复制失败
+     */
+    public void copyObject(String source, String target) throws Exception {
+        minioClient.copyObject(CopyObjectArgs.builder()
+                .bucket(configuration.getBucketName())
+                .object(target)
+                .source(CopySource.builder()
+                        .bucket(configuration.getBucketName())
+                        .object(source)
+                        .build())
+                .build());
+    }
+
+    /**
+     * 创建分片上传任务
+     *
+     * @param fileName 文件名称（/path/to/example.txt）
+     * @return 分片上传ID
+     * @throws Exception 创建失败
+     */
+    public String createMultipartUpload(String fileName) throws Exception {
+        return mrsMinioClient.createMultipartUpload(configuration.getBucketName(), fileName, getContentType(fileName));
+    }
+
+    /**
+     * 上传一个分片
+     *
+     * @param fileName   文件名称（/path/to/example.txt）
+     * @param uploadId   分片上传ID
+     * @param partNumber 分片序号（从1开始）
+     * @param is         分片内容
+     * @param length     分片大小
+     * @return 分片的ETag
+     * @throws Exception 上传失败
+     */
+    public String uploadPart(String fileName, String uploadId, int partNumber, InputStream is, long length) throws Exception {
+        return mrsMinioClient.uploadPart(configuration.getBucketName(), fileName, uploadId, partNumber, is, length);
+    }
+
+    /**
+     * 合并分片
+     *
+     * @param fileName 文件名称（/path/to/example.txt）
+     * @param uploadId 分片上传ID
+     * @param etags    分片序号 -> ETag（按序号排列）
+     * @throws Exception 合并失败
+     */
+    public void completeMultipartUpload(String fileName, String uploadId, SortedMap<Integer, String> etags) throws Exception {
+        Part[] parts = etags.entrySet().stream()
+                .map(e -> new Part(e.getKey(), e.getValue()))
+                .toArray(Part[]::new);
+        mrsMinioClient.completeMultipartUpload(configuration.getBucketName(), fileName, uploadId, parts);
+    }
+
+    /**
+     * 取消分片上传
+     *
+     * @param fileName 文件名称（/path/to/example.txt）
+     * @param uploadId 分片上传ID
+     * @throws Exception 取消失败
+     */
+    public void abortMultipartUpload(String fileName, String uploadId) throws Exception {
+        mrsMinioClient.abortMultipartUpload(configuration.getBucketName(), fileName, uploadId);
+    }
+
     /**
      * 获取文件的类型
      *
@@ -255,6 +352,66 @@ public class MinioUtil {
         }
     }
 
+    /**
+     * 下载文件中的一段
+     *
+     * @param minioPath 文件在minIO上的存储路径（/path/to/example.txt）
+     * @param offset    起始位置
+     * @param length    长度
+     * @return 这一段的字节
+     * @throws Exception 下载失败
+     */
+    public byte[] downloadRange(String minioPath, long offset, long length) throws Exception {
+        try (InputStream is = minioClient.getObject(
+                GetObjectArgs.builder()
+                        .bucket(configuration.getBucketName())
+                        .object(minioPath)
+                        .offset(offset)
+                        .length(length)
+                        .build())) {
+            return is.readAllBytes();
+        }
+    }
+
+    /**
+     * 判断文件是否存在
+     *
+     * @param minioPath 文件在minIO上的存储路径（/path/to/example.txt）
+     * @return 是否存在
+     * @throws Exception 查询失败（不包括文件不存在）
+     */
+    public boolean exists(String minioPath) throws Exception {
+        try {
+            minioClient.statObject(StatObjectArgs.builder()
+                    .bucket(configuration.getBucketName())
+                    .object(minioPath)
+                    .build());
+            return true;
+        } catch (ErrorResponseException e) {
+            if ("NoSuchKey".equals(e.errorResponse().code())) {
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 删除一个目录（前缀）下的所有文件
+     *
+     * @param prefix 目录前缀（/path/to/）
+     * @throws Exception 删除失败
+     */
+    public void deleteByPrefix(String prefix) throws Exception {
+        Iterable<Result<Item>> items = minioClient.listObjects(ListObjectsArgs.builder()
+                .bucket(configuration.getBucketName())
+                .prefix(prefix)
+                .recursive(true)
+                .build());
+        for (Result<Item> item : items) {
+            delete(item.get().objectName());
+        }
+    }
+
     /**
      * 删除文件
      *
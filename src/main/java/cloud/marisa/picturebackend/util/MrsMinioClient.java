@@ -0,0 +1,89 @@
+package cloud.marisa.picturebackend.util;
+
+import io.minio.MinioAsyncClient;
+import io.minio.ObjectWriteResponse;
+import io.minio.messages.Part;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimap;
+
+import java.io.InputStream;
+
+/**
+ * <p>暴露分片上传接口的MinIO客户端</p>
+ * <p>MinIO SDK中分片上传（创建/上传分片/合并/取消）的方法是protected的，这里继承后开放出来</p>
+ *
+ * @author MarisaDAZE
+ * @description MinIO分片上传客户端
+ * @date 2025/4/28
+ */
+public class MrsMinioClient extends MinioAsyncClient {
+
+    public MrsMinioClient(MinioAsyncClient client) {
+        super(client);
+    }
+
+    /**
+     * 创建分片上传任务
+     *
+     * @param bucket      存储桶
+     * @param object      对象路径
+     * @param contentType 文件类型
+     * @return 分片上传ID
+     * @throws Exception 创建失败
+     */
+    public String createMultipartUpload(String bucket, String object, String contentType) throws Exception {
+        Multimap<String, String> headers = HashMultimap.create();
+        headers.put("Content-Type", contentType);
+        return createMultipartUploadAsync(bucket, null, object, headers, null)
+                .get()
+                .result()
+                .uploadId();
+    }
+
+    /**
+     * 上传一个分片
+     * <p>SDK会把这个分片读入内存后再发送，内存占用不超过分片大小</p>
+     *
+     * @param bucket     存储桶
+     * @param object     对象路径
+     * @param uploadId   分片上传ID
+     * @param partNumber 分片序号（从1开始）
+     * @param is         分片内容
+     * @param length     分片大小
+     * @return 分片的ETag
+     * @throws Exception 上传失败
+     */
+    public String uploadPart(String bucket, String object, String uploadId, int partNumber,
+                             InputStream is, long length) throws Exception {
+        return uploadPartAsync(bucket, null, object, is, length, uploadId, partNumber, null, null)
+                .get()
+                .etag();
+    }
+
+    /**
+     * 合并分片
+     *
+     * @param bucket   存储桶
+     * @param object   对象路径
+     * @param uploadId 分片上传ID
+     * @param parts    所有分片（按序号排列）
+     * @return 合并结果
+     * @throws Exception 合并失败
+     */
+    public ObjectWriteResponse completeMultipartUpload(String bucket, String object, String uploadId,
+                                                       Part[] parts) throws Exception {
+        return completeMultipartUploadAsync(bucket, null, object, uploadId, parts, null, null).get();
+    }
+
+    /**
+     * 取消分片上传，已上传的分片会被删除
+     *
+     * @param bucket   存储桶
+     * @param object   对象路径
+     * @param uploadId 分片上传ID
+     * @throws Exception 取消失败
+     */
+    public void abortMultipartUpload(String bucket, String object, String uploadId) throws Exception {
+        abortMultipartUploadAsync(bucket, null, object, uploadId, null, null).get();
+    }
+}
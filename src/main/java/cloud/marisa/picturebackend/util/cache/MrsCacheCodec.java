@@ -0,0 +1,49 @@
+package cloud.marisa.picturebackend.util.cache;
+
+import com.alibaba.fastjson2.JSONB;
+
+/**
+ * @author MarisaDAZE
+ * @description 二级缓存（Redis）的值编解码器
+ * @date 2025/4/28
+ */
+public interface MrsCacheCodec<V> {
+
+    /**
+     * 将对象编码为字节数组
+     *
+     * @param value 缓存对象
+     * @return 编码后的字节
+     */
+    byte[] encode(V value);
+
+    /**
+     * 将字节数组解码为对象
+     *
+     * @param bytes 缓存中的字节
+     * @return 缓存对象，无法解码时返回null
+     */
+    V decode(byte[] bytes);
+
+    /**
+     * 基于fastjson2二进制格式（JSONB）的编解码器
+     * <p>比JSON文本更紧凑，且不需要在值里写入类型信息</p>
+     *
+     * @param type 对象的类型
+     * @param <V>  对象的类型
+     * @return 编解码器
+     */
+    static <V> MrsCacheCodec<V> jsonb(Class<V> type) {
+        return new MrsCacheCodec<>() {
+            @Override
+            public byte[] encode(V value) {
+                return JSONB.toBytes(value);
+            }
+
+            @Override
+            public V decode(byte[] bytes) {
+                return JSONB.parseObject(bytes, type);
+            }
+        };
+    }
+}
@@ -0,0 +1,135 @@
+package cloud.marisa.picturebackend.util.cache;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * <p>二级缓存某一时刻的统计快照</p>
+ * <p>local为本地缓存，remote为Redis，load为回源（数据库）</p>
+ *
+ * @author MarisaDAZE
+ * @description 二级缓存的统计信息
+ * @date 2025/4/28
+ */
+@Data
+@Builder
+public class MrsCacheStats implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 缓存名称
+     */
+    private String name;
+
+    /**
+     * 本地缓存命中次数
+     */
+    private Long localHits;
+
+    /**
+     * 本地缓存未命中次数
+     */
+    private Long localMisses;
+
+    /**
+     * 本地缓存命中率
+     */
+    private Double localHitRate;
+
+    /**
+     * 本地缓存因容量或过期被淘汰的数量
+     */
+    private Long localEvictions;
+
+    /**
+     * 本地缓存的条目数（估计值）
+     */
+    private Long localSize;
+
+    /**
+     * 本地缓存当前的总权重（字节）
+     */
+    private Long localWeightBytes;
+
+    /**
+     * 本地缓存的内存预算（字节）
+     */
+    private Long localMaxBytes;
+
+    /**
+     * 当前的热点key数量
+     */
+    private Integer hotKeys;
+
+    /**
+     * 命中空值缓存的次数
+     */
+    private Long nullHits;
+
+    /**
+     * Redis命中次数
+     */
+    private Long remoteHits;
+
+    /**
+     * Redis未命中次数
+     */
+    private Long remoteMisses;
+
+    /**
+     * Redis命中率
+     */
+    private Double remoteHitRate;
+
+    /**
+     * Redis读写异常次数
+     */
+    private Long remoteErrors;
+
+    /**
+     * Redis平均读取耗时（微秒）
+     */
+    private Double remoteAvgReadMicros;
+
+    /**
+     * 回源次数
+     */
+    private Long loads;
+
+    /**
+     * 回源结果为空的次数
+     */
+    private Long loadNulls;
+
+    /**
+     * 回源失败次数
+     */
+    private Long loadFailures;
+
+    /**
+     * 回源平均耗时（毫秒）
+     */
+    private Double loadAvgMillis;
+
+    /**
+     * 热点key后台刷新次数
+     */
+    private Long refreshes;
+
+    /**
+     * 热点key后台刷新失败次数
+     */
+    private Long refreshFailures;
+
+    /**
+     * 单个条目编码后的平均大小（字节）
+     */
+    private Long avgEntryBytes;
+
+    /**
+     * 本地缓存占用的估计大小（字节），即当前的总权重
+     */
+    private Long estimatedBytes;
+}
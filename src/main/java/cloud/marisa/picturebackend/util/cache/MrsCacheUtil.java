@@ -1,12 +1,14 @@
 package cloud.marisa.picturebackend.util.cache;
 
+import cloud.marisa.picturebackend.manager.cache.CacheInvalidationBus;
 import com.github.benmanes.caffeine.cache.Cache;
 import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Component;
 
+import java.util.Collection;
 import java.util.List;
-import java.util.concurrent.*;
 
 /**
  * @author MarisaDAZE
@@ -18,19 +20,34 @@ import java.util.concurrent.*;
 public class MrsCacheUtil {
 
     /**
-     * 缓存管理专用的线程池
+     * 首次延迟删除的延迟时长（毫秒）
      */
-    private static final ThreadPoolExecutor cacheDeleteExecutor = new ThreadPoolExecutor(
-            4,
-            16,
-            32,
-            TimeUnit.SECONDS,
-            new ArrayBlockingQueue<>(16),
-            new ThreadPoolExecutor.AbortPolicy()
-    );
+    private static final long FIRST_DELAY_MILLIS = 1000;
+
+    /**
+     * 删除失败后的重试间隔（毫秒）
+     */
+    private static final long RETRY_DELAY_MILLIS = 5000;
+
+    /**
+     * 延迟删除缓存的时间轮（刻度100ms，共128格，最多积压10万个键）
+     */
+    private static final MrsInvalidationScheduler invalidationScheduler =
+            new MrsInvalidationScheduler(100, 128, 100_000);
+
+    /**
+     * 本地缓存失效总线，用于通知集群内其它节点
+     */
+    private static CacheInvalidationBus invalidationBus;
+
+    @Autowired
+    public void setInvalidationBus(CacheInvalidationBus invalidationBus) {
+        MrsCacheUtil.invalidationBus = invalidationBus;
+    }
 
     /**
      * 延迟删除缓存（支持重试）
+     * <p>键会放进时间轮，同一时间片内的键合并后一次性删除，不会占用线程等待</p>
      *
      * @param redisTemplate 缓存数据的RedisTemplate实例
      * @param localCache    本地缓存的Caffeine实例
@@ -43,50 +60,9 @@ public class MrsCacheUtil {
             Cache<String, CT> localCache,
             RedisTemplate<String, RT> redisTemplate,
             List<String> keys, int maxRetry) {
-        cacheDeleteExecutor.submit(() -> {
-            log.info("开始延迟删除缓存: {}", keys);
-            long start = System.currentTimeMillis();
-            int retryCount = 0;
-            boolean success = false;
-            try {
-                try {
-                    // 首次延迟删除
-                    Thread.sleep(1000);
-                    success = removeCache(localCache, redisTemplate, keys);
-                } catch (InterruptedException e) {
-                    log.error("首次延迟删除被中断", e);
-                    List<RT> rts = redisTemplate.opsForValue().multiGet(keys);
-                    // 此时说明已经删除了，不用重试
-                    if (rts == null || rts.isEmpty()) {
-                        log.info("原因: 缓存本就不存在, 不再执行重试...");
-                        return;
-                    }
-                    Thread.currentThread().interrupt();
-                }
-                // 重试逻辑
-                while (!success && retryCount < maxRetry) {
-                    try {
-                        Thread.sleep(5000); // 重试间隔
-                        success = removeCache(localCache, redisTemplate, keys);
-                        if (success) {
-                            log.info("缓存重试删除成功");
-                            break;
-                        }
-                        retryCount++;
-                        log.warn("缓存删除失败，已重试{}/{}次", retryCount, maxRetry);
-                    } catch (InterruptedException e) {
-                        log.error("重试过程中被中断", e);
-                        Thread.currentThread().interrupt();
-                        break;
-                    }
-                }
-                if (!success) {
-                    log.error("缓存删除失败，已达最大重试次数: {}", maxRetry);
-                }
-            } finally {
-                log.info("关于删除键 {} 的任务耗时: {}ms", keys, System.currentTimeMillis() - start);
-            }
-        });
+        log.info("延迟删除缓存: {}", keys);
+        invalidationScheduler.schedule(localCache, redisTemplate, keys,
+                FIRST_DELAY_MILLIS, RETRY_DELAY_MILLIS, maxRetry);
     }
 
     /**
@@ -100,50 +76,18 @@ public class MrsCacheUtil {
     public static <RT> void delayRemoveCache(
             RedisTemplate<String, RT> redisTemplate,
             List<String> keys, int maxRetry) {
-        cacheDeleteExecutor.submit(() -> {
-            log.info("开始延迟删除缓存: {}", keys);
-            long start = System.currentTimeMillis();
-            int retryCount = 0;
-            Long success = 0L;
-            try {
-                try {
-                    // 首次延迟删除
-                    Thread.sleep(1000);
-                    success = redisTemplate.delete(keys);
-                } catch (InterruptedException e) {
-                    log.error("首次延迟删除被失败", e);
-                    List<RT> rts = redisTemplate.opsForValue().multiGet(keys);
-                    // 此时说明已经删除了，不用重试
-                    if (rts == null || rts.isEmpty()) {
-                        log.info("原因: 缓存本就不存在, 不再执行重试...");
-                        return;
-                    }
-                    Thread.currentThread().interrupt();
-                }
-                // 重试逻辑
-                while ((success != null && success > 0) && retryCount < maxRetry) {
-                    try {
-                        Thread.sleep(5000); // 重试间隔
-                        success = redisTemplate.delete(keys);
-                        if (success != null && success > 0L) {
-                            log.info("缓存重试删除成功");
-                            break;
-                        }
-                        retryCount++;
-                        log.warn("缓存删除失败，已重试{}/{}次", retryCount, maxRetry);
-                    } catch (InterruptedException e) {
-                        log.error("重试过程中被中断", e);
-                        Thread.currentThread().interrupt();
-                        break;
-                    }
-                }
-                if (success == null || success == 0L) {
-                    log.error("缓存删除失败，已达最大重试次数: {}", maxRetry);
-                }
-            } finally {
-                log.info("关于删除键 {} 的任务耗时: {}ms", keys, System.currentTimeMillis() - start);
-            }
-        });
+        log.info("延迟删除缓存: {}", keys);
+        invalidationScheduler.schedule(null, redisTemplate, keys,
+                FIRST_DELAY_MILLIS, RETRY_DELAY_MILLIS, maxRetry);
+    }
+
+    /**
+     * 获取延迟删除缓存的调度器（可用于查看积压和丢弃情况）
+     *
+     * @return 调度器
+     */
+    public static MrsInvalidationScheduler getInvalidationScheduler() {
+        return invalidationScheduler;
     }
 
     /**
@@ -162,11 +106,12 @@ public class MrsCacheUtil {
             List<String> keys) {
         try {
             log.info("开始删除缓存: {}", keys);
-            // 删除本地缓存
-            localCache.invalidateAll(keys);
+            // 删除本地缓存，并通知其它节点删除
+            invalidateLocal(localCache, keys);
 
-            List<RT> rts = redisTemplate.opsForValue().multiGet(keys);
-            if (rts == null || rts.isEmpty()) {
+            // 只检查键是否存在，值可能是其它格式编码的，这里不反序列化
+            Long exists = redisTemplate.countExistingKeys(keys);
+            if (exists == null || exists == 0L) {
                 log.info("Redis中不存在键: {}", keys);
                 return true;
             }
@@ -178,4 +123,20 @@ public class MrsCacheUtil {
             return false;
         }
     }
+
+    /**
+     * 删除本地缓存，并通知集群内其它节点删除
+     *
+     * @param localCache 本地缓存的Caffeine实例，为null时忽略
+     * @param keys       待删除的缓存键
+     */
+    static void invalidateLocal(Cache<String, ?> localCache, Collection<String> keys) {
+        if (localCache == null) {
+            return;
+        }
+        localCache.invalidateAll(keys);
+        if (invalidationBus != null) {
+            invalidationBus.broadcast(localCache, keys);
+        }
+    }
 }
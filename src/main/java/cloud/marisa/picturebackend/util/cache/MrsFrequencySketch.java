@@ -0,0 +1,137 @@
+package cloud.marisa.picturebackend.util.cache;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>估算键访问频率的Count-Min Sketch（线程安全）</p>
+ * <p>每个计数器占4bit（最大15），每个long存16个计数器，每个键映射到4个计数器，取最小值作为估计频率；</p>
+ * <p>累计次数达到采样数后所有计数器减半，旧的热度会逐渐衰减</p>
+ *
+ * @author MarisaDAZE
+ * @description 访问频率估算
+ * @date 2025/4/28
+ */
+public class MrsFrequencySketch {
+
+    /**
+     * 每个键对应的计数器个数
+     */
+    private static final int DEPTH = 4;
+
+    /**
+     * 计数器的最大值
+     */
+    private static final int MAX_COUNT = 15;
+
+    /**
+     * 4个计数器使用的种子
+     */
+    private static final long[] SEEDS = {
+            0xC3A5C85C97CB3127L, 0xB492B66FBE98F273L, 0x9AE16A3B2F90404FL, 0xCBF29CE484222325L
+    };
+
+    /**
+     * 计数器，每个long存16个4bit计数器
+     */
+    private final AtomicLongArray table;
+
+    /**
+     * 计数器总数 - 1（计数器总数为2的幂）
+     */
+    private final int counterMask;
+
+    /**
+     * 衰减的采样数
+     */
+    private final int sampleSize;
+
+    /**
+     * 距离上次衰减的累计次数
+     */
+    private final AtomicInteger additions = new AtomicInteger();
+
+    /**
+     * 创建频率估算器
+     *
+     * @param expectedKeys 预计同时跟踪的键数量
+     */
+    public MrsFrequencySketch(int expectedKeys) {
+        int counters = Integer.highestOneBit(Math.max(64, expectedKeys) * DEPTH - 1) << 1;
+        this.table = new AtomicLongArray(counters >>> 4);
+        this.counterMask = counters - 1;
+        this.sampleSize = 10 * Math.max(64, expectedKeys);
+    }
+
+    /**
+     * 记录一次访问
+     *
+     * @param key 键
+     */
+    public void increment(String key) {
+        long hash = spread(key.hashCode());
+        boolean added = false;
+        for (int i = 0; i < DEPTH; i++) {
+            added |= incrementAt(indexOf(hash, i));
+        }
+        if (added && additions.incrementAndGet() >= sampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * 估计键的访问频率
+     *
+     * @param key 键
+     * @return 0~15
+     */
+    public int frequency(String key) {
+        long hash = spread(key.hashCode());
+        int frequency = MAX_COUNT;
+        for (int i = 0; i < DEPTH; i++) {
+            int index = indexOf(hash, i);
+            long word = table.get(index >>> 4);
+            int count = (int) ((word >>> ((index & 15) << 2)) & 0xFL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    private boolean incrementAt(int index) {
+        int offset = (index & 15) << 2;
+        long mask = 0xFL << offset;
+        int word = index >>> 4;
+        long old;
+        do {
+            old = table.get(word);
+            if ((old & mask) == mask) {
+                return false;
+            }
+        } while (!table.compareAndSet(word, old, old + (1L << offset)));
+        return true;
+    }
+
+    /**
+     * 所有计数器减半
+     */
+    private void reset() {
+        additions.set(0);
+        for (int i = 0; i < table.length(); i++) {
+            long old;
+            do {
+                old = table.get(i);
+            } while (!table.compareAndSet(i, old, (old >>> 1) & 0x7777777777777777L));
+        }
+    }
+
+    private int indexOf(long hash, int row) {
+        long h = (hash + SEEDS[row]) * SEEDS[row];
+        h += h >>> 32;
+        return (int) h & counterMask;
+    }
+
+    private static long spread(int hashCode) {
+        long h = hashCode * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+}
@@ -0,0 +1,284 @@
+package cloud.marisa.picturebackend.util.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>基于时间轮的延迟缓存删除调度器</p>
+ * <p>时间轮每个槽位内，同一对（本地缓存, RedisTemplate）的键会合并成一批，</p>
+ * <p>一个槽位到期时，每个RedisTemplate只发一次管道化的UNLINK；</p>
+ * <p>失败的批次会重新放回时间轮，不会有线程为了等待而休眠</p>
+ *
+ * @author MarisaDAZE
+ * @description 延迟删除缓存的调度器
+ * @date 2025/4/28
+ */
+@Log4j2
+public class MrsInvalidationScheduler {
+
+    /**
+     * 每个刻度的时长（毫秒）
+     */
+    private final long tickMillis;
+
+    /**
+     * 时间轮的槽位，槽位内按删除目标合并
+     */
+    private final Map<Target, Batch>[] wheel;
+
+    /**
+     * 最多允许积压的键数量，超过后直接丢弃
+     */
+    private final long maxPendingKeys;
+
+    /**
+     * 当前指针
+     */
+    private volatile int cursor = 0;
+
+    /**
+     * 积压中的键数量
+     */
+    private final AtomicLong pendingKeys = new AtomicLong();
+
+    /**
+     * 因积压过多或重试耗尽被丢弃的键数量
+     */
+    private final AtomicLong droppedKeys = new AtomicLong();
+
+    /**
+     * 已成功删除的键数量
+     */
+    private final AtomicLong removedKeys = new AtomicLong();
+
+    /**
+     * 重试的批次数量
+     */
+    private final AtomicLong retriedBatches = new AtomicLong();
+
+    private final ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "cache-invalidation-wheel");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @SuppressWarnings("unchecked")
+    public MrsInvalidationScheduler(long tickMillis, int wheelSize, long maxPendingKeys) {
+        this.tickMillis = tickMillis;
+        this.maxPendingKeys = maxPendingKeys;
+        this.wheel = new Map[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            wheel[i] = new ConcurrentHashMap<>();
+        }
+        ticker.scheduleAtFixedRate(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 在指定延迟后删除本地缓存和Redis中的键
+     *
+     * @param localCache    本地缓存，可以为null
+     * @param redisTemplate 缓存数据的RedisTemplate实例
+     * @param keys          待删除的缓存键
+     * @param delayMillis   延迟时长（毫秒）
+     * @param retryMillis   失败后的重试间隔（毫秒）
+     * @param maxRetry      最大重试次数
+     */
+    public void schedule(Cache<String, ?> localCache,
+                         RedisTemplate<String, ?> redisTemplate,
+                         Collection<String> keys,
+                         long delayMillis, long retryMillis, int maxRetry) {
+        if (keys == null || keys.isEmpty()) {
+            return;
+        }
+        if (pendingKeys.get() + keys.size() > maxPendingKeys) {
+            droppedKeys.addAndGet(keys.size());
+            log.error("延迟删除缓存积压过多, 丢弃键: {}", keys);
+            return;
+        }
+        Batch batch = new Batch(new HashSet<>(keys), keys.size(), 0, maxRetry, retryMillis);
+        enqueue(new Target(localCache, redisTemplate), batch, delayMillis);
+    }
+
+    /**
+     * 积压中的键数量
+     */
+    public long getPendingKeys() {
+        return pendingKeys.get();
+    }
+
+    /**
+     * 被丢弃的键数量
+     */
+    public long getDroppedKeys() {
+        return droppedKeys.get();
+    }
+
+    /**
+     * 已删除的键数量
+     */
+    public long getRemovedKeys() {
+        return removedKeys.get();
+    }
+
+    /**
+     * 重试过的批次数量
+     */
+    public long getRetriedBatches() {
+        return retriedBatches.get();
+    }
+
+    private void enqueue(Target target, Batch batch, long delayMillis) {
+        // 至少推迟一个刻度，避免落进正在处理的槽位；超过一圈的按一圈算
+        long ticks = Math.max(1, (delayMillis + tickMillis - 1) / tickMillis);
+        ticks = Math.min(ticks, wheel.length - 1);
+        int slot = (int) ((cursor + ticks) % wheel.length);
+        pendingKeys.addAndGet(batch.submitted);
+        wheel[slot].merge(target, batch, Batch::merge);
+    }
+
+    private void tick() {
+        try {
+            int next = (cursor + 1) % wheel.length;
+            cursor = next;
+            Map<Target, Batch> slot = wheel[next];
+            if (!slot.isEmpty()) {
+                drain(slot);
+            }
+        } catch (Exception e) {
+            // 异常不能抛出去，否则调度器会停止后续的刻度
+            log.error("时间轮处理异常", e);
+        }
+    }
+
+    private void drain(Map<Target, Batch> slot) {
+        // 按RedisTemplate分组，每组只走一次管道
+        Map<RedisTemplate<String, ?>, Map<Target, Batch>> groups = new IdentityHashMap<>();
+        for (Target target : new ArrayList<>(slot.keySet())) {
+            Batch batch = slot.remove(target);
+            if (batch == null) {
+                continue;
+            }
+            pendingKeys.addAndGet(-batch.submitted);
+            groups.computeIfAbsent(target.redisTemplate, k -> new HashMap<>()).put(target, batch);
+        }
+        groups.forEach(this::execute);
+    }
+
+    private void execute(RedisTemplate<String, ?> redisTemplate, Map<Target, Batch> batches) {
+        try {
+            for (Map.Entry<Target, Batch> entry : batches.entrySet()) {
+                MrsCacheUtil.invalidateLocal(entry.getKey().localCache, entry.getValue().keys);
+            }
+            RedisSerializer<String> keySerializer = keySerializer(redisTemplate);
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                unlink(connection, keySerializer, batches.values());
+                return null;
+            });
+            batches.values().forEach(batch -> removedKeys.addAndGet(batch.keys.size()));
+        } catch (Exception e) {
+            log.warn("延迟删除缓存失败: {}", e.getMessage());
+            batches.forEach(this::retry);
+        }
+    }
+
+    private void retry(Target target, Batch batch) {
+        if (batch.attempt >= batch.maxRetry) {
+            droppedKeys.addAndGet(batch.keys.size());
+            log.error("缓存删除失败，已达最大重试次数 {}: {}", batch.maxRetry, batch.keys);
+            return;
+        }
+        retriedBatches.incrementAndGet();
+        Batch next = new Batch(batch.keys, batch.keys.size(), batch.attempt + 1, batch.maxRetry, batch.retryMillis);
+        enqueue(target, next, batch.retryMillis);
+    }
+
+    private static void unlink(RedisConnection connection,
+                               RedisSerializer<String> keySerializer,
+                               Collection<Batch> batches) {
+        Set<String> keys = new HashSet<>();
+        batches.forEach(batch -> keys.addAll(batch.keys));
+        byte[][] rawKeys = new byte[keys.size()][];
+        int i = 0;
+        for (String key : keys) {
+            rawKeys[i++] = keySerializer.serialize(key);
+        }
+        connection.keyCommands().unlink(rawKeys);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static RedisSerializer<String> keySerializer(RedisTemplate<String, ?> redisTemplate) {
+        RedisSerializer<?> serializer = redisTemplate.getKeySerializer();
+        return serializer != null ? (RedisSerializer<String>) serializer : StringRedisSerializer.UTF_8;
+    }
+
+    /**
+     * 删除目标（按实例区分）
+     */
+    private static final class Target {
+        private final Cache<String, ?> localCache;
+        private final RedisTemplate<String, ?> redisTemplate;
+
+        private Target(Cache<String, ?> localCache, RedisTemplate<String, ?> redisTemplate) {
+            this.localCache = localCache;
+            this.redisTemplate = redisTemplate;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Target)) {
+                return false;
+            }
+            Target other = (Target) o;
+            return localCache == other.localCache && redisTemplate == other.redisTemplate;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(localCache) + System.identityHashCode(redisTemplate);
+        }
+    }
+
+    /**
+     * 同一槽位内合并后的一批键
+     */
+    private static final class Batch {
+        private final Set<String> keys;
+        /**
+         * 合并前提交的键数量之和，用于统计积压
+         */
+        private final long submitted;
+        private final int attempt;
+        private final int maxRetry;
+        private final long retryMillis;
+
+        private Batch(Set<String> keys, long submitted, int attempt, int maxRetry, long retryMillis) {
+            this.keys = keys;
+            this.submitted = submitted;
+            this.attempt = attempt;
+            this.maxRetry = maxRetry;
+            this.retryMillis = retryMillis;
+        }
+
+        private static Batch merge(Batch a, Batch b) {
+            Set<String> keys = new HashSet<>(a.keys);
+            keys.addAll(b.keys);
+            return new Batch(keys,
+                    a.submitted + b.submitted,
+                    Math.min(a.attempt, b.attempt),
+                    Math.max(a.maxRetry, b.maxRetry),
+                    Math.min(a.retryMillis, b.retryMillis));
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package cloud.marisa.picturebackend.util.cache;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>针对long类型键的布隆过滤器（线程安全）</p>
+ * <p>判断不存在时一定不存在，判断存在时可能存在</p>
+ *
+ * @author MarisaDAZE
+ * @description long键的布隆过滤器
+ * @date 2025/4/28
+ */
+public class MrsLongBloomFilter {
+
+    /**
+     * 位数组
+     */
+    private final AtomicLongArray bits;
+
+    /**
+     * 位数组长度（bit）
+     */
+    private final long bitSize;
+
+    /**
+     * 哈希函数个数
+     */
+    private final int hashCount;
+
+    /**
+     * 创建布隆过滤器
+     *
+     * @param expectedInsertions 预计插入的数量
+     * @param fpp                期望的误判率（0~1）
+     */
+    public MrsLongBloomFilter(long expectedInsertions, double fpp) {
+        long n = Math.max(1L, expectedInsertions);
+        long m = (long) (-n * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        // 按64位对齐
+        int words = (int) Math.max(1L, (m + 63) >>> 6);
+        this.bits = new AtomicLongArray(words);
+        this.bitSize = (long) words << 6;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitSize / n * Math.log(2)));
+    }
+
+    /**
+     * 添加一个键
+     *
+     * @param key 键
+     */
+    public void put(long key) {
+        long h1 = mix(key);
+        long h2 = mix(h1 ^ 0x9E3779B97F4A7C15L);
+        for (int i = 0; i < hashCount; i++) {
+            long index = Long.remainderUnsigned(h1 + i * h2, bitSize);
+            setBit(index);
+        }
+    }
+
+    /**
+     * 键是否可能存在
+     *
+     * @param key 键
+     * @return false-一定不存在；true-可能存在
+     */
+    public boolean mightContain(long key) {
+        long h1 = mix(key);
+        long h2 = mix(h1 ^ 0x9E3779B97F4A7C15L);
+        for (int i = 0; i < hashCount; i++) {
+            long index = Long.remainderUnsigned(h1 + i * h2, bitSize);
+            if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void setBit(long index) {
+        int word = (int) (index >>> 6);
+        long mask = 1L << index;
+        long old;
+        do {
+            old = bits.get(word);
+            if ((old & mask) != 0) {
+                return;
+            }
+        } while (!bits.compareAndSet(word, old, old | mask));
+    }
+
+    /**
+     * SplitMix64的混淆函数
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
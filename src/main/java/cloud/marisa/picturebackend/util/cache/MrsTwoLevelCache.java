@@ -0,0 +1,756 @@
+package cloud.marisa.picturebackend.util.cache;
+
+import cn.hutool.core.util.RandomUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * <p>本地缓存（Caffeine）+ Redis 的读穿透二级缓存</p>
+ * <p>本地缓存直接存对象，Redis中存编码后的字节；</p>
+ * <p>同一个key的加载由Caffeine保证只执行一次，命中任意一级缓存时都不会回写Redis</p>
+ * <p>开启空值缓存后，数据库中不存在的key也会短暂缓存，防止缓存穿透</p>
+ * <p>开启热点刷新后，访问频率超过阈值的key会常驻本地缓存（不过期、不因容量被淘汰），</p>
+ * <p>并在写入一段时间后由后台线程提前重新加载，避免热点过期瞬间的大量并发回源</p>
+ *
+ * @author MarisaDAZE
+ * @description 类型化的二级缓存
+ * @date 2025/4/28
+ */
+@Log4j2
+public class MrsTwoLevelCache<V> {
+
+    /**
+     * Redis中表示"不存在"的占位值
+     */
+    private static final byte[] NULL_MARKER = new byte[]{0};
+
+    /**
+     * 每个本地缓存条目的固定开销估计（Caffeine节点、对象头、引用等，字节）
+     */
+    private static final int ENTRY_OVERHEAD_BYTES = 96;
+
+    /**
+     * 估算热点跟踪规模时，按每个条目512字节计
+     */
+    private static final int SKETCH_BYTES_PER_KEY = 512;
+
+    /**
+     * 缓存名称（仅用于日志）
+     */
+    private final String name;
+
+    /**
+     * 一级缓存
+     */
+    private final Cache<String, V> localCache;
+
+    /**
+     * 二级缓存
+     */
+    private final RedisTemplate<String, byte[]> redisTemplate;
+
+    /**
+     * 二级缓存的编解码器
+     */
+    private final MrsCacheCodec<V> codec;
+
+    /**
+     * Redis中的基础过期时间（秒）
+     */
+    private final int ttlSeconds;
+
+    /**
+     * Redis过期时间的随机偏移上限（秒），防止雪崩
+     */
+    private final int ttlJitterSeconds;
+
+    /**
+     * 空值的过期时间（秒），0表示不缓存空值
+     */
+    private final int nullTtlSeconds;
+
+    /**
+     * 本地的空值缓存，未开启时为null
+     */
+    private final Cache<String, Boolean> nullCache;
+
+    /**
+     * 本地缓存的过期时间（纳秒）
+     */
+    private final long localTtlNanos;
+
+    /**
+     * 本地缓存的内存预算（字节）
+     */
+    private final long localMaxBytes;
+
+    /**
+     * 访问频率估算
+     */
+    private final MrsFrequencySketch sketch;
+
+    /**
+     * 当前的热点key（常驻本地缓存）
+     */
+    private final Set<String> hotKeys = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 热点key最近一次加载的时间（毫秒）
+     */
+    private final Map<String, Long> hotLoadedAt = new ConcurrentHashMap<>();
+
+    /**
+     * 刚读取或编码得到的条目大小（字节），写入本地缓存时由weigher取走，不用为了计算权重再编码一次
+     */
+    private final Map<String, Integer> pendingSizes = new ConcurrentHashMap<>();
+
+    /**
+     * 正在后台刷新的热点key
+     */
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 后台刷新使用的线程池，未开启热点刷新时为null
+     */
+    private volatile Executor refreshExecutor;
+
+    /**
+     * 成为热点key的访问频率阈值（0~15）
+     */
+    private volatile int hotThreshold;
+
+    /**
+     * 最多同时存在的热点key数量
+     */
+    private volatile int maxHotKeys;
+
+    /**
+     * 热点key写入多久后提前刷新（毫秒）
+     */
+    private volatile long refreshAfterMillis;
+
+    /*
+     * 以下为统计计数器，本地缓存的命中/未命中/淘汰由Caffeine自己统计
+     */
+    private final LongAdder nullHits = new LongAdder();
+    private final LongAdder remoteHits = new LongAdder();
+    private final LongAdder remoteMisses = new LongAdder();
+    private final LongAdder remoteErrors = new LongAdder();
+    private final LongAdder remoteReadNanos = new LongAdder();
+    private final LongAdder remoteReads = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadNulls = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder refreshFailures = new LongAdder();
+    private final LongAdder sampledBytes = new LongAdder();
+    private final LongAdder sampledEntries = new LongAdder();
+
+    public MrsTwoLevelCache(String name,
+                            long localMaxBytes,
+                            int localTtlSeconds,
+                            RedisTemplate<String, byte[]> redisTemplate,
+                            MrsCacheCodec<V> codec,
+                            int ttlSeconds,
+                            int ttlJitterSeconds) {
+        this(name, localMaxBytes, localTtlSeconds, redisTemplate, codec, ttlSeconds, ttlJitterSeconds, 0);
+    }
+
+    public MrsTwoLevelCache(String name,
+                            long localMaxBytes,
+                            int localTtlSeconds,
+                            RedisTemplate<String, byte[]> redisTemplate,
+                            MrsCacheCodec<V> codec,
+                            int ttlSeconds,
+                            int ttlJitterSeconds,
+                            int nullTtlSeconds) {
+        this.name = name;
+        this.localTtlNanos = TimeUnit.SECONDS.toNanos(localTtlSeconds);
+        this.localMaxBytes = localMaxBytes;
+        this.sketch = new MrsFrequencySketch((int) Math.max(1024L, Math.min(localMaxBytes / SKETCH_BYTES_PER_KEY, 1 << 20)));
+        // 按编码后的大小计算权重；热点key的权重为0，不会因为容量被淘汰
+        this.localCache = Caffeine.newBuilder()
+                .maximumWeight(localMaxBytes)
+                .<String, V>weigher(this::weigh)
+                .expireAfter(new LocalExpiry())
+                .recordStats()
+                .build();
+        this.redisTemplate = redisTemplate;
+        this.codec = codec;
+        this.ttlSeconds = ttlSeconds;
+        this.ttlJitterSeconds = ttlJitterSeconds;
+        this.nullTtlSeconds = nullTtlSeconds;
+        this.nullCache = nullTtlSeconds <= 0 ? null : Caffeine.newBuilder()
+                .maximumSize(10000L)
+                .expireAfterWrite(nullTtlSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * 开启热点key的识别和提前刷新
+     *
+     * @param executor            后台刷新使用的线程池
+     * @param hotThreshold        成为热点key的访问频率阈值（1~15）
+     * @param maxHotKeys          最多同时存在的热点key数量
+     * @param refreshAfterSeconds 热点key写入多久后提前刷新（应小于本地缓存的过期时间）
+     * @return this
+     */
+    public MrsTwoLevelCache<V> enableRefreshAhead(Executor executor,
+                                                  int hotThreshold,
+                                                  int maxHotKeys,
+                                                  int refreshAfterSeconds) {
+        this.hotThreshold = Math.max(1, Math.min(hotThreshold, 15));
+        this.maxHotKeys = maxHotKeys;
+        this.refreshAfterMillis = TimeUnit.SECONDS.toMillis(refreshAfterSeconds);
+        this.refreshExecutor = executor;
+        return this;
+    }
+
+    /**
+     * 读穿透获取缓存
+     * <p>本地缓存 -> Redis -> loader，loader返回null时不缓存</p>
+     * <p>开启热点刷新时，loader也会被用于热点key的后台刷新</p>
+     *
+     * @param key    缓存键
+     * @param loader 两级缓存都未命中时的加载函数
+     * @return 缓存对象，不存在时返回null
+     */
+    public V get(String key, Function<String, V> loader) {
+        if (nullCache != null && nullCache.getIfPresent(key) != null) {
+            nullHits.increment();
+            return null;
+        }
+        V value = localCache.get(key, k -> loadRemote(k, loader));
+        if (value != null && refreshExecutor != null) {
+            recordAccess(key, loader);
+        }
+        return value;
+    }
+
+    /**
+     * 批量读穿透获取缓存
+     * <p>本地缓存getAll -> 未命中的key一次MGET -> 仍未命中的key交给loader一次查库</p>
+     *
+     * @param keys   缓存键
+     * @param loader 批量加载函数，返回存在的 key -> value，不存在的key不用放进结果
+     * @return 存在的 key -> value
+     */
+    public Map<String, V> getAll(Collection<String> keys, Function<Set<String>, Map<String, V>> loader) {
+        Set<String> lookup = new LinkedHashSet<>(keys);
+        if (nullCache != null) {
+            int before = lookup.size();
+            lookup.removeIf(key -> nullCache.getIfPresent(key) != null);
+            nullHits.add(before - lookup.size());
+        }
+        if (lookup.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        return localCache.getAll(lookup, missing -> loadAllRemote(missing, loader));
+    }
+
+    /**
+     * 只查本地缓存
+     *
+     * @param key 缓存键
+     * @return 缓存对象
+     */
+    public V getIfPresent(String key) {
+        return localCache.getIfPresent(key);
+    }
+
+    /**
+     * 同时写入两级缓存
+     *
+     * @param key   缓存键
+     * @param value 缓存对象
+     */
+    public void put(String key, V value) {
+        if (nullCache != null) {
+            nullCache.invalidate(key);
+        }
+        byte[] bytes = encode(key, value);
+        localCache.put(key, value);
+        writeRemote(key, bytes);
+    }
+
+    /**
+     * 获取本地缓存实例
+     *
+     * @return Caffeine实例
+     */
+    public Cache<String, V> getLocalCache() {
+        return localCache;
+    }
+
+    /**
+     * 获取缓存名称
+     *
+     * @return 缓存名称
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 获取本地缓存当前的总权重（估计占用的字节数，不含常驻的热点key）
+     *
+     * @return 总权重
+     */
+    public long getLocalWeight() {
+        return localCache.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0L))
+                .orElse(0L);
+    }
+
+    /**
+     * 获取当前的热点key及其估计的访问频率，按频率从高到低排序
+     *
+     * @return 热点key -> 访问频率
+     */
+    public Map<String, Integer> getHotKeys() {
+        List<String> keys = new ArrayList<>(hotKeys);
+        Map<String, Integer> frequencies = new HashMap<>(keys.size());
+        keys.forEach(key -> frequencies.put(key, sketch.frequency(key)));
+        keys.sort((a, b) -> Integer.compare(frequencies.get(b), frequencies.get(a)));
+        Map<String, Integer> result = new LinkedHashMap<>(keys.size());
+        keys.forEach(key -> result.put(key, frequencies.get(key)));
+        return result;
+    }
+
+    /**
+     * 获取统计快照
+     *
+     * @return 统计信息
+     */
+    public MrsCacheStats stats() {
+        CacheStats local = localCache.stats();
+        long hits = remoteHits.sum();
+        long misses = remoteMisses.sum();
+        long reads = remoteReads.sum();
+        long loadCount = loads.sum();
+        long entries = sampledEntries.sum();
+        long avgEntryBytes = entries == 0 ? 0L : sampledBytes.sum() / entries;
+        long localSize = localCache.estimatedSize();
+        long weight = getLocalWeight();
+        return MrsCacheStats.builder()
+                .name(name)
+                .localHits(local.hitCount())
+                .localMisses(local.missCount())
+                .localHitRate(local.hitRate())
+                .localEvictions(local.evictionCount())
+                .localSize(localSize)
+                .localWeightBytes(weight)
+                .localMaxBytes(localMaxBytes)
+                .hotKeys(hotKeys.size())
+                .nullHits(nullHits.sum())
+                .remoteHits(hits)
+                .remoteMisses(misses)
+                .remoteHitRate(hits + misses == 0 ? 1.0 : (double) hits / (hits + misses))
+                .remoteErrors(remoteErrors.sum())
+                .remoteAvgReadMicros(reads == 0 ? 0.0 : remoteReadNanos.sum() / 1000.0 / reads)
+                .loads(loadCount)
+                .loadNulls(loadNulls.sum())
+                .loadFailures(loadFailures.sum())
+                .loadAvgMillis(loadCount == 0 ? 0.0 : loadNanos.sum() / 1_000_000.0 / loadCount)
+                .refreshes(refreshes.sum())
+                .refreshFailures(refreshFailures.sum())
+                .avgEntryBytes(avgEntryBytes)
+                .estimatedBytes(weight)
+                .build();
+    }
+
+    /**
+     * 降级已经不热的key，让它们恢复正常的过期和淘汰
+     * <p>需要定时调用；频率低于阈值一半或已不在本地缓存中的key会被移出热点</p>
+     */
+    public void demoteColdKeys() {
+        int threshold = hotThreshold;
+        for (String key : hotKeys) {
+            boolean present = localCache.asMap().containsKey(key);
+            if (present && sketch.frequency(key) >= (threshold + 1) / 2) {
+                continue;
+            }
+            hotKeys.remove(key);
+            hotLoadedAt.remove(key);
+            // 重新写入一次，按非热点重新计算权重和过期时间
+            localCache.asMap().computeIfPresent(key, (k, v) -> v);
+        }
+    }
+
+    /**
+     * 记录一次访问，必要时提升为热点或触发后台刷新
+     *
+     * @param key    缓存键
+     * @param loader 加载函数
+     */
+    private void recordAccess(String key, Function<String, V> loader) {
+        sketch.increment(key);
+        long now = System.currentTimeMillis();
+        if (!hotKeys.contains(key)) {
+            if (hotKeys.size() < maxHotKeys && sketch.frequency(key) >= hotThreshold && hotKeys.add(key)) {
+                hotLoadedAt.put(key, now);
+                // 重新写入一次，按热点重新计算权重和过期时间（常驻）
+                localCache.asMap().computeIfPresent(key, (k, v) -> v);
+                log.info("[{}] 热点key: {}", name, key);
+            }
+            return;
+        }
+        Long loadedAt = hotLoadedAt.get(key);
+        if (loadedAt != null && now - loadedAt < refreshAfterMillis) {
+            return;
+        }
+        if (!refreshing.add(key)) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> refresh(key, loader));
+        } catch (RejectedExecutionException e) {
+            // 线程池满了就等下一次访问再刷新
+            refreshing.remove(key);
+        }
+    }
+
+    /**
+     * 后台刷新热点key：直接从loader加载，同时覆盖两级缓存
+     * <p>只替换本地缓存中仍然存在的key，刷新期间被删除的key不会被写回</p>
+     *
+     * @param key    缓存键
+     * @param loader 加载函数
+     */
+    private void refresh(String key, Function<String, V> loader) {
+        refreshes.increment();
+        try {
+            V value = load(key, loader);
+            if (value == null) {
+                MrsCacheUtil.invalidateLocal(localCache, Collections.singletonList(key));
+                return;
+            }
+            byte[] bytes = encode(key, value);
+            if (localCache.asMap().replace(key, value) != null) {
+                writeRemote(key, bytes);
+            } else {
+                pendingSizes.remove(key);
+            }
+            hotLoadedAt.put(key, System.currentTimeMillis());
+        } catch (Exception e) {
+            refreshFailures.increment();
+            log.warn("[{}] 刷新热点key失败 {}: {}", name, key, e.getMessage());
+        } finally {
+            refreshing.remove(key);
+        }
+    }
+
+    /**
+     * 本地缓存未命中时，依次尝试Redis和loader
+     *
+     * @param key    缓存键
+     * @param loader 加载函数
+     * @return 缓存对象
+     */
+    private V loadRemote(String key, Function<String, V> loader) {
+        byte[] bytes = readRemote(key);
+        if (bytes != null) {
+            // 命中空值
+            if (nullCache != null && Arrays.equals(bytes, NULL_MARKER)) {
+                nullCache.put(key, Boolean.TRUE);
+                return null;
+            }
+            V value = decode(key, bytes);
+            if (value != null) {
+                pendingSizes.put(key, bytes.length);
+                return value;
+            }
+        }
+        V value = load(key, loader);
+        if (value != null) {
+            writeRemote(key, encode(key, value));
+            if (hotKeys.contains(key)) {
+                hotLoadedAt.put(key, System.currentTimeMillis());
+            }
+        } else if (nullCache != null) {
+            nullCache.put(key, Boolean.TRUE);
+            writeNull(key);
+        }
+        return value;
+    }
+
+    /**
+     * 本地缓存批量未命中时，先MGET，剩下的再交给loader
+     *
+     * @param missing 本地未命中的key
+     * @param loader  批量加载函数
+     * @return 存在的 key -> value
+     */
+    private Map<String, V> loadAllRemote(Set<? extends String> missing, Function<Set<String>, Map<String, V>> loader) {
+        List<String> keyList = new ArrayList<>(missing);
+        List<byte[]> values = multiReadRemote(keyList);
+        Map<String, V> result = new HashMap<>(keyList.size());
+        Set<String> loadKeys = new LinkedHashSet<>();
+        for (int i = 0; i < keyList.size(); i++) {
+            String key = keyList.get(i);
+            byte[] bytes = values == null || values.size() <= i ? null : values.get(i);
+            if (bytes == null || bytes.length == 0) {
+                loadKeys.add(key);
+                continue;
+            }
+            if (nullCache != null && Arrays.equals(bytes, NULL_MARKER)) {
+                nullCache.put(key, Boolean.TRUE);
+                continue;
+            }
+            V value = decode(key, bytes);
+            if (value == null) {
+                loadKeys.add(key);
+            } else {
+                pendingSizes.put(key, bytes.length);
+                result.put(key, value);
+            }
+        }
+        if (loadKeys.isEmpty()) {
+            return result;
+        }
+        Map<String, V> loaded = loadAll(loadKeys, loader);
+        Map<String, byte[]> writes = new HashMap<>(loadKeys.size());
+        for (String key : loadKeys) {
+            V value = loaded == null ? null : loaded.get(key);
+            if (value != null) {
+                result.put(key, value);
+                byte[] bytes = encode(key, value);
+                if (bytes != null) {
+                    writes.put(key, bytes);
+                }
+            } else if (nullCache != null) {
+                nullCache.put(key, Boolean.TRUE);
+                writes.put(key, NULL_MARKER);
+            }
+        }
+        multiWriteRemote(writes);
+        return result;
+    }
+
+    private List<byte[]> multiReadRemote(List<String> keys) {
+        long start = System.nanoTime();
+        try {
+            List<byte[]> values = redisTemplate.opsForValue().multiGet(keys);
+            remoteReads.increment();
+            remoteReadNanos.add(System.nanoTime() - start);
+            int hits = 0;
+            if (values != null) {
+                for (byte[] bytes : values) {
+                    if (bytes != null && bytes.length > 0) {
+                        hits++;
+                        sample(bytes);
+                    }
+                }
+            }
+            remoteHits.add(hits);
+            remoteMisses.add(keys.size() - hits);
+            return values;
+        } catch (Exception e) {
+            remoteErrors.increment();
+            log.warn("[{}] 批量读取Redis缓存失败: {}", name, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 通过一次管道批量写入Redis（各自带过期时间）
+     *
+     * @param values key -> 编码后的值
+     */
+    @SuppressWarnings("unchecked")
+    private void multiWriteRemote(Map<String, byte[]> values) {
+        if (values.isEmpty()) {
+            return;
+        }
+        try {
+            RedisSerializer<String> keySerializer = (RedisSerializer<String>) redisTemplate.getKeySerializer();
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                values.forEach((key, bytes) -> {
+                    long ttl = bytes == NULL_MARKER ? nullTtlSeconds : ttlSeconds + jitter();
+                    connection.stringCommands().setEx(keySerializer.serialize(key), ttl, bytes);
+                });
+                return null;
+            });
+        } catch (Exception e) {
+            remoteErrors.increment();
+            log.warn("[{}] 批量写入Redis缓存失败: {}", name, e.getMessage());
+        }
+    }
+
+    /**
+     * 调用单个加载函数并统计耗时
+     */
+    private V load(String key, Function<String, V> loader) {
+        long start = System.nanoTime();
+        try {
+            V value = loader.apply(key);
+            if (value == null) {
+                loadNulls.increment();
+            }
+            return value;
+        } catch (RuntimeException e) {
+            loadFailures.increment();
+            throw e;
+        } finally {
+            loads.increment();
+            loadNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * 调用批量加载函数并统计耗时（一次批量加载按一次回源计）
+     */
+    private Map<String, V> loadAll(Set<String> keys, Function<Set<String>, Map<String, V>> loader) {
+        long start = System.nanoTime();
+        try {
+            Map<String, V> loaded = loader.apply(keys);
+            loadNulls.add(keys.size() - (loaded == null ? 0 : loaded.size()));
+            return loaded;
+        } catch (RuntimeException e) {
+            loadFailures.increment();
+            throw e;
+        } finally {
+            loads.increment();
+            loadNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * 本地缓存条目的权重：编码后的字节数 + 键 + 固定开销
+     * <p>编码后的大小取自读取或写入Redis时已经得到的字节，</p>
+     * <p>没有的（热点升降级时重新计算权重）按已采样条目的平均大小估算</p>
+     */
+    private int weigh(String key, V value) {
+        Integer size = pendingSizes.remove(key);
+        if (hotKeys.contains(key)) {
+            return 0;
+        }
+        long bytes = size != null ? size : averageEntryBytes();
+        return (int) Math.min(Integer.MAX_VALUE, bytes + 2L * key.length() + ENTRY_OVERHEAD_BYTES);
+    }
+
+    private long averageEntryBytes() {
+        long entries = sampledEntries.sum();
+        return entries == 0 ? SKETCH_BYTES_PER_KEY : sampledBytes.sum() / entries;
+    }
+
+    /**
+     * 编码并记下大小，供写入本地缓存时计算权重
+     *
+     * @return 编码后的字节，编码失败时返回null
+     */
+    private byte[] encode(String key, V value) {
+        try {
+            byte[] bytes = codec.encode(value);
+            sample(bytes);
+            pendingSizes.put(key, bytes.length);
+            return bytes;
+        } catch (Exception e) {
+            log.warn("[{}] 编码缓存失败 {}: {}", name, key, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 记录一个条目编码后的大小，用于估算本地缓存的内存占用
+     */
+    private void sample(byte[] bytes) {
+        // 空值占位不计入
+        if (bytes.length <= NULL_MARKER.length) {
+            return;
+        }
+        sampledBytes.add(bytes.length);
+        sampledEntries.increment();
+    }
+
+    private int jitter() {
+        return ttlJitterSeconds > 0 ? RandomUtil.randomInt(0, ttlJitterSeconds) : 0;
+    }
+
+    private byte[] readRemote(String key) {
+        long start = System.nanoTime();
+        try {
+            byte[] bytes = redisTemplate.opsForValue().get(key);
+            remoteReads.increment();
+            remoteReadNanos.add(System.nanoTime() - start);
+            if (bytes == null || bytes.length == 0) {
+                remoteMisses.increment();
+                return null;
+            }
+            remoteHits.increment();
+            sample(bytes);
+            return bytes;
+        } catch (Exception e) {
+            remoteErrors.increment();
+            log.warn("[{}] 读取Redis缓存失败 {}: {}", name, key, e.getMessage());
+            return null;
+        }
+    }
+
+    private V decode(String key, byte[] bytes) {
+        try {
+            return codec.decode(bytes);
+        } catch (Exception e) {
+            // 旧格式的数据当作未命中处理
+            log.warn("[{}] 解码Redis缓存失败 {}: {}", name, key, e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeNull(String key) {
+        try {
+            redisTemplate.opsForValue().set(key, NULL_MARKER, nullTtlSeconds, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            remoteErrors.increment();
+            log.warn("[{}] 写入Redis空值缓存失败 {}: {}", name, key, e.getMessage());
+        }
+    }
+
+    private void writeRemote(String key, byte[] bytes) {
+        if (bytes == null) {
+            return;
+        }
+        try {
+            redisTemplate.opsForValue().set(key, bytes, ttlSeconds + jitter(), TimeUnit.SECONDS);
+        } catch (Exception e) {
+            remoteErrors.increment();
+            log.warn("[{}] 写入Redis缓存失败 {}: {}", name, key, e.getMessage());
+        }
+    }
+
+    /**
+     * 本地缓存的过期策略：热点key不过期，其它key写入后固定时间过期
+     */
+    private class LocalExpiry implements Expiry<String, V> {
+
+        @Override
+        public long expireAfterCreate(String key, V value, long currentTime) {
+            return hotKeys.contains(key) ? Long.MAX_VALUE : localTtlNanos;
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, V value, long currentTime, long currentDuration) {
+            return hotKeys.contains(key) ? Long.MAX_VALUE : localTtlNanos;
+        }
+
+        @Override
+        public long expireAfterRead(String key, V value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -4,8 +4,10 @@ import cloud.marisa.picturebackend.exception.BusinessException;
 import cloud.marisa.picturebackend.exception.ErrorCode;
 
 import java.awt.*;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
 
@@ -212,6 +214,45 @@ public class ColorUtils {
         return String.format("#%02X%02X%02X", r, g, b);
     }
 
+    /**
+     * 计算候选的色调桶（处理环形色相）
+     *
+     * @param targetHue 目标色相
+     * @param tolerance 色相容差（桶数）
+     * @return 桶号
+     */
+    public static List<Integer> calculateHueBuckets(float targetHue, int tolerance) {
+        List<Integer> buckets = new ArrayList<>();
+        int baseBucket = (int) Math.floor(targetHue / 10);
+        // 容差超过半圈时所有桶都是候选，不能重复
+        int span = Math.min(tolerance, 18);
+        for (int i = -span; i <= span; i++) {
+            int bucket = (baseBucket + i + 36) % 36; // 处理负值和溢出
+            if (!buckets.contains(bucket)) {
+                buckets.add(bucket);
+            }
+        }
+        return buckets;
+    }
+
+    /**
+     * 计算线性分桶（0-9号桶）
+     *
+     * @param base      目标桶号
+     * @param tolerance 容差（桶数）
+     * @return 桶号
+     */
+    public static List<Integer> calculateLinearBuckets(int base, int tolerance) {
+        List<Integer> buckets = new ArrayList<>();
+        for (int i = -tolerance; i <= tolerance; i++) {
+            int bucket = base + i;
+            if (bucket >= 0 && bucket <= 9) {
+                buckets.add(bucket);
+            }
+        }
+        return buckets;
+    }
+
     public static void main(String[] args) {
         Color decode = Color.decode("0x21354a");
         System.out.println(decode);
@@ -6,9 +6,13 @@ package cloud.marisa.picturebackend.util.colors;
  * @date 2025/4/12
  */
 
+import cloud.marisa.picturebackend.util.ImageUtil;
+
 import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStream;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
 import java.io.*;
 import java.util.*;
 import java.util.List;
@@ -25,59 +29,237 @@ public class DominantColorExtractor {
     private static final float MIN_SATURATION = 0.4f;
     private static final float MIN_LIGHTNESS = 0.2f;
     private static final float MAX_LIGHTNESS = 0.8f;
-
+    // 饱和度、亮度为1时会落到第9个桶，所以按(8+1)计算
+    private static final int BUCKET_COUNT = H_BUCKETS * (S_BUCKETS + 1) * (L_BUCKETS + 1);
+    // 调色板中两种颜色的感知距离小于这个值时合并为一种
+    private static final double PALETTE_MERGE_DISTANCE = 80;
+    // 调色板中的颜色至少要覆盖的像素比例
+    private static final float PALETTE_MIN_COVERAGE = 0.03f;
+
+    /**
+     * 从输入流中提取主色调
+     * <p>解码时按目标尺寸降采样，大图也不会按全分辨率解码</p>
+     *
+     * @param imageStream 图片输入流
+     * @return 主色调
+     * @throws IOException 读取失败
+     */
     public static Color extractDominantColor(InputStream imageStream) throws IOException {
-        // 1. 读取并压缩图片
-        BufferedImage image = ImageIO.read(imageStream);
+        // 1. 读取图片
+        try (ImageInputStream iis = ImageIO.createImageInputStream(imageStream)) {
+            BufferedImage image = ImageUtil.decodeImage(iis, TARGET_SIZE).getImage();
+            return extractDominantColor(image);
+        }
+    }
+
+    /**
+     * 从已解码的图片中提取主色调（不用再解码一次）
+     *
+     * @param image 图片
+     * @return 主色调
+     * @throws IOException 缩放失败
+     */
+    public static Color extractDominantColor(BufferedImage image) throws IOException {
+        return extractColors(image, 0).getDominant();
+    }
+
+    /**
+     * 从已解码的图片中提取主色调和调色板（共用同一次直方图统计）
+     *
+     * @param image       图片
+     * @param paletteSize 调色板最多几种颜色，为0时只提取主色调
+     * @return 主色调和调色板
+     * @throws IOException 缩放失败
+     */
+    public static MrsColorPalette extractColors(BufferedImage image, int paletteSize) throws IOException {
+        // 1. 压缩图片
         BufferedImage resizedImage = Thumbnails.of(image)
                 .size(TARGET_SIZE, TARGET_SIZE)
                 .asBufferedImage();
 
-        // 2. 创建颜色分桶统计
-        Map<Integer, ColorBucket> colorBuckets = new HashMap<>();
+        // 2. 按行批量读取像素，统计到平铺的直方图数组中，逐像素处理时不创建任何对象
         int width = resizedImage.getWidth();
         int height = resizedImage.getHeight();
+        int[] counts = new int[BUCKET_COUNT];
+        int[] sumR = new int[BUCKET_COUNT];
+        int[] sumG = new int[BUCKET_COUNT];
+        int[] sumB = new int[BUCKET_COUNT];
+        float[] sumH = new float[BUCKET_COUNT];
+        float[] sumS = new float[BUCKET_COUNT];
+        float[] sumL = new float[BUCKET_COUNT];
+        // 各个桶第一次出现的先后顺序
+        int[] seenOrder = new int[BUCKET_COUNT];
+        int seen = 0;
+        // 最后一个新桶出现在第几个像素
+        int lastNewPixel = -1;
+        int[] row = new int[width];
+        float[] hsl = new float[3];
+        Raster raster = resizedImage.getRaster();
+        int type = resizedImage.getType();
+        boolean packedRgb = type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB;
 
         // 3. 遍历所有像素进行分桶统计
         for (int y = 0; y < height; y++) {
+            if (packedRgb) {
+                // 像素本身就是打包的RGB，直接读取栅格数据，不经过ColorModel转换
+                raster.getDataElements(0, y, width, 1, row);
+            } else {
+                resizedImage.getRGB(0, y, width, 1, row, 0, width);
+            }
             for (int x = 0; x < width; x++) {
-                processPixel(resizedImage.getRGB(x, y), colorBuckets);
+                int rgb = row[x];
+                int r = (rgb >> 16) & 0xFF;
+                int g = (rgb >> 8) & 0xFF;
+                int b = rgb & 0xFF;
+                Color.RGBtoHSB(r, g, b, hsl);
+                int index = bucketIndex(hsl);
+                if (counts[index]++ == 0) {
+                    seenOrder[seen++] = index;
+                    lastNewPixel = y * width + x;
+                }
+                sumR[index] += r;
+                sumG[index] += g;
+                sumB[index] += b;
+                sumH[index] += hsl[0];
+                sumS[index] += hsl[1];
+                sumL[index] += hsl[2];
             }
         }
 
+        // 像素数相同的候选颜色，原来的实现按HashMap的遍历顺序取舍（排序是稳定的），这个顺序决定了结果，必须保持不变。
+        // 按第一次出现的顺序用compute放入HashMap，和逐像素compute时的结构（桶数组大小、链表顺序）完全一致
+        Map<Integer, ColorBucket> colorBuckets = new HashMap<>();
+        for (int i = 0; i < seen; i++) {
+            int index = seenOrder[i];
+            ColorBucket bucket = new ColorBucket(counts[index],
+                    sumR[index], sumG[index], sumB[index],
+                    sumH[index], sumS[index], sumL[index]);
+            colorBuckets.compute(bucketKey(index), (k, v) -> bucket);
+        }
+        // HashMap在下一次compute时才扩容，最后一个新桶之后还有像素的话，原来的逐像素统计会再扩容一次
+        if (seen > 0 && lastNewPixel < width * height - 1) {
+            colorBuckets.compute(bucketKey(seenOrder[seen - 1]), (k, v) -> v);
+        }
+
         // 4. 过滤并排序候选颜色
         List<ColorBucket> candidates = colorBuckets.values().stream()
                 .filter(DominantColorExtractor::isValidColor)
                 .sorted(Comparator.comparingInt((ColorBucket b) -> b.count).reversed())
                 .collect(Collectors.toList());
 
-        // 5. 处理无候选颜色情况
-        if (candidates.isEmpty()) {
-            return getFallbackColor(colorBuckets);
-        }
+        // 5. 处理无候选颜色情况，否则加权混合主要颜色
+        Color dominant = candidates.isEmpty()
+                ? getFallbackColor(colorBuckets)
+                : calculateDominantColor(candidates);
 
-        // 6. 加权混合主要颜色
-        return calculateDominantColor(candidates);
+        // 6. 把相近的桶合并成调色板
+        List<MrsColorPalette.Entry> palette = paletteSize > 0
+                ? buildPalette(counts, sumR, sumG, sumB, seenOrder, seen, width * height, paletteSize)
+                : new ArrayList<>();
+        return new MrsColorPalette(dominant, palette);
     }
 
-    private static void processPixel(int rgb, Map<Integer, ColorBucket> buckets) {
-        float[] hsl = rgbToHsl(rgb);
+    /**
+     * 按像素数从多到少（数量相同时按桶的下标）遍历所有桶，和已选颜色足够接近的并入该颜色，否则作为新颜色加入调色板
+     * <p>调色板满了之后剩下的桶不再计入，覆盖率太低的颜色不保留</p>
+     *
+     * @param counts      每个桶的像素数
+     * @param sumR        每个桶的红色分量之和
+     * @param sumG        每个桶的绿色分量之和
+     * @param sumB        每个桶的蓝色分量之和
+     * @param seenOrder   出现过的桶
+     * @param seen        出现过的桶的数量
+     * @param total       像素总数
+     * @param paletteSize 调色板最多几种颜色
+     * @return 调色板，按覆盖率从高到低排序
+     */
+    private static List<MrsColorPalette.Entry> buildPalette(
+            int[] counts, int[] sumR, int[] sumG, int[] sumB,
+            int[] seenOrder, int seen, int total, int paletteSize) {
+        Integer[] order = new Integer[seen];
+        for (int i = 0; i < seen; i++) {
+            order[i] = seenOrder[i];
+        }
+        // 数量相同时按桶的下标，调色板和像素的先后顺序无关
+        Arrays.sort(order, (a, b) -> counts[a] != counts[b] ? Integer.compare(counts[b], counts[a]) : Integer.compare(a, b));
+        long[] paletteCount = new long[paletteSize];
+        long[] paletteR = new long[paletteSize];
+        long[] paletteG = new long[paletteSize];
+        long[] paletteB = new long[paletteSize];
+        int size = 0;
+        for (int index : order) {
+            int r = sumR[index] / counts[index];
+            int g = sumG[index] / counts[index];
+            int b = sumB[index] / counts[index];
+            int nearest = -1;
+            double nearestDistance = Double.MAX_VALUE;
+            for (int i = 0; i < size; i++) {
+                double distance = colorDistance(r, g, b,
+                        (int) (paletteR[i] / paletteCount[i]),
+                        (int) (paletteG[i] / paletteCount[i]),
+                        (int) (paletteB[i] / paletteCount[i]));
+                if (distance < nearestDistance) {
+                    nearest = i;
+                    nearestDistance = distance;
+                }
+            }
+            if (nearest < 0 || nearestDistance > PALETTE_MERGE_DISTANCE) {
+                if (size == paletteSize) {
+                    continue;
+                }
+                nearest = size++;
+            }
+            paletteCount[nearest] += counts[index];
+            paletteR[nearest] += sumR[index];
+            paletteG[nearest] += sumG[index];
+            paletteB[nearest] += sumB[index];
+        }
+        List<MrsColorPalette.Entry> palette = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            float coverage = paletteCount[i] / (float) total;
+            if (coverage < PALETTE_MIN_COVERAGE) {
+                continue;
+            }
+            Color color = new Color(
+                    (int) (paletteR[i] / paletteCount[i]),
+                    (int) (paletteG[i] / paletteCount[i]),
+                    (int) (paletteB[i] / paletteCount[i]));
+            palette.add(new MrsColorPalette.Entry(color, coverage));
+        }
+        palette.sort(Comparator.comparingDouble(MrsColorPalette.Entry::getCoverage).reversed());
+        return palette;
+    }
+
+    /**
+     * 两种颜色的感知距离（红色均值加权的欧氏距离，0~765）
+     */
+    private static double colorDistance(int r1, int g1, int b1, int r2, int g2, int b2) {
+        double redMean = (r1 + r2) / 2.0;
+        int dr = r1 - r2;
+        int dg = g1 - g2;
+        int db = b1 - b2;
+        return Math.sqrt((2 + redMean / 256) * dr * dr + 4 * dg * dg + (2 + (255 - redMean) / 256) * db * db);
+    }
 
-        // 计算分桶索引
+    /**
+     * 计算分桶在平铺数组中的下标
+     * <p>饱和度和亮度为1时下标为8，所以这两个维度各有9个桶</p>
+     */
+    private static int bucketIndex(float[] hsl) {
         int hIdx = (int) (hsl[0] * H_BUCKETS) % H_BUCKETS;
         int sIdx = (int) (hsl[1] * S_BUCKETS);
         int lIdx = (int) (hsl[2] * L_BUCKETS);
-        int bucketKey = (hIdx << 16) | (sIdx << 8) | lIdx;
+        return (hIdx * (S_BUCKETS + 1) + sIdx) * (L_BUCKETS + 1) + lIdx;
+    }
 
-        // 更新分桶统计
-        buckets.compute(bucketKey, (k, v) -> {
-            if (v == null) {
-                return new ColorBucket(rgb, hsl);
-            } else {
-                v.addColor(rgb, hsl);
-                return v;
-            }
-        });
+    /**
+     * 平铺数组下标还原成分桶的键（色调 << 16 | 饱和度 << 8 | 亮度）
+     */
+    private static int bucketKey(int index) {
+        int lIdx = index % (L_BUCKETS + 1);
+        int sIdx = (index / (L_BUCKETS + 1)) % (S_BUCKETS + 1);
+        int hIdx = index / ((L_BUCKETS + 1) * (S_BUCKETS + 1));
+        return (hIdx << 16) | (sIdx << 8) | lIdx;
     }
 
     private static boolean isValidColor(ColorBucket bucket) {
@@ -126,15 +308,6 @@ public class DominantColorExtractor {
         return new Color(r, g, b);
     }
 
-    private static float[] rgbToHsl(int rgb) {
-        int r = (rgb >> 16) & 0xFF;
-        int g = (rgb >> 8) & 0xFF;
-        int b = rgb & 0xFF;
-        float[] hsl = new float[3];
-        Color.RGBtoHSB(r, g, b, hsl);
-        return hsl;
-    }
-
     private static int gammaCorrect(int channel) {
         float normalized = channel / 255f;
         float corrected = normalized <= 0.04045f ?
@@ -162,18 +335,14 @@ public class DominantColorExtractor {
         float avgR, avgG, avgB;
         float avgH, avgS, avgL;
 
-        public ColorBucket(int rgb, float[] hsl) {
-            addColor(rgb, hsl);
-        }
-
-        public void addColor(int rgb, float[] hsl) {
-            sumR += (rgb >> 16) & 0xFF;
-            sumG += (rgb >> 8) & 0xFF;
-            sumB += rgb & 0xFF;
-            sumH += hsl[0];
-            sumS += hsl[1];
-            sumL += hsl[2];
-            count++;
+        public ColorBucket(int count, int sumR, int sumG, int sumB, float sumH, float sumS, float sumL) {
+            this.count = count;
+            this.sumR = sumR;
+            this.sumG = sumG;
+            this.sumB = sumB;
+            this.sumH = sumH;
+            this.sumS = sumS;
+            this.sumL = sumL;
 
             avgR = sumR / (float) count;
             avgG = sumG / (float) count;
@@ -0,0 +1,54 @@
+package cloud.marisa.picturebackend.util.colors;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import java.awt.*;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>一次取色的结果：主色调和按覆盖率排序的调色板</p>
+ *
+ * @author MarisaDAZE
+ * @description 图片调色板
+ * @date 2025/4/28
+ */
+@Data
+@ToString
+@NoArgsConstructor
+@AllArgsConstructor
+public class MrsColorPalette {
+
+    /**
+     * 主色调（加权混合后的颜色）
+     */
+    private Color dominant;
+
+    /**
+     * 调色板，按覆盖率从高到低排序
+     */
+    private List<Entry> entries = new ArrayList<>();
+
+    /**
+     * 调色板中的一种颜色
+     */
+    @Data
+    @AllArgsConstructor
+    public static class Entry implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * 颜色
+         */
+        private Color color;
+
+        /**
+         * 覆盖率（这种颜色的像素占整张图片的比例，0~1）
+         */
+        private float coverage;
+    }
+}
@@ -0,0 +1,166 @@
+package cloud.marisa.picturebackend.util.search;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * <p>按汉明距离检索64位哈希的BK树（非线程安全，由调用方加锁）</p>
+ * <p>每个节点是一个哈希值，哈希相同的多个ID挂在同一个节点上；</p>
+ * <p>子节点按和父节点的距离区分，查询半径为r时只需要进入距离在[d-r, d+r]之间的子树</p>
+ *
+ * @author MarisaDAZE
+ * @description 汉明距离BK树
+ * @date 2025/4/28
+ */
+public class MrsHammingBkTree {
+
+    private Node root;
+
+    /**
+     * 节点数（不同的哈希值个数）
+     */
+    private int nodeCount;
+
+    /**
+     * ID数（同一个ID重复添加会计算多次）
+     */
+    private int size;
+
+    /**
+     * 添加一个ID
+     *
+     * @param hash 哈希值
+     * @param id   ID
+     */
+    public void add(long hash, long id) {
+        size++;
+        if (root == null) {
+            root = new Node(hash, id);
+            nodeCount++;
+            return;
+        }
+        Node node = root;
+        while (true) {
+            int distance = Long.bitCount(node.hash ^ hash);
+            if (distance == 0) {
+                node.addId(id);
+                return;
+            }
+            Node child = node.getChild(distance);
+            if (child == null) {
+                node.addChild(distance, new Node(hash, id));
+                nodeCount++;
+                return;
+            }
+            node = child;
+        }
+    }
+
+    /**
+     * 查询距离不超过半径的所有ID
+     *
+     * @param hash     目标哈希
+     * @param radius   最大汉明距离
+     * @param consumer 回调（ID，距离）
+     */
+    public void search(long hash, int radius, HitConsumer consumer) {
+        if (root == null) {
+            return;
+        }
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+            int distance = Long.bitCount(node.hash ^ hash);
+            if (distance <= radius) {
+                for (int i = 0; i < node.idCount; i++) {
+                    consumer.accept(node.ids[i], distance);
+                }
+            }
+            int min = distance - radius;
+            int max = distance + radius;
+            for (int i = 0; i < node.childCount; i++) {
+                int childDistance = node.childDistances[i];
+                if (childDistance >= min && childDistance <= max) {
+                    stack.push(node.children[i]);
+                }
+            }
+        }
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 查询结果的回调
+     */
+    @FunctionalInterface
+    public interface HitConsumer {
+
+        /**
+         * 命中一个ID
+         *
+         * @param id       ID
+         * @param distance 汉明距离
+         */
+        void accept(long id, int distance);
+    }
+
+    /**
+     * 树节点，子节点和ID都用数组保存，叶子节点不分配子节点数组
+     */
+    private static class Node {
+
+        private final long hash;
+
+        private long[] ids;
+
+        private int idCount;
+
+        private byte[] childDistances;
+
+        private Node[] children;
+
+        private int childCount;
+
+        Node(long hash, long id) {
+            this.hash = hash;
+            this.ids = new long[]{id};
+            this.idCount = 1;
+        }
+
+        void addId(long id) {
+            if (idCount == ids.length) {
+                ids = Arrays.copyOf(ids, idCount * 2);
+            }
+            ids[idCount++] = id;
+        }
+
+        Node getChild(int distance) {
+            for (int i = 0; i < childCount; i++) {
+                if (childDistances[i] == distance) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        void addChild(int distance, Node child) {
+            if (children == null) {
+                childDistances = new byte[4];
+                children = new Node[4];
+            } else if (childCount == children.length) {
+                childDistances = Arrays.copyOf(childDistances, childCount * 2);
+                children = Arrays.copyOf(children, childCount * 2);
+            }
+            childDistances[childCount] = (byte) distance;
+            children[childCount++] = child;
+        }
+    }
+}
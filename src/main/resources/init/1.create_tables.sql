@@ -56,6 +56,7 @@ CREATE TABLE `picture`  (
     `original_path` varchar(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NULL DEFAULT NULL COMMENT '原图在文件服务器上的地址',
     `introduction` varchar(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NULL DEFAULT NULL COMMENT '图片描述',
     `fingerprint` varchar(48) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NULL DEFAULT NULL COMMENT '图片指纹（md5值，只为原图生成）',
+    `object_id` bigint NULL DEFAULT NULL COMMENT '引用的图片对象ID（为空的是没有占用引用计数的历史图片）',
     `category` varchar(64) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NULL DEFAULT NULL COMMENT '图片分类',
     `tags` varchar(512) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NULL DEFAULT NULL COMMENT '图片标签（JSON数组）',
     `pic_size` bigint NULL DEFAULT NULL COMMENT '图片大小',
@@ -68,6 +69,7 @@ CREATE TABLE `picture`  (
     `m_hue_bucket` tinyint NULL DEFAULT NULL COMMENT '主色调分桶量（每10°一个桶，共36个）',
     `m_sat_bucket` tinyint NULL DEFAULT NULL COMMENT '主要颜色的饱和度桶（每10°一个桶，共10个）',
     `m_val_bucket` tinyint NULL DEFAULT NULL COMMENT '主要颜色的明度桶（每10°一个桶，共10个）',
+    `pic_hash` bigint NULL DEFAULT NULL COMMENT '感知哈希（64位dHash，用于以图搜图）',
     `pic_scale` double NULL DEFAULT NULL COMMENT '图片长宽比',
     `pic_format` varchar(32) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NULL DEFAULT NULL COMMENT '图片格式',
     `review_status` tinyint NULL DEFAULT 0 COMMENT '审核状态（0:待审核，1:已通过，2:已拒绝）',
@@ -77,6 +79,7 @@ CREATE TABLE `picture`  (
     `update_time` datetime NULL DEFAULT CURRENT_TIMESTAMP COMMENT '更新时间',
     `edit_time` datetime NULL DEFAULT CURRENT_TIMESTAMP COMMENT '编辑时间',
     `review_time` datetime NULL DEFAULT NULL COMMENT '审核时间',
+    `process_status` tinyint NOT NULL DEFAULT 0 COMMENT '后台处理状态（0:处理完成，1:处理中，2:处理失败）',
     `is_delete` tinyint NULL DEFAULT 0 COMMENT '逻辑删除（0:未删除，1:已删除）',
     PRIMARY KEY (`id`) USING BTREE,
     INDEX `idx_user_id`(`user_id` ASC) USING BTREE COMMENT '用户ID索引',
@@ -88,6 +91,7 @@ CREATE TABLE `picture`  (
     INDEX `idx_review_status`(`review_status` ASC) USING BTREE COMMENT '审核状态索引',
     INDEX `idx_reviewer_id`(`reviewer_id` ASC) USING BTREE COMMENT '审核员ID索引',
     INDEX `idx_fingerprint`(`fingerprint` ASC) USING BTREE COMMENT '文件指纹索引',
+    INDEX `idx_process_status`(`process_status` ASC) USING BTREE COMMENT '后台处理状态索引',
     INDEX `idx_hsv_bucket`(`m_hue_bucket` ASC, `m_sat_bucket` ASC, `m_val_bucket` ASC) USING BTREE COMMENT '图片主要颜色hsv分桶的联合索引'
 ) ENGINE = InnoDB CHARACTER SET = utf8mb4 COLLATE = utf8mb4_0900_ai_ci COMMENT = '图片表' ROW_FORMAT = DYNAMIC;
 
@@ -105,6 +109,7 @@ CREATE TABLE `space`  (
     `max_count` int NULL DEFAULT 0 COMMENT '最大存储数量（张）',
     `total_size` bigint NULL DEFAULT 0 COMMENT '已使用的空间大小（Byte）',
     `total_count` int NULL DEFAULT 0 COMMENT '已使用的存储数量（张）',
+    `duplicate_policy` tinyint NOT NULL DEFAULT 0 COMMENT '上传近似重复图片时的处理方式（0-提示，1-拒绝）',
     `create_time` datetime NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
     `update_time` datetime NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
     `edit_time` datetime NULL DEFAULT NULL COMMENT '修改时间',
@@ -220,4 +225,105 @@ CREATE TABLE `api_key_space` (
     PRIMARY KEY (`id`),
     UNIQUE KEY `uk_api_key_space` (`api_key_id`,`space_id`),
     KEY `idx_space_id` (`space_id`)
-) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='API密钥与空间关联表';
\ No newline at end of file
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='API密钥与空间关联表';
+-- 图片对象表（按内容哈希去重，引用计数）
+DROP TABLE IF EXISTS `picture_object`;
+CREATE TABLE `picture_object` (
+    `id` bigint NOT NULL COMMENT '主键ID',
+    `fingerprint` varchar(48) NOT NULL COMMENT '原图的内容哈希（md5）',
+    `pic_size` bigint NOT NULL COMMENT '原图大小',
+    `storage` tinyint NOT NULL DEFAULT '0' COMMENT '存储位置（0-MinIO；1-阿里云OSS）',
+    `url` varchar(512) NOT NULL COMMENT '默认图URL',
+    `url_thumb` varchar(512) DEFAULT NULL COMMENT '拇指图URL',
+    `url_original` varchar(512) DEFAULT NULL COMMENT '原图URL',
+    `saved_path` varchar(255) NOT NULL COMMENT '默认图在文件服务器上的路径',
+    `thumb_path` varchar(255) DEFAULT NULL COMMENT '拇指图在文件服务器上的路径',
+    `original_path` varchar(255) DEFAULT NULL COMMENT '原图在文件服务器上的路径',
+    `pic_width` int DEFAULT NULL COMMENT '图片宽度',
+    `pic_height` int DEFAULT NULL COMMENT '图片高度',
+    `pic_scale` double DEFAULT NULL COMMENT '图片长宽比',
+    `pic_format` varchar(32) DEFAULT NULL COMMENT '图片格式',
+    `pic_color` varchar(16) DEFAULT NULL COMMENT '图片主色调（r,g,b）',
+    `m_color_hue` float DEFAULT NULL COMMENT '主要颜色的色调（0~360°）',
+    `m_color_saturation` float DEFAULT NULL COMMENT '主要颜色的饱和度（0~100°）',
+    `m_color_value` float DEFAULT NULL COMMENT '主要颜色的明度（0~100°）',
+    `m_hue_bucket` tinyint DEFAULT NULL COMMENT '主色调分桶量',
+    `m_sat_bucket` tinyint DEFAULT NULL COMMENT '主要颜色的饱和度桶',
+    `m_val_bucket` tinyint DEFAULT NULL COMMENT '主要颜色的明度桶',
+    `pic_hash` bigint DEFAULT NULL COMMENT '感知哈希（64位dHash）',
+    `ref_count` int NOT NULL DEFAULT '0' COMMENT '引用计数（引用这份文件的未删除图片数）',
+    `process_status` tinyint NOT NULL DEFAULT '0' COMMENT '后台处理状态（0:处理完成，1:处理中，2:处理失败）',
+    `create_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    `update_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    PRIMARY KEY (`id`),
+    UNIQUE KEY `uk_fingerprint` (`fingerprint`),
+    KEY `idx_ref_count_update_time` (`ref_count`, `update_time`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='图片对象表';
+
+-- 已有数据库的迁移：图片记录引用的对象，引用计数只按这个ID释放（为空的历史图片删除时不释放）
+-- ALTER TABLE `picture` ADD COLUMN `object_id` bigint NULL DEFAULT NULL COMMENT '引用的图片对象ID（为空的是没有占用引用计数的历史图片）' AFTER `fingerprint`;
+-- 已有数据的迁移（可选）：按指纹把未删除的图片归并为对象，引用计数为引用它的图片数，并把图片关联到对象
+-- INSERT INTO `picture_object` (`id`, `fingerprint`, `pic_size`, `storage`, `url`, `url_thumb`, `url_original`,
+--     `saved_path`, `thumb_path`, `original_path`, `pic_width`, `pic_height`, `pic_scale`, `pic_format`, `pic_color`,
+--     `m_color_hue`, `m_color_saturation`, `m_color_value`, `m_hue_bucket`, `m_sat_bucket`, `m_val_bucket`, `ref_count`)
+-- SELECT p.`id`, p.`fingerprint`, p.`pic_size`, 0, p.`url`, p.`url_thumb`, p.`url_original`,
+--     p.`saved_path`, p.`thumb_path`, p.`original_path`, p.`pic_width`, p.`pic_height`, p.`pic_scale`, p.`pic_format`, p.`pic_color`,
+--     p.`m_color_hue`, p.`m_color_saturation`, p.`m_color_value`, p.`m_hue_bucket`, p.`m_sat_bucket`, p.`m_val_bucket`, g.`cnt`
+-- FROM `picture` p
+-- JOIN (SELECT MIN(`id`) AS `id`, COUNT(*) AS `cnt` FROM `picture`
+--       WHERE `is_delete` = 0 AND `fingerprint` IS NOT NULL GROUP BY `fingerprint`) g ON g.`id` = p.`id`;
+-- UPDATE `picture` p JOIN `picture_object` o ON o.`fingerprint` = p.`fingerprint`
+-- SET p.`object_id` = o.`id`
+-- WHERE p.`is_delete` = 0 AND p.`object_id` IS NULL;
+
+-- ----------------------------
+-- Table structure for picture_process_job
+-- ----------------------------
+DROP TABLE IF EXISTS `picture_process_job`;
+CREATE TABLE `picture_process_job` (
+    `id` bigint NOT NULL COMMENT '主键ID',
+    `object_id` bigint NOT NULL COMMENT '要处理的图片对象ID',
+    `status` tinyint NOT NULL DEFAULT '0' COMMENT '任务状态（0:等待执行，1:执行中，2:执行失败）',
+    `attempts` int NOT NULL DEFAULT '0' COMMENT '已执行次数',
+    `next_run_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '下次执行时间',
+    `last_error` varchar(512) DEFAULT NULL COMMENT '最后一次失败的原因',
+    `create_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    `update_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    PRIMARY KEY (`id`),
+    UNIQUE KEY `uk_object_id` (`object_id`),
+    KEY `idx_status_next_run_time` (`status`, `next_run_time`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='图片处理任务表';
+
+-- 已有数据库的迁移：新增后台处理状态
+-- ALTER TABLE `picture` ADD COLUMN `process_status` tinyint NOT NULL DEFAULT 0 COMMENT '后台处理状态（0:处理完成，1:处理中，2:处理失败）' AFTER `review_time`,
+--     ADD INDEX `idx_process_status`(`process_status` ASC);
+-- ALTER TABLE `picture_object` ADD COLUMN `process_status` tinyint NOT NULL DEFAULT '0' COMMENT '后台处理状态（0:处理完成，1:处理中，2:处理失败）' AFTER `ref_count`;
+
+-- ----------------------------
+-- Table structure for picture_palette
+-- ----------------------------
+DROP TABLE IF EXISTS `picture_palette`;
+CREATE TABLE `picture_palette` (
+    `id` bigint NOT NULL COMMENT '主键ID',
+    `fingerprint` varchar(48) NOT NULL COMMENT '原图的内容哈希（md5）',
+    `color_rank` tinyint NOT NULL COMMENT '在调色板中的排名（按覆盖率从高到低，从0开始）',
+    `color` varchar(16) NOT NULL COMMENT '颜色（r,g,b）',
+    `coverage` float NOT NULL COMMENT '覆盖率（0~1）',
+    `color_hue` float NOT NULL COMMENT '色调（0~360°）',
+    `color_saturation` float NOT NULL COMMENT '饱和度（0~100）',
+    `color_value` float NOT NULL COMMENT '明度（0~100）',
+    `hue_bucket` tinyint NOT NULL COMMENT '色调桶号',
+    `sat_bucket` tinyint NOT NULL COMMENT '饱和度桶号',
+    `val_bucket` tinyint NOT NULL COMMENT '明度桶号',
+    `create_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    PRIMARY KEY (`id`),
+    UNIQUE KEY `uk_fingerprint_rank` (`fingerprint`, `color_rank`),
+    KEY `idx_hsv_bucket` (`hue_bucket`, `sat_bucket`, `val_bucket`, `fingerprint`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='图片调色板表';
+
+-- 已有数据库的迁移：新增感知哈希（历史图片在第一次被用来搜索时补算）
+-- ALTER TABLE `picture` ADD COLUMN `pic_hash` bigint NULL DEFAULT NULL COMMENT '感知哈希（64位dHash，用于以图搜图）' AFTER `m_val_bucket`;
+-- ALTER TABLE `picture_object` ADD COLUMN `pic_hash` bigint DEFAULT NULL COMMENT '感知哈希（64位dHash）' AFTER `m_val_bucket`;
+
+-- 已有数据库的迁移：空间内近似重复图片的处理方式
+-- ALTER TABLE `space` ADD COLUMN `duplicate_policy` tinyint NOT NULL DEFAULT 0 COMMENT '上传近似重复图片时的处理方式（0-提示，1-拒绝）' AFTER `total_count`;
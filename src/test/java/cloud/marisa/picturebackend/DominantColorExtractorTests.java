@@ -0,0 +1,340 @@
+package cloud.marisa.picturebackend;
+
+import cloud.marisa.picturebackend.util.colors.DominantColorExtractor;
+import lombok.extern.log4j.Log4j2;
+import net.coobird.thumbnailator.Thumbnails;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * <p>主色调提取：平铺数组版本和原来的HashMap版本对比</p>
+ * <p>结果必须完全一致（包括像素数相同时按HashMap遍历顺序取舍、没有候选颜色时的兜底颜色），</p>
+ * <p>并且要比原来的版本更快、分配更少的内存，两个版本每次的耗时和内存分配都会输出到日志</p>
+ *
+ * @author MarisaDAZE
+ * @description 主色调提取的一致性测试和基准测试
+ * @date 2025/4/28
+ */
+@Log4j2
+public class DominantColorExtractorTests {
+
+    private static final int[] IMAGE_TYPES = {
+            BufferedImage.TYPE_INT_RGB,
+            BufferedImage.TYPE_INT_ARGB,
+            BufferedImage.TYPE_3BYTE_BGR,
+            BufferedImage.TYPE_4BYTE_ABGR
+    };
+
+    @Test
+    public void sameResultAsHashMapVersion() throws IOException {
+        Random random = new Random(42);
+        for (int i = 0; i < 1000; i++) {
+            BufferedImage image = randomImage(random, i % 5);
+            Color expected = LegacyExtractor.extractDominantColor(image);
+            Color actual = DominantColorExtractor.extractDominantColor(image);
+            Assertions.assertEquals(expected, actual, "第" + i + "张图片的主色调不一致");
+        }
+    }
+
+    @Test
+    public void sameResultWhenCountsTie() throws IOException {
+        // 150x150的图片不会被缩放，等宽的色带让多个桶的像素数完全相同；黑白灰色带没有候选颜色，走兜底颜色
+        Random random = new Random(11);
+        int[] stripeCounts = {2, 3, 5, 6, 10, 15, 25, 30};
+        for (int i = 0; i < 500; i++) {
+            int[] stripes = new int[stripeCounts[i % stripeCounts.length]];
+            for (int j = 0; j < stripes.length; j++) {
+                int gray = random.nextInt(256);
+                stripes[j] = i % 3 == 0 ? (gray << 16 | gray << 8 | gray) : random.nextInt(0x1000000);
+            }
+            BufferedImage image = new BufferedImage(150, 150, IMAGE_TYPES[i % IMAGE_TYPES.length]);
+            for (int y = 0; y < 150; y++) {
+                for (int x = 0; x < 150; x++) {
+                    image.setRGB(x, y, 0xFF000000 | stripes[x * stripes.length / 150]);
+                }
+            }
+            Color expected = LegacyExtractor.extractDominantColor(image);
+            Color actual = DominantColorExtractor.extractDominantColor(image);
+            Assertions.assertEquals(expected, actual, "第" + i + "张色带图片的主色调不一致");
+        }
+    }
+
+    @Test
+    public void samePaletteForMirroredImage() throws IOException {
+        // 六条等宽的色带，每种颜色的像素数完全相同，镜像后颜色第一次出现的顺序相反
+        int[] stripes = {0xE53935, 0x43A047, 0x1E88E5, 0xFDD835, 0x8E24AA, 0x00ACC1};
+        BufferedImage image = new BufferedImage(150, 150, BufferedImage.TYPE_INT_RGB);
+        BufferedImage mirrored = new BufferedImage(150, 150, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < 150; y++) {
+            for (int x = 0; x < 150; x++) {
+                image.setRGB(x, y, stripes[x / 25]);
+                mirrored.setRGB(149 - x, y, stripes[x / 25]);
+            }
+        }
+        Assertions.assertEquals(
+                DominantColorExtractor.extractColors(image, 5).getEntries().stream()
+                        .map(entry -> entry.getColor().getRGB())
+                        .collect(Collectors.toList()),
+                DominantColorExtractor.extractColors(mirrored, 5).getEntries().stream()
+                        .map(entry -> entry.getColor().getRGB())
+                        .collect(Collectors.toList()));
+    }
+
+    @Test
+    public void benchmark() throws IOException {
+        Random random = new Random(7);
+        BufferedImage[] images = new BufferedImage[8];
+        // 上传时取色的图片已经按目标尺寸降采样解码过了，这里同样先缩放到150以内，只比较直方图统计本身的耗时
+        for (int i = 0; i < images.length; i++) {
+            images[i] = Thumbnails.of(randomImage(random, 2))
+                    .size(150, 150)
+                    .asBufferedImage();
+        }
+        int iterations = 2000;
+        // 预热
+        for (int i = 0; i < iterations; i++) {
+            LegacyExtractor.extractDominantColor(images[i % images.length]);
+            DominantColorExtractor.extractDominantColor(images[i % images.length]);
+        }
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        long bytes = threadBean.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            LegacyExtractor.extractDominantColor(images[i % images.length]);
+        }
+        long legacyNanos = System.nanoTime() - start;
+        long legacyBytes = threadBean.getThreadAllocatedBytes(threadId) - bytes;
+
+        bytes = threadBean.getThreadAllocatedBytes(threadId);
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            DominantColorExtractor.extractDominantColor(images[i % images.length]);
+        }
+        long currentNanos = System.nanoTime() - start;
+        long currentBytes = threadBean.getThreadAllocatedBytes(threadId) - bytes;
+
+        String report = String.format("HashMap版本: %.1fus/次, %dKB/次; 平铺数组版本: %.1fus/次, %dKB/次; 加速%.2f倍",
+                legacyNanos / 1000.0 / iterations, legacyBytes / 1024 / iterations,
+                currentNanos / 1000.0 / iterations, currentBytes / 1024 / iterations,
+                legacyNanos / (double) currentNanos);
+        log.info("主色调提取基准测试 {}", report);
+        Assertions.assertTrue(currentNanos < legacyNanos, report);
+        Assertions.assertTrue(currentBytes < legacyBytes, report);
+    }
+
+    /**
+     * 生成测试图片
+     *
+     * @param random 随机数
+     * @param mode   0-随机噪点；1-少量颜色；2-渐变；3-色块；4-黑白灰
+     * @return 图片
+     */
+    private static BufferedImage randomImage(Random random, int mode) {
+        int width = 50 + random.nextInt(400);
+        int height = 50 + random.nextInt(400);
+        BufferedImage image = new BufferedImage(width, height, IMAGE_TYPES[random.nextInt(IMAGE_TYPES.length)]);
+        int[] palette = new int[1 + random.nextInt(40)];
+        for (int i = 0; i < palette.length; i++) {
+            palette[i] = random.nextInt(0x1000000);
+        }
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int rgb;
+                switch (mode) {
+                    case 0:
+                        rgb = random.nextInt(0x1000000);
+                        break;
+                    case 1:
+                        rgb = palette[random.nextInt(palette.length)];
+                        break;
+                    case 2:
+                        rgb = Color.HSBtoRGB(x / (float) width, y / (float) height, 0.5f + 0.5f * random.nextFloat());
+                        break;
+                    case 3:
+                        rgb = palette[(x / 10 + y / 10) % palette.length];
+                        break;
+                    default:
+                        rgb = (random.nextInt(3) == 0 ? 0xFFFFFF : random.nextInt(2) == 0 ? 0 : 0x808080)
+                                ^ random.nextInt(8);
+                }
+                image.setRGB(x, y, 0xFF000000 | rgb);
+            }
+        }
+        return image;
+    }
+
+    /**
+     * 原来的实现（逐字拷贝，只是把入口从输入流改成已解码的图片）：
+     * 逐像素getRGB，每个像素创建float[]并通过HashMap.compute统计，像素数相同时按HashMap的遍历顺序取舍
+     */
+    private static class LegacyExtractor {
+
+        private static final int TARGET_SIZE = 150;
+        private static final int H_BUCKETS = 36;  // 色调分桶数（每10度一个）
+        private static final int S_BUCKETS = 8;   // 饱和度分桶数
+        private static final int L_BUCKETS = 8;   // 亮度分桶数
+        private static final float MIN_SATURATION = 0.4f;
+        private static final float MIN_LIGHTNESS = 0.2f;
+        private static final float MAX_LIGHTNESS = 0.8f;
+
+        public static Color extractDominantColor(BufferedImage image) throws IOException {
+            // 1. 读取并压缩图片
+            BufferedImage resizedImage = Thumbnails.of(image)
+                    .size(TARGET_SIZE, TARGET_SIZE)
+                    .asBufferedImage();
+
+            // 2. 创建颜色分桶统计
+            Map<Integer, ColorBucket> colorBuckets = new HashMap<>();
+            int width = resizedImage.getWidth();
+            int height = resizedImage.getHeight();
+
+            // 3. 遍历所有像素进行分桶统计
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    processPixel(resizedImage.getRGB(x, y), colorBuckets);
+                }
+            }
+
+            // 4. 过滤并排序候选颜色
+            List<ColorBucket> candidates = colorBuckets.values().stream()
+                    .filter(LegacyExtractor::isValidColor)
+                    .sorted(Comparator.comparingInt((ColorBucket b) -> b.count).reversed())
+                    .collect(Collectors.toList());
+
+            // 5. 处理无候选颜色情况
+            if (candidates.isEmpty()) {
+                return getFallbackColor(colorBuckets);
+            }
+
+            // 6. 加权混合主要颜色
+            return calculateDominantColor(candidates);
+        }
+
+        private static void processPixel(int rgb, Map<Integer, ColorBucket> buckets) {
+            float[] hsl = rgbToHsl(rgb);
+
+            // 计算分桶索引
+            int hIdx = (int) (hsl[0] * H_BUCKETS) % H_BUCKETS;
+            int sIdx = (int) (hsl[1] * S_BUCKETS);
+            int lIdx = (int) (hsl[2] * L_BUCKETS);
+            int bucketKey = (hIdx << 16) | (sIdx << 8) | lIdx;
+
+            // 更新分桶统计
+            buckets.compute(bucketKey, (k, v) -> {
+                if (v == null) {
+                    return new ColorBucket(rgb, hsl);
+                } else {
+                    v.addColor(rgb, hsl);
+                    return v;
+                }
+            });
+        }
+
+        private static boolean isValidColor(ColorBucket bucket) {
+            return bucket.avgS >= MIN_SATURATION &&
+                    bucket.avgL >= MIN_LIGHTNESS &&
+                    bucket.avgL <= MAX_LIGHTNESS;
+        }
+
+        private static Color getFallbackColor(Map<Integer, ColorBucket> buckets) {
+            return buckets.values().stream()
+                    .max(Comparator.comparingInt(b -> b.count))
+                    .map(b -> new Color((int) b.avgR, (int) b.avgG, (int) b.avgB)
+                    )
+                    .orElse(Color.BLACK);
+        }
+
+        private static Color calculateDominantColor(List<ColorBucket> candidates) {
+            float totalWeight = 0f;
+            float weightedH = 0f, weightedS = 0f, weightedL = 0f;
+
+            // 取前5个候选颜色（避免颜色突变）
+            List<ColorBucket> topCandidates = candidates.subList(0, Math.min(5, candidates.size()));
+
+            for (ColorBucket bucket : topCandidates) {
+                // 计算权重因子：出现次数 * 饱和度 * 亮度适宜度
+                float brightnessBias = 1 - Math.abs(bucket.avgL - 0.5f);
+                float weight = bucket.count * bucket.avgS * brightnessBias;
+
+                weightedH += bucket.avgH * weight;
+                weightedS += bucket.avgS * weight;
+                weightedL += bucket.avgL * weight;
+                totalWeight += weight;
+            }
+
+            // 计算加权平均值
+            float finalH = weightedH / totalWeight;
+            float finalS = Math.min(1f, weightedS / totalWeight);
+            float finalL = Math.min(1f, weightedL / totalWeight);
+
+            // 转换回RGB并应用伽马校正
+            int rgb = Color.HSBtoRGB(finalH, finalS, finalL);
+            int r = gammaCorrect((rgb >> 16) & 0xFF);
+            int g = gammaCorrect((rgb >> 8) & 0xFF);
+            int b = gammaCorrect(rgb & 0xFF);
+
+            return new Color(r, g, b);
+        }
+
+        private static float[] rgbToHsl(int rgb) {
+            int r = (rgb >> 16) & 0xFF;
+            int g = (rgb >> 8) & 0xFF;
+            int b = rgb & 0xFF;
+            float[] hsl = new float[3];
+            Color.RGBtoHSB(r, g, b, hsl);
+            return hsl;
+        }
+
+        private static int gammaCorrect(int channel) {
+            float normalized = channel / 255f;
+            float corrected = normalized <= 0.04045f ?
+                    normalized / 12.92f :
+                    (float) Math.pow((normalized + 0.055f) / 1.055f, 2.4);
+            return Math.round(corrected * 255);
+        }
+
+        private static class ColorBucket {
+            int count = 0;
+            int sumR = 0;
+            int sumG = 0;
+            int sumB = 0;
+            float sumH = 0f;
+            float sumS = 0f;
+            float sumL = 0f;
+            float avgR, avgG, avgB;
+            float avgH, avgS, avgL;
+
+            public ColorBucket(int rgb, float[] hsl) {
+                addColor(rgb, hsl);
+            }
+
+            public void addColor(int rgb, float[] hsl) {
+                sumR += (rgb >> 16) & 0xFF;
+                sumG += (rgb >> 8) & 0xFF;
+                sumB += rgb & 0xFF;
+                sumH += hsl[0];
+                sumS += hsl[1];
+                sumL += hsl[2];
+                count++;
+
+                avgR = sumR / (float) count;
+                avgG = sumG / (float) count;
+                avgB = sumB / (float) count;
+                avgH = sumH / count;
+                avgS = sumS / count;
+                avgL = sumL / count;
+            }
+        }
+    }
+}